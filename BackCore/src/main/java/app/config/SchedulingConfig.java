@@ -0,0 +1,12 @@
+package app.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Procesos programados (barrido de préstamos vencidos, limpieza de idempotencia, particiones, puntos de control
+// de stock, archivo histórico del Kardex y retención de trabajos de reportes).
+// Siempre activo: cada proceso se desactiva con su propia propiedad (ej. loans.overdue-sweep.enabled, cron "-").
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
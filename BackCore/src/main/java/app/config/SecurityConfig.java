@@ -40,13 +40,17 @@ public class SecurityConfig {
             // Permitir explícitamente el pre-flight de CORS para todas las rutas
             .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
             
+            // Actuator: salud pública, métricas solo para administradores
+            .requestMatchers("/actuator/health").permitAll()
+            .requestMatchers("/actuator/**").hasRole(ROLE_ADMIN)
+
             // Reglas de negocio
             .requestMatchers(HttpMethod.GET, "/loans/**", TOOLS_PATH).hasAnyRole(ROLE_ADMIN, ROLE_EMPLOYEE)
             .requestMatchers(HttpMethod.POST,   TOOLS_PATH).hasAnyRole(ROLE_ADMIN, ROLE_EMPLOYEE)
             .requestMatchers(HttpMethod.PUT,    TOOLS_PATH).hasRole(ROLE_ADMIN)
             .requestMatchers(HttpMethod.PATCH,  TOOLS_PATH).hasRole(ROLE_ADMIN)
             .requestMatchers(HttpMethod.DELETE, TOOLS_PATH).hasRole(ROLE_ADMIN)
-            .requestMatchers("/clients/**","/kardex/**", "/returns/**", "/reports/**").hasAnyRole(ROLE_ADMIN, ROLE_EMPLOYEE)
+            .requestMatchers("/clients/**","/kardex/**", "/returns/**", "/reports/**", "/dashboard/**").hasAnyRole(ROLE_ADMIN, ROLE_EMPLOYEE)
             .requestMatchers("/tariffs/**","/users/**").hasRole(ROLE_ADMIN)
 
             .anyRequest().authenticated()
@@ -64,7 +68,8 @@ public class SecurityConfig {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(List.of("http://localhost:5173")); // Tu React
         configuration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
-        configuration.setAllowedHeaders(List.of("*")); // Permitir todo header
+        configuration.setAllowedHeaders(List.of("*")); // Permitir todo header (incluye Idempotency-Key)
+        configuration.setExposedHeaders(List.of(IdempotencyFilter.REPLAYED_HEADER)); // Respuesta repetida por Idempotency-Key
         configuration.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
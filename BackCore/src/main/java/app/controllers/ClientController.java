@@ -1,12 +1,14 @@
 package app.controllers;
 
 import jakarta.validation.Valid; 
+import app.services.ClientLoanCounterService;
 import app.services.ClientService;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import app.dtos.CounterRebuildReport;
 import app.dtos.UpdateClientRequest;
 import app.entities.ClientEntity;
 import app.entities.enums.ClientStatus;
@@ -20,9 +22,11 @@ import java.util.Map;
 public class ClientController {
 
     private final ClientService clientService;
+    private final ClientLoanCounterService clientLoanCounterService;
 
-    public ClientController(ClientService clientService) { 
+    public ClientController(ClientService clientService, ClientLoanCounterService clientLoanCounterService) { 
         this.clientService = clientService;
+        this.clientLoanCounterService = clientLoanCounterService;
     }
 
     @GetMapping
@@ -65,4 +69,17 @@ public class ClientController {
         // Devuelve el estado final del cliente: puede seguir RESTRICTED si falló, o ACTIVE si tuvo éxito
         return ResponseEntity.ok(potentiallyUpdatedClient);
     }
+
+    // --- Contadores de préstamos por cliente (client_loan_counters) ---
+    @GetMapping("/loan-counters/verify")
+    @PreAuthorize("hasRole('ADMIN')")
+    public CounterRebuildReport verifyLoanCounters(@RequestParam(defaultValue = "500") int chunkSize) {
+        return clientLoanCounterService.rebuild(chunkSize, false);
+    }
+
+    @PostMapping("/loan-counters/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public CounterRebuildReport rebuildLoanCounters(@RequestParam(defaultValue = "500") int chunkSize) {
+        return clientLoanCounterService.rebuild(chunkSize, true);
+    }
 }
\ No newline at end of file
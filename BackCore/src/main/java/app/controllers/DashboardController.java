@@ -0,0 +1,22 @@
+package app.controllers;
+
+import app.dtos.DashboardSummary;
+import app.services.DashboardService;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/dashboard")
+public class DashboardController {
+
+    private final DashboardService dashboardService;
+
+    public DashboardController(DashboardService dashboardService) {
+        this.dashboardService = dashboardService;
+    }
+
+    // Indicadores del panel de inicio en una sola llamada (puede tener unos segundos de antigüedad, ver generatedAt)
+    @GetMapping("/summary")
+    public DashboardSummary getSummary() {
+        return dashboardService.getSummary();
+    }
+}
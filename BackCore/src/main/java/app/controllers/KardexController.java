@@ -1,29 +1,60 @@
 package app.controllers;
 
+import app.services.KardexArchiveService;
+import app.services.KardexRollupService;
 import app.services.KardexService;
+import app.services.StockSnapshotService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 
-import app.entities.KardexEntity;
+import app.dtos.KardexArchiveReport;
+import app.dtos.KardexMovementRow;
+import app.dtos.KardexPage;
+import app.dtos.RollupBackfillReport;
+import app.dtos.StockAtTimeReport;
+import app.entities.KardexDailyRollupEntity;
+import app.entities.enums.MovementType;
 import app.exceptions.ResourceNotFoundException;
+import app.utils.CsvWriter;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/kardex")
 public class KardexController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final KardexService kardexService;
+    private final ObjectMapper objectMapper;
+    private final StockSnapshotService stockSnapshotService;
+    private final KardexRollupService kardexRollupService;
+    private final KardexArchiveService kardexArchiveService;
 
-    public KardexController(KardexService kardexService) {
+    public KardexController(KardexService kardexService, ObjectMapper objectMapper, StockSnapshotService stockSnapshotService,
+                            KardexRollupService kardexRollupService, KardexArchiveService kardexArchiveService) {
         this.kardexService = kardexService;
+        this.objectMapper = objectMapper;
+        this.stockSnapshotService = stockSnapshotService;
+        this.kardexRollupService = kardexRollupService;
+        this.kardexArchiveService = kardexArchiveService;
     }
 
     @GetMapping("/tool/{toolId}")
-    public ResponseEntity<List<KardexEntity>> getMovementsByToolId(@PathVariable Long toolId) {
+    public ResponseEntity<List<KardexMovementRow>> getMovementsByToolId(@PathVariable Long toolId) {
         try {
-            List<KardexEntity> movements = kardexService.getMovementsByToolId(toolId);
+            List<KardexMovementRow> movements = kardexService.getMovementsByToolId(toolId);
             return ResponseEntity.ok(movements);
         } catch (ResourceNotFoundException e) {
             return ResponseEntity.notFound().build();
@@ -31,9 +62,108 @@ public class KardexController {
     }
 
     @GetMapping("/date")
-    public List<KardexEntity> getMovementsByDate(@RequestParam String start,@RequestParam String end) {
+    public List<KardexMovementRow> getMovementsByDate(@RequestParam String start,@RequestParam String end) {
         LocalDateTime startTime = LocalDateTime.parse(start);
         LocalDateTime endTime = LocalDateTime.parse(end);
         return kardexService.getMovementsByDate(startTime, endTime);
     }
-}
\ No newline at end of file
+
+    // Historial paginado: la primera página va sin cursor; las siguientes envían el nextCursor de la anterior
+    @GetMapping("/tool/{toolId}/page")
+    public KardexPage getMovementsPageByToolId(@PathVariable Long toolId,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = "100") int size) {
+        return kardexService.getMovementsPageByToolId(toolId, cursor, size);
+    }
+
+    @GetMapping("/date/page")
+    public KardexPage getMovementsPageByDate(@RequestParam String start, @RequestParam String end,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "100") int size) {
+        return kardexService.getMovementsPageByDate(LocalDateTime.parse(start), LocalDateTime.parse(end), cursor, size);
+    }
+
+    // Historial completo como NDJSON (un movimiento JSON por línea), escrito a medida que se lee de la BD
+    @GetMapping(path = "/tool/{toolId}/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamMovementsByToolId(@PathVariable Long toolId) {
+        kardexService.requireTool(toolId); // 404 antes de empezar a escribir
+        return ndjson(writer -> kardexService.streamMovementsByToolId(toolId, writer));
+    }
+
+    @GetMapping(path = "/date/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamMovementsByDate(@RequestParam String start, @RequestParam String end) {
+        LocalDateTime startTime = LocalDateTime.parse(start);
+        LocalDateTime endTime = LocalDateTime.parse(end);
+        kardexService.validateDateRange(startTime, endTime);
+        return ndjson(writer -> kardexService.streamMovementsByDate(startTime, endTime, writer));
+    }
+
+    // Mismo recorrido que /date/stream, como CSV descargable (comprimido si el cliente acepta gzip)
+    @GetMapping("/date/csv")
+    public ResponseEntity<StreamingResponseBody> exportMovementsByDate(@RequestParam String start, @RequestParam String end,
+                                                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        LocalDateTime startTime = LocalDateTime.parse(start);
+        LocalDateTime endTime = LocalDateTime.parse(end);
+        kardexService.validateDateRange(startTime, endTime);
+        return CsvWriter.download("kardex-" + startTime.toLocalDate() + "-" + endTime.toLocalDate() + ".csv", acceptEncoding,
+                List.of("id", "movement_date", "type", "quantity", "tool_id", "tool_name", "user_id", "username"),
+                csv -> kardexService.streamMovementsByDate(startTime, endTime, row -> csv.writeRow(
+                        row.id(), row.movementDate(), row.type(), row.quantity(),
+                        row.toolId(), row.toolName(), row.userId(), row.username())));
+    }
+
+    // Stock de todas las herramientas en una fecha/hora pasada (auditoría), ej: /kardex/stock-at?at=2025-03-01T18:00:00
+    @GetMapping("/stock-at")
+    public StockAtTimeReport getStockAt(@RequestParam String at) {
+        return stockSnapshotService.getStockAt(LocalDateTime.parse(at));
+    }
+
+    // Punto de control manual (el proceso programado lo toma cada noche)
+    @PostMapping("/stock-snapshots")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Integer> takeStockSnapshot() {
+        return ResponseEntity.ok(stockSnapshotService.takeSnapshot());
+    }
+
+    // Totales diarios por herramienta y tipo (solo lee kardex_daily_rollup), ej: /kardex/rollup?from=2025-03-01&to=2025-03-31&type=LOAN
+    @GetMapping("/rollup")
+    public List<KardexDailyRollupEntity> getRollup(@RequestParam String from, @RequestParam String to,
+                                                   @RequestParam(required = false) Long toolId,
+                                                   @RequestParam(required = false) MovementType type) {
+        return kardexRollupService.getRollup(LocalDate.parse(from), LocalDate.parse(to), toolId, type);
+    }
+
+    // Reconstrucción de los totales desde el Kardex (por defecto hasta ayer: días cerrados)
+    @PostMapping("/rollup/backfill")
+    @PreAuthorize("hasRole('ADMIN')")
+    public RollupBackfillReport backfillRollup(@RequestParam String from, @RequestParam(required = false) String to,
+                                               @RequestParam(defaultValue = "7") int daysPerChunk) {
+        LocalDate toDate = to == null ? LocalDate.now().minusDays(1) : LocalDate.parse(to);
+        return kardexRollupService.backfill(LocalDate.parse(from), toDate, daysPerChunk);
+    }
+
+    // Archivo histórico manual: mueve a segmentos en disco los movimientos anteriores al horizonte configurado
+    @PostMapping("/archive")
+    @PreAuthorize("hasRole('ADMIN')")
+    public KardexArchiveReport archiveKardex() {
+        return kardexArchiveService.archive(LocalDate.now());
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndjson(Consumer<Consumer<KardexMovementRow>> source) {
+        StreamingResponseBody body = out -> {
+            OutputStream buffered = new BufferedOutputStream(out);
+            source.accept(row -> writeLine(buffered, row));
+            buffered.flush();
+        };
+        return ResponseEntity.ok().header("Content-Type", NDJSON).body(body);
+    }
+
+    private void writeLine(OutputStream out, KardexMovementRow row) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(row));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cliente desconectado: aborta el recorrido y cierra el cursor
+        }
+    }
+}
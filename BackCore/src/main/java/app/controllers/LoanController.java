@@ -2,17 +2,23 @@ package app.controllers;
 
 import jakarta.validation.Valid;
 import app.services.LoanService;
+import app.services.OverdueLoanSweepService;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import app.dtos.BatchLoanRequest;
+import app.dtos.BatchReturnRequest;
+import app.dtos.BatchReturnResult;
 import app.dtos.LoanRequest;
+import app.dtos.OverdueSweepReport;
 import app.dtos.ReturnLoanRequest;
 import app.entities.LoanEntity;
 import app.entities.UserEntity;
 import app.utils.SecurityUtils;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -22,10 +28,12 @@ public class LoanController {
 
     private final LoanService loanService;
     private final SecurityUtils securityUtils; 
+    private final OverdueLoanSweepService overdueLoanSweepService;
 
-    public LoanController(LoanService loanService, SecurityUtils securityUtils) { 
+    public LoanController(LoanService loanService, SecurityUtils securityUtils, OverdueLoanSweepService overdueLoanSweepService) { 
         this.loanService = loanService;
         this.securityUtils = securityUtils;
+        this.overdueLoanSweepService = overdueLoanSweepService;
     }
 
     @GetMapping
@@ -54,6 +62,13 @@ public class LoanController {
         return loanService.createLoan(req.clientId(), req.toolId(), req.startDate(), req.dueDate(), currentUser);
     }
 
+    // Préstamo de varias herramientas a un cliente en una sola transacción (todo o nada)
+    @PostMapping(path = "/batch", consumes = "application/json", produces = "application/json")
+    public List<LoanEntity> createLoanBatch(@RequestBody @Valid BatchLoanRequest req, Authentication authentication) {
+        UserEntity currentUser = securityUtils.getUserFromAuthentication(authentication);
+        return loanService.createLoanBatch(req.clientId(), req.startDate(), req.lines(), currentUser);
+    }
+
     @PutMapping(path = "/{id}/return", consumes = "application/json", produces = "application/json")
     public LoanEntity returnLoanJson(@PathVariable Long id, @RequestBody @Valid ReturnLoanRequest req, Authentication authentication) {
         UserEntity currentUser = securityUtils.getUserFromAuthentication(authentication);
@@ -67,10 +82,24 @@ public class LoanController {
             );
         }
 
+    // Devoluciones múltiples (buzón): resultado por línea, una línea inválida no aborta las demás
+    @PutMapping(path = "/returns/batch", consumes = "application/json", produces = "application/json")
+    public List<BatchReturnResult> returnLoanBatch(@RequestBody @Valid BatchReturnRequest req, Authentication authentication) {
+        UserEntity currentUser = securityUtils.getUserFromAuthentication(authentication);
+        return loanService.returnLoanBatch(req.lines(), currentUser);
+    }
+
     @PatchMapping("/{loanId}/pay")
     public ResponseEntity<LoanEntity> markLoanAsPaid(@PathVariable Long loanId) {
         LoanEntity updatedLoan = loanService.markLoanAsPaid(loanId);
         // Devuelve el préstamo actualizado (con estado CLOSED y penalty 0)
         return ResponseEntity.ok(updatedLoan);
     }
-}
\ No newline at end of file
+
+    // Ejecución manual del barrido de atrasos (el mismo proceso corre programado cada noche)
+    @PostMapping("/overdue/sweep")
+    @PreAuthorize("hasRole('ADMIN')")
+    public OverdueSweepReport sweepOverdueLoans(@RequestParam(defaultValue = "5000") int chunkSize) {
+        return overdueLoanSweepService.sweep(LocalDate.now(), chunkSize);
+    }
+}
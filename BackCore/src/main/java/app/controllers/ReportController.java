@@ -1,28 +1,50 @@
 package app.controllers;
 
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import app.entities.ClientEntity;
-import app.entities.LoanEntity;
+import app.dtos.LateClientPage;
+import app.dtos.LoanReportRow;
+import app.dtos.ReportJobInfo;
+import app.dtos.ReportJobRequest;
+import app.dtos.TopToolDto;
+import app.entities.enums.LoanStatus;
+import app.services.ReportJobService;
 import app.services.ReportService;
+import app.utils.CsvWriter;
+import app.utils.SecurityUtils;
+import jakarta.validation.Valid;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/reports")
 public class ReportController {
 
     private final ReportService reportService;
+    private final ReportJobService reportJobService;
+    private final SecurityUtils securityUtils;
 
-    public ReportController(ReportService reportService) {
+    public ReportController(ReportService reportService, ReportJobService reportJobService, SecurityUtils securityUtils) {
         this.reportService = reportService;
+        this.reportJobService = reportJobService;
+        this.securityUtils = securityUtils;
     }
 
     // --- RF6.1: Modificado para aceptar fechas opcionales ---
     @GetMapping("/loans")
-    public List<LoanEntity> getLoansByStatus(
+    public List<LoanReportRow> getLoansByStatus(
             @RequestParam String status,
             // Usar required = false para que las fechas sean opcionales
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
@@ -31,21 +53,84 @@ public class ReportController {
         return reportService.getLoansByStatus(status.toUpperCase(), from, to);
     }
 
-    // --- RF6.2: Modificado para aceptar fechas opcionales ---
+    // --- RF6.2: Clientes con préstamos atrasados, paginado por ID ---
+    // La primera página va sin afterId; las siguientes envían el nextAfterId de la anterior
     @GetMapping("/clients/late")
-    public List<ClientEntity> getLateClients(
+    public LateClientPage getLateClients(
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
-            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
-        // Pasar las fechas (que pueden ser null) al servicio
-        return reportService.getClientsWithLateLoans(from, to);
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            // Cantidad de préstamos atrasados y vencimiento más antiguo por cliente
+            @RequestParam(defaultValue = "false") boolean includeStats,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "100") int size) {
+        return reportService.getClientsWithLateLoans(from, to, includeStats, afterId, size);
+    }
+
+    // --- Exportación CSV de RF6.1 y RF6.2 (contabilidad): reporte completo, se escribe a medida que se lee de la BD ---
+    @GetMapping("/loans/csv")
+    public ResponseEntity<StreamingResponseBody> exportLoansByStatus(
+            @RequestParam String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        LoanStatus loanStatus = LoanStatus.valueOf(status.toUpperCase());
+        reportService.validateOptionalRange(from, to);
+        return CsvWriter.download("loans-" + loanStatus.name().toLowerCase() + ".csv", acceptEncoding,
+                List.of("id", "client_id", "client_rut", "client_name", "tool_id", "tool_name",
+                        "start_date", "due_date", "return_date", "status", "total_penalty"),
+                csv -> reportService.streamLoansByStatus(loanStatus, from, to, row -> csv.writeRow(
+                        row.id(), row.clientId(), row.clientRut(), row.clientName(), row.toolId(), row.toolName(),
+                        row.startDate(), row.dueDate(), row.returnDate(), row.status(), row.totalPenalty())));
+    }
+
+    @GetMapping("/clients/late/csv")
+    public ResponseEntity<StreamingResponseBody> exportLateClients(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        reportService.validateOptionalRange(from, to);
+        return CsvWriter.download("late-clients.csv", acceptEncoding,
+                List.of("id", "rut", "name", "email", "status", "late_loans", "oldest_due_date"),
+                csv -> reportService.streamClientsWithLateLoans(from, to, client -> csv.writeRow(
+                        client.id(), client.rut(), client.name(), client.email(), client.status(),
+                        client.lateLoans(), client.oldestDueDate())));
     }
 
     // --- RF6.3: Herramientas más Prestadas ---
     @GetMapping("/tools/top")
-    public List<Object[]> getTopTools(
+    public List<TopToolDto> getTopTools(
             // Mantener required = true o quitarlo si @RequestParam es obligatorio por defecto
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
-        return reportService.getTopTools(from, to);
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "10") int limit) {
+        return reportService.getTopTools(from, to, limit);
+    }
+
+    // Recalcula tool_loan_daily_counts desde loans (ej. préstamos cargados directo en la BD)
+    @PostMapping("/tools/top/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Map<String, Integer> rebuildTopToolCounts() {
+        return Map.of("rows", reportService.rebuildTopToolCounts());
+    }
+
+    // --- Trabajos asíncronos (reportes largos, ej. de fin de año) ---
+    // Responde 202 con el ID; el avance se consulta en /jobs/{id} y el JSON se descarga desde /jobs/{id}/result
+    @PostMapping("/jobs")
+    public ResponseEntity<ReportJobInfo> submitJob(@RequestBody @Valid ReportJobRequest request, Authentication authentication) {
+        String username = securityUtils.getUserFromAuthentication(authentication).getUsername();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(reportJobService.submit(request, username));
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ReportJobInfo getJob(@PathVariable String id) {
+        return reportJobService.getJob(id);
+    }
+
+    @GetMapping("/jobs/{id}/result")
+    public ResponseEntity<Resource> getJobResult(@PathVariable String id) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"report-" + id + ".json\"")
+                .body(new FileSystemResource(reportJobService.getResultFile(id)));
     }
-}
\ No newline at end of file
+}
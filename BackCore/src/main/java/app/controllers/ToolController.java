@@ -1,12 +1,14 @@
 package app.controllers;
 
 import jakarta.validation.Valid;
+import app.services.StockAuditService;
 import app.services.ToolService;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import app.dtos.StockAdjustmentRequest;
+import app.dtos.StockAuditReport;
 import app.dtos.UpdateToolRequest;
 import app.entities.ToolEntity;
 import app.entities.UserEntity;
@@ -21,10 +23,12 @@ public class ToolController {
 
     private final ToolService toolService;
     private final SecurityUtils securityUtils;
+    private final StockAuditService stockAuditService;
 
-    public ToolController(ToolService toolService, SecurityUtils securityUtils) {
+    public ToolController(ToolService toolService, SecurityUtils securityUtils, StockAuditService stockAuditService) {
         this.toolService = toolService;
         this.securityUtils = securityUtils;
+        this.stockAuditService = stockAuditService;
     }
 
     @GetMapping
@@ -75,4 +79,17 @@ public class ToolController {
         UserEntity currentUser = securityUtils.getUserFromAuthentication(authentication);
         return toolService.decommissionTool(id, currentUser);
     }
-}
\ No newline at end of file
+
+    // --- Auditoría de stock contra el Kardex ---
+    @GetMapping("/stock-audit/verify")
+    @PreAuthorize("hasRole('ADMIN')")
+    public StockAuditReport verifyStock(@RequestParam(defaultValue = "5000") int chunkSize) {
+        return stockAuditService.audit(chunkSize, false);
+    }
+
+    @PostMapping("/stock-audit/repair")
+    @PreAuthorize("hasRole('ADMIN')")
+    public StockAuditReport repairStock(@RequestParam(defaultValue = "5000") int chunkSize) {
+        return stockAuditService.audit(chunkSize, true);
+    }
+}
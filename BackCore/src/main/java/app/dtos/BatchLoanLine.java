@@ -0,0 +1,12 @@
+package app.dtos;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.validation.constraints.FutureOrPresent;
+import jakarta.validation.constraints.NotNull;
+import java.time.LocalDate;
+
+// Una línea de un préstamo múltiple: herramienta + fecha de devolución pactada
+public record BatchLoanLine(
+    @NotNull Long toolId,
+    @NotNull @FutureOrPresent @JsonFormat(pattern = "yyyy-MM-dd") LocalDate dueDate
+) {}
@@ -0,0 +1,15 @@
+package app.dtos;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import java.time.LocalDate;
+import java.util.List;
+
+// Préstamo de varias herramientas a un mismo cliente en una sola operación (todo o nada)
+public record BatchLoanRequest(
+    @NotNull Long clientId,
+    @NotNull @JsonFormat(pattern = "yyyy-MM-dd") LocalDate startDate,
+    @NotEmpty List<@Valid @NotNull BatchLoanLine> lines
+) {}
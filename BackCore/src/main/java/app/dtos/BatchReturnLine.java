@@ -0,0 +1,14 @@
+package app.dtos;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.validation.constraints.NotNull;
+import java.time.LocalDate;
+
+// Una línea de devolución múltiple (mismos campos que ReturnLoanRequest + el préstamo)
+public record BatchReturnLine(
+    @NotNull Long loanId,
+    @NotNull Long toolId,
+    @NotNull Boolean damaged,
+    @NotNull Boolean irreparable,
+    @JsonFormat(pattern = "yyyy-MM-dd") LocalDate returnDate
+) {}
@@ -0,0 +1,11 @@
+package app.dtos;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import java.util.List;
+
+// Devoluciones del buzón: cada línea se procesa por separado y una línea inválida no detiene las demás
+public record BatchReturnRequest(
+    @NotEmpty List<@Valid @NotNull BatchReturnLine> lines
+) {}
@@ -0,0 +1,18 @@
+package app.dtos;
+
+// Resultado por línea de una devolución múltiple
+public record BatchReturnResult(
+    Long loanId,
+    boolean returned,
+    Double totalPenalty, // Monto a pagar (solo si returned = true)
+    String error         // Motivo del rechazo (solo si returned = false)
+) {
+
+    public static BatchReturnResult returned(Long loanId, double totalPenalty) {
+        return new BatchReturnResult(loanId, true, totalPenalty, null);
+    }
+
+    public static BatchReturnResult failed(Long loanId, String error) {
+        return new BatchReturnResult(loanId, false, null, error);
+    }
+}
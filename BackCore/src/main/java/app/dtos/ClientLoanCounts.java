@@ -0,0 +1,16 @@
+package app.dtos;
+
+// Contadores de un cliente recalculados desde la tabla loans (reconstrucción / verificación)
+public record ClientLoanCounts(
+    Long clientId,
+    long activeCount,
+    long lateCount,
+    long unpaidCount,
+    double outstandingPenalty
+) {
+
+    // Constructor usado por la expresión "SELECT new" (los SUM llegan como Long/Double según el motor)
+    public ClientLoanCounts(Long clientId, Number activeCount, Number lateCount, Number unpaidCount, Number outstandingPenalty) {
+        this(clientId, activeCount.longValue(), lateCount.longValue(), unpaidCount.longValue(), outstandingPenalty.doubleValue());
+    }
+}
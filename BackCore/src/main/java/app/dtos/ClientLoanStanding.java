@@ -0,0 +1,14 @@
+package app.dtos;
+
+// Situación de préstamos de un cliente: contadores precalculados + chequeo de herramienta (ver ClientLoanCounterService)
+public record ClientLoanStanding(
+    long lateCount,     // Préstamos LATE
+    long unpaidCount,   // Préstamos RECEIVED con totalPenalty > 0
+    long activeCount,   // Préstamos ACTIVE
+    boolean toolHeld    // El cliente ya tiene la herramienta solicitada en ACTIVE/LATE
+) {
+
+    public long activeOrLateCount() {
+        return activeCount + lateCount;
+    }
+}
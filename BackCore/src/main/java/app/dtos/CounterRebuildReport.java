@@ -0,0 +1,11 @@
+package app.dtos;
+
+import java.util.List;
+
+// Resultado de la verificación/reconstrucción de client_loan_counters
+public record CounterRebuildReport(
+    long clientsScanned,
+    long mismatches,
+    long repaired,
+    List<Long> mismatchedClientIds // Muestra acotada de clientes con diferencias
+) {}
@@ -0,0 +1,20 @@
+package app.dtos;
+
+import app.entities.enums.ToolStatus;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Indicadores del panel de inicio (GET /dashboard/summary). generatedAt indica cuándo se calcularon:
+// la respuesta puede venir de la caché de corta duración de DashboardService.
+public record DashboardSummary(
+    long activeLoans,
+    long lateLoans,
+    long receivedUnpaidLoans,
+    long closedLoans,
+    long restrictedClients,
+    Map<ToolStatus, Long> toolsByStatus,   // Todos los estados, con 0 si no hay herramientas
+    long unitsInRepair,
+    double incomeToday,                    // Pagos registrados hoy (LoanEntity.paidAmount)
+    LocalDateTime generatedAt
+) {}
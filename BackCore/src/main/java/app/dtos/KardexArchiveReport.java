@@ -0,0 +1,11 @@
+package app.dtos;
+
+import java.time.LocalDateTime;
+
+// Resultado de una ejecución del archivo histórico del Kardex
+public record KardexArchiveReport(
+    LocalDateTime cutoff,  // Se archivaron los movimientos anteriores a esta fecha
+    int segmentsWritten,
+    long rowsArchived,
+    long elapsedMillis
+) {}
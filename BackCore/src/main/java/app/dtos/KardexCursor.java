@@ -0,0 +1,42 @@
+package app.dtos;
+
+import app.exceptions.InvalidOperationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// Posición en el historial del Kardex (orden movement_date, id): la página siguiente parte después de este par
+public record KardexCursor(LocalDateTime movementDate, Long id) {
+
+    // Anterior a cualquier movimiento registrado (primera página sin rango de fechas)
+    public static final KardexCursor BEGINNING = new KardexCursor(LocalDateTime.of(1970, 1, 1, 0, 0), 0L);
+
+    private static final String SEPARATOR = "|";
+
+    // Primera página de un rango: incluye los movimientos con fecha igual a 'start'
+    public static KardexCursor startingAt(LocalDateTime start) {
+        return new KardexCursor(start, 0L);
+    }
+
+    public static KardexCursor after(KardexMovementRow row) {
+        return new KardexCursor(row.movementDate(), row.id());
+    }
+
+    // Token opaco para el cliente (Base64 URL-safe de "fecha|id")
+    public String encode() {
+        String raw = movementDate + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KardexCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            return new KardexCursor(LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new InvalidOperationException("Invalid Kardex cursor.");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package app.dtos;
+
+import app.entities.enums.MovementType;
+
+import java.time.LocalDateTime;
+
+// Movimiento del Kardex en forma plana (sin cargar ToolEntity/UserEntity), usado por el historial paginado y el streaming
+public record KardexMovementRow(
+    Long id,
+    LocalDateTime movementDate,
+    MovementType type,
+    Integer quantity,
+    Long toolId,
+    String toolName,
+    Long userId,
+    String username
+) {}
@@ -0,0 +1,9 @@
+package app.dtos;
+
+import java.util.List;
+
+// Página del historial del Kardex; nextCursor es null en la última página
+public record KardexPage(
+    List<KardexMovementRow> items,
+    String nextCursor
+) {}
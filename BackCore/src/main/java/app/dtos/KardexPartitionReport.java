@@ -0,0 +1,11 @@
+package app.dtos;
+
+import java.util.List;
+
+// Resultado del mantenimiento de particiones mensuales del Kardex
+public record KardexPartitionReport(
+    boolean partitioned,     // false: la tabla kardex no está particionada (no se hizo nada)
+    List<String> created,    // Particiones futuras creadas
+    List<String> detached,   // Particiones antiguas (ya vacías por el archivo histórico) separadas de kardex
+    List<String> notArchived // Particiones fuera de la retención que aún tienen movimientos: no se separan
+) {}
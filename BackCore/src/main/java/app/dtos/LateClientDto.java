@@ -0,0 +1,23 @@
+package app.dtos;
+
+import app.entities.enums.ClientStatus;
+
+import java.time.LocalDate;
+
+// Fila del reporte de clientes con préstamos atrasados (RF6.2). lateLoans y oldestDueDate solo vienen
+// cuando se piden las estadísticas (includeStats); si no, son null.
+public record LateClientDto(
+    Long id,
+    String rut,
+    String name,
+    String email,
+    ClientStatus status,
+    Long lateLoans,            // Préstamos LATE del cliente (dentro del rango, si hay)
+    LocalDate oldestDueDate    // Vencimiento más antiguo entre esos préstamos
+) {
+
+    // Usado por la consulta sin estadísticas (EXISTS)
+    public LateClientDto(Long id, String rut, String name, String email, ClientStatus status) {
+        this(id, rut, name, email, status, null, null);
+    }
+}
@@ -0,0 +1,9 @@
+package app.dtos;
+
+import java.util.List;
+
+// Página del reporte de clientes atrasados (orden por ID); nextAfterId es null en la última página
+public record LateClientPage(
+    List<LateClientDto> items,
+    Long nextAfterId
+) {}
@@ -0,0 +1,20 @@
+package app.dtos;
+
+import app.entities.enums.LoanStatus;
+
+import java.time.LocalDate;
+
+// Préstamo en forma plana (sin cargar ClientEntity/ToolEntity), usado por RF6.1 (caché de reportes y exportación CSV)
+public record LoanReportRow(
+    Long id,
+    Long clientId,
+    String clientRut,
+    String clientName,
+    Long toolId,
+    String toolName,
+    LocalDate startDate,
+    LocalDate dueDate,
+    LocalDate returnDate,
+    LoanStatus status,
+    double totalPenalty
+) {}
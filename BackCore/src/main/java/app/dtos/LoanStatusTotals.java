@@ -0,0 +1,15 @@
+package app.dtos;
+
+// Préstamos por estado en toda la tabla loans (panel de inicio)
+public record LoanStatusTotals(
+    long active,
+    long late,
+    long receivedUnpaid,    // RECEIVED: devueltos y aún sin pagar (el pago los cierra), incluso con total 0
+    long closed
+) {
+
+    // Constructor usado por la expresión "SELECT new" (los SUM llegan como Long/Integer según el motor)
+    public LoanStatusTotals(Number active, Number late, Number receivedUnpaid, Number closed) {
+        this(active.longValue(), late.longValue(), receivedUnpaid.longValue(), closed.longValue());
+    }
+}
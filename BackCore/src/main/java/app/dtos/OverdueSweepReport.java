@@ -0,0 +1,9 @@
+package app.dtos;
+
+// Resultado del barrido de préstamos vencidos (ACTIVE -> LATE)
+public record OverdueSweepReport(
+    long chunks,            // Bloques de IDs procesados (una transacción por bloque)
+    long loansMarkedLate,
+    long clientsRestricted,
+    long elapsedMillis
+) {}
@@ -0,0 +1,18 @@
+package app.dtos;
+
+// Desglose del cobro de un préstamo (pesos enteros), calculado por RentalPricingEngine
+public record RentalCharge(
+    long rentalDays,      // Días de arriendo pactados (mínimo 1)
+    long lateDays,        // Días de atraso (0 si se devolvió a tiempo)
+    long rentalCost,
+    long lateFee,
+    long damagePenalty    // Tarifa de reparación o valor de reposición
+) {
+    public long total() {
+        return rentalCost + lateFee + damagePenalty;
+    }
+
+    public boolean onTime() {
+        return lateDays == 0;
+    }
+}
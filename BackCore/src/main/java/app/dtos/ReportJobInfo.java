@@ -0,0 +1,20 @@
+package app.dtos;
+
+import app.entities.enums.ReportJobStatus;
+import app.entities.enums.ReportJobType;
+
+import java.time.LocalDateTime;
+
+// Estado de un trabajo de reporte (GET /reports/jobs/{id})
+public record ReportJobInfo(
+    String id,
+    ReportJobType type,
+    ReportJobStatus status,
+    int progress,           // Porcentaje 0-100 (100 solo al completar)
+    long rowsWritten,
+    Long totalRows,
+    String errorMessage,
+    LocalDateTime createdAt,
+    LocalDateTime startedAt,
+    LocalDateTime finishedAt
+) {}
@@ -0,0 +1,17 @@
+package app.dtos;
+
+import app.entities.enums.ReportJobType;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDate;
+
+// Parámetros de un trabajo de reporte; cada tipo usa los mismos que su endpoint síncrono en /reports
+public record ReportJobRequest(
+    @NotNull ReportJobType type,
+    String status,                                          // LOANS_BY_STATUS
+    @JsonFormat(pattern = "yyyy-MM-dd") LocalDate from,
+    @JsonFormat(pattern = "yyyy-MM-dd") LocalDate to,
+    Integer limit,                                          // TOP_TOOLS (por defecto 10)
+    boolean includeStats                                    // CLIENTS_WITH_LATE_LOANS
+) {}
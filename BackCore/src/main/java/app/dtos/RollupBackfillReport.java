@@ -0,0 +1,12 @@
+package app.dtos;
+
+import java.time.LocalDate;
+
+// Resultado de la reconstrucción de kardex_daily_rollup para un rango de días
+public record RollupBackfillReport(
+    LocalDate from,
+    LocalDate to,
+    int chunks,          // Bloques de días procesados en paralelo (una transacción por bloque)
+    long rowsWritten,    // Filas (día, herramienta, tipo) insertadas
+    long elapsedMillis
+) {}
@@ -0,0 +1,13 @@
+package app.dtos;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Stock de todas las herramientas en 'at', reconstruido desde el punto de control 'snapshotDate'
+// (null: no había punto de control anterior y se aplicó el Kardex completo)
+public record StockAtTimeReport(
+    LocalDateTime at,
+    LocalDate snapshotDate,
+    List<ToolStockAtTime> tools
+) {}
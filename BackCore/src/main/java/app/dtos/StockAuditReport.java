@@ -0,0 +1,14 @@
+package app.dtos;
+
+import java.util.List;
+
+// Resultado de la auditoría de stock de herramientas contra el Kardex
+public record StockAuditReport(
+    long toolsScanned,
+    long untrackedTools,   // Sin movimientos en el Kardex: no se pueden verificar ni reparar
+    long drifted,
+    long repaired,
+    int chunks,            // Bloques de IDs procesados en paralelo (una transacción por bloque)
+    long elapsedMillis,
+    List<StockDrift> drifts // Muestra acotada de herramientas con diferencias
+) {}
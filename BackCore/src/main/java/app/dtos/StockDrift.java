@@ -0,0 +1,11 @@
+package app.dtos;
+
+// Herramienta cuyo stock/inRepair guardado no coincide con lo que indica el Kardex
+public record StockDrift(
+    Long toolId,
+    String toolName,
+    int stock,
+    int expectedStock,
+    int inRepair,
+    int expectedInRepair
+) {}
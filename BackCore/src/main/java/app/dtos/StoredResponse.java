@@ -0,0 +1,12 @@
+package app.dtos;
+
+import java.time.LocalDateTime;
+
+// Respuesta guardada para una Idempotency-Key (se devuelve tal cual en los reintentos)
+public record StoredResponse(
+    String fingerprint,
+    int statusCode,
+    String contentType,
+    String body,
+    LocalDateTime createdAt
+) {}
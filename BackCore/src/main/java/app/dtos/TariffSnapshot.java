@@ -0,0 +1,14 @@
+package app.dtos;
+
+import app.entities.TariffEntity;
+
+// Copia inmutable de las tarifas vigentes en pesos enteros (cache en memoria de TariffService)
+public record TariffSnapshot(
+    long dailyRentFee,   // Tarifa diaria de arriendo
+    long dailyLateFee,   // Tarifa diaria de multa
+    long repairFee       // Cargo por reparación leve
+) {
+    public static TariffSnapshot of(TariffEntity tariff) {
+        return new TariffSnapshot(tariff.getDailyRentFee(), tariff.getDailyLateFee(), tariff.getRepairFee());
+    }
+}
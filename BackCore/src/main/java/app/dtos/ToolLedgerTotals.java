@@ -0,0 +1,15 @@
+package app.dtos;
+
+import app.entities.enums.ToolStatus;
+
+// Valores guardados en tools junto al total del Kardex de la herramienta (auditoría de stock)
+public record ToolLedgerTotals(
+    Long toolId,
+    String toolName,
+    ToolStatus status,
+    int stock,
+    int inRepair,
+    long ledgerStock,     // INCOME + RETURN - LOAN - MANUAL_DECREASE
+    long ledgerInRepair,  // Suma de REPAIR
+    long movements        // 0 = herramienta sin movimientos en el Kardex
+) {}
@@ -0,0 +1,15 @@
+package app.dtos;
+
+import app.entities.enums.ToolStatus;
+
+// Herramientas (fichas del catálogo) de un estado y sus unidades, agregadas en la BD (panel de inicio)
+public record ToolStatusTotals(
+    ToolStatus status,
+    long tools,
+    long inRepair     // Unidades en reparación (ToolEntity.inRepair)
+) {
+
+    public ToolStatusTotals(ToolStatus status, Number tools, Number inRepair) {
+        this(status, tools.longValue(), inRepair.longValue());
+    }
+}
@@ -0,0 +1,9 @@
+package app.dtos;
+
+// Stock de una herramienta en una fecha/hora pasada
+public record ToolStockAtTime(
+    Long toolId,
+    String toolName,
+    long stock,
+    long inRepair
+) {}
@@ -0,0 +1,24 @@
+package app.dtos;
+
+import app.entities.enums.ToolStatus;
+
+// Fila intermedia del cálculo de stock en el tiempo: punto de control + suma de movimientos posteriores por herramienta
+public record ToolStockReplayRow(
+    Long toolId,
+    String toolName,
+    ToolStatus status,
+    Integer snapshotStock,       // null si la herramienta no tiene punto de control (se parte de 0)
+    Integer snapshotInRepair,
+    long stockDelta,
+    long inRepairDelta,
+    long decommissions,          // Movimientos DECOMMISSION en la ventana
+    long laterMovements          // Movimientos posteriores a la fecha consultada
+) {
+
+    // Constructor usado por la expresión "SELECT new" (SUM/COUNT llegan como Long/Integer según el motor)
+    public ToolStockReplayRow(Long toolId, String toolName, ToolStatus status, Integer snapshotStock, Integer snapshotInRepair,
+                              Number stockDelta, Number inRepairDelta, Number decommissions, Number laterMovements) {
+        this(toolId, toolName, status, snapshotStock, snapshotInRepair,
+                stockDelta.longValue(), inRepairDelta.longValue(), decommissions.longValue(), laterMovements.longValue());
+    }
+}
@@ -0,0 +1,9 @@
+package app.dtos;
+
+// Fila del ranking de herramientas más prestadas (RF6.3)
+public record TopToolDto(
+    Long toolId,
+    String name,
+    String category,
+    Long loans        // Préstamos iniciados en el rango
+) {}
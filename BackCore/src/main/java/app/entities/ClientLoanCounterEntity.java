@@ -0,0 +1,31 @@
+package app.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Contadores de préstamos por cliente, mantenidos incrementalmente por LoanService (misma transacción)
+@Entity
+@Table(name = "client_loan_counters")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ClientLoanCounterEntity {
+
+    @Id
+    @Column(name = "client_id")
+    private Long clientId;
+
+    @Column(name = "active_count")
+    private long activeCount;          // Préstamos ACTIVE
+
+    @Column(name = "late_count")
+    private long lateCount;            // Préstamos LATE
+
+    @Column(name = "unpaid_count")
+    private long unpaidCount;          // Préstamos RECEIVED con totalPenalty > 0
+
+    @Column(name = "outstanding_penalty")
+    private double outstandingPenalty; // Suma de totalPenalty de los préstamos RECEIVED sin pagar
+}
@@ -0,0 +1,39 @@
+package app.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Clave Idempotency-Key de una petición de préstamos y su respuesta guardada (compartida entre instancias)
+@Entity
+@Table(name = "idempotency_keys")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IdempotencyKeyEntity {
+
+    @Id
+    @Column(name = "idempotency_key", length = 320)
+    private String key;               // Usuario + ":" + valor del header
+
+    @Column(name = "fingerprint", length = 300, nullable = false)
+    private String fingerprint;       // Método + URI + SHA-256 del cuerpo de la petición original
+
+    @Column(name = "status_code")
+    private Integer statusCode;       // null mientras la petición original se está procesando
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "reserved_at", nullable = false)
+    private LocalDateTime reservedAt;  // Inicio del lease de procesamiento; un reintento puede tomarlo al vencer
+}
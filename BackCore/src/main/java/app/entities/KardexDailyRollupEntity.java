@@ -0,0 +1,40 @@
+package app.entities;
+
+import app.entities.enums.MovementType;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+// Totales diarios del Kardex por herramienta y tipo de movimiento (KardexRollupService). Se actualiza de forma
+// incremental al confirmar cada transacción con movimientos y se puede reconstruir desde kardex (backfill).
+@Entity
+@Table(name = "kardex_daily_rollup", indexes = {
+    @Index(name = "idx_kardex_rollup_tool_day", columnList = "tool_id, movement_day")
+})
+@IdClass(KardexDailyRollupId.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class KardexDailyRollupEntity {
+
+    @Id
+    @Column(name = "movement_day")
+    private LocalDate movementDay;
+
+    @Id
+    @Column(name = "tool_id")
+    private Long toolId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private MovementType type;
+
+    @Column(name = "movement_count", nullable = false)
+    private long movementCount;      // Cantidad de movimientos
+
+    @Column(name = "total_quantity", nullable = false)
+    private long totalQuantity;      // Suma de unidades de esos movimientos
+}
@@ -0,0 +1,19 @@
+package app.entities;
+
+import app.entities.enums.MovementType;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Clave de KardexDailyRollupEntity: día + herramienta + tipo de movimiento
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class KardexDailyRollupId implements Serializable {
+    private LocalDate movementDay;
+    private Long toolId;
+    private MovementType type;
+}
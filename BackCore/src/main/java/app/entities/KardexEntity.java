@@ -8,7 +8,10 @@ import java.time.LocalDateTime;
 import app.entities.enums.MovementType;
 
 @Entity
-@Table(name = "kardex")
+@Table(name = "kardex", indexes = {
+    @Index(name = "idx_kardex_date_id", columnList = "movement_date, id"),            // Historial por fechas (keyset)
+    @Index(name = "idx_kardex_tool_date_id", columnList = "tool_id, movement_date, id") // Historial por herramienta (keyset)
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -17,22 +20,23 @@ import app.entities.enums.MovementType;
 public class KardexEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "kardex_seq")
+    @SequenceGenerator(name = "kardex_seq", sequenceName = "kardex_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY) // Las lecturas usan KardexMovementRow (JOIN), no la entidad
     @JoinColumn(name = "tool_id", nullable = false)
     private ToolEntity tool;
 
     @Enumerated(EnumType.STRING)
     private MovementType type;
 
-    @Column(name = "movement_date")
+    @Column(name = "movement_date", nullable = false) // Clave de partición (db/partition_kardex_by_month.sql)
     private LocalDateTime movementDate;
 
     private Integer quantity;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private UserEntity user;
 }
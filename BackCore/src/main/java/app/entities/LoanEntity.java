@@ -8,7 +8,11 @@ import java.time.LocalDate;
 import app.entities.enums.LoanStatus;
 
 @Entity
-@Table(name = "loans")
+@Table(name = "loans", indexes = {
+    @Index(name = "idx_loans_client_tool_status", columnList = "client_id, tool_id, status"),
+    @Index(name = "idx_loans_status_due_date", columnList = "status, due_date"), // Barrido de atrasos
+    @Index(name = "idx_loans_paid_date", columnList = "paid_date") // Ingresos del día (panel de inicio)
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -17,7 +21,8 @@ import app.entities.enums.LoanStatus;
 public class LoanEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loans_seq")
+    @SequenceGenerator(name = "loans_seq", sequenceName = "loans_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -37,4 +42,11 @@ public class LoanEntity {
 
     @Column(name = "total_penalty")
     private double totalPenalty;
+
+    // Pago registrado al cerrar (totalPenalty queda en 0); null mientras no se paga
+    @Column(name = "paid_amount")
+    private Double paidAmount;
+
+    @Column(name = "paid_date")
+    private LocalDate paidDate;
 }
@@ -0,0 +1,72 @@
+package app.entities;
+
+import app.entities.enums.ReportJobStatus;
+import app.entities.enums.ReportJobType;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Trabajo asíncrono de reporte (ReportJobService): parámetros, estado y avance. El resultado queda en disco local.
+@Entity
+@Table(name = "report_jobs", indexes = {
+    @Index(name = "idx_report_jobs_status", columnList = "status")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReportJobEntity {
+
+    @Id
+    @Column(length = 36)
+    private String id;                // UUID
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ReportJobType type;
+
+    // --- Parámetros del reporte (según el tipo) ---
+    @Column(name = "loan_status")
+    private String loanStatus;
+
+    @Column(name = "from_date")
+    private LocalDate fromDate;
+
+    @Column(name = "to_date")
+    private LocalDate toDate;
+
+    @Column(name = "row_limit")
+    private Integer rowLimit;
+
+    @Column(name = "include_stats", nullable = false)
+    private boolean includeStats;
+
+    // --- Estado ---
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ReportJobStatus status;
+
+    @Column(name = "total_rows")
+    private Long totalRows;           // null hasta que el trabajo cuenta las filas
+
+    @Column(name = "rows_written", nullable = false)
+    private long rowsWritten;
+
+    @Column(name = "error_message", length = 500)
+    private String errorMessage;
+
+    @Column(name = "requested_by")
+    private String requestedBy;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
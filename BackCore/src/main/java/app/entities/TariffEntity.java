@@ -13,7 +13,8 @@ import lombok.*;
 public class TariffEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tariffs_seq")
+    @SequenceGenerator(name = "tariffs_seq", sequenceName = "tariffs_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "daily_rent_fee")
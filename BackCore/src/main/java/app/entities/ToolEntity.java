@@ -17,7 +17,8 @@ import lombok.*;
 public class ToolEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tools_seq")
+    @SequenceGenerator(name = "tools_seq", sequenceName = "tools_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Name cannot be blank") 
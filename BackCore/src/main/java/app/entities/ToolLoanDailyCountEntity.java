@@ -0,0 +1,30 @@
+package app.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+// Préstamos por herramienta y día de inicio (ranking RF6.3). Se incrementa en la misma transacción que crea
+// los préstamos (ToolLoanCountService) y se puede reconstruir desde loans.
+@Entity
+@Table(name = "tool_loan_daily_counts")
+@IdClass(ToolLoanDailyCountId.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ToolLoanDailyCountEntity {
+
+    @Id
+    @Column(name = "loan_day")
+    private LocalDate loanDay;       // startDate de los préstamos
+
+    @Id
+    @Column(name = "tool_id")
+    private Long toolId;
+
+    @Column(name = "loan_count", nullable = false)
+    private long loanCount;
+}
@@ -0,0 +1,17 @@
+package app.entities;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Clave de ToolLoanDailyCountEntity: día de inicio + herramienta
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class ToolLoanDailyCountId implements Serializable {
+    private LocalDate loanDay;
+    private Long toolId;
+}
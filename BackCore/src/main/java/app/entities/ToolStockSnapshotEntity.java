@@ -0,0 +1,38 @@
+package app.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Punto de control diario de stock por herramienta (StockSnapshotService). El stock en una fecha cualquiera se obtiene
+// partiendo del último punto de control anterior y aplicando solo los movimientos del Kardex posteriores a takenAt.
+@Entity
+@Table(name = "tool_stock_snapshots", indexes = {
+    @Index(name = "idx_tool_stock_snapshots_taken_at", columnList = "taken_at")
+})
+@IdClass(ToolStockSnapshotId.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ToolStockSnapshotEntity {
+
+    @Id
+    @Column(name = "snapshot_date")
+    private LocalDate snapshotDate;
+
+    @Id
+    @Column(name = "tool_id")
+    private Long toolId;
+
+    @Column(name = "taken_at", nullable = false)
+    private LocalDateTime takenAt;   // Mismo valor para todas las herramientas del día
+
+    private Integer stock;
+
+    @Column(name = "in_repair")
+    private Integer inRepair;
+}
@@ -0,0 +1,17 @@
+package app.entities;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Clave de ToolStockSnapshotEntity: una fila por herramienta y día
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class ToolStockSnapshotId implements Serializable {
+    private LocalDate snapshotDate;
+    private Long toolId;
+}
@@ -0,0 +1,8 @@
+package app.entities.enums;
+
+public enum ReportJobStatus {
+    QUEUED,     // En cola del ejecutor
+    RUNNING,    // Escribiendo el resultado
+    COMPLETED,  // Resultado disponible para descargar
+    FAILED      // Error, cola llena o interrumpido por un reinicio
+}
@@ -0,0 +1,8 @@
+package app.entities.enums;
+
+public enum ReportJobType {
+    LOANS_BY_STATUS,            // RF6.1
+    CLIENTS_WITH_LATE_LOANS,    // RF6.2
+    TOP_TOOLS,                  // RF6.3
+    RESTRICTED_CLIENTS
+}
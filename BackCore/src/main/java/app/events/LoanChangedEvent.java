@@ -0,0 +1,13 @@
+package app.events;
+
+// Evento de dominio: préstamos que cambiaron de estado. Se publica dentro de la transacción que hizo el cambio;
+// los listeners @TransactionalEventListener lo reciben recién al confirmarse.
+public record LoanChangedEvent(Change change, int loans) {
+
+    public enum Change {
+        CREATED,     // Nuevo préstamo ACTIVE (individual o múltiple)
+        RETURNED,    // ACTIVE/LATE -> RECEIVED
+        PAID,        // RECEIVED -> CLOSED
+        MARKED_LATE  // ACTIVE -> LATE (barrido de atrasos)
+    }
+}
@@ -0,0 +1,12 @@
+package app.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Idempotency-Key en uso por una petición que aún no termina, o reutilizada para otra operación (409)
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class IdempotencyConflictException extends RuntimeException {
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
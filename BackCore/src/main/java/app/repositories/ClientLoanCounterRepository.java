@@ -0,0 +1,44 @@
+package app.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import app.entities.ClientLoanCounterEntity;
+
+import java.time.LocalDate;
+
+@Repository
+public interface ClientLoanCounterRepository extends JpaRepository<ClientLoanCounterEntity, Long> {
+
+    // Préstamos ACTIVE vencidos de la fila actual dentro de un rango de IDs (subconsulta del barrido de atrasos)
+    String OVERDUE_IN_RANGE_COUNT = "SELECT COUNT(*) FROM loans l WHERE l.client_id = client_loan_counters.client_id " +
+           "AND l.status = 'ACTIVE' AND l.due_date < :today AND l.id BETWEEN :fromId AND :toId";
+
+    // Incremento atómico en BD (sin leer-modificar-escribir). Devuelve 0 si el cliente aún no tiene fila.
+    // SQL nativo: en JPQL Hibernate envuelve los parámetros aritméticos en CAST y el de tipo float no es portable (H2).
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE client_loan_counters SET " +
+           "active_count = active_count + :activeDelta, " +
+           "late_count = late_count + :lateDelta, " +
+           "unpaid_count = unpaid_count + :unpaidDelta, " +
+           "outstanding_penalty = outstanding_penalty + :penaltyDelta " +
+           "WHERE client_id = :clientId", nativeQuery = true)
+    int applyDelta(@Param("clientId") Long clientId,
+                   @Param("activeDelta") long activeDelta,
+                   @Param("lateDelta") long lateDelta,
+                   @Param("unpaidDelta") long unpaidDelta,
+                   @Param("penaltyDelta") double penaltyDelta);
+
+    // Barrido de atrasos: por cada cliente con préstamos ACTIVE vencidos en el rango de IDs pasa esa cantidad de
+    // active_count a late_count. Debe ejecutarse antes de markOverdueAsLate (mismo criterio que el UPDATE de loans).
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE client_loan_counters SET " +
+           "active_count = active_count - (" + OVERDUE_IN_RANGE_COUNT + "), " +
+           "late_count = late_count + (" + OVERDUE_IN_RANGE_COUNT + ") " +
+           "WHERE client_id IN (SELECT l.client_id FROM loans l WHERE l.status = 'ACTIVE' " +
+           "AND l.due_date < :today AND l.id BETWEEN :fromId AND :toId)", nativeQuery = true)
+    int moveOverdueToLate(@Param("fromId") Long fromId, @Param("toId") Long toId, @Param("today") LocalDate today);
+}
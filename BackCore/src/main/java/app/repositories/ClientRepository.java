@@ -1,15 +1,64 @@
 package app.repositories;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import app.dtos.LateClientDto;
 import app.entities.ClientEntity;
 import app.entities.enums.ClientStatus;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
-public interface ClientRepository extends JpaRepository<ClientEntity, Long> {
+public interface ClientRepository extends JpaRepository<ClientEntity, Long>, ClientRepositoryCustom {
     List<ClientEntity> findByStatus(ClientStatus status);
+    long countByStatus(ClientStatus status);
     boolean existsByRut(String rut);
+
+    // Bloqueo de la fila del cliente hasta confirmar (ordena a las peticiones que crean sus contadores a la vez)
+    @Query(value = "SELECT c.id FROM clients c WHERE c.id = :id FOR UPDATE", nativeQuery = true)
+    List<Long> lockById(@Param("id") Long id);
+
+    // Recorrido por bloques de IDs (keyset), usado por procesos batch
+    @Query("SELECT c.id FROM ClientEntity c WHERE c.id > :afterId ORDER BY c.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // RF6.2: clientes con al menos un préstamo LATE (filtro opcional por fecha de inicio), por páginas de IDs.
+    // Solo lee clients; los préstamos se revisan con EXISTS (sin cargar ni deduplicar entidades en memoria).
+    @Query("SELECT new app.dtos.LateClientDto(c.id, c.rut, c.name, c.email, c.status) FROM ClientEntity c " +
+           "WHERE c.id > :afterId AND EXISTS (SELECT 1 FROM LoanEntity l WHERE l.client.id = c.id " +
+           "AND l.status = app.entities.enums.LoanStatus.LATE " +
+           "AND (:from IS NULL OR l.startDate >= :from) AND (:to IS NULL OR l.startDate <= :to)) " +
+           "ORDER BY c.id")
+    List<LateClientDto> findLateClientsAfter(@Param("afterId") Long afterId, @Param("from") LocalDate from,
+                                             @Param("to") LocalDate to, Limit limit);
+
+    @Query("SELECT COUNT(c) FROM ClientEntity c WHERE EXISTS (SELECT 1 FROM LoanEntity l WHERE l.client.id = c.id " +
+           "AND l.status = app.entities.enums.LoanStatus.LATE " +
+           "AND (:from IS NULL OR l.startDate >= :from) AND (:to IS NULL OR l.startDate <= :to))")
+    long countLateClients(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Igual que findLateClientsAfter, más la cantidad de préstamos LATE y el vencimiento más antiguo por cliente
+    @Query("SELECT new app.dtos.LateClientDto(c.id, c.rut, c.name, c.email, c.status, COUNT(l), MIN(l.dueDate)) " +
+           "FROM LoanEntity l JOIN l.client c " +
+           "WHERE c.id > :afterId AND l.status = app.entities.enums.LoanStatus.LATE " +
+           "AND (:from IS NULL OR l.startDate >= :from) AND (:to IS NULL OR l.startDate <= :to) " +
+           "GROUP BY c.id, c.rut, c.name, c.email, c.status " +
+           "ORDER BY c.id")
+    List<LateClientDto> findLateClientStatsAfter(@Param("afterId") Long afterId, @Param("from") LocalDate from,
+                                                 @Param("to") LocalDate to, Limit limit);
+
+    // Barrido de atrasos: restringe (en un solo UPDATE) a los clientes con préstamos ACTIVE vencidos en el rango de IDs.
+    // Debe ejecutarse antes de markOverdueAsLate, que cambia el estado que usa la subconsulta.
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ClientEntity c SET c.status = app.entities.enums.ClientStatus.RESTRICTED " +
+           "WHERE c.status <> app.entities.enums.ClientStatus.RESTRICTED AND c.id IN (" +
+           "SELECT l.client.id FROM LoanEntity l WHERE l.status = app.entities.enums.LoanStatus.ACTIVE " +
+           "AND l.dueDate < :today AND l.id BETWEEN :fromId AND :toId)")
+    int restrictClientsWithOverdueLoans(@Param("fromId") Long fromId, @Param("toId") Long toId, @Param("today") LocalDate today);
 }
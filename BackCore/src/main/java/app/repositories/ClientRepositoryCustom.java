@@ -0,0 +1,13 @@
+package app.repositories;
+
+import app.dtos.LateClientDto;
+
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+public interface ClientRepositoryCustom {
+
+    // RF6.2 completo (con estadísticas) leído con un cursor JDBC de solo avance, ordenado por ID.
+    // Fechas nulas = sin filtro por fecha de inicio. Requiere una transacción activa.
+    void streamLateClients(LocalDate from, LocalDate to, int fetchSize, Consumer<LateClientDto> consumer);
+}
@@ -0,0 +1,48 @@
+package app.repositories;
+
+import app.dtos.LateClientDto;
+import app.entities.enums.ClientStatus;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class ClientRepositoryCustomImpl implements ClientRepositoryCustom {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ClientRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void streamLateClients(LocalDate from, LocalDate to, int fetchSize, Consumer<LateClientDto> consumer) {
+        boolean byDate = from != null && to != null;
+        String sql = "SELECT c.id, c.rut, c.name, c.email, c.status, COUNT(*) AS late_loans, MIN(l.due_date) AS oldest_due_date " +
+                "FROM clients c JOIN loans l ON l.client_id = c.id WHERE l.status = 'LATE' " +
+                (byDate ? "AND l.start_date BETWEEN ? AND ? " : "") +
+                "GROUP BY c.id, c.rut, c.name, c.email, c.status ORDER BY c.id";
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            if (byDate) {
+                ps.setDate(1, Date.valueOf(from));
+                ps.setDate(2, Date.valueOf(to));
+            }
+            return ps;
+        }, rs -> {
+            consumer.accept(new LateClientDto(
+                    rs.getLong("id"),
+                    rs.getString("rut"),
+                    rs.getString("name"),
+                    rs.getString("email"),
+                    ClientStatus.valueOf(rs.getString("status")),
+                    rs.getLong("late_loans"),
+                    rs.getDate("oldest_due_date").toLocalDate()));
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package app.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import app.entities.IdempotencyKeyEntity;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKeyEntity, String> {
+
+    // Reserva la clave con un INSERT: si otra petición (o instancia) ya la tomó, falla por PK duplicada.
+    // SQL nativo porque save() sobre un ID existente haría un UPDATE en vez de fallar.
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (idempotency_key, fingerprint, created_at, reserved_at) " +
+           "VALUES (:key, :fingerprint, :now, :now)", nativeQuery = true)
+    int reserve(@Param("key") String key, @Param("fingerprint") String fingerprint, @Param("now") LocalDateTime now);
+
+    // Toma una reserva cuyo lease venció (la petición original murió sin completar ni liberar la clave).
+    // UPDATE condicional: si dos reintentos llegan a la vez, solo uno encuentra el lease aún vencido (devuelve 1).
+    @Modifying
+    @Query("UPDATE IdempotencyKeyEntity k SET k.reservedAt = :now " +
+           "WHERE k.key = :key AND k.statusCode IS NULL AND k.reservedAt <= :leaseCutoff")
+    int takeOverExpiredReservation(@Param("key") String key, @Param("now") LocalDateTime now,
+                                   @Param("leaseCutoff") LocalDateTime leaseCutoff);
+
+    @Modifying
+    @Query("UPDATE IdempotencyKeyEntity k SET k.statusCode = :statusCode, k.contentType = :contentType, " +
+           "k.responseBody = :responseBody WHERE k.key = :key")
+    int complete(@Param("key") String key, @Param("statusCode") int statusCode,
+                 @Param("contentType") String contentType, @Param("responseBody") String responseBody);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyKeyEntity k WHERE k.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
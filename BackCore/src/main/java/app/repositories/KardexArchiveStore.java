@@ -0,0 +1,200 @@
+package app.repositories;
+
+import app.dtos.KardexCursor;
+import app.dtos.KardexMovementRow;
+import app.entities.enums.MovementType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+// Archivo histórico del Kardex en disco local: segmentos .kseg de solo anexado (ver KardexSegmentCodec)
+// más un índice segments.idx con una línea por segmento (rango de fechas, último ID y rango de herramientas).
+// El índice se carga al iniciar y permite descartar segmentos sin abrirlos. Un segmento que no está en el índice
+// no existe para las lecturas (ej. quedó escrito pero el proceso se cortó antes de registrarlo).
+@Repository
+@Slf4j
+public class KardexArchiveStore {
+
+    private static final String INDEX_FILE = "segments.idx";
+    private static final String SEPARATOR = ";";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final Path directory;
+    private final List<SegmentInfo> segments = new CopyOnWriteArrayList<>();
+    private Map<Long, ArchivedTotals> ledgerTotals; // Se calcula al primer uso y se actualiza con cada segmento nuevo
+
+    public KardexArchiveStore(@Value("${kardex.archive.directory:kardex-archive}") String directory) {
+        this.directory = Path.of(directory);
+        loadIndex();
+    }
+
+    // Entrada del índice: rango de fechas y de herramientas del segmento; (maxDate, lastId) es su última fila
+    public record SegmentInfo(String file, int rows, LocalDateTime minDate, LocalDateTime maxDate, long lastId,
+                              long minToolId, long maxToolId) {}
+
+    // Totales de los movimientos archivados de una herramienta (mismas reglas que la auditoría de stock)
+    public record ArchivedTotals(long stock, long inRepair, long movements) {}
+
+    // Totales archivados junto con la posición hasta la que llegan (ver archivedUpTo)
+    public record ArchivedLedger(KardexCursor upTo, Map<Long, ArchivedTotals> totals) {}
+
+    // ########################################################################################################################################################
+    // ####################################################### ESCRITURA #######################################################################################
+    // ########################################################################################################################################################
+
+    // 'rows' ordenadas por (movement_date, id) y posteriores a todo lo ya archivado
+    public synchronized SegmentInfo append(List<KardexMovementRow> rows) {
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Cannot archive an empty segment.");
+        }
+        KardexMovementRow first = rows.get(0);
+        KardexMovementRow last = rows.get(rows.size() - 1);
+        String file = String.format("kardex-%s-%06d.kseg", first.movementDate().format(MONTH), segments.size() + 1);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create Kardex archive directory " + directory, e);
+        }
+        KardexSegmentCodec.write(directory.resolve(file), rows);
+
+        long minToolId = rows.stream().mapToLong(KardexMovementRow::toolId).min().orElseThrow();
+        long maxToolId = rows.stream().mapToLong(KardexMovementRow::toolId).max().orElseThrow();
+        // Las fechas del índice pasan por la misma precisión (microsegundos) que las del segmento
+        SegmentInfo info = new SegmentInfo(file, rows.size(),
+                KardexSegmentCodec.fromMicros(KardexSegmentCodec.toMicros(first.movementDate())),
+                KardexSegmentCodec.fromMicros(KardexSegmentCodec.toMicros(last.movementDate())),
+                last.id(), minToolId, maxToolId);
+        appendToIndex(info);
+        segments.add(info);
+        if (ledgerTotals != null) {
+            rows.forEach(row -> addToTotals(ledgerTotals, row.toolId(), row.type(), row.quantity() == null ? 0 : row.quantity()));
+        }
+        return info;
+    }
+
+    private void appendToIndex(SegmentInfo info) {
+        String line = String.join(SEPARATOR, info.file(), String.valueOf(info.rows()),
+                String.valueOf(KardexSegmentCodec.toMicros(info.minDate())), String.valueOf(KardexSegmentCodec.toMicros(info.maxDate())),
+                String.valueOf(info.lastId()), String.valueOf(info.minToolId()), String.valueOf(info.maxToolId())) + "\n";
+        try (FileChannel channel = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not update Kardex archive index", e);
+        }
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### LECTURA #########################################################################################
+    // ########################################################################################################################################################
+
+    // Posición de la última fila archivada: todo movimiento en o antes de ella está en los segmentos
+    public Optional<KardexCursor> archivedUpTo() {
+        if (segments.isEmpty()) {
+            return Optional.empty();
+        }
+        SegmentInfo last = segments.get(segments.size() - 1);
+        return Optional.of(new KardexCursor(last.maxDate(), last.lastId()));
+    }
+
+    public List<SegmentInfo> getSegments() {
+        return List.copyOf(segments);
+    }
+
+    public List<KardexMovementRow> findByToolId(Long toolId) {
+        List<KardexMovementRow> rows = new ArrayList<>();
+        for (SegmentInfo segment : segments) {
+            if (toolId >= segment.minToolId() && toolId <= segment.maxToolId()) {
+                rows.addAll(KardexSegmentCodec.readByToolId(directory.resolve(segment.file()), toolId));
+            }
+        }
+        return rows;
+    }
+
+    public List<KardexMovementRow> findByMovementDateBetween(LocalDateTime start, LocalDateTime end) {
+        List<KardexMovementRow> rows = new ArrayList<>();
+        for (SegmentInfo segment : segments) {
+            if (!segment.maxDate().isBefore(start) && !segment.minDate().isAfter(end)) {
+                rows.addAll(KardexSegmentCodec.readByDateRange(directory.resolve(segment.file()), start, end));
+            }
+        }
+        return rows;
+    }
+
+    // Totales por herramienta de todo lo archivado (solo se leen las columnas TOOL_ID, TYPE y QUANTITY)
+    public synchronized Map<Long, ArchivedTotals> getLedgerTotals() {
+        if (ledgerTotals == null) {
+            Map<Long, ArchivedTotals> totals = new HashMap<>();
+            for (SegmentInfo segment : segments) {
+                KardexSegmentCodec.forEachLedgerEntry(directory.resolve(segment.file()),
+                        (toolId, type, quantity) -> addToTotals(totals, toolId, type, quantity));
+            }
+            ledgerTotals = totals;
+        }
+        return Map.copyOf(ledgerTotals);
+    }
+
+    // Totales y posición leídos juntos: un segmento que se registra entretanto no queda contado a medias
+    public synchronized ArchivedLedger getArchivedLedger() {
+        return new ArchivedLedger(archivedUpTo().orElse(KardexCursor.BEGINNING), getLedgerTotals());
+    }
+
+    private static void addToTotals(Map<Long, ArchivedTotals> totals, long toolId, MovementType type, int quantity) {
+        long stock = switch (type) {
+            case INCOME, RETURN -> quantity;
+            case LOAN, MANUAL_DECREASE -> -quantity;
+            default -> 0;
+        };
+        long inRepair = type == MovementType.REPAIR ? quantity : 0;
+        totals.merge(toolId, new ArchivedTotals(stock, inRepair, 1),
+                (a, b) -> new ArchivedTotals(a.stock() + b.stock(), a.inRepair() + b.inRepair(), a.movements() + b.movements()));
+    }
+
+    private void loadIndex() {
+        Path index = directory.resolve(INDEX_FILE);
+        if (!Files.exists(index)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split(SEPARATOR);
+                SegmentInfo info = new SegmentInfo(fields[0], Integer.parseInt(fields[1]),
+                        KardexSegmentCodec.fromMicros(Long.parseLong(fields[2])), KardexSegmentCodec.fromMicros(Long.parseLong(fields[3])),
+                        Long.parseLong(fields[4]), Long.parseLong(fields[5]), Long.parseLong(fields[6]));
+                // Un segmento indexado que falta en disco es pérdida de historial: mejor no arrancar que responder incompleto
+                if (!Files.exists(directory.resolve(info.file()))) {
+                    throw new IllegalStateException("Kardex archive segment listed in the index is missing: " + info.file());
+                }
+                segments.add(info);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read Kardex archive index " + index, e);
+        }
+        log.info("Kardex archive: {} segments loaded from {}.", segments.size(), directory.toAbsolutePath());
+    }
+}
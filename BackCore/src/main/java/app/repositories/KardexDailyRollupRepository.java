@@ -0,0 +1,52 @@
+package app.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import app.entities.KardexDailyRollupEntity;
+import app.entities.KardexDailyRollupId;
+import app.entities.enums.MovementType;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface KardexDailyRollupRepository extends JpaRepository<KardexDailyRollupEntity, KardexDailyRollupId> {
+
+    // Suma al total del día (o crea la fila). MERGE estándar: lo soportan PostgreSQL 15+ y H2.
+    @Modifying
+    @Query(value = "MERGE INTO kardex_daily_rollup r " +
+           "USING (VALUES (CAST(:day AS DATE), CAST(:toolId AS BIGINT), CAST(:type AS VARCHAR(255)), " +
+           "               CAST(:movementCount AS BIGINT), CAST(:totalQuantity AS BIGINT))) " +
+           "AS v (movement_day, tool_id, type, movement_count, total_quantity) " +
+           "ON r.movement_day = v.movement_day AND r.tool_id = v.tool_id AND r.type = v.type " +
+           "WHEN MATCHED THEN UPDATE SET movement_count = r.movement_count + v.movement_count, " +
+           "                             total_quantity = r.total_quantity + v.total_quantity " +
+           "WHEN NOT MATCHED THEN INSERT (movement_day, tool_id, type, movement_count, total_quantity) " +
+           "VALUES (v.movement_day, v.tool_id, v.type, v.movement_count, v.total_quantity)", nativeQuery = true)
+    int addToDay(@Param("day") LocalDate day, @Param("toolId") Long toolId, @Param("type") String type,
+                 @Param("movementCount") long movementCount, @Param("totalQuantity") long totalQuantity);
+
+    @Modifying
+    @Query("DELETE FROM KardexDailyRollupEntity r WHERE r.movementDay BETWEEN :from AND :to")
+    int deleteDays(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Reconstrucción de un bloque de días directamente desde kardex (un solo INSERT ... SELECT agrupado)
+    @Modifying
+    @Query(value = "INSERT INTO kardex_daily_rollup (movement_day, tool_id, type, movement_count, total_quantity) " +
+           "SELECT CAST(k.movement_date AS DATE), k.tool_id, k.type, COUNT(*), COALESCE(SUM(k.quantity), 0) " +
+           "FROM kardex k WHERE k.movement_date >= :start AND k.movement_date < :end " +
+           "GROUP BY CAST(k.movement_date AS DATE), k.tool_id, k.type", nativeQuery = true)
+    int insertAggregatedFromKardex(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    // Lectura para tableros: solo la tabla de totales (filtros de herramienta y tipo opcionales)
+    @Query("SELECT r FROM KardexDailyRollupEntity r WHERE r.movementDay BETWEEN :from AND :to " +
+           "AND (:toolId IS NULL OR r.toolId = :toolId) AND (:type IS NULL OR r.type = :type) " +
+           "ORDER BY r.movementDay, r.toolId, r.type")
+    List<KardexDailyRollupEntity> findRollup(@Param("from") LocalDate from, @Param("to") LocalDate to,
+                                             @Param("toolId") Long toolId, @Param("type") MovementType type);
+}
@@ -1,18 +1,57 @@
 package app.repositories;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import app.dtos.KardexMovementRow;
 import app.entities.KardexEntity;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface KardexRepository extends JpaRepository<KardexEntity, Long> {
+public interface KardexRepository extends JpaRepository<KardexEntity, Long>, KardexRepositoryCustom {
 
-    List<KardexEntity> findByTool_Id(Long toolId);
-    List<KardexEntity> findByMovementDateBetween(LocalDateTime start, LocalDateTime end);
     List<KardexEntity> findByTool_IdAndType(Long toolId, app.entities.enums.MovementType type);
     List<KardexEntity> findByMovementDateBetweenAndType(LocalDateTime start, LocalDateTime end, app.entities.enums.MovementType type);
+
+    // Lecturas del Kardex para la API: una sola consulta con JOIN a tools/users que trae solo las columnas mostradas
+    // (sin cargar ToolEntity/UserEntity por movimiento ni exponer datos del usuario como la contraseña)
+    String MOVEMENT_ROW_SELECT =
+            "SELECT new app.dtos.KardexMovementRow(k.id, k.movementDate, k.type, k.quantity, t.id, t.name, u.id, u.username) " +
+            "FROM KardexEntity k JOIN k.tool t JOIN k.user u ";
+
+    @Query(MOVEMENT_ROW_SELECT + "WHERE t.id = :toolId ORDER BY k.movementDate, k.id")
+    List<KardexMovementRow> findRowsByToolId(@Param("toolId") Long toolId);
+
+    @Query(MOVEMENT_ROW_SELECT + "WHERE k.movementDate BETWEEN :start AND :end ORDER BY k.movementDate, k.id")
+    List<KardexMovementRow> findRowsByMovementDateBetween(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    // Historial paginado por keyset (movement_date, id): cada página parte después del último par devuelto,
+    // sin OFFSET y sin cargar las entidades Tool/User
+    @Query(MOVEMENT_ROW_SELECT + "WHERE k.movementDate <= :end " +
+           "AND (k.movementDate > :afterDate OR (k.movementDate = :afterDate AND k.id > :afterId)) " +
+           "ORDER BY k.movementDate, k.id")
+    List<KardexMovementRow> findPageByMovementDate(@Param("afterDate") LocalDateTime afterDate, @Param("afterId") Long afterId,
+                                                   @Param("end") LocalDateTime end, Limit limit);
+
+    @Query(MOVEMENT_ROW_SELECT + "WHERE t.id = :toolId " +
+           "AND (k.movementDate > :afterDate OR (k.movementDate = :afterDate AND k.id > :afterId)) " +
+           "ORDER BY k.movementDate, k.id")
+    List<KardexMovementRow> findPageByToolId(@Param("toolId") Long toolId, @Param("afterDate") LocalDateTime afterDate,
+                                             @Param("afterId") Long afterId, Limit limit);
+
+    // Archivo histórico: los movimientos más antiguos anteriores a 'before', en el mismo orden que los segmentos
+    @Query(MOVEMENT_ROW_SELECT + "WHERE k.movementDate < :before ORDER BY k.movementDate, k.id")
+    List<KardexMovementRow> findOldestRows(@Param("before") LocalDateTime before, Limit limit);
+
+    // Borra todo hasta la posición (movement_date, id) inclusive: como se archiva siempre desde lo más antiguo,
+    // son exactamente las filas ya escritas en los segmentos
+    @Modifying
+    @Query("DELETE FROM KardexEntity k WHERE k.movementDate < :date OR (k.movementDate = :date AND k.id <= :id)")
+    int deleteUpTo(@Param("date") LocalDateTime date, @Param("id") Long id);
 }
@@ -0,0 +1,20 @@
+package app.repositories;
+
+import app.dtos.KardexMovementRow;
+import app.entities.KardexEntity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface KardexRepositoryCustom {
+
+    // Inserta los movimientos como batch de Hibernate (préstamos/devoluciones múltiples)
+    void insertAllBatched(List<KardexEntity> movements);
+
+    // Recorre los movimientos del rango con un cursor JDBC de solo avance: las filas se entregan a medida que se leen
+    // (de a 'fetchSize' por viaje a la BD), sin acumular el resultado en memoria. Requiere una transacción activa.
+    void streamByMovementDate(LocalDateTime start, LocalDateTime end, int fetchSize, Consumer<KardexMovementRow> consumer);
+
+    void streamByToolId(Long toolId, int fetchSize, Consumer<KardexMovementRow> consumer);
+}
@@ -0,0 +1,90 @@
+package app.repositories;
+
+import app.dtos.KardexMovementRow;
+import app.entities.KardexEntity;
+import app.entities.enums.MovementType;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+public class KardexRepositoryCustomImpl implements KardexRepositoryCustom {
+
+    private static final String SELECT_ROWS =
+            "SELECT k.id, k.movement_date, k.type, k.quantity, t.id AS tool_id, t.name AS tool_name, u.id AS user_id, u.username " +
+            "FROM kardex k JOIN tools t ON t.id = k.tool_id JOIN users u ON u.id = k.user_id ";
+
+    private static final String STREAM_BY_DATE_SQL =
+            SELECT_ROWS + "WHERE k.movement_date BETWEEN ? AND ? ORDER BY k.movement_date, k.id";
+
+    private static final String STREAM_BY_TOOL_SQL =
+            SELECT_ROWS + "WHERE k.tool_id = ? ORDER BY k.movement_date, k.id";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public KardexRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void insertAllBatched(List<KardexEntity> movements) {
+        if (movements.isEmpty()) {
+            return;
+        }
+        // IDs tomados del bloque de la secuencia en memoria; el flush agrupa los INSERT (hibernate.jdbc.batch_size)
+        for (KardexEntity movement : movements) {
+            entityManager.persist(movement);
+        }
+        entityManager.flush();
+    }
+
+    @Override
+    public void streamByMovementDate(LocalDateTime start, LocalDateTime end, int fetchSize, Consumer<KardexMovementRow> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = forwardOnly(con.prepareStatement(STREAM_BY_DATE_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY), fetchSize);
+            ps.setTimestamp(1, Timestamp.valueOf(start));
+            ps.setTimestamp(2, Timestamp.valueOf(end));
+            return ps;
+        }, toHandler(consumer));
+    }
+
+    @Override
+    public void streamByToolId(Long toolId, int fetchSize, Consumer<KardexMovementRow> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = forwardOnly(con.prepareStatement(STREAM_BY_TOOL_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY), fetchSize);
+            ps.setLong(1, toolId);
+            return ps;
+        }, toHandler(consumer));
+    }
+
+    // PostgreSQL solo usa un cursor de servidor (lectura por bloques) con fetchSize > 0 y autocommit desactivado
+    private static PreparedStatement forwardOnly(PreparedStatement ps, int fetchSize) throws SQLException {
+        ps.setFetchSize(fetchSize);
+        return ps;
+    }
+
+    private static RowCallbackHandler toHandler(Consumer<KardexMovementRow> consumer) {
+        return rs -> consumer.accept(new KardexMovementRow(
+                rs.getLong("id"),
+                rs.getTimestamp("movement_date").toLocalDateTime(),
+                MovementType.valueOf(rs.getString("type")),
+                rs.getInt("quantity"),
+                rs.getLong("tool_id"),
+                rs.getString("tool_name"),
+                rs.getLong("user_id"),
+                rs.getString("username")));
+    }
+}
@@ -0,0 +1,320 @@
+package app.repositories;
+
+import app.dtos.KardexMovementRow;
+import app.entities.enums.MovementType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Formato de un segmento del archivo histórico del Kardex (.kseg): columnar, cada columna comprimida por separado.
+//   Cabecera: MAGIC (int), VERSION (short), filas (int) y por columna: offset (long), largo comprimido (int), largo original (int)
+//   Columnas: ID y DATE (long, delta respecto de la fila anterior; fecha en microsegundos UTC), QUANTITY (int),
+//   TOOL_ID y USER_ID (long), TYPE / TOOL_NAME / USERNAME (int, posición en DICTIONARY) y DICTIONARY (textos UTF-8)
+// Las filas vienen ordenadas por (movement_date, id). Una consulta descomprime primero la columna por la que filtra
+// y solo si hay coincidencias el resto; el archivo se lee mapeado en memoria (sin copiarlo a un buffer propio).
+final class KardexSegmentCodec {
+
+    private static final int MAGIC = 0x4B534547; // "KSEG"
+    private static final short VERSION = 1;
+
+    private static final int ID = 0;
+    private static final int DATE = 1;
+    private static final int QUANTITY = 2;
+    private static final int TOOL_ID = 3;
+    private static final int USER_ID = 4;
+    private static final int TYPE = 5;
+    private static final int TOOL_NAME = 6;
+    private static final int USERNAME = 7;
+    private static final int DICTIONARY = 8;
+    private static final int COLUMNS = 9;
+
+    private static final int COLUMN_ENTRY_BYTES = 16;
+    private static final int HEADER_BYTES = 4 + 2 + 4 + COLUMNS * COLUMN_ENTRY_BYTES;
+
+    private KardexSegmentCodec() {
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### ESCRITURA #######################################################################################
+    // ########################################################################################################################################################
+
+    // Escribe en un .tmp, fuerza a disco y recién entonces lo renombra: un segmento visible siempre está completo
+    static void write(Path file, List<KardexMovementRow> rows) {
+        int n = rows.size();
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+
+        ByteBuffer ids = ByteBuffer.allocate(n * Long.BYTES);
+        ByteBuffer dates = ByteBuffer.allocate(n * Long.BYTES);
+        ByteBuffer quantities = ByteBuffer.allocate(n * Integer.BYTES);
+        ByteBuffer toolIds = ByteBuffer.allocate(n * Long.BYTES);
+        ByteBuffer userIds = ByteBuffer.allocate(n * Long.BYTES);
+        ByteBuffer types = ByteBuffer.allocate(n * Integer.BYTES);
+        ByteBuffer toolNames = ByteBuffer.allocate(n * Integer.BYTES);
+        ByteBuffer usernames = ByteBuffer.allocate(n * Integer.BYTES);
+
+        long previousId = 0;
+        long previousDate = 0;
+        for (KardexMovementRow row : rows) {
+            long date = toMicros(row.movementDate());
+            ids.putLong(row.id() - previousId);
+            dates.putLong(date - previousDate);
+            previousId = row.id();
+            previousDate = date;
+            quantities.putInt(row.quantity() == null ? 0 : row.quantity());
+            toolIds.putLong(row.toolId());
+            userIds.putLong(row.userId());
+            types.putInt(code(row.type().name(), codes, dictionary));
+            toolNames.putInt(code(row.toolName(), codes, dictionary));
+            usernames.putInt(code(row.username(), codes, dictionary));
+        }
+
+        byte[][] raw = new byte[COLUMNS][];
+        raw[ID] = ids.array();
+        raw[DATE] = dates.array();
+        raw[QUANTITY] = quantities.array();
+        raw[TOOL_ID] = toolIds.array();
+        raw[USER_ID] = userIds.array();
+        raw[TYPE] = types.array();
+        raw[TOOL_NAME] = toolNames.array();
+        raw[USERNAME] = usernames.array();
+        raw[DICTIONARY] = encodeDictionary(dictionary);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putShort(VERSION).putInt(n);
+        byte[][] compressed = new byte[COLUMNS][];
+        long offset = HEADER_BYTES;
+        for (int column = 0; column < COLUMNS; column++) {
+            compressed[column] = deflate(raw[column]);
+            header.putLong(offset).putInt(compressed[column].length).putInt(raw[column].length);
+            offset += compressed[column].length;
+        }
+        header.flip();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeFully(channel, header);
+            for (byte[] column : compressed) {
+                writeFully(channel, ByteBuffer.wrap(column));
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write Kardex segment " + file, e);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not publish Kardex segment " + file, e);
+        }
+    }
+
+    private static int code(String value, Map<String, Integer> codes, List<String> dictionary) {
+        String key = value == null ? "" : value;
+        return codes.computeIfAbsent(key, k -> {
+            dictionary.add(k);
+            return dictionary.size() - 1;
+        });
+    }
+
+    private static byte[] encodeDictionary(List<String> dictionary) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        for (String value : dictionary) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeBytes(length.clear().putInt(bytes.length).array());
+            out.writeBytes(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### LECTURA #########################################################################################
+    // ########################################################################################################################################################
+
+    static List<KardexMovementRow> readByToolId(Path file, long toolId) {
+        MappedByteBuffer segment = map(file);
+        long[] toolIds = longs(column(segment, TOOL_ID), false);
+        return materialize(segment, matching(toolIds, value -> value == toolId));
+    }
+
+    static List<KardexMovementRow> readByDateRange(Path file, LocalDateTime start, LocalDateTime end) {
+        MappedByteBuffer segment = map(file);
+        long from = toMicros(start);
+        long to = toMicros(end);
+        long[] dates = longs(column(segment, DATE), true);
+        return materialize(segment, matching(dates, value -> value >= from && value <= to));
+    }
+
+    // Solo las columnas necesarias para los totales por herramienta (auditoría de stock)
+    static void forEachLedgerEntry(Path file, LedgerEntryConsumer consumer) {
+        MappedByteBuffer segment = map(file);
+        long[] toolIds = longs(column(segment, TOOL_ID), false);
+        int[] types = ints(column(segment, TYPE));
+        int[] quantities = ints(column(segment, QUANTITY));
+        List<String> dictionary = decodeDictionary(column(segment, DICTIONARY));
+        for (int i = 0; i < toolIds.length; i++) {
+            consumer.accept(toolIds[i], MovementType.valueOf(dictionary.get(types[i])), quantities[i]);
+        }
+    }
+
+    @FunctionalInterface
+    interface LedgerEntryConsumer {
+        void accept(long toolId, MovementType type, int quantity);
+    }
+
+    private static List<KardexMovementRow> materialize(MappedByteBuffer segment, int[] rows) {
+        if (rows.length == 0) {
+            return List.of();
+        }
+        long[] ids = longs(column(segment, ID), true);
+        long[] dates = longs(column(segment, DATE), true);
+        int[] quantities = ints(column(segment, QUANTITY));
+        long[] toolIds = longs(column(segment, TOOL_ID), false);
+        long[] userIds = longs(column(segment, USER_ID), false);
+        int[] types = ints(column(segment, TYPE));
+        int[] toolNames = ints(column(segment, TOOL_NAME));
+        int[] usernames = ints(column(segment, USERNAME));
+        List<String> dictionary = decodeDictionary(column(segment, DICTIONARY));
+
+        List<KardexMovementRow> result = new ArrayList<>(rows.length);
+        for (int i : rows) {
+            result.add(new KardexMovementRow(ids[i], fromMicros(dates[i]), MovementType.valueOf(dictionary.get(types[i])),
+                    quantities[i], toolIds[i], dictionary.get(toolNames[i]), userIds[i], dictionary.get(usernames[i])));
+        }
+        return result;
+    }
+
+    private static int[] matching(long[] values, LongPredicate predicate) {
+        int[] rows = new int[values.length];
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (predicate.test(values[i])) {
+                rows[count++] = i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static MappedByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (segment.getInt(0) != MAGIC || segment.getShort(4) != VERSION) {
+                throw new IllegalStateException("Not a Kardex segment (or unsupported version): " + file);
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read Kardex segment " + file, e);
+        }
+    }
+
+    private static ByteBuffer column(MappedByteBuffer segment, int column) {
+        int entry = 4 + 2 + 4 + column * COLUMN_ENTRY_BYTES;
+        int offset = (int) segment.getLong(entry);
+        int compressedLength = segment.getInt(entry + 8);
+        int rawLength = segment.getInt(entry + 12);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(segment.slice(offset, compressedLength));
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, read, rawLength - read);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                read += inflated;
+            }
+            if (read != rawLength) {
+                throw new IllegalStateException("Truncated Kardex segment column " + column);
+            }
+            return ByteBuffer.wrap(raw);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt Kardex segment column " + column, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long[] longs(ByteBuffer buffer, boolean deltaEncoded) {
+        long[] values = new long[buffer.remaining() / Long.BYTES];
+        long previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            long value = buffer.getLong();
+            values[i] = deltaEncoded ? previous + value : value;
+            previous = values[i];
+        }
+        return values;
+    }
+
+    private static int[] ints(ByteBuffer buffer) {
+        int[] values = new int[buffer.remaining() / Integer.BYTES];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getInt();
+        }
+        return values;
+    }
+
+    private static List<String> decodeDictionary(ByteBuffer buffer) {
+        List<String> dictionary = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return dictionary;
+    }
+
+    // PostgreSQL guarda timestamps con precisión de microsegundos: el segmento conserva exactamente ese valor
+    static long toMicros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+}
@@ -1,20 +1,33 @@
 package app.repositories;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import app.dtos.ClientLoanCounts;
+import app.dtos.LoanReportRow;
+import app.dtos.LoanStatusTotals;
 import app.entities.ClientEntity;
 import app.entities.LoanEntity;
 import app.entities.ToolEntity;
 import app.entities.enums.LoanStatus;
+import jakarta.persistence.LockModeType;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface LoanRepository extends JpaRepository<LoanEntity, Long> {
+public interface LoanRepository extends JpaRepository<LoanEntity, Long>, LoanRepositoryCustom {
+
+       String LOAN_REPORT_ROW_SELECT = "SELECT new app.dtos.LoanReportRow(l.id, c.id, c.rut, c.name, t.id, t.name, " +
+              "l.startDate, l.dueDate, l.returnDate, l.status, l.totalPenalty) FROM LoanEntity l JOIN l.client c JOIN l.tool t ";
+
        List<LoanEntity> findByClient(ClientEntity client);
        List<LoanEntity> findByTool(ToolEntity tool);
        List<LoanEntity> findByStatus(LoanStatus status);
@@ -22,19 +35,78 @@ public interface LoanRepository extends JpaRepository<LoanEntity, Long> {
        List<LoanEntity> findByClientAndStatusAndTotalPenaltyGreaterThan(ClientEntity client, LoanStatus status, double penaltyThreshold);
        long countByClientAndStatus(ClientEntity client, LoanStatus status);
 
-@Query("SELECT l.tool, COUNT(l) as total " +
-       "FROM LoanEntity l " +
-       "WHERE l.startDate >= :from AND l.startDate <= :to " +
-       "GROUP BY l.tool " +
-       "ORDER BY total DESC")
-       List<Object[]> findTopToolsByDateRange(@Param("from") LocalDate from, @Param("to") LocalDate to);
+       boolean existsByClient_IdAndTool_IdAndStatusIn(Long clientId, Long toolId, Collection<LoanStatus> statuses);
+
+// Devoluciones y pagos: el préstamo se lee con bloqueo de fila para que su estado no cambie (barrido de atrasos, otro
+// pago u otra devolución) antes de confirmar; así los contadores se ajustan con el estado que realmente se cierra
+@Lock(LockModeType.PESSIMISTIC_WRITE)
+@Query("SELECT l FROM LoanEntity l WHERE l.id = :id")
+       Optional<LoanEntity> findByIdForUpdate(@Param("id") Long id);
+
+// Devoluciones múltiples: préstamos con su herramienta y cliente en una sola consulta, bloqueados en orden de ID
+// (el bloqueo aplica a las filas de préstamos; herramientas y clientes solo se leen)
+@Lock(LockModeType.PESSIMISTIC_WRITE)
+@Query("SELECT l FROM LoanEntity l JOIN FETCH l.tool JOIN FETCH l.client WHERE l.id IN :ids ORDER BY l.id")
+       List<LoanEntity> lockAllWithToolAndClientByIdIn(@Param("ids") Collection<Long> ids);
+
+// Herramientas (de un conjunto) que el cliente ya tiene en los estados indicados (préstamo múltiple)
+@Query("SELECT l.tool.id FROM LoanEntity l WHERE l.client.id = :clientId AND l.tool.id IN :toolIds AND l.status IN :statuses")
+       List<Long> findHeldToolIds(@Param("clientId") Long clientId, @Param("toolIds") Collection<Long> toolIds, @Param("statuses") Collection<LoanStatus> statuses);
+
+// Contadores por cliente recalculados desde loans (client_loan_counters), por rango de IDs de cliente
+@Query("SELECT new app.dtos.ClientLoanCounts(l.client.id, " +
+       "SUM(CASE WHEN l.status = app.entities.enums.LoanStatus.ACTIVE THEN 1 ELSE 0 END), " +
+       "SUM(CASE WHEN l.status = app.entities.enums.LoanStatus.LATE THEN 1 ELSE 0 END), " +
+       "SUM(CASE WHEN l.status = app.entities.enums.LoanStatus.RECEIVED AND l.totalPenalty > 0 THEN 1 ELSE 0 END), " +
+       "SUM(CASE WHEN l.status = app.entities.enums.LoanStatus.RECEIVED AND l.totalPenalty > 0 THEN l.totalPenalty ELSE 0.0 END)) " +
+       "FROM LoanEntity l WHERE l.client.id BETWEEN :fromId AND :toId GROUP BY l.client.id")
+       List<ClientLoanCounts> aggregateCountsByClientIdRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+// Barrido de atrasos: primer préstamo ACTIVE vencido con ID mayor al indicado (inicio del siguiente bloque)
+@Query("SELECT MIN(l.id) FROM LoanEntity l WHERE l.status = app.entities.enums.LoanStatus.ACTIVE AND l.dueDate < :today AND l.id > :afterId")
+       Long findFirstOverdueIdAfter(@Param("afterId") Long afterId, @Param("today") LocalDate today);
+
+// Barrido de atrasos: bloquea los ACTIVE vencidos del rango antes de los tres UPDATE, así una devolución concurrente
+// espera al bloque (y ve LATE) o ya lo cerró (y el bloque no lo cuenta)
+@Query(value = "SELECT l.id FROM loans l WHERE l.status = 'ACTIVE' AND l.due_date < :today " +
+       "AND l.id BETWEEN :fromId AND :toId ORDER BY l.id FOR UPDATE", nativeQuery = true)
+       List<Long> lockOverdueIds(@Param("fromId") Long fromId, @Param("toId") Long toId, @Param("today") LocalDate today);
+
+// Barrido de atrasos: ACTIVE vencidos -> LATE dentro de un rango de IDs, en un solo UPDATE
+@Modifying(flushAutomatically = true, clearAutomatically = true)
+@Query("UPDATE LoanEntity l SET l.status = app.entities.enums.LoanStatus.LATE " +
+       "WHERE l.status = app.entities.enums.LoanStatus.ACTIVE AND l.dueDate < :today AND l.id BETWEEN :fromId AND :toId")
+       int markOverdueAsLate(@Param("fromId") Long fromId, @Param("toId") Long toId, @Param("today") LocalDate today);
+
+// RF6.1: Préstamos por estado en forma plana (lo que guarda la caché de reportes, sin entidades ni proxies)
+@Query(LOAN_REPORT_ROW_SELECT + "WHERE l.status = :status ORDER BY l.id")
+       List<LoanReportRow> findReportRowsByStatus(@Param("status") LoanStatus status);
 
 // RF6.1: Préstamos por estado DENTRO de un rango de fechas (considerando fecha de inicio)
-@Query("SELECT l FROM LoanEntity l WHERE l.status = :status AND l.startDate BETWEEN :from AND :to")
-       List<LoanEntity> findByStatusAndStartDateBetween(@Param("status") LoanStatus status, @Param("from") LocalDate from, @Param("to") LocalDate to);
+@Query(LOAN_REPORT_ROW_SELECT + "WHERE l.status = :status AND l.startDate BETWEEN :from AND :to ORDER BY l.id")
+       List<LoanReportRow> findReportRowsByStatusAndStartDateBetween(@Param("status") LoanStatus status, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+// Exportación por páginas de IDs (trabajos de reportes): mismo filtro que RF6.1, con el rango de fechas opcional
+@Query("SELECT l FROM LoanEntity l JOIN FETCH l.client JOIN FETCH l.tool WHERE l.status = :status AND l.id > :afterId " +
+       "AND (:from IS NULL OR l.startDate >= :from) AND (:to IS NULL OR l.startDate <= :to) ORDER BY l.id")
+       List<LoanEntity> findPageByStatusAfter(@Param("status") LoanStatus status, @Param("afterId") Long afterId,
+                                              @Param("from") LocalDate from, @Param("to") LocalDate to, Limit limit);
+
+@Query("SELECT COUNT(l) FROM LoanEntity l WHERE l.status = :status " +
+       "AND (:from IS NULL OR l.startDate >= :from) AND (:to IS NULL OR l.startDate <= :to)")
+       long countByStatusInRange(@Param("status") LoanStatus status, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+// Panel de inicio: préstamos por estado en una sola pasada
+@Query("SELECT new app.dtos.LoanStatusTotals(" +
+       "COALESCE(SUM(CASE WHEN l.status = app.entities.enums.LoanStatus.ACTIVE THEN 1 ELSE 0 END), 0), " +
+       "COALESCE(SUM(CASE WHEN l.status = app.entities.enums.LoanStatus.LATE THEN 1 ELSE 0 END), 0), " +
+       "COALESCE(SUM(CASE WHEN l.status = app.entities.enums.LoanStatus.RECEIVED THEN 1 ELSE 0 END), 0), " +
+       "COALESCE(SUM(CASE WHEN l.status = app.entities.enums.LoanStatus.CLOSED THEN 1 ELSE 0 END), 0)) " +
+       "FROM LoanEntity l")
+       LoanStatusTotals aggregateStatusTotals();
 
-// RF6.2: Clientes únicos con préstamos ATRASADOS que INICIARON en un rango de fechas
-@Query("SELECT DISTINCT l.client FROM LoanEntity l WHERE l.status = :status AND l.startDate BETWEEN :from AND :to")
-       List<ClientEntity> findDistinctClientsByStatusAndStartDateBetween(@Param("status") LoanStatus status, @Param("from") LocalDate from, @Param("to") LocalDate to);
+// Panel de inicio: total pagado en el día (markLoanAsPaid registra monto y fecha)
+@Query("SELECT COALESCE(SUM(l.paidAmount), 0.0) FROM LoanEntity l WHERE l.paidDate = :day")
+       double sumPaidOn(@Param("day") LocalDate day);
 
-}
\ No newline at end of file
+}
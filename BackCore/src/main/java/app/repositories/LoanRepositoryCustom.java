@@ -0,0 +1,19 @@
+package app.repositories;
+
+import app.dtos.LoanReportRow;
+import app.entities.LoanEntity;
+import app.entities.enums.LoanStatus;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface LoanRepositoryCustom {
+
+    // Inserta los préstamos como batch de Hibernate (IDs de secuencia asignados antes del INSERT)
+    void insertAllBatched(List<LoanEntity> loans);
+
+    // Recorre los préstamos del estado (fechas nulas = sin filtro por fecha de inicio) con un cursor JDBC de solo avance,
+    // entregando cada fila a 'consumer' sin acumular el resultado. Requiere una transacción activa.
+    void streamByStatus(LoanStatus status, LocalDate from, LocalDate to, int fetchSize, Consumer<LoanReportRow> consumer);
+}
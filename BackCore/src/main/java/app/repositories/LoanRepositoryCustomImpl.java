@@ -0,0 +1,79 @@
+package app.repositories;
+
+import app.dtos.LoanReportRow;
+import app.entities.LoanEntity;
+import app.entities.enums.LoanStatus;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class LoanRepositoryCustomImpl implements LoanRepositoryCustom {
+
+    private static final String STREAM_BY_STATUS_SQL =
+            "SELECT l.id, l.start_date, l.due_date, l.return_date, l.status, l.total_penalty, " +
+            "c.id AS client_id, c.rut AS client_rut, c.name AS client_name, t.id AS tool_id, t.name AS tool_name " +
+            "FROM loans l JOIN clients c ON c.id = l.client_id JOIN tools t ON t.id = l.tool_id " +
+            "WHERE l.status = ? ";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public LoanRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void insertAllBatched(List<LoanEntity> loans) {
+        if (loans.isEmpty()) {
+            return;
+        }
+        // persist asigna el ID desde el bloque de la secuencia (pooled-lo) sin ir a la BD por cada fila;
+        // el flush envía los INSERT agrupados según hibernate.jdbc.batch_size
+        for (LoanEntity loan : loans) {
+            entityManager.persist(loan);
+        }
+        entityManager.flush();
+    }
+
+    @Override
+    public void streamByStatus(LoanStatus status, LocalDate from, LocalDate to, int fetchSize, Consumer<LoanReportRow> consumer) {
+        boolean byDate = from != null && to != null;
+        String sql = STREAM_BY_STATUS_SQL + (byDate ? "AND l.start_date BETWEEN ? AND ? " : "") + "ORDER BY l.id";
+        jdbcTemplate.query(con -> {
+            // Cursor de servidor en PostgreSQL: fetchSize > 0 y autocommit desactivado (transacción del servicio)
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, status.name());
+            if (byDate) {
+                ps.setDate(2, Date.valueOf(from));
+                ps.setDate(3, Date.valueOf(to));
+            }
+            return ps;
+        }, rs -> {
+            Date returnDate = rs.getDate("return_date");
+            consumer.accept(new LoanReportRow(
+                    rs.getLong("id"),
+                    rs.getLong("client_id"),
+                    rs.getString("client_rut"),
+                    rs.getString("client_name"),
+                    rs.getLong("tool_id"),
+                    rs.getString("tool_name"),
+                    rs.getDate("start_date").toLocalDate(),
+                    rs.getDate("due_date").toLocalDate(),
+                    returnDate == null ? null : returnDate.toLocalDate(),
+                    LoanStatus.valueOf(rs.getString("status")),
+                    rs.getDouble("total_penalty")));
+        });
+    }
+}
@@ -0,0 +1,31 @@
+package app.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import app.entities.ReportJobEntity;
+import app.entities.enums.ReportJobStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReportJobRepository extends JpaRepository<ReportJobEntity, String> {
+
+    @Modifying
+    @Query("UPDATE ReportJobEntity j SET j.rowsWritten = :rowsWritten WHERE j.id = :id")
+    int updateProgress(@Param("id") String id, @Param("rowsWritten") long rowsWritten);
+
+    // Al iniciar: los trabajos que quedaron en cola o ejecutándose ya no tienen hilo que los termine
+    @Modifying
+    @Query("UPDATE ReportJobEntity j SET j.status = app.entities.enums.ReportJobStatus.FAILED, " +
+           "j.errorMessage = :message, j.finishedAt = :now WHERE j.status IN :statuses")
+    int failAll(@Param("statuses") Collection<ReportJobStatus> statuses, @Param("message") String message,
+                @Param("now") LocalDateTime now);
+
+    List<ReportJobEntity> findByFinishedAtBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,43 @@
+package app.repositories;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import app.dtos.TopToolDto;
+import app.entities.ToolLoanDailyCountEntity;
+import app.entities.ToolLoanDailyCountId;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ToolLoanDailyCountRepository extends JpaRepository<ToolLoanDailyCountEntity, ToolLoanDailyCountId> {
+
+    // Suma al día (o crea la fila). MERGE estándar, igual que kardex_daily_rollup.
+    @Modifying
+    @Query(value = "MERGE INTO tool_loan_daily_counts c " +
+           "USING (VALUES (CAST(:day AS DATE), CAST(:toolId AS BIGINT), CAST(:loans AS BIGINT))) AS v (loan_day, tool_id, loan_count) " +
+           "ON c.loan_day = v.loan_day AND c.tool_id = v.tool_id " +
+           "WHEN MATCHED THEN UPDATE SET loan_count = c.loan_count + v.loan_count " +
+           "WHEN NOT MATCHED THEN INSERT (loan_day, tool_id, loan_count) VALUES (v.loan_day, v.tool_id, v.loan_count)",
+           nativeQuery = true)
+    int addToDay(@Param("day") LocalDate day, @Param("toolId") Long toolId, @Param("loans") long loans);
+
+    // Reconstrucción completa desde loans (un solo INSERT ... SELECT agrupado)
+    @Modifying
+    @Query(value = "INSERT INTO tool_loan_daily_counts (loan_day, tool_id, loan_count) " +
+           "SELECT l.start_date, l.tool_id, COUNT(*) FROM loans l GROUP BY l.start_date, l.tool_id", nativeQuery = true)
+    int insertAggregatedFromLoans();
+
+    // RF6.3: suma por herramienta sobre los días del rango; solo se leen los nombres de las herramientas del ranking
+    @Query("SELECT new app.dtos.TopToolDto(t.id, t.name, t.category, SUM(c.loanCount)) " +
+           "FROM ToolLoanDailyCountEntity c JOIN ToolEntity t ON t.id = c.toolId " +
+           "WHERE c.loanDay BETWEEN :from AND :to " +
+           "GROUP BY t.id, t.name, t.category " +
+           "ORDER BY SUM(c.loanCount) DESC, t.id")
+    List<TopToolDto> findTopTools(@Param("from") LocalDate from, @Param("to") LocalDate to, Limit limit);
+}
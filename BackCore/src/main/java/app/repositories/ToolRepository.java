@@ -1,15 +1,64 @@
 package app.repositories;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import app.dtos.ToolStatusTotals;
 import app.entities.ToolEntity;
 import app.entities.enums.ToolStatus;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface ToolRepository extends JpaRepository<ToolEntity, Long> {
+public interface ToolRepository extends JpaRepository<ToolEntity, Long>, ToolRepositoryCustom {
     List<ToolEntity> findByStatus(ToolStatus status);
     List<ToolEntity> findByNameContainingIgnoreCase(String name);
+
+    // Panel de inicio: fichas y unidades en reparación por estado, agregadas en la BD
+    @Query("SELECT new app.dtos.ToolStatusTotals(t.status, COUNT(t), COALESCE(SUM(t.inRepair), 0)) FROM ToolEntity t GROUP BY t.status")
+    List<ToolStatusTotals> aggregateByStatus();
+
+    // Recorrido por bloques de IDs (keyset), usado por la auditoría de stock
+    @Query("SELECT t.id FROM ToolEntity t WHERE t.id > :afterId ORDER BY t.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // Bloqueo de filas de herramientas en orden de ID, hasta confirmar (totales diarios del Kardex)
+    @Query(value = "SELECT t.id FROM tools t WHERE t.id IN :ids ORDER BY t.id FOR UPDATE", nativeQuery = true)
+    List<Long> lockByIds(@Param("ids") Collection<Long> ids);
+
+    // Préstamo de una unidad: la disponibilidad se valida en el mismo UPDATE (sin leer-modificar-escribir).
+    // Devuelve 0 si la herramienta no está AVAILABLE o no tiene stock.
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ToolEntity t SET " +
+           "t.stock = t.stock - 1, " +
+           "t.status = CASE WHEN t.stock = 1 THEN app.entities.enums.ToolStatus.LOANED ELSE t.status END " +
+           "WHERE t.id = :id AND t.stock > 0 AND t.status = app.entities.enums.ToolStatus.AVAILABLE")
+    int decrementStockIfAvailable(@Param("id") Long id);
+
+    // Igual que decrementStockIfAvailable para varias herramientas en un solo UPDATE.
+    // Si devuelve menos filas que IDs, alguna no estaba disponible.
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ToolEntity t SET " +
+           "t.stock = t.stock - 1, " +
+           "t.status = CASE WHEN t.stock = 1 THEN app.entities.enums.ToolStatus.LOANED ELSE t.status END " +
+           "WHERE t.id IN :ids AND t.stock > 0 AND t.status = app.entities.enums.ToolStatus.AVAILABLE")
+    int decrementStockIfAvailableForIds(@Param("ids") Collection<Long> ids);
+
+    // Devolución de una unidad: incremento atómico, LOANED vuelve a AVAILABLE
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ToolEntity t SET " +
+           "t.stock = COALESCE(t.stock, 0) + 1, " +
+           "t.status = CASE WHEN t.status = app.entities.enums.ToolStatus.LOANED THEN app.entities.enums.ToolStatus.AVAILABLE ELSE t.status END " +
+           "WHERE t.id = :id")
+    int incrementStock(@Param("id") Long id);
+
+    // Unidad que entra a reparación: incremento atómico en BD (no depende de que la entidad esté gestionada)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ToolEntity t SET t.inRepair = COALESCE(t.inRepair, 0) + 1 WHERE t.id = :id")
+    int incrementInRepair(@Param("id") Long id);
 }
@@ -0,0 +1,25 @@
+package app.repositories;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import app.dtos.KardexCursor;
+import app.dtos.StockDrift;
+import app.dtos.ToolLedgerTotals;
+
+public interface ToolRepositoryCustom {
+
+    // Devoluciones múltiples: suma unidades por herramienta en un solo batch JDBC (LOANED vuelve a AVAILABLE)
+    void incrementStockBatched(Map<Long, Integer> unitsByToolId);
+
+    // Devoluciones múltiples con daño leve: suma unidades en reparación por herramienta en un solo batch JDBC
+    void incrementInRepairBatched(Map<Long, Integer> unitsByToolId);
+
+    // Auditoría de stock: una fila por herramienta del rango [fromId, toId] con el total agregado de su Kardex
+    // posterior a 'after' (lo anterior está en el archivo histórico)
+    void streamLedgerTotals(Long fromId, Long toId, KardexCursor after, Consumer<ToolLedgerTotals> consumer);
+
+    // Corrige stock/inRepair solo si siguen con los valores leídos por la auditoría; devuelve las filas actualizadas
+    int repairStockBatched(List<StockDrift> drifts);
+}
@@ -0,0 +1,130 @@
+package app.repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import app.dtos.KardexCursor;
+import app.dtos.StockDrift;
+import app.dtos.ToolLedgerTotals;
+import app.entities.enums.ToolStatus;
+
+public class ToolRepositoryCustomImpl implements ToolRepositoryCustom {
+
+    private static final String INCREMENT_SQL =
+            "UPDATE tools SET stock = COALESCE(stock, 0) + ?, " +
+            "status = CASE WHEN status = 'LOANED' THEN 'AVAILABLE' ELSE status END " +
+            "WHERE id = ?";
+
+    private static final String INCREMENT_IN_REPAIR_SQL =
+            "UPDATE tools SET in_repair = COALESCE(in_repair, 0) + ? WHERE id = ?";
+
+    // Un solo recorrido de kardex por rango de herramientas (índice idx_kardex_tool_date_id), sin cargar entidades
+    private static final String LEDGER_TOTALS_SQL =
+            "SELECT t.id, t.name, t.status, COALESCE(t.stock, 0) AS stock, COALESCE(t.in_repair, 0) AS in_repair, " +
+            "COALESCE(SUM(CASE WHEN k.type IN ('INCOME', 'RETURN') THEN k.quantity " +
+            "                  WHEN k.type IN ('LOAN', 'MANUAL_DECREASE') THEN -k.quantity ELSE 0 END), 0) AS ledger_stock, " +
+            "COALESCE(SUM(CASE WHEN k.type = 'REPAIR' THEN k.quantity ELSE 0 END), 0) AS ledger_in_repair, " +
+            "COUNT(k.id) AS movements " +
+            "FROM tools t LEFT JOIN kardex k ON k.tool_id = t.id " +
+            "AND (k.movement_date > ? OR (k.movement_date = ? AND k.id > ?)) " +
+            "WHERE t.id BETWEEN ? AND ? " +
+            "GROUP BY t.id, t.name, t.status, t.stock, t.in_repair " +
+            "ORDER BY t.id";
+
+    private static final String REPAIR_SQL =
+            "UPDATE tools SET stock = ?, in_repair = ? WHERE id = ? AND COALESCE(stock, 0) = ? AND COALESCE(in_repair, 0) = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ToolRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void incrementStockBatched(Map<Long, Integer> unitsByToolId) {
+        if (unitsByToolId.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(unitsByToolId.entrySet());
+        jdbcTemplate.batchUpdate(INCREMENT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setInt(1, entries.get(i).getValue());
+                ps.setLong(2, entries.get(i).getKey());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entries.size();
+            }
+        });
+    }
+
+    @Override
+    public void incrementInRepairBatched(Map<Long, Integer> unitsByToolId) {
+        if (unitsByToolId.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(unitsByToolId.entrySet());
+        jdbcTemplate.batchUpdate(INCREMENT_IN_REPAIR_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setInt(1, entries.get(i).getValue());
+                ps.setLong(2, entries.get(i).getKey());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entries.size();
+            }
+        });
+    }
+
+    @Override
+    public void streamLedgerTotals(Long fromId, Long toId, KardexCursor after, Consumer<ToolLedgerTotals> consumer) {
+        jdbcTemplate.query(LEDGER_TOTALS_SQL, rs -> {
+            consumer.accept(new ToolLedgerTotals(
+                    rs.getLong("id"),
+                    rs.getString("name"),
+                    rs.getString("status") == null ? null : ToolStatus.valueOf(rs.getString("status")),
+                    rs.getInt("stock"),
+                    rs.getInt("in_repair"),
+                    rs.getLong("ledger_stock"),
+                    rs.getLong("ledger_in_repair"),
+                    rs.getLong("movements")));
+        }, after.movementDate(), after.movementDate(), after.id(), fromId, toId);
+    }
+
+    @Override
+    public int repairStockBatched(List<StockDrift> drifts) {
+        if (drifts.isEmpty()) {
+            return 0;
+        }
+        int[] updated = jdbcTemplate.batchUpdate(REPAIR_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                StockDrift drift = drifts.get(i);
+                ps.setInt(1, drift.expectedStock());
+                ps.setInt(2, drift.expectedInRepair());
+                ps.setLong(3, drift.toolId());
+                ps.setInt(4, drift.stock());
+                ps.setInt(5, drift.inRepair());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return drifts.size();
+            }
+        });
+        // Algunos drivers informan SUCCESS_NO_INFO (-2) en batch: se cuenta como actualizada
+        return (int) Arrays.stream(updated).filter(rows -> rows != 0).count();
+    }
+}
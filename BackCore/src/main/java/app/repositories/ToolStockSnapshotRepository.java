@@ -0,0 +1,63 @@
+package app.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import app.dtos.ToolStockReplayRow;
+import app.entities.ToolStockSnapshotEntity;
+import app.entities.ToolStockSnapshotId;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ToolStockSnapshotRepository extends JpaRepository<ToolStockSnapshotEntity, ToolStockSnapshotId> {
+
+    // Punto de control más reciente tomado hasta 'at'
+    Optional<ToolStockSnapshotEntity> findFirstByTakenAtLessThanEqualOrderByTakenAtDesc(LocalDateTime at);
+
+    @Modifying
+    @Query("DELETE FROM ToolStockSnapshotEntity s WHERE s.snapshotDate = :snapshotDate")
+    int deleteBySnapshotDate(@Param("snapshotDate") LocalDate snapshotDate);
+
+    // Bloquea todas las herramientas antes de copiarlas: espera a las transacciones que ya cambiaron stock (y fecharon su
+    // movimiento) y hace esperar a las siguientes hasta confirmar el punto de control
+    @Query(value = "SELECT t.id FROM tools t ORDER BY t.id FOR UPDATE", nativeQuery = true)
+    List<Long> lockAllTools();
+
+    // Copia stock e inRepair de todas las herramientas en un solo INSERT ... SELECT (sin cargar entidades)
+    @Modifying
+    @Query(value = "INSERT INTO tool_stock_snapshots (snapshot_date, tool_id, taken_at, stock, in_repair) " +
+           "SELECT :snapshotDate, t.id, :takenAt, t.stock, t.in_repair FROM tools t", nativeQuery = true)
+    int insertFromTools(@Param("snapshotDate") LocalDate snapshotDate, @Param("takenAt") LocalDateTime takenAt);
+
+    // Reconstrucción en una sola consulta para todas las herramientas: punto de control (si lo hay) + suma de los
+    // movimientos en (from, at]. INCOME/RETURN suman stock, LOAN/MANUAL_DECREASE lo restan, REPAIR suma inRepair.
+    // Se omiten las herramientas sin punto de control ni movimientos hasta 'at' (aún no existían). Una herramienta sin
+    // fila en el punto de control no estaba confirmada al tomarlo: se le aplican todos sus movimientos hasta 'at'.
+    // Solo se leen las filas posteriores a (archivedDate, archivedId); las anteriores las aporta el archivo histórico.
+    @Query("SELECT new app.dtos.ToolStockReplayRow(t.id, t.name, t.status, s.stock, s.inRepair, " +
+           "SUM(CASE WHEN k.type IN (app.entities.enums.MovementType.INCOME, app.entities.enums.MovementType.RETURN) THEN k.quantity " +
+           "         WHEN k.type IN (app.entities.enums.MovementType.LOAN, app.entities.enums.MovementType.MANUAL_DECREASE) THEN -k.quantity " +
+           "         ELSE 0 END), " +
+           "SUM(CASE WHEN k.type = app.entities.enums.MovementType.REPAIR THEN k.quantity ELSE 0 END), " +
+           "SUM(CASE WHEN k.type = app.entities.enums.MovementType.DECOMMISSION THEN 1 ELSE 0 END), " +
+           "(SELECT COUNT(k2) FROM KardexEntity k2 WHERE k2.tool.id = t.id AND k2.movementDate > :at)) " +
+           "FROM ToolEntity t " +
+           "LEFT JOIN ToolStockSnapshotEntity s ON s.toolId = t.id AND s.snapshotDate = :snapshotDate " +
+           "LEFT JOIN KardexEntity k ON k.tool.id = t.id AND (s.toolId IS NULL OR k.movementDate > :from) AND k.movementDate <= :at " +
+           "     AND (k.movementDate > :archivedDate OR (k.movementDate = :archivedDate AND k.id > :archivedId)) " +
+           "GROUP BY t.id, t.name, t.status, s.toolId, s.stock, s.inRepair " +
+           "HAVING s.toolId IS NOT NULL OR COUNT(k.id) > 0 " +
+           "ORDER BY t.id")
+    List<ToolStockReplayRow> replayStock(@Param("snapshotDate") LocalDate snapshotDate,
+                                         @Param("from") LocalDateTime from,
+                                         @Param("at") LocalDateTime at,
+                                         @Param("archivedDate") LocalDateTime archivedDate,
+                                         @Param("archivedId") Long archivedId);
+}
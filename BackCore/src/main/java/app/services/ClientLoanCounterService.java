@@ -0,0 +1,216 @@
+package app.services;
+
+import app.dtos.ClientLoanCounts;
+import app.dtos.ClientLoanStanding;
+import app.dtos.CounterRebuildReport;
+import app.entities.ClientLoanCounterEntity;
+import app.entities.enums.LoanStatus;
+import app.repositories.ClientLoanCounterRepository;
+import app.repositories.ClientRepository;
+import app.repositories.LoanRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Service
+@Slf4j
+public class ClientLoanCounterService {
+
+    private static final List<LoanStatus> HELD_STATUSES = List.of(LoanStatus.ACTIVE, LoanStatus.LATE);
+    private static final int MAX_REPORTED_MISMATCHES = 100;
+    private static final double PENALTY_TOLERANCE = 0.005;
+
+    private final ClientLoanCounterRepository counterRepository;
+    private final LoanRepository loanRepository;
+    private final ClientRepository clientRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public ClientLoanCounterService(ClientLoanCounterRepository counterRepository,
+                                    LoanRepository loanRepository,
+                                    ClientRepository clientRepository,
+                                    PlatformTransactionManager transactionManager) {
+        this.counterRepository = counterRepository;
+        this.loanRepository = loanRepository;
+        this.clientRepository = clientRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### LECTURA (O(1) por cliente) #####################################################################
+    // ########################################################################################################################################################
+
+    // Sin fila: se bloquea el cliente y se vuelve a leer. Dos primeras peticiones a la vez quedan en orden y la segunda
+    // usa la fila que creó la primera (sin INSERT duplicado)
+    @Transactional
+    public ClientLoanCounterEntity getCounters(Long clientId) {
+        return counterRepository.findById(clientId).orElseGet(() -> {
+            clientRepository.lockById(clientId);
+            return counterRepository.findById(clientId)
+                    .orElseGet(() -> counterRepository.save(recompute(clientId)));
+        });
+    }
+
+    // Situación del cliente para createLoan: contadores + verificación indexada de herramienta repetida
+    @Transactional
+    public ClientLoanStanding getStanding(Long clientId, Long toolId) {
+        ClientLoanCounterEntity counters = getCounters(clientId);
+        boolean toolHeld = loanRepository.existsByClient_IdAndTool_IdAndStatusIn(clientId, toolId, HELD_STATUSES);
+        return new ClientLoanStanding(counters.getLateCount(), counters.getUnpaidCount(), counters.getActiveCount(), toolHeld);
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### ACTUALIZACIÓN INCREMENTAL #######################################################################
+    // ########################################################################################################################################################
+
+    @Transactional
+    public void initializeFor(Long clientId) {
+        counterRepository.save(ClientLoanCounterEntity.builder().clientId(clientId).build());
+    }
+
+    @Transactional
+    public void onLoanCreated(Long clientId) {
+        applyDelta(clientId, 1, 0, 0, 0.0);
+    }
+
+    @Transactional
+    public void onLoansCreated(Long clientId, int count) {
+        applyDelta(clientId, count, 0, 0, 0.0);
+    }
+
+    @Transactional
+    public void onLoanReturned(Long clientId, LoanStatus previousStatus, double totalPenalty) {
+        long activeDelta = previousStatus == LoanStatus.ACTIVE ? -1 : 0;
+        long lateDelta = previousStatus == LoanStatus.LATE ? -1 : 0;
+        boolean unpaid = totalPenalty > 0;
+        applyDelta(clientId, activeDelta, lateDelta, unpaid ? 1 : 0, unpaid ? totalPenalty : 0.0);
+    }
+
+    // Devoluciones múltiples de un mismo cliente acumuladas en una sola actualización
+    @Transactional
+    public void onLoansReturned(Long clientId, long fromActive, long fromLate, long unpaid, double totalPenalty) {
+        applyDelta(clientId, -fromActive, -fromLate, unpaid, totalPenalty);
+    }
+
+    @Transactional
+    public void onLoanPaid(Long clientId, double settledPenalty) {
+        if (settledPenalty > 0) {
+            applyDelta(clientId, 0, 0, -1, -settledPenalty);
+        }
+    }
+
+    private void applyDelta(Long clientId, long activeDelta, long lateDelta, long unpaidDelta, double penaltyDelta) {
+        if (counterRepository.applyDelta(clientId, activeDelta, lateDelta, unpaidDelta, penaltyDelta) > 0) {
+            return;
+        }
+        // Cliente sin fila (anterior a los contadores): con el cliente bloqueado se reintenta por si otra petición
+        // acaba de crearla; si sigue sin fila se recalcula desde loans, que ya incluye este cambio
+        clientRepository.lockById(clientId);
+        if (counterRepository.applyDelta(clientId, activeDelta, lateDelta, unpaidDelta, penaltyDelta) == 0) {
+            log.info("Client {} had no loan counters row, rebuilding it from loans.", clientId);
+            counterRepository.save(recompute(clientId));
+        }
+    }
+
+    private ClientLoanCounterEntity recompute(Long clientId) {
+        return loanRepository.aggregateCountsByClientIdRange(clientId, clientId).stream()
+                .findFirst()
+                .map(ClientLoanCounterService::toEntity)
+                .orElseGet(() -> ClientLoanCounterEntity.builder().clientId(clientId).build());
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### RECONSTRUCCIÓN / VERIFICACIÓN ##################################################################
+    // ########################################################################################################################################################
+
+    // Recalcula los contadores desde loans por bloques de clientes (una transacción por bloque).
+    // Con repair = false solo verifica y reporta diferencias.
+    public CounterRebuildReport rebuild(int chunkSize, boolean repair) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be greater than zero.");
+        }
+        long scanned = 0;
+        long mismatches = 0;
+        long repaired = 0;
+        List<Long> mismatchedIds = new ArrayList<>();
+        Long afterId = 0L;
+
+        while (true) {
+            final Long from = afterId;
+            ChunkResult chunk = transactionTemplate.execute(status -> processChunk(from, chunkSize, repair));
+            if (chunk == null || chunk.scanned() == 0) {
+                break;
+            }
+            scanned += chunk.scanned();
+            mismatches += chunk.mismatchedIds().size();
+            repaired += chunk.repaired();
+            chunk.mismatchedIds().stream()
+                    .limit(Math.max(0, MAX_REPORTED_MISMATCHES - mismatchedIds.size()))
+                    .forEach(mismatchedIds::add);
+            afterId = chunk.lastClientId();
+        }
+
+        log.info("Loan counters {}: {} clients scanned, {} mismatches, {} repaired.",
+                repair ? "rebuild" : "verification", scanned, mismatches, repaired);
+        return new CounterRebuildReport(scanned, mismatches, repaired, mismatchedIds);
+    }
+
+    private ChunkResult processChunk(Long afterId, int chunkSize, boolean repair) {
+        List<Long> clientIds = clientRepository.findIdsAfter(afterId, Limit.of(chunkSize));
+        if (clientIds.isEmpty()) {
+            return new ChunkResult(0, afterId, List.of(), 0);
+        }
+        Long firstId = clientIds.get(0);
+        Long lastId = clientIds.get(clientIds.size() - 1);
+
+        Map<Long, ClientLoanCounts> expected = loanRepository.aggregateCountsByClientIdRange(firstId, lastId).stream()
+                .collect(Collectors.toMap(ClientLoanCounts::clientId, Function.identity()));
+        Map<Long, ClientLoanCounterEntity> stored = counterRepository.findAllById(clientIds).stream()
+                .collect(Collectors.toMap(ClientLoanCounterEntity::getClientId, Function.identity()));
+
+        List<Long> mismatchedIds = new ArrayList<>();
+        List<ClientLoanCounterEntity> toSave = new ArrayList<>();
+        for (Long clientId : clientIds) {
+            ClientLoanCounterEntity computed = expected.containsKey(clientId)
+                    ? toEntity(expected.get(clientId))
+                    : ClientLoanCounterEntity.builder().clientId(clientId).build();
+            ClientLoanCounterEntity current = stored.get(clientId);
+            if (current == null || !sameCounts(current, computed)) {
+                mismatchedIds.add(clientId);
+                toSave.add(computed);
+            }
+        }
+        if (repair && !toSave.isEmpty()) {
+            counterRepository.saveAll(toSave);
+        }
+        return new ChunkResult(clientIds.size(), lastId, mismatchedIds, repair ? toSave.size() : 0);
+    }
+
+    private static boolean sameCounts(ClientLoanCounterEntity a, ClientLoanCounterEntity b) {
+        return a.getActiveCount() == b.getActiveCount()
+                && a.getLateCount() == b.getLateCount()
+                && a.getUnpaidCount() == b.getUnpaidCount()
+                && Math.abs(a.getOutstandingPenalty() - b.getOutstandingPenalty()) < PENALTY_TOLERANCE;
+    }
+
+    private static ClientLoanCounterEntity toEntity(ClientLoanCounts counts) {
+        return ClientLoanCounterEntity.builder()
+                .clientId(counts.clientId())
+                .activeCount(counts.activeCount())
+                .lateCount(counts.lateCount())
+                .unpaidCount(counts.unpaidCount())
+                .outstandingPenalty(counts.outstandingPenalty())
+                .build();
+    }
+
+    private record ChunkResult(int scanned, Long lastClientId, List<Long> mismatchedIds, int repaired) {}
+}
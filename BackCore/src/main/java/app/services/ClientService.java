@@ -2,16 +2,15 @@ package app.services;
 
 import app.dtos.UpdateClientRequest;
 import app.entities.ClientEntity;
-import app.entities.LoanEntity;
+import app.entities.ClientLoanCounterEntity;
 import app.entities.enums.ClientStatus;
-import app.entities.enums.LoanStatus;
 import app.exceptions.InvalidOperationException;
 import app.exceptions.ResourceNotFoundException;
 import app.repositories.ClientRepository;
-import app.repositories.LoanRepository;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.stereotype.Service;
@@ -24,11 +23,11 @@ import org.springframework.validation.annotation.Validated;
 public class ClientService {
 
     private final ClientRepository clientRepository;
-    private final LoanRepository loanRepository;
+    private final ClientLoanCounterService clientLoanCounterService;
 
-    public ClientService(ClientRepository clientRepository, LoanRepository loanRepository) {
+    public ClientService(ClientRepository clientRepository, ClientLoanCounterService clientLoanCounterService) {
         this.clientRepository = clientRepository;
-        this.loanRepository = loanRepository;
+        this.clientLoanCounterService = clientLoanCounterService;
     }
 
     public List<ClientEntity> getAllClients() {
@@ -54,7 +53,9 @@ public class ClientService {
         if (client.getStatus() == null) {
             client.setStatus(ClientStatus.ACTIVE);
         }
-        return clientRepository.save(client);
+        ClientEntity saved = clientRepository.save(client);
+        clientLoanCounterService.initializeFor(saved.getId());
+        return saved;
     }
 
     @Transactional 
@@ -65,6 +66,16 @@ public class ClientService {
         return clientRepository.save(client);
     }
 
+    // Restringe varios clientes ya cargados (devoluciones múltiples): sin recargarlos y una vez por cliente
+    @Transactional
+    public void restrictClients(Collection<ClientEntity> clients) {
+        List<ClientEntity> toRestrict = clients.stream()
+                .filter(client -> client.getStatus() != ClientStatus.RESTRICTED)
+                .toList();
+        toRestrict.forEach(client -> client.setStatus(ClientStatus.RESTRICTED));
+        clientRepository.saveAll(toRestrict);
+    }
+
     @Transactional
     public ClientEntity updateClientDetails(Long id, @Valid UpdateClientRequest updateRequest) {
         ClientEntity client = getClientById(id);
@@ -87,17 +98,17 @@ public class ClientService {
             return client;
         }
 
+        // Contadores del cliente (client_loan_counters) en lugar de recorrer sus préstamos
+        ClientLoanCounterEntity counters = clientLoanCounterService.getCounters(clientId);
+
         // 3. Verificar si tiene préstamos ATRASADOS (LATE)
-        long lateLoanCount = loanRepository.countByClientAndStatus(client, LoanStatus.LATE);
-        if (lateLoanCount > 0) {
-            throw new InvalidOperationException("No se puede reactivar al cliente: " + lateLoanCount + " préstamo(s) atrasado(s) encontrado(s).");
+        if (counters.getLateCount() > 0) {
+            throw new InvalidOperationException("No se puede reactivar al cliente: " + counters.getLateCount() + " préstamo(s) atrasado(s) encontrado(s).");
         }
 
         // 4. Verificar si tiene deudas PENDIENTES (RECEIVED con totalPenalty > 0)
-        List<LoanEntity> unpaidReceivedLoans = loanRepository.findByClientAndStatusAndTotalPenaltyGreaterThan(
-                client, LoanStatus.RECEIVED, 0.0);
-        if (!unpaidReceivedLoans.isEmpty()) {
-            throw new InvalidOperationException("No se puede reactivar al cliente: " + unpaidReceivedLoans.size() + " préstamo(s) sin pagar encontrado(s).");
+        if (counters.getUnpaidCount() > 0) {
+            throw new InvalidOperationException("No se puede reactivar al cliente: " + counters.getUnpaidCount() + " préstamo(s) sin pagar encontrado(s).");
         }
 
         // 5. Si pasa las validaciones, reactivar el cliente
@@ -0,0 +1,124 @@
+package app.services;
+
+import app.dtos.DashboardSummary;
+import app.dtos.LoanStatusTotals;
+import app.dtos.ToolStatusTotals;
+import app.entities.enums.ClientStatus;
+import app.entities.enums.ToolStatus;
+import app.repositories.ClientRepository;
+import app.repositories.LoanRepository;
+import app.repositories.ToolRepository;
+import jakarta.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Indicadores del panel de inicio: cuatro consultas de agregación (préstamos por estado, clientes restringidos,
+// herramientas por estado, pagos del día) ejecutadas en paralelo en un pool propio y acotado.
+// El resultado se comparte durante 'cache-ttl': con muchos paneles abiertos, solo una petición por intervalo
+// llega a la BD (las demás esperan ese mismo cálculo o reciben el anterior).
+@Service
+public class DashboardService {
+
+    private final LoanRepository loanRepository;
+    private final ClientRepository clientRepository;
+    private final ToolRepository toolRepository;
+    private final Duration cacheTtl;
+    private final Duration timeout;
+    private final ThreadPoolExecutor executor;
+
+    private CachedSummary cached; // Protegido por 'this'
+
+    private record CachedSummary(CompletableFuture<DashboardSummary> summary, long loadedAtNanos) {}
+
+    public DashboardService(LoanRepository loanRepository, ClientRepository clientRepository, ToolRepository toolRepository,
+                            @Value("${dashboard.threads:4}") int threads,
+                            @Value("${dashboard.cache-ttl:5s}") Duration cacheTtl,
+                            @Value("${dashboard.timeout:10s}") Duration timeout) {
+        this.loanRepository = loanRepository;
+        this.clientRepository = clientRepository;
+        this.toolRepository = toolRepository;
+        this.cacheTtl = cacheTtl;
+        this.timeout = timeout;
+        // Cola llena -> la consulta corre en el hilo de la petición (nunca se acumulan tareas sin límite)
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), Thread.ofPlatform().name("dashboard-", 1).factory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public DashboardSummary getSummary() {
+        CompletableFuture<DashboardSummary> summary = currentOrReload();
+        try {
+            return summary.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            discard(summary); // Un cálculo fallido no se comparte: la siguiente petición lo reintenta
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Dashboard summary took longer than " + timeout + ".");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the dashboard summary.");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### AUXILIARES #####################################################################################
+    // ########################################################################################################################################################
+
+    private synchronized CompletableFuture<DashboardSummary> currentOrReload() {
+        if (cached == null || System.nanoTime() - cached.loadedAtNanos() > cacheTtl.toNanos()) {
+            cached = new CachedSummary(load(), System.nanoTime());
+        }
+        return cached.summary();
+    }
+
+    private synchronized void discard(CompletableFuture<DashboardSummary> summary) {
+        if (cached != null && cached.summary() == summary) {
+            cached = null;
+        }
+    }
+
+    private CompletableFuture<DashboardSummary> load() {
+        LocalDate today = LocalDate.now();
+        CompletableFuture<LoanStatusTotals> loans = CompletableFuture.supplyAsync(loanRepository::aggregateStatusTotals, executor);
+        CompletableFuture<Long> restricted = CompletableFuture.supplyAsync(() -> clientRepository.countByStatus(ClientStatus.RESTRICTED), executor);
+        CompletableFuture<List<ToolStatusTotals>> tools = CompletableFuture.supplyAsync(toolRepository::aggregateByStatus, executor);
+        CompletableFuture<Double> income = CompletableFuture.supplyAsync(() -> loanRepository.sumPaidOn(today), executor);
+
+        return CompletableFuture.allOf(loans, restricted, tools, income).thenApply(ignored -> {
+            Map<ToolStatus, Long> toolsByStatus = new EnumMap<>(ToolStatus.class);
+            for (ToolStatus status : ToolStatus.values()) {
+                toolsByStatus.put(status, 0L);
+            }
+            long unitsInRepair = 0;
+            for (ToolStatusTotals totals : tools.join()) {
+                toolsByStatus.put(totals.status(), totals.tools());
+                unitsInRepair += totals.inRepair();
+            }
+            LoanStatusTotals loanTotals = loans.join();
+            return new DashboardSummary(loanTotals.active(), loanTotals.late(), loanTotals.receivedUnpaid(), loanTotals.closed(),
+                    restricted.join(), Collections.unmodifiableMap(toolsByStatus), unitsInRepair, income.join(),
+                    LocalDateTime.now());
+        });
+    }
+}
@@ -0,0 +1,143 @@
+package app.services;
+
+import app.dtos.StoredResponse;
+import app.entities.IdempotencyKeyEntity;
+import app.exceptions.IdempotencyConflictException;
+import app.repositories.IdempotencyKeyRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final Duration ttl;
+    private final Duration processingLease;
+
+    // Respuestas completadas más usadas (LRU acotado); la tabla idempotency_keys es la fuente compartida entre instancias
+    private final Map<String, StoredResponse> cache;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              @Value("${idempotency.ttl:24h}") Duration ttl,
+                              @Value("${idempotency.processing-lease:2m}") Duration processingLease,
+                              @Value("${idempotency.cache.max-entries:10000}") int maxEntries) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.ttl = ttl;
+        this.processingLease = processingLease;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredResponse> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // Devuelve la respuesta guardada si la clave ya se completó, o reserva la clave para procesar la petición (vacío).
+    // Lanza IdempotencyConflictException si la petición original aún se procesa o la clave se usó para otra operación.
+    // Una reserva sin respuesta cuyo lease venció (la instancia cayó a mitad de la petición) la toma el reintento.
+    @Transactional
+    public Optional<StoredResponse> begin(String key, String fingerprint) {
+        StoredResponse cached = getCached(key);
+        if (cached != null) {
+            return Optional.of(checkFingerprint(cached, fingerprint));
+        }
+
+        Optional<IdempotencyKeyEntity> row = idempotencyKeyRepository.findById(key);
+        if (row.isPresent() && isExpired(row.get().getCreatedAt())) {
+            idempotencyKeyRepository.delete(row.get());
+            idempotencyKeyRepository.flush();
+            row = Optional.empty();
+        }
+        if (row.isPresent()) {
+            IdempotencyKeyEntity existing = row.get();
+            if (existing.getStatusCode() == null) {
+                checkFingerprint(existing.getFingerprint(), fingerprint);
+                LocalDateTime now = LocalDateTime.now();
+                if (existing.getReservedAt().isAfter(now.minus(processingLease))
+                        || idempotencyKeyRepository.takeOverExpiredReservation(key, now, now.minus(processingLease)) == 0) {
+                    throw new IdempotencyConflictException("A request with this Idempotency-Key is still being processed.");
+                }
+                log.warn("Idempotency-Key {} was left unfinished for over {}; retrying the request.", key, processingLease);
+                return Optional.empty();
+            }
+            StoredResponse stored = new StoredResponse(existing.getFingerprint(), existing.getStatusCode(),
+                    existing.getContentType(), existing.getResponseBody(), existing.getCreatedAt());
+            putCached(key, stored);
+            return Optional.of(checkFingerprint(stored, fingerprint));
+        }
+
+        try {
+            idempotencyKeyRepository.reserve(key, fingerprint, LocalDateTime.now());
+        } catch (DataIntegrityViolationException e) {
+            // Otra petición con la misma clave la reservó entre la lectura y el INSERT
+            throw new IdempotencyConflictException("A request with this Idempotency-Key is still being processed.");
+        }
+        return Optional.empty();
+    }
+
+    @Transactional
+    public void complete(String key, String fingerprint, int statusCode, String contentType, String body) {
+        idempotencyKeyRepository.complete(key, statusCode, contentType, body);
+        putCached(key, new StoredResponse(fingerprint, statusCode, contentType, body, LocalDateTime.now()));
+    }
+
+    // La petición original falló: se libera la clave para que el reintento vuelva a ejecutarse
+    @Transactional
+    public void release(String key) {
+        idempotencyKeyRepository.deleteById(key);
+    }
+
+    // Limpieza periódica de claves vencidas en la BD (en memoria se descartan al leerlas)
+    @Scheduled(cron = "${idempotency.purge-cron:0 0 * * * *}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = idempotencyKeyRepository.deleteCreatedBefore(LocalDateTime.now().minus(ttl));
+        if (deleted > 0) {
+            log.info("Purged {} expired idempotency keys.", deleted);
+        }
+    }
+
+    private StoredResponse checkFingerprint(StoredResponse stored, String fingerprint) {
+        checkFingerprint(stored.fingerprint(), fingerprint);
+        return stored;
+    }
+
+    private void checkFingerprint(String storedFingerprint, String fingerprint) {
+        if (!storedFingerprint.equals(fingerprint)) {
+            throw new IdempotencyConflictException("Idempotency-Key was already used for a different request.");
+        }
+    }
+
+    private boolean isExpired(LocalDateTime createdAt) {
+        return !createdAt.plus(ttl).isAfter(LocalDateTime.now());
+    }
+
+    private StoredResponse getCached(String key) {
+        synchronized (cache) {
+            StoredResponse stored = cache.get(key);
+            if (stored != null && isExpired(stored.createdAt())) {
+                cache.remove(key);
+                return null;
+            }
+            return stored;
+        }
+    }
+
+    private void putCached(String key, StoredResponse stored) {
+        synchronized (cache) {
+            cache.put(key, stored);
+        }
+    }
+}
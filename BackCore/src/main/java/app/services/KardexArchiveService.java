@@ -0,0 +1,85 @@
+package app.services;
+
+import app.dtos.KardexArchiveReport;
+import app.dtos.KardexMovementRow;
+import app.repositories.KardexArchiveStore;
+import app.repositories.KardexRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Mueve los movimientos del Kardex más antiguos que el horizonte (meses completos) a segmentos comprimidos en disco.
+// Cada segmento se escribe y se registra en el índice antes de borrar sus filas de la tabla: si el proceso se corta
+// entre ambos pasos las filas quedan en los dos lados (las lecturas no las duplican) y la siguiente ejecución
+// completa el borrado. Los totales diarios (kardex_daily_rollup) no se tocan.
+@Service
+@Slf4j
+public class KardexArchiveService {
+
+    private final KardexRepository kardexRepository;
+    private final KardexArchiveStore archiveStore;
+    private final TransactionTemplate transactionTemplate;
+    private final int horizonMonths;
+    private final int segmentRows;
+
+    public KardexArchiveService(KardexRepository kardexRepository, KardexArchiveStore archiveStore,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${kardex.archive.horizon-months:24}") int horizonMonths,
+                                @Value("${kardex.archive.segment-rows:100000}") int segmentRows) {
+        if (horizonMonths < 1 || segmentRows < 1) {
+            throw new IllegalArgumentException("Kardex archive horizon and segment size must be greater than zero.");
+        }
+        this.kardexRepository = kardexRepository;
+        this.archiveStore = archiveStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.horizonMonths = horizonMonths;
+        this.segmentRows = segmentRows;
+    }
+
+    // Desactivado por defecto (cron "-"); ejecución manual: POST /kardex/archive (ADMIN)
+    @Scheduled(cron = "${kardex.archive.cron:-}")
+    public void scheduledArchive() {
+        archive(LocalDate.now());
+    }
+
+    public synchronized KardexArchiveReport archive(LocalDate today) {
+        long startNanos = System.nanoTime();
+        LocalDateTime cutoff = today.withDayOfMonth(1).minusMonths(horizonMonths).atStartOfDay();
+
+        // Ejecución anterior cortada después de registrar el segmento y antes del borrado
+        archiveStore.archivedUpTo().ifPresent(upTo -> {
+            Integer leftovers = transactionTemplate.execute(status -> kardexRepository.deleteUpTo(upTo.movementDate(), upTo.id()));
+            if (leftovers != null && leftovers > 0) {
+                log.warn("Kardex archive: removed {} rows already archived by an interrupted run.", leftovers);
+            }
+        });
+
+        int segments = 0;
+        long rows = 0;
+        while (true) {
+            List<KardexMovementRow> batch = kardexRepository.findOldestRows(cutoff, Limit.of(segmentRows));
+            if (batch.isEmpty()) {
+                break;
+            }
+            archiveStore.append(batch);
+            KardexMovementRow last = batch.get(batch.size() - 1);
+            transactionTemplate.executeWithoutResult(status -> kardexRepository.deleteUpTo(last.movementDate(), last.id()));
+            segments++;
+            rows += batch.size();
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        log.info("Kardex archive before {}: {} rows moved into {} segments ({} ms).", cutoff, rows, segments, elapsedMillis);
+        return new KardexArchiveReport(cutoff, segments, rows, elapsedMillis);
+    }
+}
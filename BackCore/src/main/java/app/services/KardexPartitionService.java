@@ -0,0 +1,138 @@
+package app.services;
+
+import app.dtos.KardexPartitionReport;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Mantenimiento de la tabla kardex particionada por mes (PostgreSQL, RANGE sobre movement_date).
+// La conversión inicial la hace db/partition_kardex_by_month.sql; este proceso crea por adelantado las particiones
+// de los próximos meses y, si hay retención configurada, separa (DETACH) las más antiguas sin borrarlas.
+// Solo se separan particiones VACÍAS: sus movimientos ya deben estar en el archivo histórico (KardexArchiveService),
+// que la auditoría de stock, el backfill de totales y el historial sí cuentan. Separar filas sin archivar las haría
+// desaparecer del libro (y la reparación de stock sobrescribiría tools.stock con un Kardex incompleto).
+// Solo existe con kardex.partitioning.enabled=true.
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "kardex.partitioning.enabled", havingValue = "true")
+public class KardexPartitionService {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("kardex_p(\\d{4})(\\d{2})");
+
+    private static final String IS_PARTITIONED_SQL =
+            "SELECT COUNT(*) FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid " +
+            "WHERE c.relname = 'kardex' AND c.relnamespace = current_schema()::regnamespace";
+
+    private static final String PARTITIONS_SQL =
+            "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "JOIN pg_class p ON p.oid = i.inhparent " +
+            "WHERE p.relname = 'kardex' AND p.relnamespace = current_schema()::regnamespace";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+
+    public KardexPartitionService(JdbcTemplate jdbcTemplate,
+                                  @Value("${kardex.partitioning.months-ahead:3}") int monthsAhead,
+                                  @Value("${kardex.partitioning.retention-months:0}") int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    // Al iniciar y luego todos los días (por defecto 00:15): siempre hay particiones para los próximos meses
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${kardex.partitioning.cron:0 15 0 * * *}")
+    public void scheduledMaintenance() {
+        maintain(LocalDate.now());
+    }
+
+    // Crea las particiones del mes de 'today' y de los 'monthsAhead' siguientes; con retentionMonths > 0 separa las
+    // anteriores a (mes actual - retentionMonths). Cada sentencia es DDL independiente (autocommit).
+    public KardexPartitionReport maintain(LocalDate today) {
+        if (!isPartitioned()) {
+            log.warn("Kardex partitioning is enabled but table 'kardex' is not partitioned; run db/partition_kardex_by_month.sql.");
+            return new KardexPartitionReport(false, List.of(), List.of(), List.of());
+        }
+        YearMonth current = YearMonth.from(today);
+        List<String> existing = jdbcTemplate.queryForList(PARTITIONS_SQL, String.class);
+
+        List<String> created = new ArrayList<>();
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            if (!existing.contains(partitionName(month))) {
+                jdbcTemplate.execute(createPartitionSql(month));
+                created.add(partitionName(month));
+            }
+        }
+
+        List<String> detached = new ArrayList<>();
+        List<String> notArchived = new ArrayList<>();
+        if (retentionMonths > 0) {
+            YearMonth oldestKept = current.minusMonths(retentionMonths);
+            for (String partition : existing) {
+                YearMonth month = monthOf(partition);
+                if (month == null || !month.isBefore(oldestKept)) {
+                    continue;
+                }
+                if (hasRows(partition)) {
+                    notArchived.add(partition);
+                } else {
+                    jdbcTemplate.execute("ALTER TABLE kardex DETACH PARTITION " + partition);
+                    detached.add(partition);
+                }
+            }
+        }
+
+        if (!created.isEmpty() || !detached.isEmpty()) {
+            log.info("Kardex partitions: created {}, detached {}.", created, detached);
+        }
+        if (!notArchived.isEmpty()) {
+            log.warn("Kardex partitions {} are past retention but still hold movements; run the Kardex archive "
+                    + "(POST /kardex/archive) so they can be detached.", notArchived);
+        }
+        return new KardexPartitionReport(true, created, detached, notArchived);
+    }
+
+    private boolean isPartitioned() {
+        Integer count = jdbcTemplate.queryForObject(IS_PARTITIONED_SQL, Integer.class);
+        return count != null && count > 0;
+    }
+
+    // El nombre viene de pg_inherits y cumple PARTITION_NAME (sin riesgo de inyección)
+    private boolean hasRows(String partition) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + partition + ")", Boolean.class));
+    }
+
+    // kardex_p202503 = [2025-03-01, 2025-04-01)
+    static String partitionName(YearMonth month) {
+        return String.format("kardex_p%04d%02d", month.getYear(), month.getMonthValue());
+    }
+
+    static String createPartitionSql(YearMonth month) {
+        return "CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF kardex FOR VALUES FROM ('"
+                + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')";
+    }
+
+    // null para tablas que no siguen el formato (p. ej. kardex_default)
+    static YearMonth monthOf(String partitionName) {
+        Matcher matcher = PARTITION_NAME.matcher(partitionName);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    }
+}
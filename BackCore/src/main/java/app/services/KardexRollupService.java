@@ -0,0 +1,163 @@
+package app.services;
+
+import app.dtos.RollupBackfillReport;
+import app.entities.KardexDailyRollupEntity;
+import app.entities.KardexEntity;
+import app.entities.enums.MovementType;
+import app.exceptions.InvalidOperationException;
+import app.repositories.KardexArchiveStore;
+import app.repositories.KardexDailyRollupRepository;
+import app.repositories.ToolRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Totales diarios del Kardex (kardex_daily_rollup) por herramienta y tipo de movimiento.
+// KardexService entrega los movimientos de cada transacción justo antes de confirmarla; aquí se suman al día
+// correspondiente en esa misma transacción: movimientos y totales se confirman (o revierten) juntos, con una sola conexión.
+@Service
+@Slf4j
+public class KardexRollupService {
+
+    private final KardexDailyRollupRepository rollupRepository;
+    private final KardexArchiveStore archiveStore;
+    private final ToolRepository toolRepository;
+    private final TransactionTemplate newTransaction;
+    private final int backfillParallelism;
+
+    public KardexRollupService(KardexDailyRollupRepository rollupRepository, KardexArchiveStore archiveStore,
+                               ToolRepository toolRepository, PlatformTransactionManager transactionManager,
+                               @Value("${kardex.rollup.backfill-parallelism:4}") int backfillParallelism) {
+        this.rollupRepository = rollupRepository;
+        this.archiveStore = archiveStore;
+        this.toolRepository = toolRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.backfillParallelism = backfillParallelism;
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### ACTUALIZACIÓN INCREMENTAL #######################################################################
+    // ########################################################################################################################################################
+
+    // Movimientos recién escritos en la transacción actual: se agrupan por (día, herramienta, tipo) y se suma cada grupo
+    // con un MERGE. Antes se bloquean sus herramientas (en orden de ID; las que cambiaron stock ya lo están): dos
+    // transacciones que crean la misma fila de totales no chocan por clave duplicada, la segunda espera a que la
+    // primera confirme y su MERGE encuentra la fila.
+    @Transactional
+    public void add(Collection<KardexEntity> movements) {
+        if (movements.isEmpty()) {
+            return;
+        }
+        Map<RollupKey, long[]> totals = new LinkedHashMap<>();
+        for (KardexEntity movement : movements) {
+            RollupKey key = new RollupKey(movement.getMovementDate().toLocalDate(), movement.getTool().getId(), movement.getType());
+            long[] sums = totals.computeIfAbsent(key, k -> new long[2]);
+            sums[0]++;
+            sums[1] += movement.getQuantity() == null ? 0 : movement.getQuantity();
+        }
+        toolRepository.lockByIds(totals.keySet().stream().map(RollupKey::toolId).collect(Collectors.toCollection(TreeSet::new)));
+        totals.forEach((key, sums) -> rollupRepository.addToDay(key.day(), key.toolId(), key.type().name(), sums[0], sums[1]));
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### LECTURA #########################################################################################
+    // ########################################################################################################################################################
+
+    @Transactional(readOnly = true)
+    public List<KardexDailyRollupEntity> getRollup(LocalDate from, LocalDate to, Long toolId, MovementType type) {
+        validateRange(from, to);
+        return rollupRepository.findRollup(from, to, toolId, type);
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### BACKFILL ########################################################################################
+    // ########################################################################################################################################################
+
+    // Reconstruye [from, to] desde kardex en bloques de 'daysPerChunk' días, varios bloques en paralelo
+    // (una transacción por bloque: DELETE de esos días + INSERT ... SELECT agrupado).
+    // Pensado para días cerrados: durante el día actual los incrementos en curso podrían sumarse dos veces.
+    public RollupBackfillReport backfill(LocalDate from, LocalDate to, int daysPerChunk) {
+        validateRange(from, to);
+        if (daysPerChunk <= 0) {
+            throw new IllegalArgumentException("Days per chunk must be greater than zero.");
+        }
+        // Los días ya archivados no están en kardex: reconstruirlos borraría sus totales sin poder recalcularlos
+        archiveStore.archivedUpTo().ifPresent(upTo -> {
+            if (!from.isAfter(upTo.movementDate().toLocalDate())) {
+                throw new InvalidOperationException("Cannot backfill the rollup for archived days (up to "
+                        + upTo.movementDate().toLocalDate() + ").");
+            }
+        });
+        long startNanos = System.nanoTime();
+        List<LocalDate[]> chunks = new ArrayList<>();
+        for (LocalDate chunkStart = from; !chunkStart.isAfter(to); chunkStart = chunkStart.plusDays(daysPerChunk)) {
+            LocalDate chunkEnd = chunkStart.plusDays(daysPerChunk - 1L);
+            chunks.add(new LocalDate[] {chunkStart, chunkEnd.isAfter(to) ? to : chunkEnd});
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(backfillParallelism, chunks.size()));
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (LocalDate[] chunk : chunks) {
+                results.add(executor.submit(() -> rebuildDays(chunk[0], chunk[1])));
+            }
+            long rows = 0;
+            for (Future<Integer> result : results) {
+                rows += result.get();
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            log.info("Kardex rollup backfill {}..{}: {} rows in {} chunks ({} ms).", from, to, rows, chunks.size(), elapsedMillis);
+            return new RollupBackfillReport(from, to, chunks.size(), rows, elapsedMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Kardex rollup backfill was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Kardex rollup backfill failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int rebuildDays(LocalDate first, LocalDate last) {
+        Integer rows = newTransaction.execute(status -> {
+            rollupRepository.deleteDays(first, last);
+            return rollupRepository.insertAggregatedFromKardex(first.atStartOfDay(), last.plusDays(1).atStartOfDay());
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    private static void validateRange(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("From and to dates cannot be null.");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("To date cannot be before from date.");
+        }
+        if (ChronoUnit.DAYS.between(from, to) > 3660) {
+            throw new IllegalArgumentException("Date range cannot exceed 10 years.");
+        }
+    }
+
+    private record RollupKey(LocalDate day, Long toolId, MovementType type) {}
+}
@@ -1,38 +1,65 @@
 package app.services;
 
+import jakarta.persistence.EntityManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import app.dtos.KardexCursor;
+import app.dtos.KardexMovementRow;
+import app.dtos.KardexPage;
 import app.entities.KardexEntity;
 import app.entities.ToolEntity;
 import app.entities.UserEntity;
 import app.entities.enums.MovementType;
+import app.exceptions.InvalidOperationException;
 import app.exceptions.ResourceNotFoundException;
+import app.repositories.KardexArchiveStore;
 import app.repositories.KardexRepository;
 import app.repositories.ToolRepository;
 
+import org.springframework.data.domain.Limit;
+
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 public class KardexService {
 
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 500; // Filas por viaje a la BD en el streaming
+
     private final KardexRepository kardexRepository;
     private final ToolRepository toolRepository;
+    private final EntityManager entityManager;
+    private final KardexRollupService rollupService;
+    private final KardexArchiveStore archiveStore;
 
-    public KardexService(KardexRepository kardexRepository, ToolRepository toolRepository) {
+    public KardexService(KardexRepository kardexRepository, ToolRepository toolRepository, EntityManager entityManager,
+                         KardexRollupService rollupService, KardexArchiveStore archiveStore) {
         this.kardexRepository = kardexRepository;
         this.toolRepository = toolRepository;
+        this.entityManager = entityManager;
+        this.rollupService = rollupService;
+        this.archiveStore = archiveStore;
     }
 
     // ---------------------------------------------------------------------------------------------------------------------
+    // El movimiento queda en el buffer de la transacción y se inserta junto con los demás antes del commit
     @Transactional
     public void registerMovement(ToolEntity tool, MovementType type, int quantity, UserEntity user) {
-        // 1. Validar si la herramienta existe antes de registrar
-        if (tool == null || tool.getId() == null || !toolRepository.existsById(tool.getId())) {
+        // 1. Validar si la herramienta existe antes de registrar (una entidad gestionada ya existe: sin consulta extra)
+        if (tool == null || tool.getId() == null
+                || (!entityManager.contains(tool) && !toolRepository.existsById(tool.getId()))) {
             throw new ResourceNotFoundException("Cannot register movement for non-existent tool.");
         }
-        // 2. Crear y guardar el movimiento en Kardex
+        // 2. Crear el movimiento y encolarlo en el Kardex de la transacción
         KardexEntity movement = KardexEntity.builder()
                 .tool(tool)
                 .type(type)
@@ -40,45 +67,218 @@ public class KardexService {
                 .quantity(quantity)
                 .user(user)
                 .build();
-        kardexRepository.save(movement);
+        enqueue(List.of(movement));
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------------
+    // Registro de un mismo movimiento para varias herramientas ya cargadas (préstamo múltiple): un solo batch
+    @Transactional
+    public void registerMovements(List<ToolEntity> tools, MovementType type, int quantity, UserEntity user) {
+        if (tools.stream().anyMatch(tool -> tool == null || tool.getId() == null)) {
+            throw new ResourceNotFoundException("Cannot register movement for non-existent tool.");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<KardexEntity> movements = tools.stream()
+                .map(tool -> KardexEntity.builder()
+                        .tool(tool)
+                        .type(type)
+                        .movementDate(now)
+                        .quantity(quantity)
+                        .user(user)
+                        .build())
+                .toList();
+        enqueue(movements);
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------------
+    // ####################################### BUFFER DE KARDEX POR TRANSACCIÓN (write-behind) #######################################
+    // Los movimientos de una transacción se acumulan y se insertan en un solo batch justo antes del commit
+    // (ajustes, préstamos y devoluciones con N movimientos hacen un batch en vez de N INSERT). Un rollback los descarta.
+    // Sin transacción activa se insertan de inmediato. En el mismo momento se suman a los totales diarios
+    // (kardex_daily_rollup), dentro de la misma transacción: movimientos y totales se confirman juntos.
+    private void enqueue(List<KardexEntity> movements) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            kardexRepository.insertAllBatched(movements);
+            rollupService.add(movements);
+            return;
+        }
+        PendingMovements pending = currentPending();
+        if (pending == null) {
+            pending = new PendingMovements();
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.movements.addAll(movements);
+    }
+
+    // El buffer vive en la sincronización de la transacción: una transacción anidada (REQUIRES_NEW) tiene el suyo
+    private PendingMovements currentPending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingMovements pending && pending.owner() == this) {
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    // Inserta lo acumulado en la transacción actual. Se llama antes del commit y antes de leer el Kardex,
+    // para que una consulta en la misma transacción vea los movimientos recién registrados.
+    private void flushPending() {
+        PendingMovements pending = currentPending();
+        if (pending != null) {
+            pending.writePending();
+        }
+    }
+
+    private final class PendingMovements implements TransactionSynchronization {
+        private final List<KardexEntity> movements = new ArrayList<>();
+        private final List<KardexEntity> written = new ArrayList<>();
+
+        private KardexService owner() {
+            return KardexService.this;
+        }
+
+        private void writePending() {
+            if (movements.isEmpty()) {
+                return;
+            }
+            entityManager.flush(); // Herramientas/usuarios pendientes primero (FK de kardex)
+            kardexRepository.insertAllBatched(new ArrayList<>(movements));
+            written.addAll(movements);
+            movements.clear();
+        }
+
+        // Totales de todo lo escrito en la transacción (incluidos los flush previos a lecturas), una sola vez.
+        // Un fallo en los totales revierte también los movimientos: nunca quedan desalineados.
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            writePending();
+            rollupService.add(written);
+        }
     }
 
     // ---------------------------------------------------------------------------------------------------------------------
     @Transactional(readOnly = true)
-    public List<KardexEntity> getMovementsByTool(ToolEntity tool) {
+    public List<KardexMovementRow> getMovementsByTool(ToolEntity tool) {
         if (tool == null || tool.getId() == null) {
             throw new IllegalArgumentException("Tool entity cannot be null.");
         }
-        return kardexRepository.findByTool_Id(tool.getId());
+        flushPending();
+        return withArchived(archiveStore.findByToolId(tool.getId()), kardexRepository.findRowsByToolId(tool.getId()));
     }
 
     // ---------------------------------------------------------------------------------------------------------------------
     @Transactional(readOnly = true)
-    public List<KardexEntity> getMovementsByToolId(Long toolId) {
-        // 1. Validar que el ID no sea nulo
-        if (toolId == null) {
-            throw new IllegalArgumentException("Tool ID cannot be null.");
-        }
-        // 2. Verificar si la herramienta existe
-        if (!toolRepository.existsById(toolId)) {
-            throw new ResourceNotFoundException("Tool not found with id: " + toolId);
+    public List<KardexMovementRow> getMovementsByToolId(Long toolId) {
+        // 1. Validar el ID y que la herramienta exista
+        requireTool(toolId);
+        // 2. Buscar los movimientos por el ID de la herramienta
+        flushPending();
+        return withArchived(archiveStore.findByToolId(toolId), kardexRepository.findRowsByToolId(toolId));
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------------
+    @Transactional(readOnly = true)
+    public List<KardexMovementRow> getMovementsByDate(LocalDateTime startDate, LocalDateTime endDate) {
+        // 1. Validar fechas (no nulas y fin no anterior al inicio)
+        validateDateRange(startDate, endDate);
+        // 2. Consultar movimientos en el rango de fechas
+        flushPending();
+        List<KardexMovementRow> current = kardexRepository.findRowsByMovementDateBetween(startDate, endDate);
+        // 3. Solo si el rango llega a fechas ya archivadas se leen los segmentos
+        boolean reachesArchive = archiveStore.archivedUpTo()
+                .map(upTo -> !startDate.isAfter(upTo.movementDate()))
+                .orElse(false);
+        return reachesArchive ? withArchived(archiveStore.findByMovementDateBetween(startDate, endDate), current) : current;
+    }
+
+    // Une lo archivado con la tabla en orden (movement_date, id). Un movimiento en ambos lados (archivo interrumpido
+    // antes del borrado) se entrega una sola vez.
+    private static List<KardexMovementRow> withArchived(List<KardexMovementRow> archived, List<KardexMovementRow> current) {
+        if (archived.isEmpty()) {
+            return current;
         }
-        // 3. Buscar los movimientos por el ID de la herramienta
-        return kardexRepository.findByTool_Id(toolId);
+        Map<Long, KardexMovementRow> byId = new LinkedHashMap<>();
+        archived.forEach(row -> byId.put(row.id(), row));
+        current.forEach(row -> byId.put(row.id(), row));
+        return byId.values().stream()
+                .sorted(Comparator.comparing(KardexMovementRow::movementDate).thenComparing(KardexMovementRow::id))
+                .toList();
     }
 
     // ---------------------------------------------------------------------------------------------------------------------
+    // ####################################### HISTORIAL PAGINADO (keyset) Y STREAMING #######################################
+    // Orden (movement_date, id). El cursor de la respuesta apunta al último movimiento entregado: cada página cuesta lo mismo
+    // sin importar cuán atrás esté (sin OFFSET), y las filas son DTO planos (sin cargar Tool/User por movimiento).
+    // Páginas y streaming leen solo la tabla kardex: lo archivado se consulta con getMovementsByToolId/getMovementsByDate.
+    @Transactional(readOnly = true)
+    public KardexPage getMovementsPageByDate(LocalDateTime startDate, LocalDateTime endDate, String cursor, int size) {
+        validateDateRange(startDate, endDate);
+        KardexCursor after = cursor == null ? KardexCursor.startingAt(startDate) : KardexCursor.decode(cursor);
+        flushPending();
+        List<KardexMovementRow> rows = kardexRepository.findPageByMovementDate(
+                after.movementDate(), after.id(), endDate, Limit.of(validatePageSize(size) + 1));
+        return toPage(rows, size);
+    }
+
+    @Transactional(readOnly = true)
+    public KardexPage getMovementsPageByToolId(Long toolId, String cursor, int size) {
+        requireTool(toolId);
+        KardexCursor after = cursor == null ? KardexCursor.BEGINNING : KardexCursor.decode(cursor);
+        flushPending();
+        List<KardexMovementRow> rows = kardexRepository.findPageByToolId(
+                toolId, after.movementDate(), after.id(), Limit.of(validatePageSize(size) + 1));
+        return toPage(rows, size);
+    }
+
+    // Entrega los movimientos a 'consumer' a medida que se leen del cursor JDBC (memoria constante sin importar el rango).
+    // La transacción mantiene abierto el cursor del servidor mientras dura el recorrido.
+    @Transactional(readOnly = true)
+    public void streamMovementsByDate(LocalDateTime startDate, LocalDateTime endDate, Consumer<KardexMovementRow> consumer) {
+        validateDateRange(startDate, endDate);
+        kardexRepository.streamByMovementDate(startDate, endDate, STREAM_FETCH_SIZE, consumer);
+    }
+
     @Transactional(readOnly = true)
-    public List<KardexEntity> getMovementsByDate(LocalDateTime startDate, LocalDateTime endDate) {
-        // 1. Validar fechas 
+    public void streamMovementsByToolId(Long toolId, Consumer<KardexMovementRow> consumer) {
+        requireTool(toolId);
+        kardexRepository.streamByToolId(toolId, STREAM_FETCH_SIZE, consumer);
+    }
+
+    // Validaciones públicas: el streaming las ejecuta antes de empezar a escribir la respuesta (después ya no hay código HTTP)
+    public void validateDateRange(LocalDateTime startDate, LocalDateTime endDate) {
         if (startDate == null || endDate == null) {
             throw new IllegalArgumentException("Start and end dates cannot be null.");
         }
-        // 2. Validar que la fecha de fin no sea anterior a la de inicio
         if (endDate.isBefore(startDate)) {
             throw new IllegalArgumentException("End date cannot be before start date.");
         }
-        // 3. Consultar movimientos en el rango de fechas
-        return kardexRepository.findByMovementDateBetween(startDate, endDate);
     }
-}
\ No newline at end of file
+
+    public void requireTool(Long toolId) {
+        if (toolId == null) {
+            throw new IllegalArgumentException("Tool ID cannot be null.");
+        }
+        if (!toolRepository.existsById(toolId)) {
+            throw new ResourceNotFoundException("Tool not found with id: " + toolId);
+        }
+    }
+
+    private static int validatePageSize(int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new InvalidOperationException("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        return size;
+    }
+
+    // Se pide una fila extra para saber si hay página siguiente sin un COUNT
+    private static KardexPage toPage(List<KardexMovementRow> rows, int size) {
+        if (rows.size() <= size) {
+            return new KardexPage(rows, null);
+        }
+        List<KardexMovementRow> items = rows.subList(0, size);
+        return new KardexPage(List.copyOf(items), KardexCursor.after(items.get(size - 1)).encode());
+    }
+}
@@ -1,12 +1,19 @@
 package app.services;
 
+import app.dtos.BatchLoanLine;
+import app.dtos.BatchReturnLine;
+import app.dtos.BatchReturnResult;
+import app.dtos.ClientLoanStanding;
+import app.dtos.TariffSnapshot;
 import app.entities.ClientEntity;
+import app.entities.ClientLoanCounterEntity;
 import app.entities.LoanEntity;
 import app.entities.ToolEntity;
 import app.entities.UserEntity;
 import app.entities.enums.ClientStatus;
 import app.entities.enums.LoanStatus;
 import app.entities.enums.ToolStatus;
+import app.events.LoanChangedEvent;
 import app.exceptions.InvalidOperationException; 
 import app.exceptions.ResourceNotFoundException;
 import app.repositories.ClientRepository;
@@ -14,8 +21,15 @@ import app.repositories.LoanRepository;
 import app.repositories.ToolRepository;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -28,8 +42,13 @@ public class LoanService {
     private final ToolService toolService;
     private final TariffService tariffService;
     private final ClientService clientService;
+    private final ClientLoanCounterService clientLoanCounterService;
+    private final ToolLoanCountService toolLoanCountService;
+    private final ApplicationEventPublisher eventPublisher;
 
     private static final String LOAN_NOT_FOUND_MESSAGE = "Loan not found with id: ";
+    private static final int MAX_ACTIVE_LOANS = 5;
+    private static final List<LoanStatus> HELD_STATUSES = List.of(LoanStatus.ACTIVE, LoanStatus.LATE);
 
     // --- Constructor ---
     public LoanService(LoanRepository loanRepository,
@@ -37,13 +56,19 @@ public class LoanService {
                        ToolRepository toolRepository,
                        ToolService toolService,
                        TariffService tariffService,
-                       ClientService clientService) {
+                       ClientService clientService,
+                       ClientLoanCounterService clientLoanCounterService,
+                       ToolLoanCountService toolLoanCountService,
+                       ApplicationEventPublisher eventPublisher) {
         this.loanRepository = loanRepository;
         this.clientRepository = clientRepository;
         this.toolRepository = toolRepository;
         this.toolService = toolService;
         this.tariffService = tariffService;
         this.clientService = clientService;
+        this.clientLoanCounterService = clientLoanCounterService;
+        this.toolLoanCountService = toolLoanCountService;
+        this.eventPublisher = eventPublisher;
     }
 
     // ########################################################################################################################################################
@@ -75,19 +100,20 @@ public class LoanService {
             throw new InvalidOperationException("Client is restricted and cannot request loans.");
         }
 
+        // Situación del cliente (atrasos, deudas, activos, herramienta repetida) desde client_loan_counters
+        ClientLoanStanding standing = clientLoanCounterService.getStanding(clientId, toolId);
+
         // 2. Verificar préstamos ATRASADOS (STATUS LATE)
-        long lateLoanCount = loanRepository.countByClientAndStatus(client, LoanStatus.LATE);
-        if (lateLoanCount > 0) {
-            throw new InvalidOperationException("Client has " + lateLoanCount + " late loan(s) that must be returned.");
+        if (standing.lateCount() > 0) {
+            throw new InvalidOperationException("Client has " + standing.lateCount() + " late loan(s) that must be returned.");
         }
 
         // 3. Verificar DEUDAS PENDIENTES (STATUS RECEIVED con totalPenalty > 0)
-        List<LoanEntity> unpaidReceivedLoans = loanRepository.findByClientAndStatusAndTotalPenaltyGreaterThan(client, LoanStatus.RECEIVED, 0.0);
-        if (!unpaidReceivedLoans.isEmpty()) {
-            throw new InvalidOperationException("Client has outstanding payments due for " + unpaidReceivedLoans.size() + " previous loan(s).");
+        if (standing.unpaidCount() > 0) {
+            throw new InvalidOperationException("Client has outstanding payments due for " + standing.unpaidCount() + " previous loan(s).");
         }
 
-        // 4. Disponibilidad de Herramienta
+        // 4. Disponibilidad de Herramienta (chequeo rápido; la verificación definitiva es el UPDATE condicional de ToolService)
         if (tool.getStatus() != ToolStatus.AVAILABLE || tool.getStock() == null || tool.getStock() <= 0) {
             throw new InvalidOperationException("Tool is not available or out of stock.");
         }
@@ -100,18 +126,12 @@ public class LoanService {
         }
 
         // 6. Límite de 5 Préstamos Activos/Atrasados (Ya incluye LATE, está bien)
-        long activeOrLateCount = loanRepository.findByClientAndStatus(client, LoanStatus.ACTIVE).size() + lateLoanCount;
-        if (activeOrLateCount >= 5) {
+        if (standing.activeOrLateCount() >= MAX_ACTIVE_LOANS) {
             throw new InvalidOperationException("Client has reached the maximum number of active/late loans (5).");
         }
 
         // 7. No Repetir Herramienta Activa/Atrasada (Ya incluye LATE, está bien)
-        boolean hasSameToolActiveOrLate = loanRepository.findByClientAndStatus(client, LoanStatus.ACTIVE).stream()
-                .anyMatch(l -> l.getTool() != null && l.getTool().getId().equals(toolId))
-                ||
-                loanRepository.findByClientAndStatus(client, LoanStatus.LATE).stream() // Re-chequeo por si acaso
-                .anyMatch(l -> l.getTool() != null && l.getTool().getId().equals(toolId));
-        if (hasSameToolActiveOrLate) {
+        if (standing.toolHeld()) {
             throw new InvalidOperationException("Client already has an active or late loan for this tool.");
         }
 
@@ -126,7 +146,103 @@ public class LoanService {
                 .build();
 
         toolService.decrementStockForLoan(tool, user);
-        return loanRepository.save(loan);
+        LoanEntity savedLoan = loanRepository.save(loan);
+        clientLoanCounterService.onLoanCreated(clientId);
+        toolLoanCountService.onLoansCreated(startDate, List.of(toolId));
+        eventPublisher.publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.CREATED, 1));
+        return savedLoan;
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### PRÉSTAMO MÚLTIPLE ##############################################################################
+    // ########################################################################################################################################################
+    // Varias herramientas para un mismo cliente en una sola transacción: el cliente se valida una vez,
+    // el stock se descuenta con un solo UPDATE y préstamos/Kardex se insertan en batch. Todo o nada.
+    @Transactional
+    public List<LoanEntity> createLoanBatch(Long clientId, LocalDate startDate, List<BatchLoanLine> lines, UserEntity user) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("At least one loan line is required.");
+        }
+        // 0. Obtener Cliente ---
+        ClientEntity client = clientRepository.findById(clientId)
+                .orElseThrow(() -> new ResourceNotFoundException("Client not found with id: " + clientId));
+
+        //  ############################################# Validaciones de Negocio (una vez por lote) #############################################
+        // 1. Estado General del Cliente
+        if (client.getStatus() == ClientStatus.RESTRICTED) {
+            throw new InvalidOperationException("Client is restricted and cannot request loans.");
+        }
+
+        ClientLoanCounterEntity counters = clientLoanCounterService.getCounters(clientId);
+
+        // 2. Verificar préstamos ATRASADOS (STATUS LATE)
+        if (counters.getLateCount() > 0) {
+            throw new InvalidOperationException("Client has " + counters.getLateCount() + " late loan(s) that must be returned.");
+        }
+
+        // 3. Verificar DEUDAS PENDIENTES (STATUS RECEIVED con totalPenalty > 0)
+        if (counters.getUnpaidCount() > 0) {
+            throw new InvalidOperationException("Client has outstanding payments due for " + counters.getUnpaidCount() + " previous loan(s).");
+        }
+
+        // 4. Herramientas del lote: sin repetir y existentes (una sola consulta)
+        List<Long> toolIds = lines.stream().map(BatchLoanLine::toolId).toList();
+        if (new HashSet<>(toolIds).size() != toolIds.size()) {
+            throw new InvalidOperationException("The same tool cannot be requested more than once in a loan batch.");
+        }
+        Map<Long, ToolEntity> toolsById = toolRepository.findAllById(toolIds).stream()
+                .collect(Collectors.toMap(ToolEntity::getId, Function.identity()));
+        for (Long toolId : toolIds) {
+            ToolEntity tool = toolsById.get(toolId);
+            if (tool == null) {
+                throw new ResourceNotFoundException("Tool not found with id: " + toolId);
+            }
+            // Chequeo rápido; la verificación definitiva es el UPDATE condicional de ToolService
+            if (tool.getStatus() != ToolStatus.AVAILABLE || tool.getStock() == null || tool.getStock() <= 0) {
+                throw new InvalidOperationException("Tool " + toolId + " is not available or out of stock.");
+            }
+        }
+
+        // 5. Fechas Válidas
+        LocalDate loanStart = startDate == null ? LocalDate.now() : startDate;
+        for (BatchLoanLine line : lines) {
+            if (line.dueDate() == null) throw new IllegalArgumentException("dueDate is required.");
+            if (line.dueDate().isBefore(loanStart)) {
+                throw new IllegalArgumentException("Due date cannot be before start date.");
+            }
+        }
+
+        // 6. Límite de 5 Préstamos Activos/Atrasados, contando todo el lote
+        if (counters.getActiveCount() + counters.getLateCount() + lines.size() > MAX_ACTIVE_LOANS) {
+            throw new InvalidOperationException("Loan batch would exceed the maximum number of active/late loans (" + MAX_ACTIVE_LOANS + ").");
+        }
+
+        // 7. No Repetir Herramienta Activa/Atrasada
+        List<Long> heldToolIds = loanRepository.findHeldToolIds(clientId, toolIds, HELD_STATUSES);
+        if (!heldToolIds.isEmpty()) {
+            throw new InvalidOperationException("Client already has an active or late loan for tool(s): " + heldToolIds);
+        }
+
+        // --- Descontar stock, crear Préstamos y actualizar contadores ---
+        List<ToolEntity> tools = toolIds.stream().map(toolsById::get).toList();
+        toolService.decrementStockForLoans(tools, user);
+
+        List<LoanEntity> loans = new ArrayList<>(lines.size());
+        for (BatchLoanLine line : lines) {
+            loans.add(LoanEntity.builder()
+                    .client(client)
+                    .tool(toolsById.get(line.toolId()))
+                    .startDate(loanStart)
+                    .dueDate(line.dueDate())
+                    .status(LoanStatus.ACTIVE)
+                    .totalPenalty(0.0)
+                    .build());
+        }
+        loanRepository.insertAllBatched(loans);
+        clientLoanCounterService.onLoansCreated(clientId, loans.size());
+        toolLoanCountService.onLoansCreated(loanStart, toolIds);
+        eventPublisher.publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.CREATED, loans.size()));
+        return loans;
     }
 
     // ########################################################################################################################################################
@@ -147,8 +263,8 @@ public class LoanService {
 
     // MÉTODO PRINCIPAL PARA DEVOLVER PRÉSTAMO
     private LoanEntity internalReturnLoanLogic(Long loanId, Long toolId, boolean damaged, boolean irreparable, UserEntity user, LocalDate returnDate) {
-        // 0. Obtener Préstamo y Herramienta ---
-        LoanEntity loan = loanRepository.findById(loanId)
+        // 0. Obtener Préstamo (bloqueado hasta confirmar) y Herramienta ---
+        LoanEntity loan = loanRepository.findByIdForUpdate(loanId)
                 .orElseThrow(() -> new ResourceNotFoundException(LOAN_NOT_FOUND_MESSAGE + loanId));
 
         // 1. Verificar que el toolId recibido coincida con el del préstamo original
@@ -158,7 +274,8 @@ public class LoanService {
         ToolEntity tool = loan.getTool(); // Ya tenemos la herramienta desde el préstamo
 
         // --- Validar estado del préstamo ---
-        if (loan.getStatus() != LoanStatus.ACTIVE && loan.getStatus() != LoanStatus.LATE) {
+        LoanStatus previousStatus = loan.getStatus();
+        if (previousStatus != LoanStatus.ACTIVE && previousStatus != LoanStatus.LATE) {
             throw new InvalidOperationException("Loan is already closed and cannot be returned again.");
         }
 
@@ -168,35 +285,11 @@ public class LoanService {
             throw new IllegalArgumentException("Return date cannot be before the loan start date.");
         }
 
-        // ----------------------------------------------------------------------------------------------------------------------------------------------------
-        // --- Calcular Costo de Arriendo (ÉPICA 4 / RN Épica 2) ---
-        long rentalDays = ChronoUnit.DAYS.between(loan.getStartDate(), loan.getDueDate());
-        // RN: tarifa mínima siempre es 1 día
-        if (rentalDays < 1) {
-            rentalDays = 1;
-        }
-        // Obtener la tarifa diaria de arriendo (Necesita método en TariffService)
-        double rentalCost = rentalDays * tariffService.getDailyRentFee();
-        
-        // ----------------------------------------------------------------------------------------------------------------------------------------------------
-        // --- Calcular Multa por Atraso (ÉPICA 2 / 4) ---
-        long delayDays = ChronoUnit.DAYS.between(loan.getDueDate(), returnDate);
-        double lateFee = 0.0;
-        if (delayDays > 0) {
-            lateFee = delayDays * tariffService.getDailyLateFee();
-        }
-
-        // ----------------------------------------------------------------------------------------------------------------------------------------------------
-        // --- Calcular Penalidades por Daño (ÉPICA 1 / 2 / 4) ---
-        double damagePenalty = 0.0;
+        // --- Efectos sobre la herramienta (ÉPICA 1 / 2) ---
         if (damaged) {
             if (irreparable) {
-                // Baja definitiva: cobrar reposición
-                damagePenalty = tool.getReplacementValue();
                 toolService.markAsDecommissioned(tool, user); // Esto ya registra DECOMMISSION en Kardex
             } else {
-                // Reparación: cobrar tarifa de reparación
-                damagePenalty = tariffService.getRepairFee();
                 toolService.markAsRepairing(tool, user); // Esto ya registra REPAIR en Kardex y ajusta stock
             }
         } else {
@@ -204,30 +297,141 @@ public class LoanService {
             toolService.incrementStockForReturn(tool, user); // Esto ya registra RETURN en Kardex
         }
 
-        // ----------------------------------------------------------------------------------------------------------------------------------------------------
-        // --- Calcular Total a Pagar y Actualizar Préstamo ---
-        boolean ON_TIME = returnDate.isBefore(loan.getDueDate()) || returnDate.isEqual(loan.getDueDate());
-        boolean DELAYED = returnDate.isAfter(loan.getDueDate());
-        
-        if (ON_TIME) {
-            double totalAmountDue = rentalCost + damagePenalty;
-            loan.setTotalPenalty(totalAmountDue);
-        } else if (DELAYED) {
-            double totalAmountDue = rentalCost + lateFee + damagePenalty;
-            loan.setTotalPenalty(totalAmountDue);
-        }
-
+        // --- Calcular Total a Pagar y Actualizar Préstamo (tarifas en memoria) ---
+        loan.setTotalPenalty(calculateAmountDue(loan, returnDate, damaged, irreparable, tariffService.getFees()));
         loan.setReturnDate(returnDate);
         loan.setStatus(LoanStatus.RECEIVED); // Se recibe la herramienta, pendiente de pago
 
         // --- Guardar Préstamo ---
         LoanEntity savedLoan = loanRepository.save(loan);
+        clientLoanCounterService.onLoanReturned(loan.getClient().getId(), previousStatus, loan.getTotalPenalty());
         clientService.updateStatus(loan.getClient().getId(), ClientStatus.RESTRICTED); // Cliente queda RESTRINGIDO hasta pagar
+        eventPublisher.publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.RETURNED, 1));
 
         // Devolver el préstamo actualizado
         return savedLoan;
     }
 
+    // Total a pagar al devolver (cálculo puro en RentalPricingEngine)
+    private double calculateAmountDue(LoanEntity loan, LocalDate returnDate, boolean damaged, boolean irreparable, TariffSnapshot tariff) {
+        return RentalPricingEngine.price(
+                loan.getStartDate().toEpochDay(), loan.getDueDate().toEpochDay(), returnDate.toEpochDay(),
+                damaged, irreparable, loan.getTool().getReplacementValue(), tariff).total();
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### DEVOLUCIÓN MÚLTIPLE ############################################################################
+    // ########################################################################################################################################################
+    // Devoluciones del buzón: préstamos y herramientas en una consulta, tarifas una vez, stock/Kardex en batch y
+    // cada cliente restringido una sola vez. Las líneas inválidas se informan en el resultado sin abortar las demás.
+    @Transactional
+    public List<BatchReturnResult> returnLoanBatch(List<BatchReturnLine> lines, UserEntity user) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("At least one return line is required.");
+        }
+        // 0. Obtener Préstamos (con herramienta y cliente) y Tarifas ---
+        Set<Long> loanIds = lines.stream().map(BatchReturnLine::loanId).collect(Collectors.toSet());
+        // Bloqueo en orden de ID antes de leer estados (ver findByIdForUpdate)
+        Map<Long, LoanEntity> loansById = loanRepository.lockAllWithToolAndClientByIdIn(loanIds).stream()
+                .collect(Collectors.toMap(LoanEntity::getId, Function.identity()));
+        TariffSnapshot tariff = tariffService.getFees();
+
+        List<BatchReturnResult> results = new ArrayList<>(lines.size());
+        Set<Long> processedLoanIds = new HashSet<>();
+        List<LoanEntity> returnedLoans = new ArrayList<>();
+        List<ToolEntity> toolsBackInStock = new ArrayList<>();
+        List<ToolEntity> toolsToRepair = new ArrayList<>();
+        List<ToolEntity> toolsToDecommission = new ArrayList<>();
+        Map<Long, ClientReturnTotals> totalsByClient = new LinkedHashMap<>();
+
+        for (BatchReturnLine line : lines) {
+            LoanEntity loan = loansById.get(line.loanId());
+            LocalDate returnDate = line.returnDate() == null ? LocalDate.now() : line.returnDate();
+            String error = validateReturnLine(line, loan, returnDate, processedLoanIds.add(line.loanId()));
+            if (error != null) {
+                results.add(BatchReturnResult.failed(line.loanId(), error));
+                continue;
+            }
+
+            // --- Efectos sobre la herramienta (se aplican en batch al final) ---
+            if (line.damaged()) {
+                (line.irreparable() ? toolsToDecommission : toolsToRepair).add(loan.getTool());
+            } else {
+                toolsBackInStock.add(loan.getTool());
+            }
+
+            // --- Calcular Total a Pagar y Actualizar Préstamo ---
+            LoanStatus previousStatus = loan.getStatus();
+            loan.setTotalPenalty(calculateAmountDue(loan, returnDate, line.damaged(), line.irreparable(), tariff));
+            loan.setReturnDate(returnDate);
+            loan.setStatus(LoanStatus.RECEIVED); // Se recibe la herramienta, pendiente de pago
+            returnedLoans.add(loan);
+            totalsByClient.computeIfAbsent(loan.getClient().getId(), id -> new ClientReturnTotals(loan.getClient()))
+                    .add(previousStatus, loan.getTotalPenalty());
+            results.add(BatchReturnResult.returned(loan.getId(), loan.getTotalPenalty()));
+        }
+
+        if (!returnedLoans.isEmpty()) {
+            // Cambios de entidades antes del UPDATE de stock por JDBC (incrementStockForReturns hace flush)
+            toolService.markAllAsRepairing(toolsToRepair, user);
+            toolService.markAllAsDecommissioned(toolsToDecommission, user);
+            toolService.incrementStockForReturns(toolsBackInStock, user);
+            loanRepository.saveAll(returnedLoans);
+
+            // Contadores y restricción: una vez por cliente afectado
+            totalsByClient.forEach((clientId, totals) -> clientLoanCounterService.onLoansReturned(
+                    clientId, totals.fromActive, totals.fromLate, totals.unpaid, totals.penalty));
+            clientService.restrictClients(totalsByClient.values().stream().map(totals -> totals.client).toList());
+            eventPublisher.publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.RETURNED, returnedLoans.size()));
+        }
+        return results;
+    }
+
+    // Mismas validaciones que la devolución individual; devuelve el mensaje de error o null si la línea es válida
+    private String validateReturnLine(BatchReturnLine line, LoanEntity loan, LocalDate returnDate, boolean firstOccurrence) {
+        if (!firstOccurrence) {
+            return "Loan " + line.loanId() + " appears more than once in the batch.";
+        }
+        if (loan == null) {
+            return LOAN_NOT_FOUND_MESSAGE + line.loanId();
+        }
+        if (!loan.getTool().getId().equals(line.toolId())) {
+            return "Tool ID (" + line.toolId() + ") does not match the tool ID in the loan (" + loan.getTool().getId() + ").";
+        }
+        if (loan.getStatus() != LoanStatus.ACTIVE && loan.getStatus() != LoanStatus.LATE) {
+            return "Loan is already closed and cannot be returned again.";
+        }
+        if (returnDate.isBefore(loan.getStartDate())) {
+            return "Return date cannot be before the loan start date.";
+        }
+        if (line.damaged() && loan.getTool().getStatus() == ToolStatus.DECOMMISSIONED) {
+            return line.irreparable() ? "Tool is already decommissioned." : "Cannot mark a decommissioned tool as repairing.";
+        }
+        return null;
+    }
+
+    // Acumulado de devoluciones por cliente para actualizar sus contadores una sola vez
+    private static final class ClientReturnTotals {
+        private final ClientEntity client;
+        private long fromActive;
+        private long fromLate;
+        private long unpaid;
+        private double penalty;
+
+        private ClientReturnTotals(ClientEntity client) {
+            this.client = client;
+        }
+
+        private void add(LoanStatus previousStatus, double totalPenalty) {
+            if (previousStatus == LoanStatus.ACTIVE) fromActive++;
+            if (previousStatus == LoanStatus.LATE) fromLate++;
+            if (totalPenalty > 0) {
+                unpaid++;
+                penalty += totalPenalty;
+            }
+        }
+    }
+
     // ########################################################################################################################################################
     // ####################################################### OTROS METODOS ##################################################################################
     // ########################################################################################################################################################
@@ -235,8 +439,8 @@ public class LoanService {
     // --- MÉTODO MODIFICADO PARA MARCAR COMO PAGADO (SOLO PAGA, NO ACTIVA) ---
     @Transactional
     public LoanEntity markLoanAsPaid(Long loanId) {
-        // 1. Encontrar el préstamo
-        LoanEntity loan = loanRepository.findById(loanId)
+        // 1. Encontrar el préstamo (bloqueado hasta confirmar: dos pagos simultáneos no pueden cerrarlo ambos)
+        LoanEntity loan = loanRepository.findByIdForUpdate(loanId)
                 .orElseThrow(() -> new ResourceNotFoundException(LOAN_NOT_FOUND_MESSAGE + loanId));
 
         // 2. Validar que sea un préstamo RECIBIDO y con deuda
@@ -245,9 +449,14 @@ public class LoanService {
         }
 
         // 3. Marcar como pagado (penalidad a 0) y CERRAR el préstamo
+        double settledPenalty = loan.getTotalPenalty();
+        loan.setPaidAmount(settledPenalty);
+        loan.setPaidDate(LocalDate.now());
         loan.setTotalPenalty(0.0);
         loan.setStatus(LoanStatus.CLOSED); // <- Importante: pasa a CLOSED
         LoanEntity savedLoan = loanRepository.save(loan);
+        clientLoanCounterService.onLoanPaid(loan.getClient().getId(), settledPenalty);
+        eventPublisher.publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.PAID, 1));
 
         // 4. NO intentamos reactivar al cliente aquí. Devolvemos el préstamo actualizado.
         return savedLoan;
@@ -0,0 +1,24 @@
+package app.services;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Ejecución programada del barrido de atrasos (por defecto 00:05 todos los días).
+// loans.overdue-sweep.enabled=false quita solo este disparador: el barrido manual (POST /loans/overdue/sweep)
+// y los demás procesos programados siguen funcionando.
+@Component
+@ConditionalOnProperty(name = "loans.overdue-sweep.enabled", havingValue = "true", matchIfMissing = true)
+public class OverdueLoanSweepScheduler {
+
+    private final OverdueLoanSweepService sweepService;
+
+    public OverdueLoanSweepScheduler(OverdueLoanSweepService sweepService) {
+        this.sweepService = sweepService;
+    }
+
+    @Scheduled(cron = "${loans.overdue-sweep.cron:0 5 0 * * *}")
+    public void scheduledSweep() {
+        sweepService.sweepWithDefaults();
+    }
+}
@@ -0,0 +1,117 @@
+package app.services;
+
+import app.dtos.OverdueSweepReport;
+import app.events.LoanChangedEvent;
+import app.repositories.ClientLoanCounterRepository;
+import app.repositories.ClientRepository;
+import app.repositories.LoanRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Service
+@Slf4j
+public class OverdueLoanSweepService {
+
+    static final String LOANS_METRIC = "loans.overdue.sweep.loans";
+    static final String CLIENTS_METRIC = "loans.overdue.sweep.clients";
+    static final String CHUNK_TIMER = "loans.overdue.sweep.chunk";
+
+    private final LoanRepository loanRepository;
+    private final ClientRepository clientRepository;
+    private final ClientLoanCounterRepository counterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter loansCounter;
+    private final Counter clientsCounter;
+    private final Timer chunkTimer;
+    private final int defaultChunkSize;
+
+    public OverdueLoanSweepService(LoanRepository loanRepository,
+                                   ClientRepository clientRepository,
+                                   ClientLoanCounterRepository counterRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   ApplicationEventPublisher eventPublisher,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${loans.overdue-sweep.chunk-size:5000}") int defaultChunkSize) {
+        this.loanRepository = loanRepository;
+        this.clientRepository = clientRepository;
+        this.counterRepository = counterRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.loansCounter = Counter.builder(LOANS_METRIC)
+                .description("Préstamos ACTIVE vencidos pasados a LATE").register(meterRegistry);
+        this.clientsCounter = Counter.builder(CLIENTS_METRIC)
+                .description("Clientes restringidos por préstamos vencidos").register(meterRegistry);
+        this.chunkTimer = Timer.builder(CHUNK_TIMER)
+                .description("Duración de cada bloque del barrido de atrasos").register(meterRegistry);
+        this.defaultChunkSize = defaultChunkSize;
+    }
+
+    // Barrido de hoy con el tamaño de bloque configurado (lo dispara OverdueLoanSweepScheduler)
+    public OverdueSweepReport sweepWithDefaults() {
+        return sweep(LocalDate.now(), defaultChunkSize);
+    }
+
+    // Pasa a LATE todos los préstamos ACTIVE con dueDate < today, sin cargar entidades: por cada bloque de IDs
+    // se ejecutan tres UPDATE (contadores, clientes, préstamos) en una sola transacción.
+    // Los bloques son rangos de IDs que arrancan en el siguiente préstamo vencido, así los huecos no cuestan nada.
+    public OverdueSweepReport sweep(LocalDate today, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be greater than zero.");
+        }
+        long startNanos = System.nanoTime();
+        long chunks = 0;
+        long loansMarked = 0;
+        long clientsRestricted = 0;
+        Long afterId = 0L;
+
+        Long fromId;
+        while ((fromId = loanRepository.findFirstOverdueIdAfter(afterId, today)) != null) {
+            final Long from = fromId;
+            final Long to = fromId + chunkSize - 1;
+            ChunkResult chunk = chunkTimer.record(() -> transactionTemplate.execute(status -> sweepChunk(from, to, today)));
+            chunks++;
+            if (chunk != null) {
+                loansMarked += chunk.loansMarked();
+                clientsRestricted += chunk.clientsRestricted();
+                loansCounter.increment(chunk.loansMarked());
+                clientsCounter.increment(chunk.clientsRestricted());
+                if (chunk.loansMarked() > 0) {
+                    // Bloque ya confirmado: los reportes en caché dejan de valer desde ahora, no al final del barrido
+                    eventPublisher.publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.MARKED_LATE, chunk.loansMarked()));
+                }
+            }
+            afterId = to;
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        log.info("Overdue sweep for {}: {} loans marked LATE, {} clients restricted in {} chunks ({} ms).",
+                today, loansMarked, clientsRestricted, chunks, elapsedMillis);
+        return new OverdueSweepReport(chunks, loansMarked, clientsRestricted, elapsedMillis);
+    }
+
+    // El orden importa: contadores y clientes se calculan sobre los préstamos que aún están ACTIVE.
+    // Las filas se bloquean primero para que una devolución concurrente no cambie ese conjunto entre los UPDATE.
+    private ChunkResult sweepChunk(Long fromId, Long toId, LocalDate today) {
+        if (loanRepository.lockOverdueIds(fromId, toId, today).isEmpty()) {
+            return new ChunkResult(0, 0);
+        }
+        counterRepository.moveOverdueToLate(fromId, toId, today);
+        int restricted = clientRepository.restrictClientsWithOverdueLoans(fromId, toId, today);
+        int marked = loanRepository.markOverdueAsLate(fromId, toId, today);
+        return new ChunkResult(marked, restricted);
+    }
+
+    private record ChunkResult(int loansMarked, int clientsRestricted) {}
+}
@@ -0,0 +1,30 @@
+package app.services;
+
+import app.dtos.RentalCharge;
+import app.dtos.TariffSnapshot;
+
+// Cálculo del cobro de un préstamo sin estado ni acceso a BD: fechas en epoch-days y montos en pesos enteros.
+// Usado por devoluciones (individual y múltiple); sirve también para cotizaciones y proyecciones.
+public final class RentalPricingEngine {
+
+    private RentalPricingEngine() {
+    }
+
+    // Arriendo pactado (mínimo 1 día) + multa por atraso + cargo por daño (reparación o reposición)
+    public static RentalCharge price(long startEpochDay, long dueEpochDay, long returnEpochDay,
+                                     boolean damaged, boolean irreparable, long replacementValue,
+                                     TariffSnapshot tariff) {
+        // --- Costo de Arriendo (ÉPICA 4 / RN Épica 2): tarifa mínima siempre es 1 día ---
+        long rentalDays = Math.max(1, dueEpochDay - startEpochDay);
+        long rentalCost = rentalDays * tariff.dailyRentFee();
+
+        // --- Multa por Atraso (ÉPICA 2 / 4): solo si se devuelve después de la fecha pactada ---
+        long lateDays = Math.max(0, returnEpochDay - dueEpochDay);
+        long lateFee = lateDays * tariff.dailyLateFee();
+
+        // --- Penalidad por Daño (ÉPICA 1 / 2 / 4): baja definitiva cobra reposición, daño leve cobra reparación ---
+        long damagePenalty = damaged ? (irreparable ? replacementValue : tariff.repairFee()) : 0;
+
+        return new RentalCharge(rentalDays, lateDays, rentalCost, lateFee, damagePenalty);
+    }
+}
@@ -0,0 +1,192 @@
+package app.services;
+
+import app.events.LoanChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// Resultados de los reportes (ReportService) en memoria, por reporte y parámetros, con LRU acotado por el total de filas
+// guardadas (un reporte de miles de préstamos pesa más que una página de 20 clientes). Los valores deben ser inmutables
+// (DTOs planos, List.copyOf): se comparten entre todas las peticiones que los leen.
+// Se invalidan con los eventos de préstamos al confirmarse la transacción que los cambió (LoanChangedEvent);
+// 'max-age' es solo un respaldo para cambios que no pasan por esos eventos (ej. renombrar un cliente).
+@Service
+@Slf4j
+public class ReportCacheService {
+
+    static final String REQUESTS_METRIC = "reports.cache.requests";
+    static final String EVICTIONS_METRIC = "reports.cache.evictions";
+    static final String INVALIDATIONS_METRIC = "reports.cache.invalidations";
+    static final String SIZE_METRIC = "reports.cache.size";
+    static final String ROWS_METRIC = "reports.cache.rows";
+
+    public enum Report {
+        LOANS_BY_STATUS,
+        CLIENTS_WITH_LATE_LOANS,
+        TOP_TOOLS
+    }
+
+    private final Map<Key, Entry> entries;
+    // Versión por reporte: una consulta que empezó antes de una invalidación no guarda su resultado (ya viejo)
+    private final Map<Report, AtomicLong> generations = new EnumMap<>(Report.class);
+    private final Map<Report, Counter> hits = new EnumMap<>(Report.class);
+    private final Map<Report, Counter> misses = new EnumMap<>(Report.class);
+    private final Counter evictions;
+    private final Counter invalidations;
+    private final MeterRegistry meterRegistry;
+    private final long maxRows;
+    private final long maxAgeNanos;
+    private long cachedRows; // Suma de Entry.rows; se modifica junto con 'entries' (mismo lock)
+
+    public ReportCacheService(MeterRegistry meterRegistry,
+                              @Value("${reports.cache.max-rows:100000}") long maxRows,
+                              @Value("${reports.cache.max-age:10m}") Duration maxAge) {
+        this.meterRegistry = meterRegistry;
+        this.maxRows = maxRows;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.evictions = Counter.builder(EVICTIONS_METRIC)
+                .description("Resultados descartados por el límite de filas").register(meterRegistry);
+        this.invalidations = Counter.builder(INVALIDATIONS_METRIC)
+                .description("Invalidaciones por cambios en préstamos").register(meterRegistry);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        for (Report report : Report.values()) {
+            generations.put(report, new AtomicLong());
+            hits.put(report, requestCounter(meterRegistry, report, "hit"));
+            misses.put(report, requestCounter(meterRegistry, report, "miss"));
+        }
+    }
+
+    // Los gauges guardan una referencia a este objeto: se registran ya construido, no desde el constructor
+    @PostConstruct
+    public void registerSizeGauge() {
+        Gauge.builder(SIZE_METRIC, this, ReportCacheService::size)
+                .description("Resultados de reportes en caché").register(meterRegistry);
+        Gauge.builder(ROWS_METRIC, this, ReportCacheService::rows)
+                .description("Filas de reportes en caché (límite reports.cache.max-rows)").register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, Report report, String result) {
+        return Counter.builder(REQUESTS_METRIC)
+                .description("Consultas de reportes atendidas desde la caché (hit) o la BD (miss)")
+                .tag("report", report.name())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // Devuelve el resultado guardado para (report, params) o lo calcula con 'loader' y lo guarda; 'rows' da su peso.
+    // 'loader' corre fuera del lock: dos pedidos simultáneos sin caché pueden consultar ambos la BD.
+    // Un resultado con más filas que el límite se devuelve sin guardarlo (vaciaría la caché para una sola entrada).
+    @SuppressWarnings("unchecked")
+    public <T> T get(Report report, Supplier<T> loader, ToIntFunction<? super T> rows, Object... params) {
+        Key key = new Key(report, Arrays.asList(params));
+        long generation = generations.get(report).get();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.generation() == generation && System.nanoTime() - entry.createdNanos() < maxAgeNanos) {
+                    hits.get(report).increment();
+                    return (T) entry.value();
+                }
+                remove(key);
+            }
+        }
+        misses.get(report).increment();
+        T value = loader.get();
+        int weight = Math.max(1, rows.applyAsInt(value)); // Un resultado vacío también ocupa una entrada
+        if (weight > maxRows) {
+            return value;
+        }
+        synchronized (entries) {
+            if (generations.get(report).get() == generation) {
+                remove(key);
+                entries.put(key, new Entry(value, weight, generation, System.nanoTime()));
+                cachedRows += weight;
+                evictLeastRecentlyUsed();
+            }
+        }
+        return value;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanChanged(LoanChangedEvent event) {
+        invalidate(affectedReports(event.change()));
+    }
+
+    // Un préstamo nuevo no está atrasado (no cambia clientes con atrasos) y el ranking cuenta préstamos por fecha de
+    // inicio sin importar su estado (devolver, pagar o atrasarse no lo cambia)
+    static Set<Report> affectedReports(LoanChangedEvent.Change change) {
+        return switch (change) {
+            case CREATED -> EnumSet.of(Report.LOANS_BY_STATUS, Report.TOP_TOOLS);
+            case RETURNED, MARKED_LATE -> EnumSet.of(Report.LOANS_BY_STATUS, Report.CLIENTS_WITH_LATE_LOANS);
+            case PAID -> EnumSet.of(Report.LOANS_BY_STATUS);
+        };
+    }
+
+    public void invalidate(Set<Report> reports) {
+        reports.forEach(report -> generations.get(report).incrementAndGet());
+        synchronized (entries) {
+            entries.entrySet().removeIf(entry -> {
+                boolean affected = reports.contains(entry.getKey().report());
+                if (affected) {
+                    cachedRows -= entry.getValue().rows();
+                }
+                return affected;
+            });
+        }
+        invalidations.increment();
+        log.debug("Report cache invalidated for {}.", reports);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long rows() {
+        synchronized (entries) {
+            return cachedRows;
+        }
+    }
+
+    // Llamar con el lock de 'entries'
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            cachedRows -= removed.rows();
+        }
+    }
+
+    // Llamar con el lock de 'entries'. El primero en orden de acceso es el usado hace más tiempo.
+    private void evictLeastRecentlyUsed() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (cachedRows > maxRows && eldest.hasNext()) {
+            cachedRows -= eldest.next().rows();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private record Key(Report report, List<Object> params) {}
+
+    private record Entry(Object value, int rows, long generation, long createdNanos) {}
+}
@@ -0,0 +1,322 @@
+package app.services;
+
+import app.dtos.ReportJobInfo;
+import app.dtos.ReportJobRequest;
+import app.entities.ReportJobEntity;
+import app.entities.enums.LoanStatus;
+import app.entities.enums.ReportJobStatus;
+import app.entities.enums.ReportJobType;
+import app.exceptions.InvalidOperationException;
+import app.exceptions.ResourceNotFoundException;
+import app.repositories.ReportJobRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Reportes de ReportService ejecutados fuera de la petición HTTP: POST /reports/jobs deja el trabajo en cola y
+// responde de inmediato; un pool propio y acotado (hilos + cola fija) lo ejecuta y escribe el resultado como JSON
+// en disco local ({id}.json, vía un .tmp que se renombra al terminar). El estado y el avance quedan en report_jobs.
+// Un trabajo cortado por un reinicio queda FAILED al iniciar (el resultado es local: una sola instancia por directorio).
+@Service
+@Slf4j
+public class ReportJobService {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int DEFAULT_TOP_TOOLS = 10;
+    private static final String RESULT_SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".json.tmp";
+
+    private final ReportJobRepository jobRepository;
+    private final ReportService reportService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+    private final Duration retention;
+    private final ThreadPoolExecutor executor;
+
+    public ReportJobService(ReportJobRepository jobRepository, ReportService reportService, ObjectMapper objectMapper,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${reports.jobs.directory:report-jobs}") String directory,
+                            @Value("${reports.jobs.threads:2}") int threads,
+                            @Value("${reports.jobs.queue-capacity:20}") int queueCapacity,
+                            @Value("${reports.jobs.retention:7d}") Duration retention) {
+        this.jobRepository = jobRepository;
+        this.reportService = reportService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.directory = Path.of(directory);
+        this.retention = retention;
+        // Cola llena -> RejectedExecutionException (el trabajo se rechaza en vez de acumularse sin límite)
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), Thread.ofPlatform().name("report-job-", 1).factory());
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### API ############################################################################################
+    // ########################################################################################################################################################
+
+    public ReportJobInfo submit(ReportJobRequest request, String requestedBy) {
+        validate(request);
+        ReportJobEntity job = jobRepository.save(ReportJobEntity.builder()
+                .id(UUID.randomUUID().toString())
+                .type(request.type())
+                .loanStatus(request.status() == null ? null : request.status().toUpperCase())
+                .fromDate(request.from())
+                .toDate(request.to())
+                .rowLimit(request.type() == ReportJobType.TOP_TOOLS && request.limit() == null ? Integer.valueOf(DEFAULT_TOP_TOOLS) : request.limit())
+                .includeStats(request.includeStats())
+                .status(ReportJobStatus.QUEUED)
+                .requestedBy(requestedBy)
+                .createdAt(LocalDateTime.now())
+                .build());
+        try {
+            executor.execute(() -> run(job.getId()));
+        } catch (RejectedExecutionException e) {
+            markFailed(job.getId(), "Report job queue is full.");
+            throw new InvalidOperationException("Too many report jobs in progress, try again later.");
+        }
+        log.info("Report job {} ({}) queued by {}.", job.getId(), job.getType(), requestedBy);
+        return toInfo(job);
+    }
+
+    public ReportJobInfo getJob(String id) {
+        return toInfo(findJob(id));
+    }
+
+    // Archivo del resultado; solo existe cuando el trabajo terminó bien
+    public Path getResultFile(String id) {
+        ReportJobEntity job = findJob(id);
+        if (job.getStatus() != ReportJobStatus.COMPLETED) {
+            throw new InvalidOperationException("Report job " + id + " is " + job.getStatus() + ", the result is not available.");
+        }
+        Path result = resultFile(id);
+        if (!Files.exists(result)) {
+            throw new ResourceNotFoundException("Result of report job " + id + " is no longer available.");
+        }
+        return result;
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### EJECUCIÓN ######################################################################################
+    // ########################################################################################################################################################
+
+    private void run(String id) {
+        ReportJobEntity job = transactionTemplate.execute(status -> {
+            ReportJobEntity current = findJob(id);
+            current.setStatus(ReportJobStatus.RUNNING);
+            current.setStartedAt(LocalDateTime.now());
+            return current;
+        });
+        Path temp = directory.resolve(id + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(directory);
+            long rows;
+            try (JsonGenerator generator = objectMapper.createGenerator(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                generator.writeStartArray();
+                rows = writeRows(job, generator);
+                generator.writeEndArray();
+            }
+            Files.move(temp, resultFile(id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long written = rows;
+            transactionTemplate.executeWithoutResult(status -> {
+                ReportJobEntity current = findJob(id);
+                current.setStatus(ReportJobStatus.COMPLETED);
+                current.setRowsWritten(written);
+                current.setFinishedAt(LocalDateTime.now());
+            });
+            log.info("Report job {} ({}) completed: {} rows.", id, job.getType(), rows);
+        } catch (IOException | RuntimeException e) {
+            log.error("Report job {} ({}) failed.", id, job.getType(), e);
+            deleteQuietly(temp);
+            markFailed(id, e.getMessage());
+        }
+    }
+
+    // Cuenta las filas (para el avance) y las escribe página por página
+    private long writeRows(ReportJobEntity job, JsonGenerator generator) {
+        ProgressWriter writer = new ProgressWriter(job.getId(), generator);
+        switch (job.getType()) {
+            case LOANS_BY_STATUS -> {
+                writer.start(reportService.countLoansByStatus(job.getLoanStatus(), job.getFromDate(), job.getToDate()));
+                reportService.forEachLoanPageByStatus(job.getLoanStatus(), job.getFromDate(), job.getToDate(), PAGE_SIZE, writer::write);
+            }
+            case CLIENTS_WITH_LATE_LOANS -> {
+                writer.start(reportService.countClientsWithLateLoans(job.getFromDate(), job.getToDate()));
+                reportService.forEachLateClientPage(job.getFromDate(), job.getToDate(), job.isIncludeStats(), PAGE_SIZE, writer::write);
+            }
+            case TOP_TOOLS -> writer.writeAll(reportService.getTopTools(job.getFromDate(), job.getToDate(), job.getRowLimit()));
+            case RESTRICTED_CLIENTS -> writer.writeAll(reportService.getRestrictedClients());
+        }
+        return writer.rowsWritten;
+    }
+
+    private final class ProgressWriter {
+        private final String jobId;
+        private final JsonGenerator generator;
+        private long rowsWritten;
+
+        private ProgressWriter(String jobId, JsonGenerator generator) {
+            this.jobId = jobId;
+            this.generator = generator;
+        }
+
+        void start(long totalRows) {
+            transactionTemplate.executeWithoutResult(status -> findJob(jobId).setTotalRows(totalRows));
+        }
+
+        void writeAll(List<?> rows) {
+            start(rows.size());
+            write(rows);
+        }
+
+        void write(List<?> rows) {
+            try {
+                for (Object row : rows) {
+                    generator.writeObject(row);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write report job result", e);
+            }
+            rowsWritten += rows.size();
+            transactionTemplate.executeWithoutResult(status -> jobRepository.updateProgress(jobId, rowsWritten));
+        }
+    }
+
+    private void markFailed(String id, String message) {
+        String error = message == null ? "Unexpected error." : message.substring(0, Math.min(message.length(), 500));
+        transactionTemplate.executeWithoutResult(status -> jobRepository.findById(id).ifPresent(job -> {
+            job.setStatus(ReportJobStatus.FAILED);
+            job.setErrorMessage(error);
+            job.setFinishedAt(LocalDateTime.now());
+        }));
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### REINICIO Y RETENCIÓN ###########################################################################
+    // ########################################################################################################################################################
+
+    // Ningún hilo de esta instancia sigue con los trabajos en cola o en ejecución de antes del reinicio
+    @EventListener(ApplicationReadyEvent.class)
+    public void failUnfinishedJobs() {
+        Integer failed = transactionTemplate.execute(status -> jobRepository.failAll(
+                List.of(ReportJobStatus.QUEUED, ReportJobStatus.RUNNING), "Interrupted by an application restart.", LocalDateTime.now()));
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> temps = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+                temps.forEach(ReportJobService::deleteQuietly);
+            } catch (IOException e) {
+                log.warn("Could not clean up partial report job results in {}.", directory, e);
+            }
+        }
+        if (failed != null && failed > 0) {
+            log.warn("Marked {} unfinished report jobs as failed after restart.", failed);
+        }
+    }
+
+    // Trabajos terminados hace más que 'retention': se borran el resultado y el registro
+    @Scheduled(cron = "${reports.jobs.purge-cron:0 15 * * * *}")
+    public void purgeExpired() {
+        List<ReportJobEntity> expired = jobRepository.findByFinishedAtBefore(LocalDateTime.now().minus(retention));
+        for (ReportJobEntity job : expired) {
+            deleteQuietly(resultFile(job.getId()));
+            jobRepository.delete(job);
+        }
+        if (!expired.isEmpty()) {
+            log.info("Purged {} expired report jobs.", expired.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // ########################################################################################################################################################
+    // ####################################################### AUXILIARES #####################################################################################
+    // ########################################################################################################################################################
+
+    // Los errores de parámetros se informan al crear el trabajo, no cuando ya está en ejecución
+    private static void validate(ReportJobRequest request) {
+        if (request.type() == null) {
+            throw new InvalidOperationException("Report type is required.");
+        }
+        if ((request.from() == null) != (request.to() == null)) {
+            throw new InvalidOperationException("Both from and to dates are required when filtering by date.");
+        }
+        if (request.from() != null && request.from().isAfter(request.to())) {
+            throw new InvalidOperationException("Start date cannot be after end date.");
+        }
+        switch (request.type()) {
+            case LOANS_BY_STATUS -> {
+                try {
+                    LoanStatus.valueOf(String.valueOf(request.status()).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new InvalidOperationException("Invalid loan status: " + request.status());
+                }
+            }
+            case TOP_TOOLS -> {
+                if (request.from() == null) {
+                    throw new InvalidOperationException("Date range is required for Top Tools report.");
+                }
+                if (request.limit() != null && (request.limit() < 1 || request.limit() > 100)) {
+                    throw new InvalidOperationException("Limit must be between 1 and 100.");
+                }
+            }
+            default -> { }
+        }
+    }
+
+    private ReportJobEntity findJob(String id) {
+        return jobRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Report job not found with id: " + id));
+    }
+
+    private Path resultFile(String id) {
+        return directory.resolve(id + RESULT_SUFFIX);
+    }
+
+    private static ReportJobInfo toInfo(ReportJobEntity job) {
+        int progress;
+        if (job.getStatus() == ReportJobStatus.COMPLETED) {
+            progress = 100;
+        } else if (job.getTotalRows() == null || job.getTotalRows() == 0) {
+            progress = 0;
+        } else {
+            progress = (int) Math.min(99, job.getRowsWritten() * 100 / job.getTotalRows());
+        }
+        return new ReportJobInfo(job.getId(), job.getType(), job.getStatus(), progress, job.getRowsWritten(),
+                job.getTotalRows(), job.getErrorMessage(), job.getCreatedAt(), job.getStartedAt(), job.getFinishedAt());
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete report job file {}.", file, e);
+        }
+    }
+}
@@ -1,74 +1,190 @@
 package app.services;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import app.dtos.LateClientDto;
+import app.dtos.LateClientPage;
+import app.dtos.LoanReportRow;
+import app.dtos.TopToolDto;
 import app.entities.ClientEntity;
 import app.entities.LoanEntity;
 import app.entities.enums.ClientStatus;
 import app.entities.enums.LoanStatus;
 import app.repositories.ClientRepository;
 import app.repositories.LoanRepository;
+import app.services.ReportCacheService.Report;
 
 import java.time.LocalDate;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class ReportService {
 
     private final LoanRepository loanRepository;
     private final ClientRepository clientRepository; 
+    private final ToolLoanCountService toolLoanCountService;
+    private final ReportCacheService reportCache;
 
-    public ReportService(LoanRepository loanRepository, ClientRepository clientRepository) {
+    private static final int MAX_TOP_TOOLS = 100;
+    private static final int MAX_LATE_CLIENTS_PAGE = 500;
+    private static final int STREAM_FETCH_SIZE = 500; // Filas por viaje a la BD en la exportación CSV
+
+    public ReportService(LoanRepository loanRepository, ClientRepository clientRepository,
+                         ToolLoanCountService toolLoanCountService, ReportCacheService reportCache) {
         this.loanRepository = loanRepository;
         this.clientRepository = clientRepository;
+        this.toolLoanCountService = toolLoanCountService;
+        this.reportCache = reportCache;
     }
 
     // --- RF6.1: Préstamos por estado (CON FILTRO DE FECHA OPCIONAL) ---
-    public List<LoanEntity> getLoansByStatus(String status, LocalDate from, LocalDate to) {
+    // Los tres reportes de ReportViewer pasan por la caché (se invalida al cambiar préstamos, ver ReportCacheService)
+    // Se guardan filas planas inmutables (no entidades) y el límite de la caché cuenta cada préstamo como una fila
+    public List<LoanReportRow> getLoansByStatus(String status, LocalDate from, LocalDate to) {
+        return reportCache.get(Report.LOANS_BY_STATUS, () -> loadLoansByStatus(status, from, to), List::size, status, from, to);
+    }
+
+    private List<LoanReportRow> loadLoansByStatus(String status, LocalDate from, LocalDate to) {
         LoanStatus loanStatus = LoanStatus.valueOf(status);
         // Si las fechas son nulas, llama al método sin filtro
         if (from == null || to == null) {
-            return loanRepository.findByStatus(loanStatus);
+            return List.copyOf(loanRepository.findReportRowsByStatus(loanStatus));
         } else {
             // Si hay fechas, llama al nuevo método con filtro
             // Validar que 'from' no sea posterior a 'to'
             if (from.isAfter(to)) {
                 throw new IllegalArgumentException("Start date cannot be after end date.");
             }
-            return loanRepository.findByStatusAndStartDateBetween(loanStatus, from, to);
+            return List.copyOf(loanRepository.findReportRowsByStatusAndStartDateBetween(loanStatus, from, to));
         }
     }
 
-    // --- RF6.2: Clientes con préstamos atrasados (CON FILTRO DE FECHA OPCIONAL) ---
-    public List<ClientEntity> getClientsWithLateLoans(LocalDate from, LocalDate to) {
-        // Si las fechas son nulas, busca todos los clientes con préstamos LATE
+    // --- RF6.2: Clientes con préstamos atrasados (CON FILTRO DE FECHA OPCIONAL), por páginas de IDs ---
+    public LateClientPage getClientsWithLateLoans(LocalDate from, LocalDate to, boolean includeStats, Long afterId, int size) {
+        // Si falta alguna fecha, no se filtra por fecha
         if (from == null || to == null) {
-            return loanRepository.findByStatus(LoanStatus.LATE).stream()
-                    .map(LoanEntity::getClient)
-                    .distinct()
-                    .toList();
-        } else {
-            // Si hay fechas, llama al nuevo método del repositorio
-            if (from.isAfter(to)) {
-                throw new IllegalArgumentException("Start date cannot be after end date.");
-            }
-            return loanRepository.findDistinctClientsByStatusAndStartDateBetween(LoanStatus.LATE, from, to);
+            from = null;
+            to = null;
+        } else if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Start date cannot be after end date.");
         }
+        if (size < 1 || size > MAX_LATE_CLIENTS_PAGE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_LATE_CLIENTS_PAGE + ".");
+        }
+        LocalDate rangeFrom = from;
+        LocalDate rangeTo = to;
+        long after = afterId == null ? 0L : afterId;
+        return reportCache.get(Report.CLIENTS_WITH_LATE_LOANS,
+                () -> loadClientsWithLateLoans(rangeFrom, rangeTo, includeStats, after, size), page -> page.items().size(),
+                rangeFrom, rangeTo, includeStats, after, size);
     }
 
-    // --- RF6.3: Ranking (sin cambios, ya acepta fechas) ---
-    public List<Object[]> getTopTools(LocalDate from, LocalDate to) {
+    // Se pide una fila extra para saber si hay página siguiente sin un COUNT
+    private LateClientPage loadClientsWithLateLoans(LocalDate from, LocalDate to, boolean includeStats, long afterId, int size) {
+        List<LateClientDto> rows = includeStats
+                ? clientRepository.findLateClientStatsAfter(afterId, from, to, Limit.of(size + 1))
+                : clientRepository.findLateClientsAfter(afterId, from, to, Limit.of(size + 1));
+        if (rows.size() <= size) {
+            return new LateClientPage(List.copyOf(rows), null);
+        }
+        List<LateClientDto> items = List.copyOf(rows.subList(0, size));
+        return new LateClientPage(items, items.get(size - 1).id());
+    }
+
+    // --- RF6.3: Ranking (suma de tool_loan_daily_counts, ver ToolLoanCountService) ---
+    public List<TopToolDto> getTopTools(LocalDate from, LocalDate to, int limit) {
         if (from == null || to == null) {
             throw new IllegalArgumentException("Date range is required for Top Tools report.");
         }
         if (from.isAfter(to)) {
             throw new IllegalArgumentException("Start date cannot be after end date.");
         }
-        return loanRepository.findTopToolsByDateRange(from, to);
+        if (limit < 1 || limit > MAX_TOP_TOOLS) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_TOP_TOOLS + ".");
+        }
+        return reportCache.get(Report.TOP_TOOLS, () -> List.copyOf(toolLoanCountService.getTopTools(from, to, limit)), List::size,
+                from, to, limit);
+    }
+
+    // Reconstrucción del ranking desde loans; los resultados en caché ya no sirven
+    public int rebuildTopToolCounts() {
+        int rows = toolLoanCountService.rebuild();
+        reportCache.invalidate(EnumSet.of(Report.TOP_TOOLS));
+        return rows;
     }
 
     // --- Clientes restringidos ---
     public List<ClientEntity> getRestrictedClients() {
         return clientRepository.findByStatus(ClientStatus.RESTRICTED);
     }
-}
\ No newline at end of file
+
+    // ########################################################################################################################################################
+    // ####################################################### EXPORTACIÓN POR PÁGINAS (trabajos de reportes) ##################################################
+    // ########################################################################################################################################################
+    // Sin caché: los trabajos recorren el reporte completo por páginas de IDs y entregan cada página a 'consumer',
+    // así la memoria depende del tamaño de página y no del período. Fechas nulas = sin filtro de fecha.
+
+    public long countLoansByStatus(String status, LocalDate from, LocalDate to) {
+        return loanRepository.countByStatusInRange(LoanStatus.valueOf(status), from, to);
+    }
+
+    public void forEachLoanPageByStatus(String status, LocalDate from, LocalDate to, int pageSize, Consumer<List<LoanEntity>> consumer) {
+        LoanStatus loanStatus = LoanStatus.valueOf(status);
+        long afterId = 0L;
+        while (true) {
+            List<LoanEntity> page = loanRepository.findPageByStatusAfter(loanStatus, afterId, from, to, Limit.of(pageSize));
+            if (page.isEmpty()) {
+                return;
+            }
+            consumer.accept(page);
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    public long countClientsWithLateLoans(LocalDate from, LocalDate to) {
+        return clientRepository.countLateClients(from, to);
+    }
+
+    public void forEachLateClientPage(LocalDate from, LocalDate to, boolean includeStats, int pageSize, Consumer<List<LateClientDto>> consumer) {
+        long afterId = 0L;
+        while (true) {
+            List<LateClientDto> page = includeStats
+                    ? clientRepository.findLateClientStatsAfter(afterId, from, to, Limit.of(pageSize))
+                    : clientRepository.findLateClientsAfter(afterId, from, to, Limit.of(pageSize));
+            if (page.isEmpty()) {
+                return;
+            }
+            consumer.accept(page);
+            afterId = page.get(page.size() - 1).id();
+        }
+    }
+
+    // ########################################################################################################################################################
+    // ################################################################ EXPORTACIÓN CSV (streaming) ############################################################
+    // ########################################################################################################################################################
+    // Sin caché ni listas intermedias: cada fila del cursor JDBC va directo a 'consumer' (el escritor de la respuesta).
+    // La transacción de solo lectura es la que permite el cursor de servidor en PostgreSQL.
+
+    @Transactional(readOnly = true)
+    public void streamLoansByStatus(LoanStatus status, LocalDate from, LocalDate to, Consumer<LoanReportRow> consumer) {
+        validateOptionalRange(from, to);
+        loanRepository.streamByStatus(status, from, to, STREAM_FETCH_SIZE, consumer);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamClientsWithLateLoans(LocalDate from, LocalDate to, Consumer<LateClientDto> consumer) {
+        validateOptionalRange(from, to);
+        clientRepository.streamLateClients(from, to, STREAM_FETCH_SIZE, consumer);
+    }
+
+    // Validación pública: el controlador la ejecuta antes de empezar a escribir el CSV (después ya no hay código HTTP)
+    public void validateOptionalRange(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("Start date cannot be after end date.");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package app.services;
+
+import app.dtos.StockAuditReport;
+import app.dtos.StockDrift;
+import app.dtos.ToolLedgerTotals;
+import app.entities.enums.ToolStatus;
+import app.repositories.KardexArchiveStore;
+import app.repositories.KardexArchiveStore.ArchivedLedger;
+import app.repositories.KardexArchiveStore.ArchivedTotals;
+import app.repositories.ToolRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Auditoría de tools.stock / tools.in_repair contra el Kardex.
+// El stock esperado se recalcula con las mismas reglas que la reconstrucción histórica (StockSnapshotService):
+// INCOME y RETURN suman, LOAN y MANUAL_DECREASE restan, REPAIR suma a inRepair y una herramienta dada de baja
+// completa (DECOMMISSIONED) queda en 0. Las herramientas sin movimientos se informan aparte y nunca se reparan:
+// el Kardex no tiene información para ellas (ej. datos iniciales cargados directo en tools).
+// Los movimientos ya movidos al archivo histórico (KardexArchiveStore) se suman a los de la tabla; de la tabla solo se
+// leen los posteriores a la última fila archivada, porque una ejecución cortada del archivado deja filas en ambos lados.
+@Service
+@Slf4j
+public class StockAuditService {
+
+    private static final int MAX_REPORTED_DRIFTS = 100;
+
+    private final ToolRepository toolRepository;
+    private final KardexArchiveStore archiveStore;
+    private final TransactionTemplate transactionTemplate;
+    private final int parallelism;
+
+    public StockAuditService(ToolRepository toolRepository, KardexArchiveStore archiveStore,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${tools.stock-audit.parallelism:4}") int parallelism) {
+        this.toolRepository = toolRepository;
+        this.archiveStore = archiveStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.parallelism = parallelism;
+    }
+
+    // Recorre tools por bloques de 'chunkSize' IDs; cada bloque es una consulta agregada sobre kardex
+    // (y con repair = true, un UPDATE condicional en batch) en su propia transacción, varios bloques en paralelo.
+    public StockAuditReport audit(int chunkSize, boolean repair) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be greater than zero.");
+        }
+        long startNanos = System.nanoTime();
+        ArchivedLedger archived = archiveStore.getArchivedLedger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            // El hilo actual solo avanza por los IDs (keyset) y reparte los rangos; los bloques se procesan mientras tanto
+            List<Future<ChunkResult>> results = new ArrayList<>();
+            Long afterId = 0L;
+            while (true) {
+                List<Long> ids = toolRepository.findIdsAfter(afterId, Limit.of(chunkSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                Long firstId = ids.get(0);
+                Long lastId = ids.get(ids.size() - 1);
+                results.add(executor.submit(() -> auditChunk(firstId, lastId, repair, archived)));
+                afterId = lastId;
+            }
+
+            long scanned = 0;
+            long untracked = 0;
+            long drifted = 0;
+            long repaired = 0;
+            List<StockDrift> drifts = new ArrayList<>();
+            for (Future<ChunkResult> future : results) {
+                ChunkResult chunk = future.get();
+                scanned += chunk.scanned();
+                untracked += chunk.untracked();
+                drifted += chunk.drifts().size();
+                repaired += chunk.repaired();
+                chunk.drifts().stream()
+                        .limit(Math.max(0, MAX_REPORTED_DRIFTS - drifts.size()))
+                        .forEach(drifts::add);
+            }
+
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            log.info("Stock audit{}: {} tools scanned, {} untracked, {} drifted, {} repaired in {} chunks ({} ms).",
+                    repair ? " with repair" : "", scanned, untracked, drifted, repaired, results.size(), elapsedMillis);
+            return new StockAuditReport(scanned, untracked, drifted, repaired, results.size(), elapsedMillis, drifts);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Stock audit was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Stock audit failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // La lectura agregada y la reparación van en la misma transacción. El UPDATE solo aplica si stock/inRepair
+    // siguen con el valor leído: si un préstamo o devolución los cambió entretanto, esa herramienta se omite.
+    private ChunkResult auditChunk(Long firstId, Long lastId, boolean repair, ArchivedLedger archived) {
+        return transactionTemplate.execute(status -> {
+            long[] counts = new long[2]; // [0] escaneadas, [1] sin movimientos
+            List<StockDrift> drifts = new ArrayList<>();
+            toolRepository.streamLedgerTotals(firstId, lastId, archived.upTo(), current -> {
+                ToolLedgerTotals totals = withArchived(current, archived.totals().get(current.toolId()));
+                counts[0]++;
+                if (totals.movements() == 0) {
+                    counts[1]++;
+                    return;
+                }
+                StockDrift drift = compare(totals);
+                if (drift != null) {
+                    drifts.add(drift);
+                }
+            });
+            int repaired = repair ? toolRepository.repairStockBatched(drifts) : 0;
+            return new ChunkResult(counts[0], counts[1], drifts, repaired);
+        });
+    }
+
+    private static ToolLedgerTotals withArchived(ToolLedgerTotals totals, ArchivedTotals archived) {
+        if (archived == null) {
+            return totals;
+        }
+        return new ToolLedgerTotals(totals.toolId(), totals.toolName(), totals.status(), totals.stock(), totals.inRepair(),
+                totals.ledgerStock() + archived.stock(), totals.ledgerInRepair() + archived.inRepair(),
+                totals.movements() + archived.movements());
+    }
+
+    static StockDrift compare(ToolLedgerTotals totals) {
+        int expectedStock = totals.status() == ToolStatus.DECOMMISSIONED ? 0 : (int) totals.ledgerStock();
+        int expectedInRepair = (int) totals.ledgerInRepair();
+        if (totals.stock() == expectedStock && totals.inRepair() == expectedInRepair) {
+            return null;
+        }
+        return new StockDrift(totals.toolId(), totals.toolName(),
+                totals.stock(), expectedStock, totals.inRepair(), expectedInRepair);
+    }
+
+    private record ChunkResult(long scanned, long untracked, List<StockDrift> drifts, int repaired) {}
+}
@@ -0,0 +1,171 @@
+package app.services;
+
+import app.dtos.KardexCursor;
+import app.dtos.KardexMovementRow;
+import app.dtos.StockAtTimeReport;
+import app.dtos.ToolStockAtTime;
+import app.dtos.ToolStockReplayRow;
+import app.entities.ToolEntity;
+import app.entities.ToolStockSnapshotEntity;
+import app.entities.enums.MovementType;
+import app.entities.enums.ToolStatus;
+import app.repositories.KardexArchiveStore;
+import app.repositories.ToolRepository;
+import app.repositories.ToolStockSnapshotRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+// Stock de todas las herramientas en una fecha pasada: punto de control diario + movimientos del Kardex posteriores.
+// Sin puntos de control habría que recorrer el Kardex completo; con ellos solo se aplica menos de un día de movimientos.
+// Si la ventana llega al archivo histórico (KardexArchiveStore), los movimientos archivados se leen de los segmentos.
+@Service
+@Slf4j
+public class StockSnapshotService {
+
+    // Antes de cualquier movimiento: sin punto de control anterior se aplica el Kardex completo
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final ToolStockSnapshotRepository snapshotRepository;
+    private final KardexArchiveStore archiveStore;
+    private final ToolRepository toolRepository;
+
+    public StockSnapshotService(ToolStockSnapshotRepository snapshotRepository, KardexArchiveStore archiveStore,
+                                ToolRepository toolRepository) {
+        this.snapshotRepository = snapshotRepository;
+        this.archiveStore = archiveStore;
+        this.toolRepository = toolRepository;
+    }
+
+    // Punto de control diario (por defecto 23:55); se desactiva junto con los demás procesos programados
+    @Scheduled(cron = "${kardex.stock-snapshot.cron:0 55 23 * * *}")
+    public void scheduledSnapshot() {
+        takeSnapshot();
+    }
+
+    // Copia stock e inRepair de todas las herramientas. Repetirlo el mismo día reemplaza el punto de control del día.
+    // La hora se toma después de bloquear tools: cada cambio de stock hace su UPDATE antes de fechar el movimiento, así
+    // todo movimiento fechado antes de takenAt ya está en la copia y todo el que quedó esperando se fecha después.
+    @Transactional
+    public int takeSnapshot() {
+        snapshotRepository.lockAllTools();
+        return copyTools(LocalDateTime.now());
+    }
+
+    // Punto de control con hora explícita (pruebas y cargas de historia): sin movimientos en curso posteriores a 'takenAt'
+    @Transactional
+    public int takeSnapshot(LocalDateTime takenAt) {
+        snapshotRepository.lockAllTools();
+        return copyTools(takenAt);
+    }
+
+    @Transactional(readOnly = true)
+    public StockAtTimeReport getStockAt(LocalDateTime at) {
+        if (at == null) {
+            throw new IllegalArgumentException("Date cannot be null.");
+        }
+        Optional<ToolStockSnapshotEntity> checkpoint = snapshotRepository.findFirstByTakenAtLessThanEqualOrderByTakenAtDesc(at);
+        LocalDate snapshotDate = checkpoint.map(ToolStockSnapshotEntity::getSnapshotDate).orElse(null);
+        LocalDateTime from = checkpoint.map(ToolStockSnapshotEntity::getTakenAt).orElse(BEGINNING);
+
+        // Lo archivado sale solo de los segmentos: una ejecución cortada del archivado deja filas también en la tabla
+        KardexCursor archivedUpTo = archiveStore.archivedUpTo().orElse(KardexCursor.BEGINNING);
+        List<ToolStockReplayRow> replay = snapshotRepository.replayStock(snapshotDate, from, at,
+                archivedUpTo.movementDate(), archivedUpTo.id());
+        if (archivedUpTo.movementDate().isAfter(from)) {
+            replay = withArchived(replay, from, at, archivedUpTo.movementDate());
+        }
+
+        List<ToolStockAtTime> tools = replay.stream()
+                .map(StockSnapshotService::toStockAtTime)
+                .toList();
+        return new StockAtTimeReport(at, snapshotDate, tools);
+    }
+
+    // Suma los movimientos archivados en (from, at] a cada herramienta y cuenta los archivados después de 'at'.
+    // Las herramientas cuyos movimientos en la ventana están todos archivados no vienen en 'replay' y se agregan aquí.
+    private List<ToolStockReplayRow> withArchived(List<ToolStockReplayRow> replay, LocalDateTime from, LocalDateTime at,
+                                                  LocalDateTime archivedDate) {
+        Map<Long, ArchivedWindow> archived = new HashMap<>();
+        for (KardexMovementRow row : archiveStore.findByMovementDateBetween(from, archivedDate)) {
+            if (row.movementDate().isAfter(from)) {
+                archived.merge(row.toolId(), ArchivedWindow.of(row, at), ArchivedWindow::plus);
+            }
+        }
+
+        Map<Long, ToolStockReplayRow> rows = new HashMap<>();
+        replay.forEach(row -> rows.put(row.toolId(), row));
+        List<Long> archivedOnly = archived.entrySet().stream()
+                .filter(entry -> !rows.containsKey(entry.getKey()) && entry.getValue().movements() > 0)
+                .map(Map.Entry::getKey)
+                .toList();
+        for (ToolEntity tool : toolRepository.findAllById(archivedOnly)) {
+            rows.put(tool.getId(), new ToolStockReplayRow(tool.getId(), tool.getName(), tool.getStatus(), null, null, 0, 0, 0, 0));
+        }
+
+        List<ToolStockReplayRow> merged = new ArrayList<>(rows.size());
+        for (ToolStockReplayRow row : rows.values()) {
+            ArchivedWindow window = archived.get(row.toolId());
+            merged.add(window == null ? row : new ToolStockReplayRow(row.toolId(), row.toolName(), row.status(),
+                    row.snapshotStock(), row.snapshotInRepair(), row.stockDelta() + window.stock(),
+                    row.inRepairDelta() + window.inRepair(), row.decommissions() + window.decommissions(),
+                    row.laterMovements() + window.laterMovements()));
+        }
+        merged.sort(Comparator.comparing(ToolStockReplayRow::toolId));
+        return merged;
+    }
+
+    // Aporte de los movimientos archivados de una herramienta: los de la ventana (from, at] y cuántos hay después de 'at'
+    private record ArchivedWindow(long stock, long inRepair, long decommissions, long movements, long laterMovements) {
+
+        static ArchivedWindow of(KardexMovementRow row, LocalDateTime at) {
+            if (row.movementDate().isAfter(at)) {
+                return new ArchivedWindow(0, 0, 0, 0, 1);
+            }
+            int quantity = row.quantity() == null ? 0 : row.quantity();
+            long stock = switch (row.type()) {
+                case INCOME, RETURN -> quantity;
+                case LOAN, MANUAL_DECREASE -> -quantity;
+                default -> 0;
+            };
+            return new ArchivedWindow(stock, row.type() == MovementType.REPAIR ? quantity : 0,
+                    row.type() == MovementType.DECOMMISSION ? 1 : 0, 1, 0);
+        }
+
+        ArchivedWindow plus(ArchivedWindow other) {
+            return new ArchivedWindow(stock + other.stock, inRepair + other.inRepair, decommissions + other.decommissions,
+                    movements + other.movements, laterMovements + other.laterMovements);
+        }
+    }
+
+    private int copyTools(LocalDateTime takenAt) {
+        LocalDate snapshotDate = takenAt.toLocalDate();
+        snapshotRepository.deleteBySnapshotDate(snapshotDate);
+        int tools = snapshotRepository.insertFromTools(snapshotDate, takenAt);
+        log.info("Stock snapshot {} taken for {} tools.", snapshotDate, tools);
+        return tools;
+    }
+
+    // DECOMMISSION no tiene un efecto fijo sobre el stock: tras una devolución irreparable la unidad ya estaba fuera del
+    // stock (no cambia nada), mientras que la baja de la herramienta completa lo deja en 0 y es siempre su último
+    // movimiento. Por eso: herramienta dada de baja, con DECOMMISSION en la ventana y sin movimientos posteriores -> 0.
+    private static ToolStockAtTime toStockAtTime(ToolStockReplayRow row) {
+        long stock = (row.snapshotStock() == null ? 0 : row.snapshotStock()) + row.stockDelta();
+        long inRepair = (row.snapshotInRepair() == null ? 0 : row.snapshotInRepair()) + row.inRepairDelta();
+        if (row.status() == ToolStatus.DECOMMISSIONED && row.decommissions() > 0 && row.laterMovements() == 0) {
+            stock = 0;
+        }
+        return new ToolStockAtTime(row.toolId(), row.toolName(), stock, inRepair);
+    }
+}
@@ -1,20 +1,57 @@
 package app.services;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import app.dtos.TariffSnapshot;
 import app.entities.TariffEntity;
 import app.repositories.TariffRepository;
 
 @Service
+@Slf4j
 public class TariffService {
 
     private final TariffRepository tariffRepository;
 
+    // Tarifas vigentes en memoria: se reemplaza la referencia completa (nunca se modifica), así una lectura
+    // concurrente ve las tres tarifas anteriores o las tres nuevas, nunca una mezcla.
+    // Solo updateTariff cambia las tarifas; con varias instancias del backend habría que invalidar también en las demás.
+    private volatile TariffSnapshot snapshot;
+
     public TariffService(TariffRepository tariffRepository) {
         this.tariffRepository = tariffRepository;
     }
 
+    // Carga inicial (data.sql ya se ejecutó). Si aún no hay tarifas se cargan en la primera consulta.
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadSnapshot() {
+        tariffRepository.findAll().stream().findFirst()
+                .ifPresentOrElse(tariff -> snapshot = TariffSnapshot.of(tariff),
+                        () -> log.warn("No tariffs configured at startup."));
+    }
+
+    // Las tres tarifas juntas, sin consultar la BD
+    public TariffSnapshot getFees() {
+        TariffSnapshot current = snapshot;
+        if (current == null) {
+            current = TariffSnapshot.of(fetchFromDb());
+            snapshot = current;
+        }
+        return current;
+    }
+
+    // Relee las tarifas desde la BD (cambios hechos fuera de updateTariff)
+    public TariffSnapshot refresh() {
+        TariffSnapshot current = TariffSnapshot.of(fetchFromDb());
+        snapshot = current;
+        return current;
+    }
+
     public TariffEntity getTariff() {
         return fetchFromDb();
     }
@@ -31,19 +68,33 @@ public class TariffService {
         current.setDailyRentFee(updated.getDailyRentFee());
         current.setDailyLateFee(updated.getDailyLateFee());
         current.setRepairFee(updated.getRepairFee());
-        return tariffRepository.save(current);
+        TariffEntity saved = tariffRepository.save(current);
+
+        // La cache se reemplaza solo si la transacción confirma (un rollback deja las tarifas anteriores)
+        TariffSnapshot newSnapshot = TariffSnapshot.of(saved);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    snapshot = newSnapshot;
+                }
+            });
+        } else {
+            snapshot = newSnapshot;
+        }
+        return saved;
     }
 
-    // 3. MÉTODOS DE CONSULTA: Todos llaman al PRIVADO fetchFromDb()
+    // 3. MÉTODOS DE CONSULTA: todos leen la copia en memoria
     public double getDailyLateFee() {
-        return fetchFromDb().getDailyLateFee();
+        return getFees().dailyLateFee();
     }
 
     public double getDailyRentFee() {
-        return fetchFromDb().getDailyRentFee(); 
+        return getFees().dailyRentFee();
     }
 
     public double getRepairFee() {
-        return fetchFromDb().getRepairFee();
+        return getFees().repairFee();
     }
-}
\ No newline at end of file
+}
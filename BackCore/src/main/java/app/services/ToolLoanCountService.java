@@ -0,0 +1,51 @@
+package app.services;
+
+import app.dtos.TopToolDto;
+import app.repositories.ToolLoanDailyCountRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+// Préstamos por herramienta y día (tool_loan_daily_counts) para el ranking RF6.3: el reporte suma días en vez
+// de agrupar toda la tabla loans. Se actualiza en la transacción que crea los préstamos, después del UPDATE de stock:
+// ese UPDATE ya bloquea la fila de la herramienta, así dos préstamos de la misma herramienta nunca crean la fila a la vez.
+@Service
+@Slf4j
+public class ToolLoanCountService {
+
+    private final ToolLoanDailyCountRepository countRepository;
+
+    public ToolLoanCountService(ToolLoanDailyCountRepository countRepository) {
+        this.countRepository = countRepository;
+    }
+
+    // Un ID por préstamo creado (se repite si hay varios préstamos de la misma herramienta)
+    @Transactional
+    public void onLoansCreated(LocalDate startDate, Collection<Long> toolIds) {
+        Map<Long, Long> loansByTool = new TreeMap<>(); // Orden por ID: mismo orden de bloqueo que el UPDATE de stock
+        toolIds.forEach(toolId -> loansByTool.merge(toolId, 1L, Long::sum));
+        loansByTool.forEach((toolId, loans) -> countRepository.addToDay(startDate, toolId, loans));
+    }
+
+    @Transactional(readOnly = true)
+    public List<TopToolDto> getTopTools(LocalDate from, LocalDate to, int limit) {
+        return countRepository.findTopTools(from, to, Limit.of(limit));
+    }
+
+    // Reconstrucción completa desde loans (carga inicial o datos insertados sin pasar por LoanService)
+    @Transactional
+    public int rebuild() {
+        countRepository.deleteAllInBatch();
+        int rows = countRepository.insertAggregatedFromLoans();
+        log.info("Tool loan daily counts rebuilt from loans: {} rows.", rows);
+        return rows;
+    }
+}
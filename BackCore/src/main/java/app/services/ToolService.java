@@ -1,5 +1,6 @@
 package app.services;
 
+import jakarta.persistence.EntityManager;
 import jakarta.validation.Valid;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,7 +15,10 @@ import app.entities.enums.MovementType;
 import app.entities.enums.ToolStatus;
 import app.exceptions.InvalidOperationException;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Validated
@@ -22,10 +26,12 @@ public class ToolService {
 
     private final ToolRepository toolRepository;
     private final KardexService kardexService;
+    private final EntityManager entityManager;
 
-    public ToolService(ToolRepository toolRepository, KardexService kardexService) {
+    public ToolService(ToolRepository toolRepository, KardexService kardexService, EntityManager entityManager) {
         this.toolRepository = toolRepository;
         this.kardexService = kardexService;
+        this.entityManager = entityManager;
     }
 
     // --- MÉTODOS DE CONSULTA ---
@@ -96,6 +102,7 @@ public class ToolService {
         tool.setStatus(ToolStatus.DECOMMISSIONED);
         tool.setStock(0);
         ToolEntity saved = toolRepository.save(tool);
+        entityManager.flush(); // UPDATE de tools antes de fechar el movimiento (ver StockSnapshotService.takeSnapshot)
 
         kardexService.registerMovement(saved, MovementType.DECOMMISSION, quantityToDecommission, user);
         return saved;
@@ -105,37 +112,98 @@ public class ToolService {
 
     @Transactional
     public void incrementStockForReturn(ToolEntity tool, UserEntity user) {
-        int newStock = (tool.getStock() == null ? 0 : tool.getStock()) + 1;
-        // Si estaba en estado LOANED, y ahora hay stock, cambiar a AVAILABLE
-        if (tool.getStatus() == ToolStatus.LOANED) {
-            tool.setStatus(ToolStatus.AVAILABLE);
+        // Incremento atómico en BD; si estaba LOANED pasa a AVAILABLE
+        if (toolRepository.incrementStock(tool.getId()) == 0) {
+            throw new ResourceNotFoundException("Tool not found with id: " + tool.getId());
         }
-        tool.setStock(newStock);
-        toolRepository.save(tool);
+        syncWithDatabase(tool);
         kardexService.registerMovement(tool, MovementType.RETURN, 1, user);
     }
 
     @Transactional
     public void decrementStockForLoan(ToolEntity tool, UserEntity user) {
-        tool.setStock(tool.getStock() - 1);
-
-        if (tool.getStock() == 0) {
-            tool.setStatus(ToolStatus.LOANED);
+        // El chequeo de stock/estado ocurre en el UPDATE: dos préstamos simultáneos de la última unidad
+        // no pueden pasar ambos (el segundo ve stock = 0 y no afecta filas)
+        if (toolRepository.decrementStockIfAvailable(tool.getId()) == 0) {
+            throw new InvalidOperationException("Tool is not available or out of stock.");
         }
-        toolRepository.save(tool);
+        syncWithDatabase(tool);
         kardexService.registerMovement(tool, MovementType.LOAN, 1, user);
     }
 
+    // Préstamo múltiple: un solo UPDATE condicional para todas las herramientas (IDs distintos).
+    // Si alguna no tenía stock la excepción revierte toda la transacción, incluido el UPDATE.
+    @Transactional
+    public void decrementStockForLoans(List<ToolEntity> tools, UserEntity user) {
+        List<Long> toolIds = tools.stream().map(ToolEntity::getId).toList();
+        if (toolRepository.decrementStockIfAvailableForIds(toolIds) != toolIds.size()) {
+            throw new InvalidOperationException("One or more tools are not available or out of stock.");
+        }
+        tools.forEach(this::syncWithDatabase);
+        kardexService.registerMovements(tools, MovementType.LOAN, 1, user);
+    }
+
+    // Devoluciones múltiples en buen estado: una herramienta puede venir repetida (una unidad por préstamo).
+    // Se hace flush antes del UPDATE por JDBC para no pisar cambios pendientes de las entidades (ej. inRepair).
+    @Transactional
+    public void incrementStockForReturns(List<ToolEntity> tools, UserEntity user) {
+        if (tools.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> unitsByToolId = tools.stream()
+                .collect(Collectors.groupingBy(ToolEntity::getId, LinkedHashMap::new, Collectors.summingInt(tool -> 1)));
+        entityManager.flush();
+        toolRepository.incrementStockBatched(unitsByToolId);
+        tools.stream().distinct().forEach(this::syncWithDatabase);
+        kardexService.registerMovements(tools, MovementType.RETURN, 1, user);
+    }
+
+    // Recarga stock/estado tras un UPDATE directo. Si la entidad gestionada quedara con los valores leídos antes,
+    // el dirty checking los escribiría de vuelta al hacer flush y se perdería el cambio atómico.
+    private void syncWithDatabase(ToolEntity tool) {
+        if (entityManager.contains(tool)) {
+            entityManager.refresh(tool);
+        }
+    }
+
     @Transactional
     public void markAsRepairing(ToolEntity tool, UserEntity user) {
         if (tool.getStatus() == ToolStatus.DECOMMISSIONED) {
             throw new InvalidOperationException("Cannot mark a decommissioned tool as repairing.");
         }
-        //Aumento unidades en reparación y no toco stock disponible
-        tool.setInRepair(tool.getInRepair() + 1);
+        //Aumento unidades en reparación (UPDATE atómico) y no toco stock disponible
+        toolRepository.incrementInRepair(tool.getId());
+        syncInRepair(tool, 1);
         kardexService.registerMovement(tool, MovementType.REPAIR, 1, user); // Registra que 1 unidad entró a reparación
     }
 
+    // Devoluciones múltiples con daño leve: mismo efecto que markAsRepairing por herramienta, Kardex en un solo batch
+    @Transactional
+    public void markAllAsRepairing(List<ToolEntity> tools, UserEntity user) {
+        if (tools.isEmpty()) {
+            return;
+        }
+        if (tools.stream().anyMatch(tool -> tool.getStatus() == ToolStatus.DECOMMISSIONED)) {
+            throw new InvalidOperationException("Cannot mark a decommissioned tool as repairing.");
+        }
+        Map<Long, Integer> unitsByToolId = tools.stream()
+                .collect(Collectors.groupingBy(ToolEntity::getId, LinkedHashMap::new, Collectors.summingInt(tool -> 1)));
+        entityManager.flush();
+        toolRepository.incrementInRepairBatched(unitsByToolId);
+        tools.stream().distinct().forEach(tool -> syncInRepair(tool, unitsByToolId.get(tool.getId())));
+        kardexService.registerMovements(tools, MovementType.REPAIR, 1, user);
+    }
+
+    // Antes solo se cambiaba inRepair en memoria: con una entidad no gestionada el cambio nunca llegaba a la BD
+    // y tools quedaba desalineado del Kardex. Ahora el UPDATE es directo y aquí solo se refleja en el objeto.
+    private void syncInRepair(ToolEntity tool, int units) {
+        if (entityManager.contains(tool)) {
+            entityManager.refresh(tool);
+        } else {
+            tool.setInRepair((tool.getInRepair() == null ? 0 : tool.getInRepair()) + units);
+        }
+    }
+
     @Transactional
     public void markAsDecommissioned(ToolEntity tool, UserEntity user) {
         // Solo permito dar de baja si no está ya de baja
@@ -146,6 +214,18 @@ public class ToolService {
     }
 
 
+    // Devoluciones múltiples con daño irreparable: mismo efecto que markAsDecommissioned, Kardex en un solo batch
+    @Transactional
+    public void markAllAsDecommissioned(List<ToolEntity> tools, UserEntity user) {
+        if (tools.isEmpty()) {
+            return;
+        }
+        if (tools.stream().anyMatch(tool -> tool.getStatus() == ToolStatus.DECOMMISSIONED)) {
+            throw new InvalidOperationException("Tool is already decommissioned.");
+        }
+        kardexService.registerMovements(tools, MovementType.DECOMMISSION, 1, user);
+    }
+
     // --- MÉTODO PARA AJUSTE MANUAL DE STOCK ---
     @Transactional
     public ToolEntity adjustStock(Long id, int quantityChange, MovementType movementType, UserEntity user) {
@@ -180,6 +260,7 @@ public class ToolService {
         }
 
         ToolEntity saved = toolRepository.save(tool);
+        entityManager.flush(); // UPDATE de tools antes de fechar el movimiento (ver StockSnapshotService.takeSnapshot)
         kardexService.registerMovement(saved, movementType, Math.abs(quantityChange), user);
 
         return saved;
@@ -0,0 +1,25 @@
+-- ==============================================================================================================
+-- BENCHMARK: consulta de 1 mes sobre un historial sintético de 50M movimientos, sin y con particiones
+-- Ejecutar en una base de pruebas (NO en producción), con herramientas y usuarios ya cargados (data.sql):
+--   psql -d toolrent_bench -f benchmark_kardex_partitioning.sql
+-- Paso 1 mide la tabla sin particionar; luego se aplica partition_kardex_by_month.sql y el paso 2 repite la consulta.
+-- ==============================================================================================================
+\timing on
+
+-- Historial sintético: 50M movimientos repartidos en ~5 años (≈ 830 mil por mes)
+INSERT INTO kardex (id, tool_id, type, movement_date, quantity, user_id)
+SELECT nextval('kardex_seq'),
+       (SELECT MIN(id) FROM tools) + (g % 30),
+       (ARRAY['LOAN', 'RETURN', 'REPAIR', 'INCOME'])[1 + g % 4],
+       TIMESTAMP '2021-01-01' + (g * INTERVAL '3 seconds'),
+       1,
+       (SELECT MIN(id) FROM users)
+FROM generate_series(1, 50000000) AS g;
+ANALYZE kardex;
+
+-- Paso 1 (sin particiones) / Paso 2 (después de la migración): mismo rango de un mes
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM kardex WHERE movement_date BETWEEN '2024-03-01' AND '2024-03-31 23:59:59';
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM kardex WHERE movement_date BETWEEN '2024-03-01' AND '2024-03-31 23:59:59' AND type = 'LOAN';
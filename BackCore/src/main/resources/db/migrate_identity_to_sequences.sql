@@ -0,0 +1,30 @@
+-- ==============================================================================================================
+-- MIGRACIÓN: IDs IDENTITY -> SECUENCIAS (pooled-lo, allocationSize = 50)
+-- Para bases PostgreSQL existentes creadas con GenerationType.IDENTITY (ddl-auto=update no lo migra).
+-- Ejecutar una vez, con el backend detenido:  psql -d toolrent -f migrate_identity_to_sequences.sql
+-- Cada secuencia parte después del ID máximo actual de su tabla; los IDs existentes no cambian.
+-- ==============================================================================================================
+BEGIN;
+
+DO $$
+DECLARE
+    t TEXT;
+    next_id BIGINT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY['users', 'tariffs', 'clients', 'tools', 'loans', 'kardex'] LOOP
+        -- Quita la generación automática de la columna (IDENTITY o SERIAL); Hibernate asigna el ID
+        IF EXISTS (SELECT 1 FROM information_schema.columns
+                   WHERE table_name = t AND column_name = 'id' AND is_identity = 'YES') THEN
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY', t);
+        ELSE
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP DEFAULT', t);
+        END IF;
+
+        EXECUTE format('SELECT COALESCE(MAX(id), 0) + 1 FROM %I', t) INTO next_id;
+        EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I START WITH 1 INCREMENT BY 50', t || '_seq');
+        EXECUTE format('ALTER SEQUENCE %I INCREMENT BY 50', t || '_seq');
+        PERFORM setval(t || '_seq', next_id, false);
+    END LOOP;
+END $$;
+
+COMMIT;
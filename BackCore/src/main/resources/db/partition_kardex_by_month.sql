@@ -0,0 +1,60 @@
+-- ==============================================================================================================
+-- MIGRACIÓN: kardex -> tabla particionada por mes (RANGE sobre movement_date), PostgreSQL 12+
+-- Las consultas por rango de fechas (findRowsByMovementDateBetween, historial paginado y streaming) solo leen las
+-- particiones del rango (partition pruning). Las particiones futuras las crea KardexPartitionService
+-- (kardex.partitioning.enabled=true), que también puede separar las antiguas (kardex.partitioning.retention-months).
+--
+-- Requisitos: ejecutar una vez, con el backend detenido, y usar spring.jpa.hibernate.ddl-auto=update/validate/none
+-- (create-drop volvería a crear kardex sin particiones).
+--   psql -d toolrent -f partition_kardex_by_month.sql
+-- La clave primaria pasa a ser (id, movement_date): PostgreSQL exige que incluya la columna de partición.
+-- ==============================================================================================================
+BEGIN;
+
+ALTER TABLE kardex RENAME TO kardex_unpartitioned;
+ALTER TABLE kardex_unpartitioned RENAME CONSTRAINT kardex_pkey TO kardex_unpartitioned_pkey;
+DROP INDEX IF EXISTS idx_kardex_date_id;
+DROP INDEX IF EXISTS idx_kardex_tool_date_id;
+
+-- Sin CHECK sobre 'type': los valores válidos son los de MovementType (@Enumerated STRING); una lista fija aquí
+-- quedaría desfasada al agregar tipos (ya pasó con MANUAL_DECREASE) y haría fallar la copia y los ajustes de stock.
+CREATE TABLE kardex (
+    id            BIGINT       NOT NULL,
+    tool_id       BIGINT       NOT NULL REFERENCES tools (id),
+    type          VARCHAR(255),
+    movement_date TIMESTAMP(6) NOT NULL,
+    quantity      INTEGER,
+    user_id       BIGINT       NOT NULL REFERENCES users (id),
+    PRIMARY KEY (id, movement_date)
+) PARTITION BY RANGE (movement_date);
+
+-- Red de seguridad: filas fuera de las particiones mensuales (no debería recibir datos)
+CREATE TABLE kardex_default PARTITION OF kardex DEFAULT;
+
+-- Una partición por mes desde el movimiento más antiguo hasta 3 meses después del actual
+DO $$
+DECLARE
+    month_start DATE := date_trunc('month', COALESCE((SELECT MIN(movement_date) FROM kardex_unpartitioned), now()))::date;
+    last_month  DATE := (date_trunc('month', now()) + INTERVAL '3 months')::date;
+BEGIN
+    WHILE month_start <= last_month LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF kardex FOR VALUES FROM (%L) TO (%L)',
+                       'kardex_p' || to_char(month_start, 'YYYYMM'), month_start, (month_start + INTERVAL '1 month')::date);
+        month_start := (month_start + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+-- Movimientos sin fecha (si existieran) quedan en la partición por defecto con fecha 1970-01-01
+INSERT INTO kardex (id, tool_id, type, movement_date, quantity, user_id)
+SELECT id, tool_id, type, COALESCE(movement_date, TIMESTAMP '1970-01-01'), quantity, user_id
+FROM kardex_unpartitioned;
+
+-- Índices particionados (se crean en cada partición, también en las futuras)
+CREATE INDEX idx_kardex_date_id ON kardex (movement_date, id);
+CREATE INDEX idx_kardex_tool_date_id ON kardex (tool_id, movement_date, id);
+
+DROP TABLE kardex_unpartitioned;
+
+COMMIT;
+
+ANALYZE kardex;
@@ -0,0 +1,47 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.BackCoreApplication;
+import app.repositories.KardexArchiveStore;
+import app.services.ClientLoanCounterService;
+import app.services.ClientService;
+import app.services.KardexRollupService;
+import app.services.KardexService;
+import app.services.LoanService;
+import app.services.TariffService;
+import app.services.ToolLoanCountService;
+import app.services.ToolService;
+
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Configuración común de las pruebas de integración (H2 en memoria, repositorios JPA + capa de servicios).
+// Sin transacción de prueba: cada operación confirma su propia transacción como en producción.
+// Todas las clases comparten el mismo contexto de Spring; un servicio nuevo que estas pruebas necesiten se agrega aquí.
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@DataJpaTest(properties = {
+        "spring.sql.init.mode=never",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "spring.datasource.url=jdbc:h2:mem:backcore_it;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=20000",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password="
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ContextConfiguration(classes = BackCoreApplication.class)
+@Import({LoanService.class, ToolService.class, KardexService.class, TariffService.class,
+        ClientService.class, ClientLoanCounterService.class, KardexRollupService.class, KardexArchiveStore.class,
+        ToolLoanCountService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@interface BackCoreIntegrationTest {
+}
@@ -0,0 +1,226 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.ClientLoanCounts;
+import app.dtos.ClientLoanStanding;
+import app.dtos.CounterRebuildReport;
+import app.entities.ClientLoanCounterEntity;
+import app.entities.enums.LoanStatus;
+import app.repositories.ClientLoanCounterRepository;
+import app.repositories.ClientRepository;
+import app.repositories.LoanRepository;
+import app.services.ClientLoanCounterService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ClientLoanCounterServiceTest {
+
+    @Mock private ClientLoanCounterRepository counterRepository;
+    @Mock private LoanRepository loanRepository;
+    @Mock private ClientRepository clientRepository;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    private ClientLoanCounterService counterService;
+
+    @BeforeEach
+    void setUp() {
+        counterService = new ClientLoanCounterService(counterRepository, loanRepository, clientRepository, transactionManager);
+    }
+
+    // =======================================================================
+    // MÉTODO: getCounters / getStanding
+    // =======================================================================
+
+    @Test
+    void getCounters_ReturnsStoredRow() {
+        ClientLoanCounterEntity stored = ClientLoanCounterEntity.builder().clientId(1L).activeCount(2).build();
+        when(counterRepository.findById(1L)).thenReturn(Optional.of(stored));
+
+        ClientLoanCounterEntity result = counterService.getCounters(1L);
+
+        assertSame(stored, result);
+        // No debe recalcular desde loans si la fila existe
+        verify(loanRepository, never()).aggregateCountsByClientIdRange(anyLong(), anyLong());
+    }
+
+    @Test
+    void getCounters_RebuildsMissingRowFromLoans() {
+        when(counterRepository.findById(1L)).thenReturn(Optional.empty());
+        when(loanRepository.aggregateCountsByClientIdRange(1L, 1L))
+                .thenReturn(List.of(new ClientLoanCounts(Long.valueOf(1L), 1L, 1L, 2L, 7000.0)));
+        when(counterRepository.save(any(ClientLoanCounterEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ClientLoanCounterEntity result = counterService.getCounters(1L);
+
+        verify(clientRepository, times(1)).lockById(1L);
+        assertEquals(1L, result.getActiveCount());
+        assertEquals(1L, result.getLateCount());
+        assertEquals(2L, result.getUnpaidCount());
+        assertEquals(7000.0, result.getOutstandingPenalty(), 0.01);
+    }
+
+    @Test
+    void getCounters_UsesRowCreatedByAConcurrentRequest() {
+        // Dos primeras peticiones del mismo cliente: la otra creó la fila mientras esta esperaba el bloqueo
+        ClientLoanCounterEntity created = ClientLoanCounterEntity.builder().clientId(1L).activeCount(1).build();
+        when(counterRepository.findById(1L)).thenReturn(Optional.empty(), Optional.of(created));
+
+        ClientLoanCounterEntity result = counterService.getCounters(1L);
+
+        assertSame(created, result);
+        verify(counterRepository, never()).save(any());
+    }
+
+    @Test
+    void getStanding_CombinesCountersWithToolCheck() {
+        when(counterRepository.findById(1L)).thenReturn(Optional.of(
+                ClientLoanCounterEntity.builder().clientId(1L).activeCount(3).lateCount(1).build()));
+        when(loanRepository.existsByClient_IdAndTool_IdAndStatusIn(1L, 10L, List.of(LoanStatus.ACTIVE, LoanStatus.LATE)))
+                .thenReturn(true);
+
+        ClientLoanStanding standing = counterService.getStanding(1L, 10L);
+
+        assertEquals(4L, standing.activeOrLateCount());
+        assertEquals(1L, standing.lateCount());
+        assertTrue(standing.toolHeld());
+    }
+
+    // =======================================================================
+    // MÉTODOS: onLoanCreated / onLoanReturned / onLoanPaid
+    // =======================================================================
+
+    @Test
+    void onLoanCreated_IncrementsActiveCount() {
+        when(counterRepository.applyDelta(1L, 1, 0, 0, 0.0)).thenReturn(1);
+
+        counterService.onLoanCreated(1L);
+
+        verify(counterRepository, times(1)).applyDelta(1L, 1, 0, 0, 0.0);
+        verify(counterRepository, never()).save(any());
+    }
+
+    @Test
+    void onLoanReturned_FromLateWithPenalty_MovesToUnpaid() {
+        when(counterRepository.applyDelta(1L, 0, -1, 1, 12000.0)).thenReturn(1);
+
+        counterService.onLoanReturned(1L, LoanStatus.LATE, 12000.0);
+
+        verify(counterRepository, times(1)).applyDelta(1L, 0, -1, 1, 12000.0);
+    }
+
+    @Test
+    void onLoanReturned_FromActiveWithoutPenalty_OnlyDecrementsActive() {
+        when(counterRepository.applyDelta(1L, -1, 0, 0, 0.0)).thenReturn(1);
+
+        counterService.onLoanReturned(1L, LoanStatus.ACTIVE, 0.0);
+
+        verify(counterRepository, times(1)).applyDelta(1L, -1, 0, 0, 0.0);
+    }
+
+    @Test
+    void onLoanPaid_SettlesDebt() {
+        when(counterRepository.applyDelta(1L, 0, 0, -1, -5000.0)).thenReturn(1);
+
+        counterService.onLoanPaid(1L, 5000.0);
+
+        verify(counterRepository, times(1)).applyDelta(1L, 0, 0, -1, -5000.0);
+    }
+
+    @Test
+    void onLoanPaid_DoesNothingWithoutPenalty() {
+        counterService.onLoanPaid(1L, 0.0);
+
+        verify(counterRepository, never()).applyDelta(anyLong(), anyLong(), anyLong(), anyLong(), anyDouble());
+    }
+
+    @Test
+    void applyDelta_RebuildsRowWhenClientHasNoCounters() {
+        // Cliente anterior a la tabla de contadores: el UPDATE no afecta filas
+        when(counterRepository.applyDelta(1L, 1, 0, 0, 0.0)).thenReturn(0);
+        when(loanRepository.aggregateCountsByClientIdRange(1L, 1L))
+                .thenReturn(List.of(new ClientLoanCounts(Long.valueOf(1L), 1L, 0L, 0L, 0.0)));
+
+        counterService.onLoanCreated(1L);
+
+        verify(clientRepository, times(1)).lockById(1L);
+        verify(counterRepository, times(1)).save(argThat(c -> c.getClientId().equals(1L) && c.getActiveCount() == 1));
+    }
+
+    @Test
+    void applyDelta_AppliesToRowCreatedByAConcurrentRequest() {
+        // La fila apareció mientras se esperaba el bloqueo del cliente: el cambio se aplica sobre ella
+        when(counterRepository.applyDelta(1L, 1, 0, 0, 0.0)).thenReturn(0, 1);
+
+        counterService.onLoanCreated(1L);
+
+        verify(counterRepository, times(2)).applyDelta(1L, 1, 0, 0, 0.0);
+        verify(counterRepository, never()).save(any());
+    }
+
+    // =======================================================================
+    // MÉTODO: rebuild
+    // =======================================================================
+
+    @Test
+    void rebuild_VerifyOnly_ReportsMismatchesWithoutSaving() {
+        when(clientRepository.findIdsAfter(eq(0L), any(Limit.class))).thenReturn(List.of(1L, 2L));
+        when(clientRepository.findIdsAfter(eq(2L), any(Limit.class))).thenReturn(List.of());
+        when(loanRepository.aggregateCountsByClientIdRange(1L, 2L))
+                .thenReturn(List.of(new ClientLoanCounts(Long.valueOf(1L), 1L, 0L, 0L, 0.0)));
+        // Cliente 1 desfasado (0 activos guardados), cliente 2 correcto (sin préstamos)
+        when(counterRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(
+                ClientLoanCounterEntity.builder().clientId(1L).build(),
+                ClientLoanCounterEntity.builder().clientId(2L).build()));
+
+        CounterRebuildReport report = counterService.rebuild(500, false);
+
+        assertEquals(2L, report.clientsScanned());
+        assertEquals(1L, report.mismatches());
+        assertEquals(0L, report.repaired());
+        assertEquals(List.of(1L), report.mismatchedClientIds());
+        verify(counterRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void rebuild_Repair_SavesMissingAndStaleRows() {
+        when(clientRepository.findIdsAfter(eq(0L), any(Limit.class))).thenReturn(List.of(1L, 2L));
+        when(clientRepository.findIdsAfter(eq(2L), any(Limit.class))).thenReturn(List.of());
+        when(loanRepository.aggregateCountsByClientIdRange(1L, 2L))
+                .thenReturn(List.of(new ClientLoanCounts(Long.valueOf(2L), 0L, 1L, 0L, 0.0)));
+        // Cliente 1 sin fila, cliente 2 desfasado
+        when(counterRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(
+                ClientLoanCounterEntity.builder().clientId(2L).build()));
+
+        CounterRebuildReport report = counterService.rebuild(2, true);
+
+        assertEquals(2L, report.mismatches());
+        assertEquals(2L, report.repaired());
+        verify(counterRepository, times(1)).saveAll(argThat(rows -> {
+            List<ClientLoanCounterEntity> list = (List<ClientLoanCounterEntity>) rows;
+            return list.size() == 2 && list.get(1).getLateCount() == 1;
+        }));
+    }
+
+    @Test
+    void rebuild_FailsWithInvalidChunkSize() {
+        assertThrows(IllegalArgumentException.class, () -> counterService.rebuild(0, false));
+        verify(clientRepository, never()).findIdsAfter(anyLong(), any(Limit.class));
+    }
+}
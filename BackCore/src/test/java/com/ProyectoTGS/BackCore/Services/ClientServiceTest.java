@@ -7,16 +7,15 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import app.services.ClientLoanCounterService;
 import app.services.ClientService;
 import app.dtos.UpdateClientRequest;
 import app.entities.ClientEntity;
-import app.entities.LoanEntity;
+import app.entities.ClientLoanCounterEntity;
 import app.entities.enums.ClientStatus;
-import app.entities.enums.LoanStatus;
 import app.exceptions.InvalidOperationException;
 import app.exceptions.ResourceNotFoundException;
 import app.repositories.ClientRepository;
-import app.repositories.LoanRepository;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -25,7 +24,6 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
@@ -35,6 +33,9 @@ public class ClientServiceTest {
     @Mock
     private ClientRepository clientRepository;
 
+    @Mock
+    private ClientLoanCounterService clientLoanCounterService;
+
     @InjectMocks
     private ClientService clientService;
 
@@ -88,6 +89,8 @@ public class ClientServiceTest {
         assertNotNull(created);
         assertEquals(ClientStatus.ACTIVE, created.getStatus());
         verify(clientRepository, times(1)).save(newClient);
+        // Se crea la fila de contadores del nuevo cliente
+        verify(clientLoanCounterService, times(1)).initializeFor(99L);
     }
 
     @Test
@@ -195,6 +198,24 @@ public class ClientServiceTest {
         verify(clientRepository, never()).save(any());
     }
 
+    // =======================================================================
+    // MÉTODO: restrictClients (devoluciones múltiples)
+    // =======================================================================
+
+    @Test
+    void restrictClients_OnlySavesClientsNotAlreadyRestricted() {
+        // ARRANGE
+        ClientEntity active = ClientEntity.builder().id(1L).status(ClientStatus.ACTIVE).build();
+        ClientEntity restricted = ClientEntity.builder().id(2L).status(ClientStatus.RESTRICTED).build();
+
+        // ACT
+        clientService.restrictClients(List.of(active, restricted));
+
+        // ASSERT
+        assertEquals(ClientStatus.RESTRICTED, active.getStatus());
+        verify(clientRepository, times(1)).saveAll(List.of(active));
+    }
+
     // =======================================================================
     // MÉTODO: updateClientDetails
     // =======================================================================
@@ -274,9 +295,6 @@ public class ClientServiceTest {
     // MÉTODO: attemptClientReactivation
     // =======================================================================
 
-    @Mock // Necesitamos mockear LoanRepository también
-    private LoanRepository loanRepository;
-
     @Test
     void attemptClientReactivation_Success_WhenNoDebtsOrLateLoans() {
         // ARRANGE: Cliente restringido pero sin deudas ni atrasos
@@ -290,12 +308,10 @@ public class ClientServiceTest {
         // Mockeo:
         // 1. Encontrar al cliente
         when(clientRepository.findById(clientId)).thenReturn(Optional.of(restrictedClient));
-        // 2. Verificar que no hay préstamos LATE
-        when(loanRepository.countByClientAndStatus(restrictedClient, LoanStatus.LATE)).thenReturn(0L); // 0 préstamos LATE
-        // 3. Verificar que no hay préstamos RECEIVED con deuda
-        when(loanRepository.findByClientAndStatusAndTotalPenaltyGreaterThan(restrictedClient, LoanStatus.RECEIVED, 0.0))
-                .thenReturn(Collections.emptyList()); // Lista vacía = sin deudas
-        // 4. Simular el guardado (cuando se llama a updateStatus internamente)
+        // 2. Contadores sin préstamos LATE ni deudas RECEIVED
+        when(clientLoanCounterService.getCounters(clientId))
+                .thenReturn(ClientLoanCounterEntity.builder().clientId(clientId).build());
+        // 3. Simular el guardado (cuando se llama a updateStatus internamente)
         //    Devuelve el cliente con el estado ya cambiado a ACTIVE
         when(clientRepository.save(any(ClientEntity.class))).thenAnswer(invocation -> {
             ClientEntity clientToSave = invocation.getArgument(0);
@@ -313,8 +329,7 @@ public class ClientServiceTest {
 
         // Verificar que se realizaron las comprobaciones necesarias
         verify(clientRepository, times(1)).findById(clientId);
-        verify(loanRepository, times(1)).countByClientAndStatus(restrictedClient, LoanStatus.LATE);
-        verify(loanRepository, times(1)).findByClientAndStatusAndTotalPenaltyGreaterThan(restrictedClient, LoanStatus.RECEIVED, 0.0);
+        verify(clientLoanCounterService, times(1)).getCounters(clientId);
         // Verificar que se guardó el cambio de estado
         verify(clientRepository, times(1)).save(argThat(client ->
                 client.getId().equals(clientId) && client.getStatus().equals(ClientStatus.ACTIVE)
@@ -345,8 +360,7 @@ public class ClientServiceTest {
         // Verificar que solo se llamó a findById una vez
         verify(clientRepository, times(1)).findById(clientId);
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se hicieron chequeos de préstamos
-        verify(loanRepository, never()).countByClientAndStatus(any(ClientEntity.class), any(LoanStatus.class));
-        verify(loanRepository, never()).findByClientAndStatusAndTotalPenaltyGreaterThan(any(ClientEntity.class), any(LoanStatus.class), anyDouble());
+        verify(clientLoanCounterService, never()).getCounters(anyLong());
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se intentó guardar nada
         verify(clientRepository, never()).save(any(ClientEntity.class));
     }
@@ -364,8 +378,9 @@ public class ClientServiceTest {
         // Mockeo:
         // 1. Encontrar al cliente
         when(clientRepository.findById(clientId)).thenReturn(Optional.of(restrictedClientWithLateLoan));
-        // 2. SIMULAR QUE TIENE PRÉSTAMOS LATE (devolver > 0)
-        when(loanRepository.countByClientAndStatus(restrictedClientWithLateLoan, LoanStatus.LATE)).thenReturn(1L); // Tiene 1 préstamo LATE
+        // 2. SIMULAR QUE TIENE PRÉSTAMOS LATE (contador > 0)
+        when(clientLoanCounterService.getCounters(clientId))
+                .thenReturn(ClientLoanCounterEntity.builder().clientId(clientId).lateCount(1).build()); // Tiene 1 préstamo LATE
 
         // ACT & ASSERT: Esperamos que lance InvalidOperationException
         assertThrows(InvalidOperationException.class, () -> {
@@ -374,9 +389,7 @@ public class ClientServiceTest {
 
         // Verificar que se hicieron las comprobaciones hasta el punto de fallo
         verify(clientRepository, times(1)).findById(clientId);
-        verify(loanRepository, times(1)).countByClientAndStatus(restrictedClientWithLateLoan, LoanStatus.LATE);
-        // VERIFICACIÓN CRÍTICA: Asegurarse de que NO continuó verificando deudas RECEIVED
-        verify(loanRepository, never()).findByClientAndStatusAndTotalPenaltyGreaterThan(any(ClientEntity.class), any(LoanStatus.class), anyDouble());
+        verify(clientLoanCounterService, times(1)).getCounters(clientId);
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se intentó guardar (cambiar estado)
         verify(clientRepository, never()).save(any(ClientEntity.class));
     }
@@ -391,22 +404,12 @@ public class ClientServiceTest {
                 .status(ClientStatus.RESTRICTED)
                 .build();
 
-        // Simular un préstamo RECEIVED con penalidad pendiente
-        LoanEntity unpaidLoan = LoanEntity.builder()
-                .id(101L)
-                .client(restrictedClientWithDebt)
-                .status(LoanStatus.RECEIVED)
-                .totalPenalty(5000.0) // Tiene deuda pendiente
-                .build();
-
         // Mockeo:
         // 1. Encontrar al cliente
         when(clientRepository.findById(clientId)).thenReturn(Optional.of(restrictedClientWithDebt));
-        // 2. No tiene préstamos LATE
-        when(loanRepository.countByClientAndStatus(restrictedClientWithDebt, LoanStatus.LATE)).thenReturn(0L);
-        // 3. SIMULAR QUE TIENE DEUDAS PENDIENTES (lista NO vacía)
-        when(loanRepository.findByClientAndStatusAndTotalPenaltyGreaterThan(restrictedClientWithDebt, LoanStatus.RECEIVED, 0.0))
-                .thenReturn(List.of(unpaidLoan)); // Devuelve una lista con el préstamo pendiente
+        // 2. Sin préstamos LATE, pero SIMULAR QUE TIENE DEUDAS PENDIENTES (préstamo RECEIVED con penalidad)
+        when(clientLoanCounterService.getCounters(clientId))
+                .thenReturn(ClientLoanCounterEntity.builder().clientId(clientId).unpaidCount(1).outstandingPenalty(5000.0).build());
 
         // ACT & ASSERT: Esperamos que lance InvalidOperationException
         assertThrows(InvalidOperationException.class, () -> {
@@ -415,8 +418,7 @@ public class ClientServiceTest {
 
         // Verificar que se hicieron las comprobaciones hasta el punto de fallo
         verify(clientRepository, times(1)).findById(clientId);
-        verify(loanRepository, times(1)).countByClientAndStatus(restrictedClientWithDebt, LoanStatus.LATE);
-        verify(loanRepository, times(1)).findByClientAndStatusAndTotalPenaltyGreaterThan(restrictedClientWithDebt, LoanStatus.RECEIVED, 0.0);
+        verify(clientLoanCounterService, times(1)).getCounters(clientId);
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se intentó guardar (cambiar estado)
         verify(clientRepository, never()).save(any(ClientEntity.class));
     }
@@ -437,8 +439,7 @@ public class ClientServiceTest {
         // Verificar que solo se intentó buscar al cliente una vez
         verify(clientRepository, times(1)).findById(nonExistentClientId);
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se hicieron chequeos de préstamos
-        verify(loanRepository, never()).countByClientAndStatus(any(ClientEntity.class), any(LoanStatus.class));
-        verify(loanRepository, never()).findByClientAndStatusAndTotalPenaltyGreaterThan(any(ClientEntity.class), any(LoanStatus.class), anyDouble());
+        verify(clientLoanCounterService, never()).getCounters(anyLong());
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se intentó guardar nada
         verify(clientRepository, never()).save(any(ClientEntity.class));
     }
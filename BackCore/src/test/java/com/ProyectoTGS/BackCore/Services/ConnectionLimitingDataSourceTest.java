@@ -0,0 +1,94 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.config.ConnectionLimitingDataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ConnectionLimitingDataSourceTest {
+
+    @Mock private DataSource target;
+    @Mock private Connection connection;
+
+    private ConnectionLimitingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new ConnectionLimitingDataSource(target, 2, Duration.ofMillis(50));
+    }
+
+    @Test
+    void getConnection_TimesOutWhenAllPermitsAreInUse() throws Exception {
+        when(target.getConnection()).thenReturn(connection);
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+        verify(target, times(2)).getConnection();
+
+        // Al cerrar se devuelve el permiso (una sola vez aunque se cierre dos veces)
+        first.close();
+        first.close();
+        assertEquals(1, dataSource.availablePermits());
+        verify(connection, atLeastOnce()).close();
+    }
+
+    @Test
+    void getConnection_ReleasesPermitWhenPoolFails() throws Exception {
+        when(target.getConnection()).thenThrow(new SQLException("pool exhausted"));
+
+        assertThrows(SQLException.class, () -> dataSource.getConnection());
+        assertEquals(2, dataSource.availablePermits());
+    }
+
+    @Test
+    void virtualThreads_NeverExceedPoolSize() throws Exception {
+        // 500 hilos virtuales compiten por 2 conexiones: nunca hay más de 2 en uso a la vez
+        ConnectionLimitingDataSource limited = new ConnectionLimitingDataSource(target, 2, Duration.ofSeconds(30));
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        when(target.getConnection()).thenAnswer(invocation -> {
+            maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+            Connection pooled = mock(Connection.class);
+            doAnswer(close -> inUse.decrementAndGet()).when(pooled).close();
+            return pooled;
+        });
+
+        List<Future<?>> tasks = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 500; i++) {
+                tasks.add(executor.submit(() -> {
+                    try (Connection c = limited.getConnection()) {
+                        Thread.sleep(1);
+                    }
+                    return null;
+                }));
+            }
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+
+        assertTrue(maxInUse.get() <= 2, "Conexiones simultáneas: " + maxInUse.get());
+        assertEquals(2, limited.availablePermits());
+    }
+}
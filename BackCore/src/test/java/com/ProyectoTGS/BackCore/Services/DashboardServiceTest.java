@@ -0,0 +1,101 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.DashboardSummary;
+import app.entities.ClientEntity;
+import app.entities.LoanEntity;
+import app.entities.ToolEntity;
+import app.entities.enums.ClientStatus;
+import app.entities.enums.LoanStatus;
+import app.entities.enums.ToolStatus;
+import app.services.DashboardService;
+import app.services.LoanService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria) de los indicadores del panel de inicio
+@BackCoreIntegrationTest
+class DashboardServiceTest extends IntegrationTestSupport {
+
+    @Autowired private LoanService loanService;
+
+    private DashboardService dashboardService;
+    private ToolEntity drill;
+    private ClientEntity restricted;
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void setUp() {
+        dashboardService = new DashboardService(loanRepository, clientRepository, toolRepository, 4, Duration.ofMinutes(1), Duration.ofSeconds(10));
+
+        drill = givenTool("Taladro", 5, 2, ToolStatus.AVAILABLE);
+        givenTool("Sierra", 5, 0, ToolStatus.AVAILABLE);
+        givenTool("Esmeril", 5, 1, ToolStatus.REPAIRING);
+        ClientEntity active = givenClient("1-1", ClientStatus.ACTIVE);
+        restricted = givenClient("2-2", ClientStatus.RESTRICTED);
+
+        givenLoan(active, LoanStatus.ACTIVE, 0.0);
+        givenLoan(active, LoanStatus.ACTIVE, 0.0);
+        givenLoan(restricted, LoanStatus.LATE, 0.0);
+        givenLoan(restricted, LoanStatus.RECEIVED, 7000.0);
+        givenLoan(restricted, LoanStatus.RECEIVED, 0.0); // Total 0: también queda pendiente hasta registrar el pago
+        givenLoan(active, LoanStatus.CLOSED, 0.0);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        dashboardService.shutdown();
+    }
+
+    // Todos los préstamos del panel son del taladro y vencieron ayer
+    private LoanEntity givenLoan(ClientEntity client, LoanStatus status, double penalty) {
+        return givenLoan(client, drill, today.minusDays(1), status, penalty);
+    }
+
+    @Test
+    void getSummary_AggregatesAllIndicators() {
+        // ARRANGE: el préstamo con deuda se paga hoy
+        LoanEntity unpaid = givenLoan(restricted, LoanStatus.RECEIVED, 4500.0);
+        loanService.markLoanAsPaid(unpaid.getId());
+
+        // ACT
+        DashboardSummary summary = dashboardService.getSummary();
+
+        // ASSERT
+        assertEquals(2, summary.activeLoans());
+        assertEquals(1, summary.lateLoans());
+        assertEquals(2, summary.receivedUnpaidLoans());
+        assertEquals(2, summary.closedLoans());
+        assertEquals(1, summary.restrictedClients());
+        assertEquals(Map.of(ToolStatus.AVAILABLE, 2L, ToolStatus.LOANED, 0L, ToolStatus.REPAIRING, 1L, ToolStatus.DECOMMISSIONED, 0L),
+                summary.toolsByStatus());
+        assertEquals(3, summary.unitsInRepair());
+        assertEquals(4500.0, summary.incomeToday(), 0.01);
+    }
+
+    @Test
+    void getSummary_WithinCacheTtl_ReusesPreviousResult() {
+        // ARRANGE
+        DashboardSummary first = dashboardService.getSummary();
+        givenLoan(restricted, LoanStatus.LATE, 0.0);
+
+        // ACT
+        DashboardSummary second = dashboardService.getSummary();
+        DashboardService uncached = new DashboardService(loanRepository, clientRepository, toolRepository, 2, Duration.ZERO, Duration.ofSeconds(10));
+        DashboardSummary fresh = uncached.getSummary();
+        uncached.shutdown();
+
+        // ASSERT: dentro del TTL se devuelve el mismo cálculo; sin caché se ve el préstamo nuevo
+        assertSame(first, second);
+        assertEquals(1, second.lateLoans());
+        assertEquals(2, fresh.lateLoans());
+    }
+}
@@ -0,0 +1,161 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.config.IdempotencyFilter;
+import app.dtos.StoredResponse;
+import app.exceptions.IdempotencyConflictException;
+import app.services.IdempotencyService;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyFilterTest {
+
+    @Mock private IdempotencyService idempotencyService;
+
+    private IdempotencyFilter filter;
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        filter = new IdempotencyFilter(idempotencyService);
+    }
+
+    // "Controlador" de prueba: cuenta ejecuciones y responde con el estado indicado
+    private MockFilterChain chainResponding(int status, String body) {
+        return new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                executions.incrementAndGet();
+                resp.setStatus(status);
+                resp.setContentType("application/json");
+                resp.getWriter().write(body);
+            }
+        });
+    }
+
+    private static String fp(String method, String uri) {
+        return IdempotencyFilter.fingerprint(method, uri, new byte[0]);
+    }
+
+    private MockHttpServletRequest loanRequest(String method, String uri, String key) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        if (key != null) {
+            request.addHeader(IdempotencyFilter.HEADER, key);
+        }
+        return request;
+    }
+
+    @Test
+    void firstRequest_ExecutesAndStoresSuccessfulResponse() throws Exception {
+        when(idempotencyService.begin("anonymous:k1", fp("POST", "/loans"))).thenReturn(Optional.empty());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(loanRequest("POST", "/loans", "k1"), response, chainResponding(200, "{\"id\":7}"));
+
+        assertEquals(1, executions.get());
+        assertEquals("{\"id\":7}", response.getContentAsString());
+        verify(idempotencyService, times(1)).complete("anonymous:k1", fp("POST", "/loans"), 200, "application/json", "{\"id\":7}");
+        verify(idempotencyService, never()).release(anyString());
+    }
+
+    @Test
+    void retry_ReplaysStoredResponseWithoutExecuting() throws Exception {
+        when(idempotencyService.begin("anonymous:k1", fp("PATCH", "/loans/7/pay"))).thenReturn(Optional.of(
+                new StoredResponse(fp("PATCH", "/loans/7/pay"), 200, "application/json", "{\"status\":\"CLOSED\"}", LocalDateTime.now())));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(loanRequest("PATCH", "/loans/7/pay", "k1"), response, chainResponding(400, "{}"));
+
+        assertEquals(0, executions.get());
+        assertEquals(200, response.getStatus());
+        assertEquals("{\"status\":\"CLOSED\"}", response.getContentAsString());
+        assertEquals("true", response.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    @Test
+    void failedRequest_ReleasesKeySoRetryRunsAgain() throws Exception {
+        when(idempotencyService.begin("anonymous:k1", fp("PUT", "/loans/7/return"))).thenReturn(Optional.empty());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(loanRequest("PUT", "/loans/7/return", "k1"), response, chainResponding(400, "{\"error\":\"Bad Request\"}"));
+
+        assertEquals(400, response.getStatus());
+        verify(idempotencyService, times(1)).release("anonymous:k1");
+        verify(idempotencyService, never()).complete(anyString(), anyString(), anyInt(), any(), any());
+    }
+
+    @Test
+    void sameKeyWithDifferentBody_UsesDifferentFingerprint() throws Exception {
+        // ARRANGE: la segunda petición reutiliza la clave con otro cuerpo -> el servicio detecta la huella distinta
+        byte[] first = "{\"clientId\":1}".getBytes();
+        byte[] second = "{\"clientId\":2}".getBytes();
+        when(idempotencyService.begin("anonymous:k1", IdempotencyFilter.fingerprint("POST", "/loans", first))).thenReturn(Optional.empty());
+        when(idempotencyService.begin("anonymous:k1", IdempotencyFilter.fingerprint("POST", "/loans", second)))
+                .thenThrow(new IdempotencyConflictException("Idempotency-Key was already used for a different request."));
+        StringBuilder bodySeenByController = new StringBuilder();
+        MockFilterChain echoChain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                bodySeenByController.append(new String(req.getInputStream().readAllBytes()));
+                resp.setStatus(200);
+            }
+        });
+        MockHttpServletRequest firstRequest = loanRequest("POST", "/loans", "k1");
+        firstRequest.setContent(first);
+        MockHttpServletRequest secondRequest = loanRequest("POST", "/loans", "k1");
+        secondRequest.setContent(second);
+        MockHttpServletResponse conflict = new MockHttpServletResponse();
+
+        // ACT
+        filter.doFilter(firstRequest, new MockHttpServletResponse(), echoChain);
+        filter.doFilter(secondRequest, conflict, chainResponding(200, "{}"));
+
+        // ASSERT: el controlador recibe el cuerpo completo aunque el filtro ya lo leyó; el segundo uso es 409
+        assertEquals("{\"clientId\":1}", bodySeenByController.toString());
+        assertEquals(409, conflict.getStatus());
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void keyInProgress_Returns409() throws Exception {
+        when(idempotencyService.begin("anonymous:k1", fp("POST", "/loans")))
+                .thenThrow(new IdempotencyConflictException("A request with this Idempotency-Key is still being processed."));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(loanRequest("POST", "/loans", "k1"), response, chainResponding(200, "{}"));
+
+        assertEquals(409, response.getStatus());
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void requestsWithoutKeyOrOutsideLoans_PassThrough() throws Exception {
+        filter.doFilter(loanRequest("POST", "/loans", null), new MockHttpServletResponse(), chainResponding(200, "{}"));
+        filter.doFilter(loanRequest("POST", "/tools", "k1"), new MockHttpServletResponse(), chainResponding(200, "{}"));
+        filter.doFilter(loanRequest("GET", "/loans/7", "k1"), new MockHttpServletResponse(), chainResponding(200, "{}"));
+
+        assertEquals(3, executions.get());
+        verifyNoInteractions(idempotencyService);
+    }
+}
@@ -0,0 +1,165 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.StoredResponse;
+import app.entities.IdempotencyKeyEntity;
+import app.exceptions.IdempotencyConflictException;
+import app.repositories.IdempotencyKeyRepository;
+import app.services.IdempotencyService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyServiceTest {
+
+    private static final String KEY = "empleado:abc-123";
+    private static final String FINGERPRINT = "POST /loans";
+
+    @Mock private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(idempotencyKeyRepository, Duration.ofHours(24), Duration.ofMinutes(2), 2);
+    }
+
+    @Test
+    void begin_NewKey_ReservesIt() {
+        when(idempotencyKeyRepository.findById(KEY)).thenReturn(Optional.empty());
+
+        Optional<StoredResponse> result = idempotencyService.begin(KEY, FINGERPRINT);
+
+        assertTrue(result.isEmpty());
+        verify(idempotencyKeyRepository, times(1)).reserve(eq(KEY), eq(FINGERPRINT), any(LocalDateTime.class));
+    }
+
+    @Test
+    void begin_AfterComplete_ReplaysFromMemoryWithoutDatabase() {
+        idempotencyService.complete(KEY, FINGERPRINT, 200, "application/json", "{\"id\":7}");
+
+        Optional<StoredResponse> result = idempotencyService.begin(KEY, FINGERPRINT);
+
+        assertTrue(result.isPresent());
+        assertEquals(200, result.get().statusCode());
+        assertEquals("{\"id\":7}", result.get().body());
+        verify(idempotencyKeyRepository, never()).findById(anyString());
+        verify(idempotencyKeyRepository, never()).reserve(anyString(), anyString(), any());
+    }
+
+    @Test
+    void begin_CompletedOnAnotherInstance_ReplaysFromDatabase() {
+        when(idempotencyKeyRepository.findById(KEY)).thenReturn(Optional.of(IdempotencyKeyEntity.builder()
+                .key(KEY).fingerprint(FINGERPRINT).statusCode(200).contentType("application/json")
+                .responseBody("{\"id\":7}").createdAt(LocalDateTime.now().minusMinutes(5)).build()));
+
+        Optional<StoredResponse> result = idempotencyService.begin(KEY, FINGERPRINT);
+
+        assertEquals("{\"id\":7}", result.orElseThrow().body());
+        // Queda en memoria: el siguiente reintento no consulta la BD
+        idempotencyService.begin(KEY, FINGERPRINT);
+        verify(idempotencyKeyRepository, times(1)).findById(KEY);
+    }
+
+    @Test
+    void begin_StillProcessing_ThrowsConflict() {
+        when(idempotencyKeyRepository.findById(KEY)).thenReturn(Optional.of(IdempotencyKeyEntity.builder()
+                .key(KEY).fingerprint(FINGERPRINT).createdAt(LocalDateTime.now()).reservedAt(LocalDateTime.now()).build()));
+
+        assertThrows(IdempotencyConflictException.class, () -> idempotencyService.begin(KEY, FINGERPRINT));
+        verify(idempotencyKeyRepository, never()).reserve(anyString(), anyString(), any());
+        verify(idempotencyKeyRepository, never()).takeOverExpiredReservation(anyString(), any(), any());
+    }
+
+    @Test
+    void begin_ProcessingLeaseExpired_RetryTakesTheReservationOver() {
+        // La instancia que reservó la clave cayó hace 5 minutos sin completar ni liberar
+        LocalDateTime reservedAt = LocalDateTime.now().minusMinutes(5);
+        when(idempotencyKeyRepository.findById(KEY)).thenReturn(Optional.of(IdempotencyKeyEntity.builder()
+                .key(KEY).fingerprint(FINGERPRINT).createdAt(reservedAt).reservedAt(reservedAt).build()));
+        when(idempotencyKeyRepository.takeOverExpiredReservation(eq(KEY), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(1);
+
+        Optional<StoredResponse> result = idempotencyService.begin(KEY, FINGERPRINT);
+
+        assertTrue(result.isEmpty());
+        verify(idempotencyKeyRepository, never()).reserve(anyString(), anyString(), any());
+    }
+
+    @Test
+    void begin_ProcessingLeaseExpired_ConcurrentTakeOverThrowsConflict() {
+        LocalDateTime reservedAt = LocalDateTime.now().minusMinutes(5);
+        when(idempotencyKeyRepository.findById(KEY)).thenReturn(Optional.of(IdempotencyKeyEntity.builder()
+                .key(KEY).fingerprint(FINGERPRINT).createdAt(reservedAt).reservedAt(reservedAt).build()));
+        // Otro reintento renovó el lease entre la lectura y el UPDATE
+        when(idempotencyKeyRepository.takeOverExpiredReservation(eq(KEY), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(0);
+
+        assertThrows(IdempotencyConflictException.class, () -> idempotencyService.begin(KEY, FINGERPRINT));
+    }
+
+    @Test
+    void begin_ProcessingLeaseExpired_DifferentRequestThrowsConflict() {
+        LocalDateTime reservedAt = LocalDateTime.now().minusMinutes(5);
+        when(idempotencyKeyRepository.findById(KEY)).thenReturn(Optional.of(IdempotencyKeyEntity.builder()
+                .key(KEY).fingerprint(FINGERPRINT).createdAt(reservedAt).reservedAt(reservedAt).build()));
+
+        assertThrows(IdempotencyConflictException.class, () -> idempotencyService.begin(KEY, "PATCH /loans/7/pay"));
+        verify(idempotencyKeyRepository, never()).takeOverExpiredReservation(anyString(), any(), any());
+    }
+
+    @Test
+    void begin_ConcurrentReservation_ThrowsConflict() {
+        when(idempotencyKeyRepository.findById(KEY)).thenReturn(Optional.empty());
+        when(idempotencyKeyRepository.reserve(eq(KEY), eq(FINGERPRINT), any(LocalDateTime.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        assertThrows(IdempotencyConflictException.class, () -> idempotencyService.begin(KEY, FINGERPRINT));
+    }
+
+    @Test
+    void begin_KeyReusedForAnotherRequest_ThrowsConflict() {
+        idempotencyService.complete(KEY, FINGERPRINT, 200, "application/json", "{}");
+
+        assertThrows(IdempotencyConflictException.class, () -> idempotencyService.begin(KEY, "PATCH /loans/7/pay"));
+    }
+
+    @Test
+    void begin_ExpiredRow_IsDeletedAndReservedAgain() {
+        IdempotencyKeyEntity expired = IdempotencyKeyEntity.builder().key(KEY).fingerprint(FINGERPRINT)
+                .statusCode(200).createdAt(LocalDateTime.now().minusDays(2)).build();
+        when(idempotencyKeyRepository.findById(KEY)).thenReturn(Optional.of(expired));
+
+        Optional<StoredResponse> result = idempotencyService.begin(KEY, FINGERPRINT);
+
+        assertTrue(result.isEmpty());
+        verify(idempotencyKeyRepository, times(1)).delete(expired);
+        verify(idempotencyKeyRepository, times(1)).reserve(eq(KEY), eq(FINGERPRINT), any(LocalDateTime.class));
+    }
+
+    @Test
+    void cache_IsBoundedByMaxEntries() {
+        // Capacidad 2: la clave menos usada sale de memoria y se vuelve a leer desde la BD
+        idempotencyService.complete("k1", FINGERPRINT, 200, null, "1");
+        idempotencyService.complete("k2", FINGERPRINT, 200, null, "2");
+        idempotencyService.complete("k3", FINGERPRINT, 200, null, "3");
+        when(idempotencyKeyRepository.findById("k1")).thenReturn(Optional.empty());
+
+        assertTrue(idempotencyService.begin("k1", FINGERPRINT).isEmpty());
+        assertEquals("3", idempotencyService.begin("k3", FINGERPRINT).orElseThrow().body());
+    }
+}
@@ -0,0 +1,113 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.entities.ClientEntity;
+import app.entities.KardexEntity;
+import app.entities.LoanEntity;
+import app.entities.TariffEntity;
+import app.entities.ToolEntity;
+import app.entities.UserEntity;
+import app.entities.enums.ClientStatus;
+import app.entities.enums.LoanStatus;
+import app.entities.enums.MovementType;
+import app.entities.enums.ToolStatus;
+import app.entities.enums.UserRole;
+import app.repositories.ClientLoanCounterRepository;
+import app.repositories.ClientRepository;
+import app.repositories.KardexDailyRollupRepository;
+import app.repositories.KardexRepository;
+import app.repositories.LoanRepository;
+import app.repositories.ReportJobRepository;
+import app.repositories.TariffRepository;
+import app.repositories.ToolLoanDailyCountRepository;
+import app.repositories.ToolRepository;
+import app.repositories.ToolStockSnapshotRepository;
+import app.repositories.UserRepository;
+import app.services.TariffService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Repositorios, datos de prueba y limpieza comunes a las pruebas de integración (@BackCoreIntegrationTest).
+// La limpieza corre después del @AfterEach de cada clase (ej. detener sus hilos) y vacía todas las tablas en orden
+// de claves foráneas, así ninguna prueba depende de lo que otra dejó en la BD compartida.
+abstract class IntegrationTestSupport {
+
+    @Autowired protected ToolRepository toolRepository;
+    @Autowired protected ClientRepository clientRepository;
+    @Autowired protected UserRepository userRepository;
+    @Autowired protected LoanRepository loanRepository;
+    @Autowired protected KardexRepository kardexRepository;
+    @Autowired protected ClientLoanCounterRepository counterRepository;
+    @Autowired protected KardexDailyRollupRepository rollupRepository;
+    @Autowired protected ToolStockSnapshotRepository snapshotRepository;
+    @Autowired protected ToolLoanDailyCountRepository toolLoanCountRepository;
+    @Autowired protected ReportJobRepository jobRepository;
+    @Autowired protected TariffRepository tariffRepository;
+    @Autowired protected TariffService tariffService;
+
+    @AfterEach
+    void cleanUpDatabase() {
+        jobRepository.deleteAll();
+        rollupRepository.deleteAll();
+        snapshotRepository.deleteAll();
+        toolLoanCountRepository.deleteAll();
+        kardexRepository.deleteAll();
+        loanRepository.deleteAll();
+        counterRepository.deleteAll();
+        clientRepository.deleteAll();
+        toolRepository.deleteAll();
+        userRepository.deleteAll();
+        tariffRepository.deleteAll();
+    }
+
+    protected UserEntity givenUser(String username) {
+        return givenUser(username, UserRole.ADMIN);
+    }
+
+    protected UserEntity givenUser(String username, UserRole role) {
+        return userRepository.save(UserEntity.builder().username(username).password("x").role(role).build());
+    }
+
+    protected ToolEntity givenTool(String name, int stock) {
+        return givenTool(name, stock, 0, ToolStatus.AVAILABLE);
+    }
+
+    protected ToolEntity givenTool(String name, int stock, int inRepair, ToolStatus status) {
+        return toolRepository.save(ToolEntity.builder()
+                .name(name).category("Eléctricas").status(status)
+                .stock(stock).inRepair(inRepair).replacementValue(50000).build());
+    }
+
+    protected ClientEntity givenClient(String rut, ClientStatus status) {
+        return givenClient(rut, "Cliente " + rut, status);
+    }
+
+    protected ClientEntity givenClient(String rut, String name, ClientStatus status) {
+        return clientRepository.save(ClientEntity.builder()
+                .name(name).rut(rut).phone("9" + rut).email(rut + "@mail.com")
+                .status(status).build());
+    }
+
+    // Préstamo de 3 días que vence en 'dueDate'
+    protected LoanEntity givenLoan(ClientEntity client, ToolEntity tool, LocalDate dueDate, LoanStatus status) {
+        return givenLoan(client, tool, dueDate, status, 0.0);
+    }
+
+    protected LoanEntity givenLoan(ClientEntity client, ToolEntity tool, LocalDate dueDate, LoanStatus status, double totalPenalty) {
+        return loanRepository.save(LoanEntity.builder().client(client).tool(tool)
+                .startDate(dueDate.minusDays(3)).dueDate(dueDate).status(status).totalPenalty(totalPenalty).build());
+    }
+
+    protected KardexEntity givenMovement(ToolEntity tool, UserEntity user, MovementType type, int quantity, LocalDateTime at) {
+        return kardexRepository.save(KardexEntity.builder().tool(tool).user(user).type(type).quantity(quantity).movementDate(at).build());
+    }
+
+    // Arriendo 1000/día, atraso 2000/día, reparación 1500
+    protected void givenTariffs() {
+        tariffRepository.save(TariffEntity.builder().dailyRentFee(1000).dailyLateFee(2000).repairFee(1500).build());
+        tariffService.refresh(); // Tarifas insertadas directo en la BD, fuera de updateTariff
+    }
+}
@@ -0,0 +1,188 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.KardexArchiveReport;
+import app.dtos.KardexMovementRow;
+import app.dtos.StockAtTimeReport;
+import app.dtos.StockAuditReport;
+import app.dtos.ToolStockAtTime;
+import app.entities.ToolEntity;
+import app.entities.UserEntity;
+import app.entities.enums.MovementType;
+import app.exceptions.InvalidOperationException;
+import app.repositories.KardexArchiveStore;
+import app.services.KardexArchiveService;
+import app.services.KardexRollupService;
+import app.services.KardexService;
+import app.services.StockAuditService;
+import app.services.StockSnapshotService;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria + directorio temporal) del archivo histórico del Kardex en segmentos
+@BackCoreIntegrationTest
+class KardexArchiveTest extends IntegrationTestSupport {
+
+    // Horizonte de 24 meses: se archiva todo lo anterior al 2023-06-01
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 15);
+
+    @Autowired private KardexRollupService rollupService;
+    @Autowired private EntityManager entityManager;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @TempDir Path archiveDir;
+
+    private KardexArchiveStore archiveStore;
+    private KardexArchiveService archiveService;
+    private KardexService kardexService;
+    private UserEntity user;
+    private ToolEntity drill;
+    private ToolEntity saw;
+
+    @BeforeEach
+    void setUp() {
+        archiveStore = new KardexArchiveStore(archiveDir.toString());
+        archiveService = new KardexArchiveService(kardexRepository, archiveStore, transactionManager, 24, 3);
+        kardexService = new KardexService(kardexRepository, toolRepository, entityManager, rollupService, archiveStore);
+        user = givenUser("diego");
+
+        // Taladro: 5 - 1 + 1 - 1 = 4; Sierra: 3 - 1 = 2. Cuatro movimientos antes del horizonte, dos después.
+        drill = givenTool("Taladro", 4);
+        saw = givenTool("Sierra", 2);
+        movement(drill, MovementType.INCOME, 5, LocalDateTime.of(2023, 1, 10, 9, 0));
+        movement(drill, MovementType.LOAN, 1, LocalDateTime.of(2023, 2, 1, 10, 30));
+        movement(saw, MovementType.INCOME, 3, LocalDateTime.of(2023, 3, 5, 8, 0));
+        movement(drill, MovementType.RETURN, 1, LocalDateTime.of(2023, 5, 31, 23, 59, 59));
+        movement(drill, MovementType.LOAN, 1, LocalDateTime.of(2024, 1, 2, 11, 0));
+        movement(saw, MovementType.LOAN, 1, LocalDateTime.of(2025, 6, 1, 12, 0));
+    }
+
+    private void movement(ToolEntity tool, MovementType type, int quantity, LocalDateTime at) {
+        givenMovement(tool, user, type, quantity, at);
+    }
+
+    @Test
+    void archive_MovesOldRowsIntoSegments_AndReadsStayTransparent() {
+        // ACT
+        KardexArchiveReport report = archiveService.archive(TODAY);
+
+        // ASSERT: 4 filas en 2 segmentos (3 + 1), solo quedan las posteriores al horizonte
+        assertEquals(LocalDateTime.of(2023, 6, 1, 0, 0), report.cutoff());
+        assertEquals(2, report.segmentsWritten());
+        assertEquals(4, report.rowsArchived());
+        assertEquals(2, kardexRepository.count());
+        assertEquals(2, archiveStore.getSegments().size());
+        assertTrue(Files.exists(archiveDir.resolve(archiveStore.getSegments().get(0).file())));
+
+        List<KardexMovementRow> drillHistory = kardexService.getMovementsByToolId(drill.getId());
+        assertEquals(List.of(MovementType.INCOME, MovementType.LOAN, MovementType.RETURN, MovementType.LOAN),
+                drillHistory.stream().map(KardexMovementRow::type).toList());
+        assertEquals(LocalDateTime.of(2023, 5, 31, 23, 59, 59), drillHistory.get(2).movementDate());
+        assertTrue(drillHistory.stream().allMatch(row -> "Taladro".equals(row.toolName()) && "diego".equals(row.username())));
+
+        List<KardexMovementRow> range = kardexService.getMovementsByDate(
+                LocalDateTime.of(2023, 2, 1, 0, 0), LocalDateTime.of(2024, 12, 31, 0, 0));
+        assertEquals(4, range.size()); // LOAN, INCOME (sierra), RETURN archivados + LOAN de 2024 en la tabla
+        assertEquals(saw.getId(), range.get(1).toolId());
+
+        // Otra instancia (reinicio) vuelve a cargar el índice; una segunda ejecución no tiene nada que mover
+        KardexArchiveStore reopened = new KardexArchiveStore(archiveDir.toString());
+        assertEquals(archiveStore.archivedUpTo(), reopened.archivedUpTo());
+        assertEquals(3, reopened.findByToolId(drill.getId()).size());
+        assertEquals(0, archiveService.archive(TODAY).rowsArchived());
+    }
+
+    @Test
+    void archive_KeepsStockAuditConsistent_AndBlocksRollupBackfillOfArchivedDays() {
+        // ARRANGE
+        archiveService.archive(TODAY);
+        StockAuditService auditService = new StockAuditService(toolRepository, archiveStore, transactionManager, 2);
+        KardexRollupService archivedRollup = new KardexRollupService(rollupRepository, archiveStore, toolRepository, transactionManager, 2);
+
+        // ACT & ASSERT: los movimientos archivados siguen contando para el stock esperado
+        KardexArchiveStore.ArchivedTotals drillTotals = archiveStore.getLedgerTotals().get(drill.getId());
+        assertEquals(5, drillTotals.stock());
+        assertEquals(3, drillTotals.movements());
+        assertEquals(0, auditService.audit(10, false).drifted());
+
+        assertThrows(InvalidOperationException.class,
+                () -> archivedRollup.backfill(LocalDate.of(2023, 5, 1), LocalDate.of(2023, 5, 31), 7));
+        assertDoesNotThrow(() -> archivedRollup.backfill(LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 2), 7));
+    }
+
+    @Test
+    void archive_CompletesInterruptedRun_WithoutDuplicatingRows() {
+        // ARRANGE: segmento registrado pero el proceso se cortó antes de borrar sus filas de la tabla
+        archiveStore.append(kardexRepository.findOldestRows(LocalDateTime.of(2023, 6, 1, 0, 0), Limit.of(2)));
+        assertEquals(6, kardexRepository.count());
+        assertEquals(4, kardexService.getMovementsByToolId(drill.getId()).size()); // Sin duplicados mientras tanto
+
+        // ACT
+        KardexArchiveReport report = archiveService.archive(TODAY);
+
+        // ASSERT: la siguiente ejecución borra lo ya archivado y mueve el resto
+        assertEquals(2, report.rowsArchived());
+        assertEquals(2, kardexRepository.count());
+        assertEquals(2, archiveStore.getSegments().size());
+        assertEquals(4, kardexService.getMovementsByToolId(drill.getId()).size());
+        assertEquals(2, kardexService.getMovementsByToolId(saw.getId()).size());
+    }
+
+    @Test
+    void audit_WithRowsLeftByAnInterruptedRun_DoesNotCountThemTwice() {
+        // ARRANGE: INCOME 5 y LOAN 1 del taladro quedan en el segmento y también en la tabla
+        archiveStore.append(kardexRepository.findOldestRows(LocalDateTime.of(2023, 6, 1, 0, 0), Limit.of(2)));
+        StockAuditService auditService = new StockAuditService(toolRepository, archiveStore, transactionManager, 2);
+
+        // ACT
+        StockAuditReport report = auditService.audit(10, true);
+
+        // ASSERT: sin desalineación que "reparar" y el stock guardado no cambia
+        assertEquals(0, report.drifted());
+        assertEquals(0, report.repaired());
+        assertEquals(4, toolRepository.findById(drill.getId()).orElseThrow().getStock());
+    }
+
+    @Test
+    void getStockAt_WithoutCheckpoint_IncludesArchivedMovements() {
+        // ARRANGE: todo lo anterior al horizonte queda en segmentos y no hay puntos de control
+        archiveService.archive(TODAY);
+        StockSnapshotService snapshotService = new StockSnapshotService(snapshotRepository, archiveStore, toolRepository);
+
+        // ACT
+        StockAtTimeReport beforeSaw = snapshotService.getStockAt(LocalDateTime.of(2023, 3, 1, 0, 0));
+        StockAtTimeReport afterHorizon = snapshotService.getStockAt(LocalDateTime.of(2024, 6, 1, 0, 0));
+
+        // ASSERT: 2023-03-01 solo existía el taladro (5 - 1), todo archivado; 2024-06-01 suma archivo y tabla
+        assertEquals(List.of(new ToolStockAtTime(drill.getId(), "Taladro", 4, 0)), beforeSaw.tools());
+        assertEquals(List.of(new ToolStockAtTime(drill.getId(), "Taladro", 4, 0), new ToolStockAtTime(saw.getId(), "Sierra", 3, 0)),
+                afterHorizon.tools());
+    }
+
+    @Test
+    void getStockAt_WithRowsLeftByAnInterruptedRun_DoesNotCountThemTwice() {
+        // ARRANGE
+        archiveStore.append(kardexRepository.findOldestRows(LocalDateTime.of(2023, 6, 1, 0, 0), Limit.of(2)));
+        StockSnapshotService snapshotService = new StockSnapshotService(snapshotRepository, archiveStore, toolRepository);
+
+        // ACT
+        StockAtTimeReport report = snapshotService.getStockAt(LocalDateTime.of(2023, 4, 1, 0, 0));
+
+        // ASSERT
+        assertEquals(List.of(new ToolStockAtTime(drill.getId(), "Taladro", 4, 0), new ToolStockAtTime(saw.getId(), "Sierra", 3, 0)),
+                report.tools());
+    }
+}
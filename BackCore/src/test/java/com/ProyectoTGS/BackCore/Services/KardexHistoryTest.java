@@ -0,0 +1,137 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.KardexMovementRow;
+import app.dtos.KardexPage;
+import app.entities.KardexEntity;
+import app.entities.ToolEntity;
+import app.entities.UserEntity;
+import app.entities.enums.MovementType;
+import app.entities.enums.UserRole;
+import app.services.KardexService;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria) del historial paginado por keyset y del streaming por cursor JDBC
+@BackCoreIntegrationTest
+class KardexHistoryTest extends IntegrationTestSupport {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 3, 1, 10, 0);
+
+    @Autowired private KardexService kardexService;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
+    // Cada 3 movimientos comparten fecha: el id desempata el orden y el cursor no debe saltarse ni repetir filas
+    private void givenMovements(ToolEntity tool, UserEntity user, int count) {
+        List<KardexEntity> movements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            movements.add(KardexEntity.builder().tool(tool).user(user).type(MovementType.LOAN)
+                    .movementDate(BASE.plusMinutes(i / 3)).quantity(1).build());
+        }
+        kardexRepository.saveAll(movements);
+    }
+
+    @Test
+    void pagesByDate_WalkTheRangeInOrderWithoutGapsOrDuplicates() {
+        // ARRANGE: 10 movimientos en el rango y 1 fuera
+        UserEntity user = givenUser("diego");
+        ToolEntity tool = givenTool("Taladro", 10);
+        givenMovements(tool, user, 10);
+        givenMovement(tool, user, MovementType.RETURN, 1, BASE.plusDays(2));
+        LocalDateTime end = BASE.plusDays(1);
+
+        // ACT: páginas de 4 siguiendo el cursor
+        List<KardexMovementRow> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            KardexPage page = kardexService.getMovementsPageByDate(BASE, end, cursor, 4);
+            seen.addAll(page.items());
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        // ASSERT
+        assertEquals(3, pages);
+        assertEquals(10, seen.size());
+        assertEquals(10, seen.stream().map(KardexMovementRow::id).distinct().count());
+        for (int i = 1; i < seen.size(); i++) {
+            KardexMovementRow prev = seen.get(i - 1);
+            KardexMovementRow next = seen.get(i);
+            assertTrue(prev.movementDate().isBefore(next.movementDate())
+                    || (prev.movementDate().isEqual(next.movementDate()) && prev.id() < next.id()));
+        }
+        assertEquals("Taladro", seen.get(0).toolName());
+        assertEquals("diego", seen.get(0).username());
+    }
+
+    @Test
+    void pagesByTool_OnlyReturnThatTool() {
+        UserEntity user = givenUser("juan", UserRole.EMPLOYEE);
+        ToolEntity drill = givenTool("Taladro", 10);
+        ToolEntity saw = givenTool("Sierra", 10);
+        givenMovements(drill, user, 5);
+        givenMovements(saw, user, 3);
+
+        KardexPage first = kardexService.getMovementsPageByToolId(saw.getId(), null, 2);
+        KardexPage second = kardexService.getMovementsPageByToolId(saw.getId(), first.nextCursor(), 2);
+
+        assertEquals(2, first.items().size());
+        assertEquals(1, second.items().size());
+        assertNull(second.nextCursor());
+        assertTrue(second.items().stream().allMatch(row -> row.toolId().equals(saw.getId())));
+    }
+
+    @Test
+    void streamByDate_DeliversEveryRowOfTheRangeInOrder() {
+        UserEntity user = givenUser("diego");
+        ToolEntity tool = givenTool("Taladro", 10);
+        givenMovements(tool, user, 25);
+
+        List<KardexMovementRow> streamed = new ArrayList<>();
+        kardexService.streamMovementsByDate(BASE, BASE.plusMinutes(4), streamed::add); // Minutos 0..4 -> 15 filas
+
+        assertEquals(15, streamed.size());
+        assertEquals(kardexService.getMovementsPageByDate(BASE, BASE.plusMinutes(4), null, 15).items(), streamed);
+    }
+
+    // Movimientos de herramientas y usuarios distintos: si las asociaciones se cargaran por fila habría 1 + 2N consultas
+    private long statementsToReadByDate(int movements) {
+        for (int i = 0; i < movements; i++) {
+            UserEntity user = givenUser("u" + i, UserRole.EMPLOYEE);
+            ToolEntity tool = givenTool("Herramienta " + i, 10);
+            givenMovement(tool, user, MovementType.INCOME, 1, BASE.plusMinutes(i));
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            List<KardexMovementRow> rows = kardexService.getMovementsByDate(BASE, BASE.plusDays(1));
+            assertEquals(movements, rows.size());
+            assertEquals("Herramienta 0", rows.get(0).toolName());
+            assertEquals("u0", rows.get(0).username());
+            return statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+            cleanUpDatabase();
+        }
+    }
+
+    @Test
+    void getMovementsByDate_RunsConstantNumberOfStatementsRegardlessOfResultSize() {
+        long withFew = statementsToReadByDate(2);
+        long withMany = statementsToReadByDate(40);
+
+        assertEquals(1, withFew);
+        assertEquals(withFew, withMany);
+    }
+}
@@ -0,0 +1,82 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.KardexPartitionReport;
+import app.services.KardexPartitionService;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KardexPartitionServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private void givenPartitioned(boolean partitioned, List<String> partitions) {
+        when(jdbcTemplate.queryForObject(contains("pg_partitioned_table"), eq(Integer.class))).thenReturn(partitioned ? 1 : 0);
+        if (partitioned) {
+            when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class))).thenReturn(partitions);
+        }
+    }
+
+    @Test
+    void maintain_CreatesOnlyMissingMonthsAhead() {
+        // ARRANGE: marzo y abril ya existen, faltan mayo y junio (2 meses adelante)
+        givenPartitioned(true, List.of("kardex_default", "kardex_p202503", "kardex_p202504"));
+        KardexPartitionService service = new KardexPartitionService(jdbcTemplate, 3, 0);
+
+        // ACT
+        KardexPartitionReport report = service.maintain(LocalDate.of(2025, 3, 15));
+
+        // ASSERT
+        assertTrue(report.partitioned());
+        assertEquals(List.of("kardex_p202505", "kardex_p202506"), report.created());
+        assertTrue(report.detached().isEmpty());
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS kardex_p202505 PARTITION OF kardex FOR VALUES FROM ('2025-05-01') TO ('2025-06-01')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS kardex_p202506 PARTITION OF kardex FOR VALUES FROM ('2025-06-01') TO ('2025-07-01')");
+        verify(jdbcTemplate, never()).execute(contains("DETACH"));
+    }
+
+    @Test
+    void maintain_DetachesArchivedPartitionsOlderThanRetentionButNotDefault() {
+        // ARRANGE: retención de 12 meses desde 2025-03 -> se conserva desde 2024-03; enero ya está archivado (vacío)
+        givenPartitioned(true, List.of("kardex_default", "kardex_p202401", "kardex_p202402", "kardex_p202403",
+                "kardex_p202503", "kardex_p202504", "kardex_p202505", "kardex_p202506"));
+        when(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM kardex_p202401)", Boolean.class)).thenReturn(false);
+        when(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM kardex_p202402)", Boolean.class)).thenReturn(true);
+        KardexPartitionService service = new KardexPartitionService(jdbcTemplate, 3, 12);
+
+        // ACT
+        KardexPartitionReport report = service.maintain(LocalDate.of(2025, 3, 1));
+
+        // ASSERT: febrero aún tiene movimientos sin archivar -> no se separa (no se pierden filas del libro)
+        assertTrue(report.created().isEmpty());
+        assertEquals(List.of("kardex_p202401"), report.detached());
+        assertEquals(List.of("kardex_p202402"), report.notArchived());
+        verify(jdbcTemplate).execute("ALTER TABLE kardex DETACH PARTITION kardex_p202401");
+        verify(jdbcTemplate, never()).execute("ALTER TABLE kardex DETACH PARTITION kardex_p202402");
+    }
+
+    @Test
+    void maintain_DoesNothingWhenTableIsNotPartitioned() {
+        givenPartitioned(false, List.of());
+        KardexPartitionService service = new KardexPartitionService(jdbcTemplate, 3, 12);
+
+        KardexPartitionReport report = service.maintain(LocalDate.of(2025, 3, 1));
+
+        assertFalse(report.partitioned());
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+}
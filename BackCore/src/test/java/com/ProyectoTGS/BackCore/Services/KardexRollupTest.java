@@ -0,0 +1,91 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.RollupBackfillReport;
+import app.entities.KardexDailyRollupEntity;
+import app.entities.ToolEntity;
+import app.entities.UserEntity;
+import app.entities.enums.MovementType;
+import app.entities.enums.UserRole;
+import app.services.KardexRollupService;
+import app.services.KardexService;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria) de los totales diarios del Kardex: incremento al confirmar y backfill
+@BackCoreIntegrationTest
+class KardexRollupTest extends IntegrationTestSupport {
+
+    @Autowired private KardexService kardexService;
+    @Autowired private KardexRollupService rollupService;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private List<KardexDailyRollupEntity> today(Long toolId, MovementType type) {
+        return rollupService.getRollup(LocalDate.now(), LocalDate.now(), toolId, type);
+    }
+
+    @Test
+    void registerMovement_CommittedTransactionsAccumulateInTheDailyRollup() {
+        // ARRANGE
+        UserEntity user = givenUser("diego");
+        ToolEntity drill = givenTool("Taladro", 10);
+        ToolEntity saw = givenTool("Sierra", 10);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        // ACT: dos transacciones confirmadas y una revertida
+        transaction.executeWithoutResult(status -> {
+            kardexService.registerMovement(drill, MovementType.LOAN, 1, user);
+            kardexService.registerMovement(drill, MovementType.LOAN, 2, user);
+            kardexService.registerMovement(saw, MovementType.INCOME, 5, user);
+        });
+        transaction.executeWithoutResult(status -> kardexService.registerMovement(drill, MovementType.LOAN, 4, user));
+        transaction.executeWithoutResult(status -> {
+            kardexService.registerMovement(drill, MovementType.LOAN, 100, user);
+            status.setRollbackOnly();
+        });
+
+        // ASSERT
+        List<KardexDailyRollupEntity> drillLoans = today(drill.getId(), MovementType.LOAN);
+        assertEquals(1, drillLoans.size());
+        assertEquals(3, drillLoans.get(0).getMovementCount());
+        assertEquals(7, drillLoans.get(0).getTotalQuantity());
+        assertEquals(5, today(saw.getId(), null).get(0).getTotalQuantity());
+        assertEquals(1, today(drill.getId(), null).size()); // Solo LOAN: lo revertido no aparece
+    }
+
+    @Test
+    void backfill_RebuildsTheSameTotalsFromKardexInParallelChunks() {
+        // ARRANGE: movimientos en 10 días distintos escritos directo en kardex (sin totales) y un total erróneo previo
+        UserEntity user = givenUser("juan", UserRole.EMPLOYEE);
+        ToolEntity drill = givenTool("Taladro", 10);
+        LocalDateTime base = LocalDateTime.of(2025, 3, 1, 12, 0);
+        for (int day = 0; day < 10; day++) {
+            for (int i = 0; i <= day % 3; i++) {
+                givenMovement(drill, user, MovementType.RETURN, 2, base.plusDays(day).plusMinutes(i));
+            }
+        }
+        rollupRepository.save(KardexDailyRollupEntity.builder().movementDay(LocalDate.of(2025, 3, 1))
+                .toolId(drill.getId()).type(MovementType.RETURN).movementCount(99).totalQuantity(99).build());
+
+        // ACT: bloques de 3 días
+        RollupBackfillReport report = rollupService.backfill(LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 10), 3);
+
+        // ASSERT
+        assertEquals(4, report.chunks());
+        assertEquals(10, report.rowsWritten());
+        List<KardexDailyRollupEntity> rollup = rollupService.getRollup(
+                LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 10), drill.getId(), MovementType.RETURN);
+        assertEquals(10, rollup.size());
+        assertEquals(1, rollup.get(0).getMovementCount());   // Se reemplazó el total erróneo
+        assertEquals(3, rollup.get(2).getMovementCount());
+        assertEquals(6, rollup.get(2).getTotalQuantity());
+    }
+}
@@ -6,23 +6,36 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import app.services.KardexRollupService;
 import app.services.KardexService;
+import app.dtos.KardexCursor;
+import app.dtos.KardexMovementRow;
+import app.dtos.KardexPage;
 import app.entities.KardexEntity;
 import app.entities.ToolEntity;
 import app.entities.UserEntity;
 import app.entities.enums.MovementType;
+import app.exceptions.InvalidOperationException;
 import app.exceptions.ResourceNotFoundException;
+import app.repositories.KardexArchiveStore;
 import app.repositories.KardexRepository;
 import app.repositories.ToolRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.Limit;
 
 import java.time.LocalDateTime;
 import java.util.Collections; 
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,6 +47,15 @@ public class KardexServiceTest {
     @Mock // Añadir Mock para ToolRepository
     private ToolRepository toolRepository;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private KardexRollupService rollupService;
+
+    @Mock
+    private KardexArchiveStore archiveStore;
+
     @InjectMocks
     private KardexService kardexService;
 
@@ -60,15 +82,15 @@ public class KardexServiceTest {
         // ACT
         kardexService.registerMovement(testTool, MovementType.INCOME, 5, testUser);
 
-        // ASSERT: Verifica que el repositorio fue llamado con la entidad Kardex correcta
-        verify(kardexRepository, times(1)).save(
-            argThat(kardex ->
+        // ASSERT: Verifica que el repositorio fue llamado con la entidad Kardex correcta (sin transacción: inserción inmediata)
+        verify(kardexRepository, times(1)).insertAllBatched(
+            argThat(movements -> movements.size() == 1 && movements.stream().allMatch(kardex ->
                 kardex.getTool().equals(testTool) &&
                 kardex.getType().equals(MovementType.INCOME) &&
                 kardex.getQuantity().equals(5) &&
                 kardex.getUser().equals(testUser) &&
                 kardex.getMovementDate() != null // Verificar que se asigna fecha
-            )
+            ))
         );
     }
 
@@ -78,7 +100,7 @@ public class KardexServiceTest {
         assertThrows(ResourceNotFoundException.class, () -> {
             kardexService.registerMovement(null, MovementType.INCOME, 1, testUser);
         }, "Debe lanzar ResourceNotFoundException si Tool es null.");
-        verify(kardexRepository, never()).save(any()); // No debe intentar guardar
+        verify(kardexRepository, never()).insertAllBatched(any()); // No debe intentar guardar
     }
 
      @Test
@@ -87,7 +109,7 @@ public class KardexServiceTest {
         assertThrows(ResourceNotFoundException.class, () -> {
             kardexService.registerMovement(toolWithoutId, MovementType.INCOME, 1, testUser);
         }, "Debe lanzar ResourceNotFoundException si Tool ID es null.");
-        verify(kardexRepository, never()).save(any()); // No debe intentar guardar
+        verify(kardexRepository, never()).insertAllBatched(any()); // No debe intentar guardar
     }
 
 
@@ -100,7 +122,147 @@ public class KardexServiceTest {
         assertThrows(ResourceNotFoundException.class, () -> {
             kardexService.registerMovement(testTool, MovementType.INCOME, 1, testUser);
         }, "Debe lanzar ResourceNotFoundException si la herramienta no existe.");
-        verify(kardexRepository, never()).save(any()); // No debe intentar guardar
+        verify(kardexRepository, never()).insertAllBatched(any()); // No debe intentar guardar
+    }
+
+    @Test
+    void registerMovement_ManagedToolSkipsExistenceCheck() {
+        // ARRANGE: herramienta ya cargada en el contexto de persistencia
+        when(entityManager.contains(testTool)).thenReturn(true);
+
+        // ACT
+        kardexService.registerMovement(testTool, MovementType.RETURN, 1, testUser);
+
+        // ASSERT
+        verify(toolRepository, never()).existsById(any());
+        verify(kardexRepository, times(1)).insertAllBatched(argThat(movements -> movements.size() == 1));
+    }
+
+    // =======================================================================
+    // BUFFER POR TRANSACCIÓN (write-behind)
+    // =======================================================================
+
+    @Test
+    void registerMovement_InTransaction_InsertsOneBatchBeforeCommit() {
+        // ARRANGE
+        when(entityManager.contains(any())).thenReturn(true);
+        ToolEntity otherTool = ToolEntity.builder().id(2L).name("Other Tool").build();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // ACT: varios movimientos en la misma transacción
+            kardexService.registerMovement(testTool, MovementType.LOAN, 1, testUser);
+            kardexService.registerMovement(otherTool, MovementType.LOAN, 1, testUser);
+            kardexService.registerMovements(List.of(testTool), MovementType.RETURN, 1, testUser);
+
+            // ASSERT: nada se inserta hasta el commit, luego un solo batch con los tres
+            verify(kardexRepository, never()).insertAllBatched(any());
+            TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.beforeCommit(false));
+            verify(kardexRepository, times(1)).insertAllBatched(argThat(movements -> movements.size() == 3
+                    && movements.get(2).getType() == MovementType.RETURN));
+            verify(entityManager, times(1)).flush();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void registerMovement_BeforeCommit_AddsWrittenMovementsToDailyRollup() {
+        when(entityManager.contains(testTool)).thenReturn(true);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            kardexService.registerMovement(testTool, MovementType.LOAN, 1, testUser);
+            kardexService.getMovementsByTool(testTool); // Escribe el primero antes de leer
+            kardexService.registerMovement(testTool, MovementType.LOAN, 2, testUser);
+            verify(rollupService, never()).add(any()); // Aún no se confirma
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.beforeCommit(false));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        // Totales de ambos movimientos en la misma transacción, una sola vez
+        verify(rollupService, times(1)).add(argThat(movements -> movements.size() == 2));
+    }
+
+    @Test
+    void registerMovement_RollupFailure_FailsTheCommit() {
+        when(entityManager.contains(testTool)).thenReturn(true);
+        doThrow(new IllegalStateException("rollup down")).when(rollupService).add(any());
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            kardexService.registerMovement(testTool, MovementType.RETURN, 1, testUser);
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+
+            // La excepción revierte la transacción completa: el movimiento no queda sin sus totales
+            assertThrows(IllegalStateException.class, () -> synchronizations.forEach(sync -> sync.beforeCommit(false)));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void registerMovement_RolledBackTransaction_InsertsNothing() {
+        when(entityManager.contains(testTool)).thenReturn(true);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            kardexService.registerMovement(testTool, MovementType.LOAN, 1, testUser);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verify(kardexRepository, never()).insertAllBatched(any());
+        verify(rollupService, never()).add(any());
+    }
+
+    @Test
+    void getMovementsByToolId_FlushesPendingMovementsFirst() {
+        // ARRANGE: un movimiento pendiente en la transacción actual
+        when(entityManager.contains(testTool)).thenReturn(true);
+        when(toolRepository.existsById(1L)).thenReturn(true);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            kardexService.registerMovement(testTool, MovementType.INCOME, 3, testUser);
+
+            // ACT
+            kardexService.getMovementsByToolId(1L);
+
+            // ASSERT: la consulta ve el movimiento recién registrado
+            var order = inOrder(kardexRepository);
+            order.verify(kardexRepository).insertAllBatched(argThat(movements -> movements.size() == 1));
+            order.verify(kardexRepository).findRowsByToolId(1L);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    // =======================================================================
+    // MÉTODO: registerMovements (préstamo múltiple)
+    // =======================================================================
+
+    @Test
+    void registerMovements_InsertsAllMovementsInOneBatch() {
+        // ARRANGE
+        ToolEntity otherTool = ToolEntity.builder().id(2L).name("Other Tool").build();
+
+        // ACT
+        kardexService.registerMovements(List.of(testTool, otherTool), MovementType.LOAN, 1, testUser);
+
+        // ASSERT: un solo batch con ambos movimientos, sin existsById por herramienta ni save individual
+        verify(kardexRepository, times(1)).insertAllBatched(argThat(movements ->
+                movements.size() == 2
+                        && movements.get(0).getTool().equals(testTool)
+                        && movements.get(1).getTool().equals(otherTool)
+                        && movements.stream().allMatch(m -> m.getType() == MovementType.LOAN && m.getUser().equals(testUser))
+        ));
+        verify(toolRepository, never()).existsById(any());
+        verify(kardexRepository, never()).save(any());
+    }
+
+    @Test
+    void registerMovements_FailsWhenAToolHasNoId() {
+        assertThrows(ResourceNotFoundException.class, () ->
+                kardexService.registerMovements(List.of(testTool, toolWithoutId), MovementType.LOAN, 1, testUser));
+        verify(kardexRepository, never()).insertAllBatched(any());
     }
 
     // =======================================================================
@@ -110,17 +272,17 @@ public class KardexServiceTest {
     @Test
     void getMovementsByTool_Success() {
         // ARRANGE
-        KardexEntity movement1 = KardexEntity.builder().id(1L).tool(testTool).type(MovementType.LOAN).build();
-        KardexEntity movement2 = KardexEntity.builder().id(2L).tool(testTool).type(MovementType.RETURN).build();
+        KardexMovementRow movement1 = row(1L, LocalDateTime.now());
+        KardexMovementRow movement2 = row(2L, LocalDateTime.now());
 
-        when(kardexRepository.findByTool_Id(testTool.getId())).thenReturn(List.of(movement1, movement2));
+        when(kardexRepository.findRowsByToolId(testTool.getId())).thenReturn(List.of(movement1, movement2));
 
         // ACT
-        List<KardexEntity> result = kardexService.getMovementsByTool(testTool);
+        List<KardexMovementRow> result = kardexService.getMovementsByTool(testTool);
 
         // ASSERT
         assertEquals(2, result.size());
-        verify(kardexRepository, times(1)).findByTool_Id(1L);
+        verify(kardexRepository, times(1)).findRowsByToolId(1L);
     }
 
     @Test
@@ -129,7 +291,7 @@ public class KardexServiceTest {
         assertThrows(IllegalArgumentException.class, () -> {
             kardexService.getMovementsByTool(null);
         }, "Debe lanzar IllegalArgumentException si Tool es null.");
-        verify(kardexRepository, never()).findByTool_Id(any());
+        verify(kardexRepository, never()).findRowsByToolId(any());
     }
 
     @Test
@@ -138,7 +300,7 @@ public class KardexServiceTest {
         assertThrows(IllegalArgumentException.class, () -> {
             kardexService.getMovementsByTool(toolWithoutId);
         }, "Debe lanzar IllegalArgumentException si Tool ID es null.");
-        verify(kardexRepository, never()).findByTool_Id(any());
+        verify(kardexRepository, never()).findRowsByToolId(any());
     }
 
     // =======================================================================
@@ -149,17 +311,17 @@ public class KardexServiceTest {
     void getMovementsByToolId_Success() {
         // ARRANGE
         Long toolId = 1L;
-        KardexEntity movement1 = KardexEntity.builder().id(1L).tool(testTool).type(MovementType.LOAN).build();
+        KardexMovementRow movement1 = row(1L, LocalDateTime.now());
         when(toolRepository.existsById(toolId)).thenReturn(true); // La herramienta existe
-        when(kardexRepository.findByTool_Id(toolId)).thenReturn(List.of(movement1));
+        when(kardexRepository.findRowsByToolId(toolId)).thenReturn(List.of(movement1));
 
         // ACT
-        List<KardexEntity> result = kardexService.getMovementsByToolId(toolId);
+        List<KardexMovementRow> result = kardexService.getMovementsByToolId(toolId);
 
         // ASSERT
         assertEquals(1, result.size());
         verify(toolRepository, times(1)).existsById(toolId);
-        verify(kardexRepository, times(1)).findByTool_Id(toolId);
+        verify(kardexRepository, times(1)).findRowsByToolId(toolId);
     }
 
      @Test
@@ -167,15 +329,15 @@ public class KardexServiceTest {
         // ARRANGE
         Long toolId = 1L;
         when(toolRepository.existsById(toolId)).thenReturn(true); // La herramienta existe
-        when(kardexRepository.findByTool_Id(toolId)).thenReturn(Collections.emptyList()); // No hay movimientos
+        when(kardexRepository.findRowsByToolId(toolId)).thenReturn(Collections.emptyList()); // No hay movimientos
 
         // ACT
-        List<KardexEntity> result = kardexService.getMovementsByToolId(toolId);
+        List<KardexMovementRow> result = kardexService.getMovementsByToolId(toolId);
 
         // ASSERT
         assertTrue(result.isEmpty());
         verify(toolRepository, times(1)).existsById(toolId);
-        verify(kardexRepository, times(1)).findByTool_Id(toolId);
+        verify(kardexRepository, times(1)).findRowsByToolId(toolId);
     }
 
     @Test
@@ -185,7 +347,7 @@ public class KardexServiceTest {
             kardexService.getMovementsByToolId(null);
         }, "Debe lanzar IllegalArgumentException si Tool ID es null.");
         verify(toolRepository, never()).existsById(any());
-        verify(kardexRepository, never()).findByTool_Id(any());
+        verify(kardexRepository, never()).findRowsByToolId(any());
     }
 
     @Test
@@ -199,7 +361,7 @@ public class KardexServiceTest {
             kardexService.getMovementsByToolId(toolId);
         }, "Debe lanzar ResourceNotFoundException si la herramienta no existe.");
         verify(toolRepository, times(1)).existsById(toolId); // Verifica que se chequeó la existencia
-        verify(kardexRepository, never()).findByTool_Id(any()); // No debe intentar buscar movimientos
+        verify(kardexRepository, never()).findRowsByToolId(any()); // No debe intentar buscar movimientos
     }
 
 
@@ -212,16 +374,51 @@ public class KardexServiceTest {
         // ARRANGE
         LocalDateTime start = LocalDateTime.now().minusDays(1);
         LocalDateTime end = LocalDateTime.now();
-        KardexEntity movement = KardexEntity.builder().id(3L).movementDate(start.plusHours(1)).build();
+        KardexMovementRow movement = row(3L, start.plusHours(1));
+
+        when(kardexRepository.findRowsByMovementDateBetween(start, end)).thenReturn(List.of(movement));
 
-        when(kardexRepository.findByMovementDateBetween(start, end)).thenReturn(List.of(movement));
+        // ACT
+        List<KardexMovementRow> result = kardexService.getMovementsByDate(start, end);
+
+        // ASSERT
+        assertEquals(1, result.size());
+        verify(kardexRepository, times(1)).findRowsByMovementDateBetween(start, end);
+    }
+
+    @Test
+    void getMovementsByDate_MergesArchivedSegments_WhenRangeReachesArchive() {
+        // ARRANGE: archivado hasta el movimiento 2; el 2 sigue también en la tabla (archivo interrumpido antes del borrado)
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 1, 1, 0, 0);
+        KardexMovementRow archived1 = row(1L, start.plusDays(1));
+        KardexMovementRow archived2 = row(2L, start.plusDays(2));
+        KardexMovementRow current = row(5L, start.plusMonths(20));
+        when(archiveStore.archivedUpTo()).thenReturn(Optional.of(KardexCursor.after(archived2)));
+        when(archiveStore.findByMovementDateBetween(start, end)).thenReturn(List.of(archived1, archived2));
+        when(kardexRepository.findRowsByMovementDateBetween(start, end)).thenReturn(List.of(archived2, current));
+
+        // ACT
+        List<KardexMovementRow> result = kardexService.getMovementsByDate(start, end);
+
+        // ASSERT: orden (fecha, id) y sin duplicar el movimiento 2
+        assertEquals(List.of(1L, 2L, 5L), result.stream().map(KardexMovementRow::id).toList());
+    }
+
+    @Test
+    void getMovementsByDate_SkipsArchive_WhenRangeStartsAfterArchivedData() {
+        // ARRANGE
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        LocalDateTime end = LocalDateTime.now();
+        when(archiveStore.archivedUpTo()).thenReturn(Optional.of(new KardexCursor(start.minusYears(2), 10L)));
+        when(kardexRepository.findRowsByMovementDateBetween(start, end)).thenReturn(List.of(row(11L, start.plusHours(1))));
 
         // ACT
-        List<KardexEntity> result = kardexService.getMovementsByDate(start, end);
+        List<KardexMovementRow> result = kardexService.getMovementsByDate(start, end);
 
         // ASSERT
         assertEquals(1, result.size());
-        verify(kardexRepository, times(1)).findByMovementDateBetween(start, end);
+        verify(archiveStore, never()).findByMovementDateBetween(any(), any());
     }
 
     @Test
@@ -229,14 +426,14 @@ public class KardexServiceTest {
         // ARRANGE
         LocalDateTime start = LocalDateTime.now().minusDays(1);
         LocalDateTime end = LocalDateTime.now();
-        when(kardexRepository.findByMovementDateBetween(start, end)).thenReturn(Collections.emptyList());
+        when(kardexRepository.findRowsByMovementDateBetween(start, end)).thenReturn(Collections.emptyList());
 
         // ACT
-        List<KardexEntity> result = kardexService.getMovementsByDate(start, end);
+        List<KardexMovementRow> result = kardexService.getMovementsByDate(start, end);
 
         // ASSERT
         assertTrue(result.isEmpty());
-        verify(kardexRepository, times(1)).findByMovementDateBetween(start, end);
+        verify(kardexRepository, times(1)).findRowsByMovementDateBetween(start, end);
     }
 
     @Test
@@ -246,7 +443,7 @@ public class KardexServiceTest {
         assertThrows(IllegalArgumentException.class, () -> {
             kardexService.getMovementsByDate(null, now);
         }, "Debe lanzar IllegalArgumentException si startDate es null.");
-        verify(kardexRepository, never()).findByMovementDateBetween(any(), any());
+        verify(kardexRepository, never()).findRowsByMovementDateBetween(any(), any());
     }
 
     @Test
@@ -256,7 +453,7 @@ public class KardexServiceTest {
         assertThrows(IllegalArgumentException.class, () -> {
             kardexService.getMovementsByDate(now, null);
         }, "Debe lanzar IllegalArgumentException si endDate es null.");
-        verify(kardexRepository, never()).findByMovementDateBetween(any(), any());
+        verify(kardexRepository, never()).findRowsByMovementDateBetween(any(), any());
     }
 
     @Test
@@ -269,6 +466,72 @@ public class KardexServiceTest {
         assertThrows(IllegalArgumentException.class, () -> {
             kardexService.getMovementsByDate(start, end);
         }, "Debe lanzar IllegalArgumentException si endDate es anterior a startDate.");
-        verify(kardexRepository, never()).findByMovementDateBetween(any(), any());
+        verify(kardexRepository, never()).findRowsByMovementDateBetween(any(), any());
+    }
+
+    // =======================================================================
+    // MÉTODOS: historial paginado (keyset) y streaming
+    // =======================================================================
+
+    private KardexMovementRow row(long id, LocalDateTime date) {
+        return new KardexMovementRow(id, date, MovementType.LOAN, 1, 1L, "Test Tool", 10L, "test_user");
+    }
+
+    @Test
+    void getMovementsPageByDate_ReturnsCursorOfLastItemWhenMoreRowsExist() {
+        // ARRANGE: se piden 2 y el repositorio devuelve 3 (fila extra = hay página siguiente)
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime end = start.plusDays(1);
+        when(kardexRepository.findPageByMovementDate(start, 0L, end, Limit.of(3)))
+                .thenReturn(List.of(row(1, start), row(2, start), row(3, start.plusHours(1))));
+
+        // ACT
+        KardexPage page = kardexService.getMovementsPageByDate(start, end, null, 2);
+
+        // ASSERT
+        assertEquals(2, page.items().size());
+        assertEquals(new KardexCursor(start, 2L), KardexCursor.decode(page.nextCursor()));
+    }
+
+    @Test
+    void getMovementsPageByDate_ContinuesAfterTheGivenCursorAndEndsWithoutCursor() {
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime end = start.plusDays(1);
+        String cursor = new KardexCursor(start.plusHours(2), 7L).encode();
+        when(kardexRepository.findPageByMovementDate(start.plusHours(2), 7L, end, Limit.of(3)))
+                .thenReturn(List.of(row(8, start.plusHours(2))));
+
+        KardexPage page = kardexService.getMovementsPageByDate(start, end, cursor, 2);
+
+        assertEquals(1, page.items().size());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void getMovementsPageByDate_FailsWithInvalidCursorOrPageSize() {
+        LocalDateTime start = LocalDateTime.now();
+        LocalDateTime end = start.plusDays(1);
+        assertThrows(InvalidOperationException.class, () -> kardexService.getMovementsPageByDate(start, end, "not-a-cursor", 10));
+        assertThrows(InvalidOperationException.class,
+                () -> kardexService.getMovementsPageByDate(start, end, null, KardexService.MAX_PAGE_SIZE + 1));
+        verify(kardexRepository, never()).findPageByMovementDate(any(), any(), any(), any());
+    }
+
+    @Test
+    void streamMovementsByToolId_FailsBeforeStreamingWhenToolDoesNotExist() {
+        when(toolRepository.existsById(99L)).thenReturn(false);
+
+        assertThrows(ResourceNotFoundException.class, () -> kardexService.streamMovementsByToolId(99L, r -> {}));
+        verify(kardexRepository, never()).streamByToolId(any(), anyInt(), any());
+    }
+
+    @Test
+    void streamMovementsByDate_DelegatesToTheJdbcCursor() {
+        LocalDateTime start = LocalDateTime.now();
+        LocalDateTime end = start.plusDays(1);
+
+        kardexService.streamMovementsByDate(start, end, r -> {});
+
+        verify(kardexRepository, times(1)).streamByMovementDate(eq(start), eq(end), anyInt(), any());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,152 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.BatchLoanLine;
+import app.dtos.BatchReturnLine;
+import app.dtos.BatchReturnResult;
+import app.dtos.TopToolDto;
+import app.entities.ClientEntity;
+import app.entities.LoanEntity;
+import app.entities.ToolEntity;
+import app.entities.UserEntity;
+import app.entities.enums.ClientStatus;
+import app.entities.enums.LoanStatus;
+import app.entities.enums.MovementType;
+import app.entities.enums.ToolStatus;
+import app.services.LoanService;
+import app.services.ToolLoanCountService;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria) del préstamo múltiple: inserción en batch JDBC y atomicidad.
+@BackCoreIntegrationTest
+class LoanBatchCheckoutTest extends IntegrationTestSupport {
+
+    @Autowired private LoanService loanService;
+    @Autowired private ToolLoanCountService toolLoanCountService;
+
+    private UserEntity user;
+    private ClientEntity client;
+
+    private void givenUserAndClient() {
+        user = givenUser("batch_user");
+        client = givenClient("11.111.111-1", "Cliente Lote", ClientStatus.ACTIVE);
+    }
+
+    @Test
+    void createLoanBatch_InsertsAllLoansAndKardexRows() {
+        // ARRANGE
+        givenUserAndClient();
+        ToolEntity hammer = givenTool("Martillo", 2);
+        ToolEntity saw = givenTool("Sierra", 1);
+        LocalDate today = LocalDate.now();
+
+        // ACT
+        List<LoanEntity> loans = loanService.createLoanBatch(client.getId(), today,
+                List.of(new BatchLoanLine(hammer.getId(), today.plusDays(3)), new BatchLoanLine(saw.getId(), today.plusDays(5))), user);
+
+        // ASSERT: IDs generados por el batch, stock descontado y Kardex registrado
+        assertEquals(2, loans.size());
+        assertTrue(loans.stream().allMatch(l -> l.getId() != null));
+        assertEquals(2, loanRepository.findByStatus(LoanStatus.ACTIVE).size());
+        assertEquals(1, toolRepository.findById(hammer.getId()).orElseThrow().getStock());
+        ToolEntity sawAfter = toolRepository.findById(saw.getId()).orElseThrow();
+        assertEquals(0, sawAfter.getStock());
+        assertEquals(ToolStatus.LOANED, sawAfter.getStatus());
+        assertEquals(1, kardexRepository.findByTool_IdAndType(hammer.getId(), MovementType.LOAN).size());
+        assertEquals(1, kardexRepository.findByTool_IdAndType(saw.getId(), MovementType.LOAN).size());
+        assertEquals(2, counterRepository.findById(client.getId()).orElseThrow().getActiveCount());
+    }
+
+    @Test
+    void createLoan_UpdatesDailyCountsUsedByTopToolsRanking() {
+        // ARRANGE: martillo prestado a dos clientes (lote + individual), sierra a uno; un préstamo fuera del rango
+        givenUserAndClient();
+        ToolEntity hammer = givenTool("Martillo", 5);
+        ToolEntity saw = givenTool("Sierra", 5);
+        ClientEntity otherClient = givenClient("22.222.222-2", "Cliente Dos", ClientStatus.ACTIVE);
+        LocalDate today = LocalDate.now();
+
+        // ACT
+        loanService.createLoanBatch(client.getId(), today,
+                List.of(new BatchLoanLine(hammer.getId(), today.plusDays(3)), new BatchLoanLine(saw.getId(), today.plusDays(3))), user);
+        loanService.createLoan(otherClient.getId(), hammer.getId(), today, today.plusDays(3), user);
+        loanService.createLoan(otherClient.getId(), saw.getId(), today.minusDays(10), today.plusDays(3), user);
+
+        // ASSERT: la suma por rango coincide con loans y respeta el límite
+        List<TopToolDto> ranking = toolLoanCountService.getTopTools(today.minusDays(1), today, 10);
+        assertEquals(2, ranking.size());
+        assertEquals(new TopToolDto(hammer.getId(), "Martillo", "Eléctricas", 2L), ranking.get(0));
+        assertEquals(new TopToolDto(saw.getId(), "Sierra", "Eléctricas", 1L), ranking.get(1));
+        assertEquals(1, toolLoanCountService.getTopTools(today.minusDays(1), today, 1).size());
+
+        // La reconstrucción desde loans llega a los mismos totales
+        toolLoanCountService.rebuild();
+        assertEquals(ranking, toolLoanCountService.getTopTools(today.minusDays(1), today, 10));
+        assertEquals(2L, toolLoanCountService.getTopTools(today.minusDays(30), today, 10).get(1).loans());
+    }
+
+    @Test
+    void createLoanBatch_IsAllOrNothing_WhenAStepFailsAfterTheStockUpdate() {
+        // ARRANGE: usuario sin persistir -> el batch de Kardex falla DESPUÉS del UPDATE de stock
+        givenUserAndClient();
+        ToolEntity hammer = givenTool("Martillo", 2);
+        ToolEntity saw = givenTool("Sierra", 1);
+        UserEntity unsavedUser = UserEntity.builder().username("sin_id").build();
+        LocalDate today = LocalDate.now();
+        List<BatchLoanLine> lines = List.of(new BatchLoanLine(hammer.getId(), today.plusDays(3)), new BatchLoanLine(saw.getId(), today.plusDays(5)));
+
+        // ACT
+        assertThrows(RuntimeException.class, () -> loanService.createLoanBatch(client.getId(), today, lines, unsavedUser));
+
+        // ASSERT: se revirtió todo, incluido el descuento de stock ya ejecutado
+        assertEquals(2, toolRepository.findById(hammer.getId()).orElseThrow().getStock());
+        ToolEntity sawAfter = toolRepository.findById(saw.getId()).orElseThrow();
+        assertEquals(1, sawAfter.getStock());
+        assertEquals(ToolStatus.AVAILABLE, sawAfter.getStatus());
+        assertTrue(loanRepository.findByClient(client).isEmpty());
+        assertTrue(kardexRepository.findAll().isEmpty());
+    }
+
+    @Test
+    void returnLoanBatch_RestocksRepairsAndRestrictsOnce() {
+        // ARRANGE: dos préstamos del mismo cliente, uno vuelve bien y otro con daño leve
+        givenUserAndClient();
+        givenTariffs();
+        ToolEntity hammer = givenTool("Martillo", 1);
+        ToolEntity saw = givenTool("Sierra", 1);
+        LocalDate today = LocalDate.now();
+        List<LoanEntity> loans = loanService.createLoanBatch(client.getId(), today,
+                List.of(new BatchLoanLine(hammer.getId(), today.plusDays(2)), new BatchLoanLine(saw.getId(), today.plusDays(2))), user);
+
+        // ACT
+        List<BatchReturnResult> results = loanService.returnLoanBatch(List.of(
+                new BatchReturnLine(loans.get(0).getId(), hammer.getId(), false, false, today),
+                new BatchReturnLine(loans.get(1).getId(), saw.getId(), true, false, today),
+                new BatchReturnLine(-1L, saw.getId(), false, false, today)), user);
+
+        // ASSERT: la línea inválida no aborta las demás
+        assertTrue(results.get(0).returned());
+        assertTrue(results.get(1).returned());
+        assertFalse(results.get(2).returned());
+        ToolEntity hammerAfter = toolRepository.findById(hammer.getId()).orElseThrow();
+        assertEquals(1, hammerAfter.getStock());
+        assertEquals(ToolStatus.AVAILABLE, hammerAfter.getStatus());
+        ToolEntity sawAfter = toolRepository.findById(saw.getId()).orElseThrow();
+        assertEquals(0, sawAfter.getStock());
+        assertEquals(1, sawAfter.getInRepair());
+        assertEquals(1, kardexRepository.findByTool_IdAndType(hammer.getId(), MovementType.RETURN).size());
+        assertEquals(1, kardexRepository.findByTool_IdAndType(saw.getId(), MovementType.REPAIR).size());
+        assertEquals(2, loanRepository.findByStatus(LoanStatus.RECEIVED).size());
+        assertEquals(ClientStatus.RESTRICTED, clientRepository.findById(client.getId()).orElseThrow().getStatus());
+        var counters = counterRepository.findById(client.getId()).orElseThrow();
+        assertEquals(0, counters.getActiveCount());
+        assertEquals(2, counters.getUnpaidCount());
+        assertEquals(2000.0 + 3500.0, counters.getOutstandingPenalty(), 0.01);
+    }
+}
@@ -6,9 +6,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
+import app.dtos.BatchLoanLine;
+import app.dtos.BatchReturnLine;
+import app.dtos.BatchReturnResult;
+import app.dtos.ClientLoanStanding;
+import app.dtos.TariffSnapshot;
 import app.entities.*;
 import app.entities.enums.*;
+import app.events.LoanChangedEvent;
 import app.exceptions.InvalidOperationException;
 import app.exceptions.ResourceNotFoundException;
 import app.repositories.*;
@@ -19,10 +26,12 @@ import java.time.temporal.ChronoUnit;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
@@ -38,6 +47,9 @@ public class LoanServiceTest {
     @Mock private TariffService tariffService;
     @Mock private ClientService clientService;
     @Mock private KardexService kardexService;
+    @Mock private ClientLoanCounterService clientLoanCounterService;
+    @Mock private ToolLoanCountService toolLoanCountService;
+    @Mock private ApplicationEventPublisher eventPublisher;
 
     @InjectMocks
     private LoanService loanService;
@@ -47,6 +59,7 @@ public class LoanServiceTest {
     private ClientEntity clientRestricted;
     private ToolEntity toolAvailable;
     private UserEntity testUser;
+    private TariffSnapshot tariff;
 
     @BeforeEach
     void setUp() {
@@ -57,9 +70,10 @@ public class LoanServiceTest {
         // La herramienta debe tener stock > 0 para que la mayoría de los préstamos pasen
         toolAvailable = ToolEntity.builder().id(10L).stock(1).status(ToolStatus.AVAILABLE).replacementValue(45000).build();
         testUser = UserEntity.builder().username("test_user").id(1L).build();
+        tariff = new TariffSnapshot(1000, 2000, 1500);
         
         // Re-inicializamos el servicio para cada prueba
-        loanService = new LoanService(loanRepository, clientRepository, toolRepository, toolService, tariffService, clientService);
+        loanService = new LoanService(loanRepository, clientRepository, toolRepository, toolService, tariffService, clientService, clientLoanCounterService, toolLoanCountService, eventPublisher);
     }
 
     // =========================================================================================================
@@ -76,6 +90,7 @@ public class LoanServiceTest {
         // MOCKEO: Simular que el cliente, herramienta existen, no hay préstamos y la persistencia funciona
         when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
         when(toolRepository.findById(10L)).thenReturn(Optional.of(toolAvailable));
+        when(clientLoanCounterService.getStanding(1L, 10L)).thenReturn(new ClientLoanStanding(0L, 0L, 0L, false));
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(newLoan);
 
         // ACT
@@ -86,6 +101,9 @@ public class LoanServiceTest {
         assertNotNull(createdLoan);
         assertEquals(LoanStatus.ACTIVE, createdLoan.getStatus());
         verify(toolService, times(1)).decrementStockForLoan(toolAvailable, testUser);
+        verify(clientLoanCounterService, times(1)).onLoanCreated(1L);
+        verify(toolLoanCountService, times(1)).onLoansCreated(today, List.of(10L));
+        verify(eventPublisher, times(1)).publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.CREATED, 1));
     }
 
     @Test
@@ -111,9 +129,7 @@ public class LoanServiceTest {
         verify(toolRepository, times(1)).findById(toolId);
 
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO continuó con las siguientes validaciones
-        verify(loanRepository, never()).countByClientAndStatus(any(), any());
-        verify(loanRepository, never()).findByClientAndStatusAndTotalPenaltyGreaterThan(any(), any(), anyDouble());
-        verify(loanRepository, never()).findByClientAndStatus(any(), any());
+        verify(clientLoanCounterService, never()).getStanding(anyLong(), anyLong());
         
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO guardó
         verify(loanRepository, never()).save(any());
@@ -128,6 +144,7 @@ public class LoanServiceTest {
         LocalDate dueDate = startDate.minusDays(1);
         when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
         when(toolRepository.findById(10L)).thenReturn(Optional.of(toolAvailable));
+        when(clientLoanCounterService.getStanding(1L, 10L)).thenReturn(new ClientLoanStanding(0L, 0L, 0L, false));
 
         // ACT & ASSERT: Debe lanzar la excepción de argumento ilegal
         assertThrows(IllegalArgumentException.class, () -> 
@@ -142,37 +159,21 @@ public class LoanServiceTest {
         LocalDate today = LocalDate.now();
         LocalDate dueDate = today.plusDays(7);
 
-        // Lista simulada de 5 préstamos ACTIVOS
-        List<LoanEntity> fiveActiveLoans = List.of(
-            LoanEntity.builder().build(), // El contenido no importa, solo el tamaño
-            LoanEntity.builder().build(),
-            LoanEntity.builder().build(),
-            LoanEntity.builder().build(),
-            LoanEntity.builder().build()
-        );
-
         // MOCKEO
         when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
         when(toolRepository.findById(10L)).thenReturn(Optional.of(toolAvailable));
         
-        // 1. Simular validaciones previas (LATE y RECEIVED)
-        when(loanRepository.countByClientAndStatus(clientActive, LoanStatus.LATE)).thenReturn(0L); // No tiene LATE
-        when(loanRepository.findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0))
-                .thenReturn(Collections.emptyList()); // No tiene deudas RECEIVED
-
-        // 2. Simular la validación que debe fallar (Límite de 5)
-        // El servicio llama a findByClientAndStatus(client, ACTIVE) y .size()
-        when(loanRepository.findByClientAndStatus(clientActive, LoanStatus.ACTIVE)).thenReturn(fiveActiveLoans); // Devuelve 5 activos
+        // Sin LATE ni deudas RECEIVED, pero con 5 préstamos ACTIVOS (la validación que debe fallar)
+        when(clientLoanCounterService.getStanding(1L, 10L)).thenReturn(new ClientLoanStanding(0L, 0L, 5L, false));
 
         // ACT & ASSERT: Intenta crear el sexto préstamo
         assertThrows(InvalidOperationException.class, () -> {
             loanService.createLoan(1L, 10L, today, dueDate, testUser);
         }, "Debe fallar al alcanzar el límite de 5 préstamos activos.");
 
-        // Verificar que se llamó a los métodos correctos (y no a findAll)
-        verify(loanRepository, times(1)).countByClientAndStatus(clientActive, LoanStatus.LATE);
-        verify(loanRepository, times(1)).findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0);
-        verify(loanRepository, times(1)).findByClientAndStatus(clientActive, LoanStatus.ACTIVE);
+        // Verificar que se usó la consulta agregada (y no findAll ni las consultas por estado)
+        verify(clientLoanCounterService, times(1)).getStanding(1L, 10L);
+        verify(loanRepository, never()).findByClientAndStatus(any(), any());
         verify(loanRepository, never()).save(any()); // No debe guardar
         verify(loanRepository, never()).findAll();
     }
@@ -191,9 +192,7 @@ public class LoanServiceTest {
         // Mockeo:
         // Validaciones previas (Cliente y Deudas) pasan
         when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
-        when(loanRepository.countByClientAndStatus(clientActive, LoanStatus.LATE)).thenReturn(0L);
-        when(loanRepository.findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0))
-                .thenReturn(Collections.emptyList());
+        when(clientLoanCounterService.getStanding(1L, toolId)).thenReturn(new ClientLoanStanding(0L, 0L, 0L, false));
         
         // 1. ARRANGE: Preparar datos fuera de la validación
         LocalDate today = LocalDate.now();
@@ -207,8 +206,7 @@ public class LoanServiceTest {
         }, "Debe lanzar InvalidOperationException si el estado no es AVAILABLE.");
 
         // VERIFY: Verificar que falló después de las validaciones de cliente pero antes de guardar
-        verify(loanRepository, times(1)).countByClientAndStatus(clientActive, LoanStatus.LATE);
-        verify(loanRepository, times(1)).findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0);
+        verify(clientLoanCounterService, times(1)).getStanding(1L, toolId);
         verify(toolRepository, times(1)).findById(toolId);
         verify(loanRepository, never()).save(any()); // Nunca debe guardar
     }
@@ -226,9 +224,7 @@ public class LoanServiceTest {
         // Mockeo:
         // Validaciones previas (Cliente y Deudas) pasan
         when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
-        when(loanRepository.countByClientAndStatus(clientActive, LoanStatus.LATE)).thenReturn(0L);
-        when(loanRepository.findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0))
-                .thenReturn(Collections.emptyList());
+        when(clientLoanCounterService.getStanding(1L, toolId)).thenReturn(new ClientLoanStanding(0L, 0L, 0L, false));
         
         // 1. ARRANGE: Preparar datos fuera de la validación
         LocalDate today = LocalDate.now();
@@ -242,8 +238,7 @@ public class LoanServiceTest {
         }, "Debe lanzar InvalidOperationException si el stock es 0.");
 
         // 3. VERIFY: Verificar que falló después de las validaciones de cliente pero antes de guardar
-        verify(loanRepository, times(1)).countByClientAndStatus(clientActive, LoanStatus.LATE);
-        verify(loanRepository, times(1)).findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0);
+        verify(clientLoanCounterService, times(1)).getStanding(1L, toolId);
         verify(toolRepository, times(1)).findById(toolId);
         verify(loanRepository, never()).save(any()); // Nunca debe guardar
     }
@@ -255,39 +250,21 @@ public class LoanServiceTest {
         LocalDate today = LocalDate.now();
         LocalDate dueDate = today.plusDays(7);
 
-        // Simular un préstamo ACTIVO existente con la MISMA herramienta (toolAvailable)
-        LoanEntity activeLoanForSameTool = LoanEntity.builder()
-                .client(clientActive)
-                .tool(toolAvailable) // <- La misma herramienta que se intenta pedir
-                .status(LoanStatus.ACTIVE)
-                .build();
-
         // MOCKEO
         when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
         when(toolRepository.findById(10L)).thenReturn(Optional.of(toolAvailable));
         
-        // 1. Simular validaciones previas (LATE y RECEIVED)
-        when(loanRepository.countByClientAndStatus(clientActive, LoanStatus.LATE)).thenReturn(0L); // No tiene LATE (para check de límite)
-        when(loanRepository.findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0))
-                .thenReturn(Collections.emptyList()); // No tiene deudas RECEIVED
-
-        // 2. Simular la validación de límite de 5 (asumimos que tiene < 5 activos)
-        when(loanRepository.findByClientAndStatus(clientActive, LoanStatus.ACTIVE))
-                .thenReturn(List.of(activeLoanForSameTool)); // Devuelve el préstamo duplicado
+        // Sin LATE ni deudas, 1 préstamo ACTIVO que es de la MISMA herramienta (toolAvailable)
+        when(clientLoanCounterService.getStanding(1L, 10L)).thenReturn(new ClientLoanStanding(0L, 0L, 1L, true));
 
         // ACT & ASSERT: Intenta crear el préstamo con la misma herramienta
         assertThrows(InvalidOperationException.class, () -> {
             loanService.createLoan(1L, 10L, today, dueDate, testUser);
         }, "Debe fallar si el cliente ya tiene esta herramienta activa.");
 
-        // Verificar que se llamó a los métodos correctos (y no a findAll)
-        verify(loanRepository, times(1)).countByClientAndStatus(clientActive, LoanStatus.LATE);
-        verify(loanRepository, times(1)).findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0);
-        // Verifica el 'findByClientAndStatus(ACTIVE)' (tanto para límite de 5 como para duplicidad)
-        verify(loanRepository, times(2)).findByClientAndStatus(clientActive, LoanStatus.ACTIVE); 
-        
-        // NO debe llamar a 'findByClientAndStatus(LATE)' para el stream, porque el '||' hace short-circuit
-        verify(loanRepository, never()).findByClientAndStatus(clientActive, LoanStatus.LATE);
+        // Una sola consulta agregada cubre el límite de 5 y la duplicidad
+        verify(clientLoanCounterService, times(1)).getStanding(1L, 10L);
+        verify(loanRepository, never()).findByClientAndStatus(any(), any());
         
         verify(loanRepository, never()).save(any()); // No debe guardar
         verify(loanRepository, never()).findAll(); // NUNCA debe llamar a findAll
@@ -301,23 +278,13 @@ public class LoanServiceTest {
         Long activeClientId = clientActive.getId();
         Long availableToolId = toolAvailable.getId();
 
-        // Simular un préstamo anterior en estado RECEIVED con penalidad > 0
-        LoanEntity unpaidReceivedLoan = LoanEntity.builder()
-                .client(clientActive) // Usamos clientActive definido en setUp
-                .status(LoanStatus.RECEIVED)
-                .totalPenalty(5000.0) // Deuda pendiente
-                .build();
-
         // Mockeo:
         // 1. Encontrar al cliente activo
         when(clientRepository.findById(activeClientId)).thenReturn(Optional.of(clientActive));
         // 2. Encontrar la herramienta disponible
         when(toolRepository.findById(availableToolId)).thenReturn(Optional.of(toolAvailable));
-        // 3. No tiene préstamos LATE
-        when(loanRepository.countByClientAndStatus(clientActive, LoanStatus.LATE)).thenReturn(0L);
-        // 4. SIMULAR QUE TIENE DEUDAS PENDIENTES (devuelve lista no vacía)
-        when(loanRepository.findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0))
-                .thenReturn(List.of(unpaidReceivedLoan)); // Lista contiene la deuda
+        // 3. No tiene préstamos LATE, pero SÍ un préstamo RECEIVED con penalidad > 0 (deuda pendiente)
+        when(clientLoanCounterService.getStanding(activeClientId, availableToolId)).thenReturn(new ClientLoanStanding(0L, 1L, 0L, false));
 
         // ACT & ASSERT: Esperamos que lance InvalidOperationException
         assertThrows(InvalidOperationException.class, () -> {
@@ -327,8 +294,7 @@ public class LoanServiceTest {
         // Verificar que se hicieron las comprobaciones hasta el punto de fallo
         verify(clientRepository, times(1)).findById(activeClientId);
         verify(toolRepository, times(1)).findById(availableToolId); // Verifica la herramienta también
-        verify(loanRepository, times(1)).countByClientAndStatus(clientActive, LoanStatus.LATE);
-        verify(loanRepository, times(1)).findByClientAndStatusAndTotalPenaltyGreaterThan(clientActive, LoanStatus.RECEIVED, 0.0);
+        verify(clientLoanCounterService, times(1)).getStanding(activeClientId, availableToolId);
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se intentó guardar el nuevo préstamo
         verify(loanRepository, never()).save(any(LoanEntity.class));
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se intentó decrementar el stock
@@ -349,7 +315,7 @@ public class LoanServiceTest {
         // 2. Encontrar la herramienta disponible
         when(toolRepository.findById(availableToolId)).thenReturn(Optional.of(toolAvailable));
         // 3. SIMULAR QUE TIENE PRÉSTAMOS LATE (devolver > 0)
-        when(loanRepository.countByClientAndStatus(clientActive, LoanStatus.LATE)).thenReturn(1L); // Tiene 1 préstamo LATE
+        when(clientLoanCounterService.getStanding(activeClientId, availableToolId)).thenReturn(new ClientLoanStanding(1L, 0L, 0L, false)); // Tiene 1 préstamo LATE
 
         // ACT & ASSERT: Esperamos que lance InvalidOperationException
         assertThrows(InvalidOperationException.class, () -> {
@@ -359,8 +325,8 @@ public class LoanServiceTest {
         // Verificar que se hicieron las comprobaciones hasta el punto de fallo
         verify(clientRepository, times(1)).findById(activeClientId);
         verify(toolRepository, times(1)).findById(availableToolId);
-        verify(loanRepository, times(1)).countByClientAndStatus(clientActive, LoanStatus.LATE);
-        // VERIFICACIÓN CRÍTICA: Asegurarse de que NO continuó verificando deudas RECEIVED
+        verify(clientLoanCounterService, times(1)).getStanding(activeClientId, availableToolId);
+        // VERIFICACIÓN CRÍTICA: Asegurarse de que NO volvió a consultar deudas RECEIVED por separado
         verify(loanRepository, never()).findByClientAndStatusAndTotalPenaltyGreaterThan(any(ClientEntity.class), any(LoanStatus.class), anyDouble());
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se intentó guardar el nuevo préstamo
         verify(loanRepository, never()).save(any(LoanEntity.class));
@@ -368,6 +334,119 @@ public class LoanServiceTest {
         verify(toolService, never()).decrementStockForLoan(any(ToolEntity.class), any(UserEntity.class));
     }
 
+    // =========================================================================================================
+    // ÉPICA 2: TESTS PARA createLoanBatch (Préstamo de varias herramientas)
+    // =========================================================================================================
+
+    @Test
+    void createLoanBatch_Success_DecrementsStockOnceAndInsertsLoansInBatch() {
+        // ARRANGE: cliente sin préstamos, dos herramientas disponibles
+        LocalDate today = LocalDate.now();
+        ToolEntity secondTool = ToolEntity.builder().id(11L).stock(3).status(ToolStatus.AVAILABLE).replacementValue(20000).build();
+        List<BatchLoanLine> lines = List.of(new BatchLoanLine(10L, today.plusDays(3)), new BatchLoanLine(11L, today.plusDays(7)));
+
+        when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
+        when(clientLoanCounterService.getCounters(1L)).thenReturn(ClientLoanCounterEntity.builder().clientId(1L).build());
+        when(toolRepository.findAllById(List.of(10L, 11L))).thenReturn(List.of(toolAvailable, secondTool));
+        when(loanRepository.findHeldToolIds(eq(1L), eq(List.of(10L, 11L)), any())).thenReturn(Collections.emptyList());
+
+        // ACT
+        List<LoanEntity> loans = loanService.createLoanBatch(1L, today, lines, testUser);
+
+        // ASSERT
+        assertEquals(2, loans.size());
+        assertEquals(toolAvailable, loans.get(0).getTool());
+        assertEquals(today.plusDays(7), loans.get(1).getDueDate());
+        assertTrue(loans.stream().allMatch(l -> l.getStatus() == LoanStatus.ACTIVE));
+        // Un solo descuento de stock, un solo insert en batch y una sola actualización de contadores
+        verify(toolService, times(1)).decrementStockForLoans(List.of(toolAvailable, secondTool), testUser);
+        verify(loanRepository, times(1)).insertAllBatched(loans);
+        verify(clientLoanCounterService, times(1)).onLoansCreated(1L, 2);
+        // No se usa el camino de préstamo individual
+        verify(toolService, never()).decrementStockForLoan(any(), any());
+        verify(loanRepository, never()).save(any());
+    }
+
+    @Test
+    void createLoanBatch_FailsWhenBatchExceedsFiveActiveLoans() {
+        // ARRANGE: el cliente ya tiene 3 activos y pide 3 más
+        LocalDate today = LocalDate.now();
+        List<BatchLoanLine> lines = List.of(new BatchLoanLine(10L, today.plusDays(3)),
+                new BatchLoanLine(11L, today.plusDays(3)), new BatchLoanLine(12L, today.plusDays(3)));
+        List<ToolEntity> tools = List.of(toolAvailable,
+                ToolEntity.builder().id(11L).stock(1).status(ToolStatus.AVAILABLE).build(),
+                ToolEntity.builder().id(12L).stock(1).status(ToolStatus.AVAILABLE).build());
+
+        when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
+        when(clientLoanCounterService.getCounters(1L)).thenReturn(ClientLoanCounterEntity.builder().clientId(1L).activeCount(3).build());
+        when(toolRepository.findAllById(List.of(10L, 11L, 12L))).thenReturn(tools);
+
+        // ACT & ASSERT
+        InvalidOperationException ex = assertThrows(InvalidOperationException.class,
+                () -> loanService.createLoanBatch(1L, today, lines, testUser));
+        assertTrue(ex.getMessage().contains("maximum number of active/late loans (5)"));
+        verify(toolService, never()).decrementStockForLoans(any(), any());
+        verify(loanRepository, never()).insertAllBatched(any());
+    }
+
+    @Test
+    void createLoanBatch_FailsWhenSameToolIsRequestedTwice() {
+        LocalDate today = LocalDate.now();
+        List<BatchLoanLine> lines = List.of(new BatchLoanLine(10L, today.plusDays(3)), new BatchLoanLine(10L, today.plusDays(5)));
+
+        when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
+        when(clientLoanCounterService.getCounters(1L)).thenReturn(ClientLoanCounterEntity.builder().clientId(1L).build());
+
+        assertThrows(InvalidOperationException.class, () -> loanService.createLoanBatch(1L, today, lines, testUser));
+        verify(toolRepository, never()).findAllById(any());
+        verify(toolService, never()).decrementStockForLoans(any(), any());
+    }
+
+    @Test
+    void createLoanBatch_FailsWhenClientAlreadyHoldsOneOfTheTools() {
+        LocalDate today = LocalDate.now();
+        List<BatchLoanLine> lines = List.of(new BatchLoanLine(10L, today.plusDays(3)));
+
+        when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
+        when(clientLoanCounterService.getCounters(1L)).thenReturn(ClientLoanCounterEntity.builder().clientId(1L).activeCount(1).build());
+        when(toolRepository.findAllById(List.of(10L))).thenReturn(List.of(toolAvailable));
+        when(loanRepository.findHeldToolIds(eq(1L), eq(List.of(10L)), any())).thenReturn(List.of(10L));
+
+        assertThrows(InvalidOperationException.class, () -> loanService.createLoanBatch(1L, today, lines, testUser));
+        verify(toolService, never()).decrementStockForLoans(any(), any());
+        verify(loanRepository, never()).insertAllBatched(any());
+    }
+
+    @Test
+    void createLoanBatch_FailsWhenClientHasLateLoans() {
+        LocalDate today = LocalDate.now();
+        List<BatchLoanLine> lines = List.of(new BatchLoanLine(10L, today.plusDays(3)));
+
+        when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
+        when(clientLoanCounterService.getCounters(1L)).thenReturn(ClientLoanCounterEntity.builder().clientId(1L).lateCount(1).build());
+
+        assertThrows(InvalidOperationException.class, () -> loanService.createLoanBatch(1L, today, lines, testUser));
+        verify(toolRepository, never()).findAllById(any());
+    }
+
+    @Test
+    void createLoanBatch_PropagatesStockFailureWithoutInsertingLoans() {
+        // ARRANGE: la herramienta se agotó entre la lectura y el UPDATE condicional
+        LocalDate today = LocalDate.now();
+        List<BatchLoanLine> lines = List.of(new BatchLoanLine(10L, today.plusDays(3)));
+
+        when(clientRepository.findById(1L)).thenReturn(Optional.of(clientActive));
+        when(clientLoanCounterService.getCounters(1L)).thenReturn(ClientLoanCounterEntity.builder().clientId(1L).build());
+        when(toolRepository.findAllById(List.of(10L))).thenReturn(List.of(toolAvailable));
+        when(loanRepository.findHeldToolIds(eq(1L), eq(List.of(10L)), any())).thenReturn(Collections.emptyList());
+        doThrow(new InvalidOperationException("One or more tools are not available or out of stock."))
+                .when(toolService).decrementStockForLoans(any(), any());
+
+        assertThrows(InvalidOperationException.class, () -> loanService.createLoanBatch(1L, today, lines, testUser));
+        verify(loanRepository, never()).insertAllBatched(any());
+        verify(clientLoanCounterService, never()).onLoansCreated(anyLong(), anyInt());
+    }
+
     // =========================================================================================================
     // ÉPICA 2: TESTS PARA returnLoan (Devoluciones, Multas y Restricciones)
     // =========================================================================================================
@@ -391,9 +470,9 @@ public class LoanServiceTest {
                 .build();
 
         // MOCKEO:
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
         // Mockear tarifa de arriendo (la única necesaria aquí)
-        when(tariffService.getDailyRentFee()).thenReturn(1000.0);
+        when(tariffService.getFees()).thenReturn(tariff); // Tarifas en memoria: una sola lectura por devolución
         when(loanRepository.save(any(LoanEntity.class))).thenAnswer(invocation -> invocation.getArgument(0)); // Devolver la entidad guardada
 
         // ACT (Devuelto hoy, a tiempo)
@@ -413,6 +492,9 @@ public class LoanServiceTest {
         verify(toolService, times(1)).incrementStockForReturn(toolAvailable, testUser);
         // 4. El cliente DEBE ser restringido (porque totalPenalty > 0)
         verify(clientService, times(1)).updateStatus(clientActive.getId(), ClientStatus.RESTRICTED);
+        // 5. Contadores: sale de ACTIVE y queda con deuda pendiente
+        verify(clientLoanCounterService, times(1)).onLoanReturned(clientActive.getId(), LoanStatus.ACTIVE, expectedRentalCost);
+        verify(eventPublisher, times(1)).publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.RETURNED, 1));
     }
 
     @Test
@@ -433,9 +515,8 @@ public class LoanServiceTest {
                 .totalPenalty(0.0)
                 .build();
 
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(tariffService.getDailyRentFee()).thenReturn(1000.0); // Tarifa arriendo
-        when(tariffService.getDailyLateFee()).thenReturn(2000.0); // Tarifa multa
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
+        when(tariffService.getFees()).thenReturn(tariff); // Tarifas en memoria: una sola lectura por devolución
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loan);
         
         // ACT (Se devuelve hoy, 2 días tarde)
@@ -477,9 +558,8 @@ public class LoanServiceTest {
             .status(LoanStatus.ACTIVE)
             .totalPenalty(0.0).build();
         
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(tariffService.getDailyRentFee()).thenReturn(1000.0); // Tarifa arriendo
-        when(tariffService.getRepairFee()).thenReturn(1500.0);    // Tarifa reparación
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
+        when(tariffService.getFees()).thenReturn(tariff); // Tarifas en memoria: una sola lectura por devolución
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loan);
         
         // ACT (Devuelto dañado, NO irreparable)
@@ -522,9 +602,8 @@ public class LoanServiceTest {
             .status(LoanStatus.LATE)
             .totalPenalty(0.0).build();
         
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(tariffService.getDailyRentFee()).thenReturn(1000.0); // Tarifa arriendo
-        when(tariffService.getDailyLateFee()).thenReturn(2000.0); // Tarifa multa
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
+        when(tariffService.getFees()).thenReturn(tariff); // Tarifas en memoria: una sola lectura por devolución
 
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loan);
 
@@ -564,7 +643,7 @@ public class LoanServiceTest {
                 .status(LoanStatus.CLOSED) // <-- Estado inválido
                 .build();
 
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
         
         // ACT & ASSERT: Debe fallar si el estado no es ACTIVE o LATE
         assertThrows(InvalidOperationException.class, () -> 
@@ -572,7 +651,7 @@ public class LoanServiceTest {
             loanService.returnLoan(loanId, availableToolId, false, false, testUser, returnDate),
             "Solo se pueden devolver préstamos activos o atrasados.");
 
-        verify(loanRepository, times(1)).findById(loanId);
+        verify(loanRepository, times(1)).findByIdForUpdate(loanId);
         verify(loanRepository, never()).save(any());
         verify(toolService, never()).incrementStockForReturn(any(), any());
     }
@@ -600,8 +679,8 @@ public class LoanServiceTest {
             .build();
 
         // MOCKEO:
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(tariffService.getDailyRentFee()).thenReturn(1000.0);
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
+        when(tariffService.getFees()).thenReturn(tariff); // Tarifas en memoria: una sola lectura por devolución
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loan);
 
         // ACT: Devolver la herramienta sin daño y sin atraso
@@ -637,8 +716,8 @@ public class LoanServiceTest {
             .totalPenalty(0.0)
             .build();
 
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(tariffService.getDailyRentFee()).thenReturn(1000.0); // Tarifa 1000
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
+        when(tariffService.getFees()).thenReturn(tariff); // Tarifas en memoria: una sola lectura por devolución
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loan);
 
         // ACT: Devolver sin daño/atraso el mismo día
@@ -675,10 +754,8 @@ public class LoanServiceTest {
                 .build();
 
         // MOCKEO:
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(tariffService.getDailyLateFee()).thenReturn(2000.0);    // Multa diaria
-        when(tariffService.getRepairFee()).thenReturn(1500.0);     // Cargo reparación
-        when(tariffService.getDailyRentFee()).thenReturn(1000.0);   // Tarifa arriendo diaria
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
+        when(tariffService.getFees()).thenReturn(tariff); // Tarifas en memoria: una sola lectura por devolución
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loan); // Simular guardado
 
         // ACT: Devolver con atraso y daño reparable
@@ -732,11 +809,9 @@ public class LoanServiceTest {
                 .build();
 
         // MOCKEO:
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
         // No necesitamos mockear toolRepository.findById si usamos la herramienta del préstamo
-        when(tariffService.getDailyLateFee()).thenReturn(2000.0);    // Multa diaria
-        when(tariffService.getDailyRentFee()).thenReturn(1000.0);   // Tarifa arriendo diaria
-        // NO necesitamos mockear tariffService.getRepairFee()
+        when(tariffService.getFees()).thenReturn(tariff); // Tarifas en memoria: una sola lectura por devolución
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loan); // Simular guardado
 
         // ACT: Devolver con atraso y daño irreparable
@@ -789,8 +864,8 @@ public class LoanServiceTest {
                 .build();
 
         // MOCKEO:
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(tariffService.getDailyRentFee()).thenReturn(1000.0); // Tarifa arriendo diaria
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(loan));
+        when(tariffService.getFees()).thenReturn(tariff); // Tarifas en memoria: una sola lectura por devolución
         // NO necesitamos mockear getDailyLateFee ni getRepairFee
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loan);
 
@@ -846,7 +921,7 @@ public class LoanServiceTest {
 
         // Mockeo:
         // 1. Encontrar el préstamo
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(receivedLoanWithPenalty));
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(receivedLoanWithPenalty));
         // 2. Simular el guardado, devolviendo el objeto que se le pasa para verificar cambios
         when(loanRepository.save(any(LoanEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
@@ -858,9 +933,11 @@ public class LoanServiceTest {
         assertEquals(loanId, paidLoan.getId());
         assertEquals(LoanStatus.CLOSED, paidLoan.getStatus()); // Estado DEBE cambiar a CLOSED
         assertEquals(0.0, paidLoan.getTotalPenalty(), 0.01); // Penalidad DEBE ser 0.0
+        assertEquals(5000.0, paidLoan.getPaidAmount(), 0.01); // Pago registrado (ingresos del día)
+        assertEquals(LocalDate.now(), paidLoan.getPaidDate());
 
-        // Verificar que se llamó a findById y save
-        verify(loanRepository, times(1)).findById(loanId);
+        // Verificar que se llamó a findByIdForUpdate y save
+        verify(loanRepository, times(1)).findByIdForUpdate(loanId);
         verify(loanRepository, times(1)).save(argThat(loan ->
                 loan.getId().equals(loanId) &&
                 loan.getStatus().equals(LoanStatus.CLOSED) && // Verificar estado final
@@ -869,6 +946,7 @@ public class LoanServiceTest {
 
         // VERIFICACIÓN IMPORTANTE: Asegurarse de que NO se intentó cambiar el estado del cliente
         verify(clientService, never()).updateStatus(anyLong(), any(ClientStatus.class));
+        verify(eventPublisher, times(1)).publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.PAID, 1));
     }
 
     @Test
@@ -884,15 +962,15 @@ public class LoanServiceTest {
                 .build();
 
         // Mockeo: Encontrar el préstamo activo
-        when(loanRepository.findById(loanId)).thenReturn(Optional.of(activeLoan));
+        when(loanRepository.findByIdForUpdate(loanId)).thenReturn(Optional.of(activeLoan));
 
         // ACT & ASSERT: Esperamos que lance InvalidOperationException
         assertThrows(InvalidOperationException.class, () -> {
             loanService.markLoanAsPaid(loanId);
         }, "Debe lanzar InvalidOperationException si el estado no es RECEIVED.");
 
-        // Verificar que se llamó a findById
-        verify(loanRepository, times(1)).findById(loanId);
+        // Verificar que se llamó a findByIdForUpdate
+        verify(loanRepository, times(1)).findByIdForUpdate(loanId);
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NUNCA se intentó guardar (cambiar estado o penalidad)
         verify(loanRepository, never()).save(any(LoanEntity.class));
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se intentó cambiar el estado del cliente
@@ -905,8 +983,8 @@ public class LoanServiceTest {
         // ARRANGE: Un ID de préstamo que no existe
         Long nonExistentLoanId = 99L;
 
-        // Mockeo: findById devuelve Optional vacío para simular que no se encuentra
-        when(loanRepository.findById(nonExistentLoanId)).thenReturn(Optional.empty());
+        // Mockeo: findByIdForUpdate devuelve Optional vacío para simular que no se encuentra
+        when(loanRepository.findByIdForUpdate(nonExistentLoanId)).thenReturn(Optional.empty());
 
         // ACT & ASSERT: Esperamos que se lance ResourceNotFoundException
         assertThrows(ResourceNotFoundException.class, () -> {
@@ -914,7 +992,7 @@ public class LoanServiceTest {
         }, "Debe lanzar ResourceNotFoundException si el préstamo no se encuentra.");
 
         // Verificar que se intentó buscar el préstamo una vez
-        verify(loanRepository, times(1)).findById(nonExistentLoanId);
+        verify(loanRepository, times(1)).findByIdForUpdate(nonExistentLoanId);
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NUNCA se intentó guardar nada
         verify(loanRepository, never()).save(any(LoanEntity.class));
         // VERIFICACIÓN CRÍTICA: Asegurarse de que NO se intentó cambiar el estado del cliente
@@ -1013,4 +1091,77 @@ public class LoanServiceTest {
                 any(ClientEntity.class), any(LoanStatus.class), anyDouble());
     }
 
-}
\ No newline at end of file
+
+    // =========================================================================================================
+    // ÉPICA 2: TESTS PARA returnLoanBatch (Devoluciones del buzón)
+    // =========================================================================================================
+
+    @Test
+    void returnLoanBatch_ProcessesValidLinesAndReportsInvalidOnes() {
+        // ARRANGE: dos préstamos del mismo cliente (uno ACTIVE en buen estado, uno LATE con daño leve),
+        // una línea con préstamo inexistente y otra con herramienta que no coincide
+        LocalDate start = LocalDate.now().minusDays(5);
+        ToolEntity drill = ToolEntity.builder().id(11L).stock(0).status(ToolStatus.LOANED).inRepair(0).replacementValue(30000).build();
+        LoanEntity activeLoan = LoanEntity.builder().id(1L).client(clientActive).tool(toolAvailable)
+                .startDate(start).dueDate(start.plusDays(5)).status(LoanStatus.ACTIVE).build();
+        LoanEntity lateLoan = LoanEntity.builder().id(2L).client(clientActive).tool(drill)
+                .startDate(start).dueDate(start.plusDays(2)).status(LoanStatus.LATE).build();
+        LocalDate today = LocalDate.now();
+        List<BatchReturnLine> lines = List.of(
+                new BatchReturnLine(1L, 10L, false, false, today),
+                new BatchReturnLine(2L, 11L, true, false, today),
+                new BatchReturnLine(99L, 10L, false, false, today),
+                new BatchReturnLine(1L, 12L, false, false, today));
+
+        when(loanRepository.lockAllWithToolAndClientByIdIn(any())).thenReturn(List.of(activeLoan, lateLoan));
+        when(tariffService.getFees()).thenReturn(tariff);
+
+        // ACT
+        List<BatchReturnResult> results = loanService.returnLoanBatch(lines, testUser);
+
+        // ASSERT: resultado por línea, en el mismo orden
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).returned());
+        assertEquals(5000.0, results.get(0).totalPenalty(), 0.01);              // 5 días x 1000
+        assertTrue(results.get(1).returned());
+        assertEquals(2000.0 + 3 * 2000.0 + 1500.0, results.get(1).totalPenalty(), 0.01); // 2 días arriendo + 3 de atraso + reparación
+        assertFalse(results.get(2).returned());
+        assertTrue(results.get(2).error().contains("99"));
+        assertFalse(results.get(3).returned());                                 // préstamo repetido en el lote
+        assertEquals(LoanStatus.RECEIVED, activeLoan.getStatus());
+        assertEquals(LoanStatus.RECEIVED, lateLoan.getStatus());
+
+        // Préstamos bloqueados y leídos (con herramienta y cliente) en una sola consulta
+        verify(loanRepository, times(1)).lockAllWithToolAndClientByIdIn(Set.of(1L, 2L, 99L));
+        // Tarifas leídas una sola vez; stock/Kardex en batch; cliente restringido y contadores actualizados una vez
+        verify(tariffService, times(1)).getFees();
+        verify(toolService, times(1)).incrementStockForReturns(List.of(toolAvailable), testUser);
+        verify(toolService, times(1)).markAllAsRepairing(List.of(drill), testUser);
+        verify(loanRepository, times(1)).saveAll(List.of(activeLoan, lateLoan));
+        verify(clientLoanCounterService, times(1)).onLoansReturned(1L, 1, 1, 2, 5000.0 + 9500.0);
+        verify(clientService, times(1)).restrictClients(List.of(clientActive));
+        // No se usa el camino individual
+        verify(clientService, never()).updateStatus(anyLong(), any());
+        verify(toolService, never()).incrementStockForReturn(any(), any());
+    }
+
+    @Test
+    void returnLoanBatch_DoesNotTouchStockWhenEveryLineIsInvalid() {
+        // ARRANGE: préstamo ya cerrado
+        LoanEntity closedLoan = LoanEntity.builder().id(3L).client(clientActive).tool(toolAvailable)
+                .startDate(LocalDate.now().minusDays(3)).dueDate(LocalDate.now()).status(LoanStatus.CLOSED).build();
+        when(loanRepository.lockAllWithToolAndClientByIdIn(any())).thenReturn(List.of(closedLoan));
+        when(tariffService.getFees()).thenReturn(tariff);
+
+        // ACT
+        List<BatchReturnResult> results = loanService.returnLoanBatch(
+                List.of(new BatchReturnLine(3L, 10L, false, false, null)), testUser);
+
+        // ASSERT
+        assertFalse(results.get(0).returned());
+        assertEquals("Loan is already closed and cannot be returned again.", results.get(0).error());
+        verify(toolService, never()).incrementStockForReturns(any(), any());
+        verify(loanRepository, never()).saveAll(any());
+        verify(clientService, never()).restrictClients(any());
+    }
+}
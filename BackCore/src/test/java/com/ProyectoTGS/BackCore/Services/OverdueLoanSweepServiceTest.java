@@ -0,0 +1,118 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.OverdueSweepReport;
+import app.events.LoanChangedEvent;
+import app.repositories.ClientLoanCounterRepository;
+import app.repositories.ClientRepository;
+import app.repositories.LoanRepository;
+import app.services.OverdueLoanSweepService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OverdueLoanSweepServiceTest {
+
+    @Mock private LoanRepository loanRepository;
+    @Mock private ClientRepository clientRepository;
+    @Mock private ClientLoanCounterRepository counterRepository;
+    @Mock private PlatformTransactionManager transactionManager;
+    @Mock private ApplicationEventPublisher eventPublisher;
+
+    private SimpleMeterRegistry meterRegistry;
+    private OverdueLoanSweepService sweepService;
+    private final LocalDate today = LocalDate.of(2025, 3, 10);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sweepService = new OverdueLoanSweepService(loanRepository, clientRepository, counterRepository,
+                transactionManager, eventPublisher, meterRegistry, 5000);
+    }
+
+    @Test
+    void sweep_ProcessesChunksStartingAtNextOverdueId() {
+        // ARRANGE: vencidos en IDs 3..12 y 250 -> bloques [3,12] y [250,259] con chunkSize 10
+        when(loanRepository.findFirstOverdueIdAfter(0L, today)).thenReturn(3L);
+        when(loanRepository.findFirstOverdueIdAfter(12L, today)).thenReturn(250L);
+        when(loanRepository.findFirstOverdueIdAfter(259L, today)).thenReturn(null);
+        when(loanRepository.lockOverdueIds(3L, 12L, today)).thenReturn(List.of(3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L));
+        when(loanRepository.lockOverdueIds(250L, 259L, today)).thenReturn(List.of(250L));
+        when(clientRepository.restrictClientsWithOverdueLoans(3L, 12L, today)).thenReturn(2);
+        when(loanRepository.markOverdueAsLate(3L, 12L, today)).thenReturn(10);
+        when(clientRepository.restrictClientsWithOverdueLoans(250L, 259L, today)).thenReturn(0);
+        when(loanRepository.markOverdueAsLate(250L, 259L, today)).thenReturn(1);
+
+        // ACT
+        OverdueSweepReport report = sweepService.sweep(today, 10);
+
+        // ASSERT
+        assertEquals(2L, report.chunks());
+        assertEquals(11L, report.loansMarkedLate());
+        assertEquals(2L, report.clientsRestricted());
+        // Préstamos bloqueados primero; contadores y clientes se actualizan antes de cambiar el estado de los préstamos
+        InOrder order = inOrder(counterRepository, clientRepository, loanRepository);
+        order.verify(loanRepository).lockOverdueIds(3L, 12L, today);
+        order.verify(counterRepository).moveOverdueToLate(3L, 12L, today);
+        order.verify(clientRepository).restrictClientsWithOverdueLoans(3L, 12L, today);
+        order.verify(loanRepository).markOverdueAsLate(3L, 12L, today);
+        // Métricas: filas tocadas y tiempo por bloque
+        assertEquals(11.0, meterRegistry.counter("loans.overdue.sweep.loans").count(), 0.001);
+        assertEquals(2.0, meterRegistry.counter("loans.overdue.sweep.clients").count(), 0.001);
+        assertEquals(2L, meterRegistry.timer("loans.overdue.sweep.chunk").count());
+        verify(loanRepository, never()).findAll();
+        // Un evento por bloque con préstamos marcados (invalida los reportes en caché)
+        verify(eventPublisher).publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.MARKED_LATE, 10));
+        verify(eventPublisher).publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.MARKED_LATE, 1));
+    }
+
+    @Test
+    void sweep_DoesNothingWithoutOverdueLoans() {
+        when(loanRepository.findFirstOverdueIdAfter(0L, today)).thenReturn(null);
+
+        OverdueSweepReport report = sweepService.sweep(today, 10);
+
+        assertEquals(0L, report.chunks());
+        assertEquals(0L, report.loansMarkedLate());
+        verify(loanRepository, never()).markOverdueAsLate(anyLong(), anyLong(), any());
+        verifyNoInteractions(counterRepository, clientRepository);
+    }
+
+    @Test
+    void sweep_SkipsUpdatesWhenTheChunkWasReturnedMeanwhile() {
+        // ARRANGE: el préstamo vencido se devolvió entre la búsqueda del bloque y el bloqueo
+        when(loanRepository.findFirstOverdueIdAfter(0L, today)).thenReturn(7L);
+        when(loanRepository.findFirstOverdueIdAfter(16L, today)).thenReturn(null);
+        when(loanRepository.lockOverdueIds(7L, 16L, today)).thenReturn(List.of());
+
+        // ACT
+        OverdueSweepReport report = sweepService.sweep(today, 10);
+
+        // ASSERT
+        assertEquals(1L, report.chunks());
+        assertEquals(0L, report.loansMarkedLate());
+        verify(loanRepository, never()).markOverdueAsLate(anyLong(), anyLong(), any());
+        verifyNoInteractions(counterRepository, clientRepository);
+    }
+
+    @Test
+    void sweep_FailsWithInvalidChunkSize() {
+        assertThrows(IllegalArgumentException.class, () -> sweepService.sweep(today, 0));
+        verifyNoInteractions(loanRepository);
+    }
+}
@@ -0,0 +1,219 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.LateClientDto;
+import app.dtos.OverdueSweepReport;
+import app.entities.ClientEntity;
+import app.entities.ClientLoanCounterEntity;
+import app.entities.LoanEntity;
+import app.entities.ToolEntity;
+import app.entities.UserEntity;
+import app.entities.enums.ClientStatus;
+import app.entities.enums.LoanStatus;
+import app.exceptions.InvalidOperationException;
+import app.services.LoanService;
+import app.services.OverdueLoanSweepService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria) del barrido de atrasos: los tres UPDATE por bloque sobre datos reales,
+// y de las devoluciones y pagos que compiten con él (bloqueo de fila del préstamo).
+@BackCoreIntegrationTest
+class OverdueLoanSweepTest extends IntegrationTestSupport {
+
+    @Autowired private LoanService loanService;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private ApplicationEventPublisher eventPublisher;
+
+    private ClientEntity givenClient(String rut, int activeLoans) {
+        ClientEntity client = givenClient(rut, ClientStatus.ACTIVE);
+        counterRepository.save(ClientLoanCounterEntity.builder().clientId(client.getId()).activeCount(activeLoans).build());
+        return client;
+    }
+
+    private LoanEntity givenLoan(ClientEntity client, ToolEntity tool, LocalDate dueDate) {
+        return givenLoan(client, tool, dueDate, LoanStatus.ACTIVE);
+    }
+
+    @Test
+    void sweep_MarksOverdueLoansLateAndRestrictsTheirClients() {
+        // ARRANGE: cliente A con dos vencidos y uno al día, cliente B solo al día
+        LocalDate today = LocalDate.now();
+        ToolEntity tool = givenTool("Taladro", 10);
+        ClientEntity late = givenClient("1-1", 3);
+        ClientEntity onTime = givenClient("2-2", 1);
+        LoanEntity overdue1 = givenLoan(late, tool, today.minusDays(2));
+        LoanEntity overdue2 = givenLoan(late, tool, today.minusDays(1));
+        LoanEntity dueToday = givenLoan(late, tool, today);
+        LoanEntity other = givenLoan(onTime, tool, today.plusDays(3));
+        OverdueLoanSweepService sweepService = new OverdueLoanSweepService(loanRepository, clientRepository,
+                counterRepository, transactionManager, eventPublisher, new SimpleMeterRegistry(), 5000);
+
+        // ACT: bloques de 1 ID para recorrer varios rangos
+        OverdueSweepReport report = sweepService.sweep(today, 1);
+
+        // ASSERT
+        assertEquals(2L, report.loansMarkedLate());
+        assertEquals(1L, report.clientsRestricted());
+        assertEquals(2L, report.chunks());
+        assertEquals(LoanStatus.LATE, loanRepository.findById(overdue1.getId()).orElseThrow().getStatus());
+        assertEquals(LoanStatus.LATE, loanRepository.findById(overdue2.getId()).orElseThrow().getStatus());
+        assertEquals(LoanStatus.ACTIVE, loanRepository.findById(dueToday.getId()).orElseThrow().getStatus());
+        assertEquals(LoanStatus.ACTIVE, loanRepository.findById(other.getId()).orElseThrow().getStatus());
+        assertEquals(ClientStatus.RESTRICTED, clientRepository.findById(late.getId()).orElseThrow().getStatus());
+        assertEquals(ClientStatus.ACTIVE, clientRepository.findById(onTime.getId()).orElseThrow().getStatus());
+        ClientLoanCounterEntity lateCounters = counterRepository.findById(late.getId()).orElseThrow();
+        assertEquals(1L, lateCounters.getActiveCount());
+        assertEquals(2L, lateCounters.getLateCount());
+        assertEquals(1L, counterRepository.findById(onTime.getId()).orElseThrow().getActiveCount());
+
+        // Una segunda pasada no encuentra nada
+        assertEquals(0L, sweepService.sweep(today, 1).loansMarkedLate());
+    }
+
+    @Test
+    void lateClientQueries_ReturnEachClientOnceWithStats() {
+        // ARRANGE: cliente A con dos préstamos atrasados, B con uno, C al día
+        LocalDate today = LocalDate.now();
+        ToolEntity tool = givenTool("Sierra", 10);
+        ClientEntity clientA = givenClient("3-3", 2);
+        ClientEntity clientB = givenClient("4-4", 1);
+        ClientEntity clientC = givenClient("5-5", 1);
+        givenLoan(clientA, tool, today.minusDays(5));
+        givenLoan(clientA, tool, today.minusDays(2));
+        givenLoan(clientB, tool, today.minusDays(1));
+        givenLoan(clientC, tool, today.plusDays(2));
+        new OverdueLoanSweepService(loanRepository, clientRepository, counterRepository, transactionManager,
+                eventPublisher, new SimpleMeterRegistry(), 5000).sweep(today, 100);
+
+        // ACT
+        List<LateClientDto> plain = clientRepository.findLateClientsAfter(0L, null, null, Limit.of(10));
+        List<LateClientDto> withStats = clientRepository.findLateClientStatsAfter(0L, null, null, Limit.of(10));
+        List<LateClientDto> secondPage = clientRepository.findLateClientsAfter(clientA.getId(), null, null, Limit.of(10));
+        // Préstamos de A iniciados hace 8 y 5 días: el rango de los últimos 6 días solo incluye el segundo
+        List<LateClientDto> inRange = clientRepository.findLateClientStatsAfter(0L, today.minusDays(6), today, Limit.of(10));
+
+        // ASSERT: un cliente por fila, ordenados por ID, sin el cliente al día
+        assertEquals(List.of(clientA.getId(), clientB.getId()), plain.stream().map(LateClientDto::id).toList());
+        assertNull(plain.get(0).lateLoans());
+        assertEquals(new LateClientDto(clientA.getId(), "3-3", "Cliente 3-3", "3-3@mail.com", ClientStatus.RESTRICTED,
+                2L, today.minusDays(5)), withStats.get(0));
+        assertEquals(1L, withStats.get(1).lateLoans());
+        assertEquals(List.of(clientB.getId()), secondPage.stream().map(LateClientDto::id).toList());
+        assertEquals(1L, inRange.get(0).lateLoans());
+        assertEquals(today.minusDays(2), inRange.get(0).oldestDueDate());
+    }
+
+    @Test
+    void sweep_WaitsForAConcurrentReturnAndDoesNotCountTheReturnedLoan() throws Exception {
+        // ARRANGE: un préstamo vencido cuya devolución tiene tomado el bloqueo de fila cuando arranca el barrido
+        LocalDate today = LocalDate.now();
+        givenTariffs();
+        ToolEntity tool = givenTool("Lijadora", 4);
+        ClientEntity client = givenClient("6-6", 1);
+        LoanEntity overdue = givenLoan(client, tool, today.minusDays(1));
+        UserEntity user = givenUser("sweep_user");
+        OverdueLoanSweepService sweepService = new OverdueLoanSweepService(loanRepository, clientRepository,
+                counterRepository, transactionManager, eventPublisher, new SimpleMeterRegistry(), 5000);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // ACT: la devolución bloquea el préstamo, el barrido arranca y espera, luego la devolución confirma
+            Future<?> returning = executor.submit(() -> transaction.executeWithoutResult(status -> {
+                loanRepository.findByIdForUpdate(overdue.getId()).orElseThrow();
+                locked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                loanService.returnLoan(overdue.getId(), tool.getId(), false, false, user, today);
+            }));
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            Future<OverdueSweepReport> sweeping = executor.submit(() -> sweepService.sweep(today, 100));
+            Thread.sleep(300);
+            release.countDown();
+            returning.get(20, TimeUnit.SECONDS);
+            OverdueSweepReport report = sweeping.get(20, TimeUnit.SECONDS);
+
+            // ASSERT: el barrido no marca ni cuenta un préstamo que ya se devolvió
+            assertEquals(0L, report.loansMarkedLate());
+            assertEquals(LoanStatus.RECEIVED, loanRepository.findById(overdue.getId()).orElseThrow().getStatus());
+            ClientLoanCounterEntity counters = counterRepository.findById(client.getId()).orElseThrow();
+            assertEquals(0L, counters.getActiveCount());
+            assertEquals(0L, counters.getLateCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void markLoanAsPaid_ConcurrentPaymentsSettleTheDebtOnce() throws Exception {
+        // ARRANGE: préstamo devuelto con deuda; varias peticiones de pago llegan a la vez (sin Idempotency-Key común)
+        ToolEntity tool = givenTool("Martillo", 2);
+        ClientEntity client = givenClient("7-7", 0);
+        counterRepository.save(ClientLoanCounterEntity.builder().clientId(client.getId())
+                .unpaidCount(1).outstandingPenalty(5000.0).build());
+        LoanEntity received = loanRepository.save(LoanEntity.builder().client(client).tool(tool)
+                .startDate(LocalDate.now().minusDays(5)).dueDate(LocalDate.now().minusDays(2))
+                .returnDate(LocalDate.now()).status(LoanStatus.RECEIVED).totalPenalty(5000.0).build());
+        int threads = 4;
+        AtomicInteger paid = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> payments = new ArrayList<>();
+
+        // ACT: todos los pagos arrancan a la vez
+        for (int i = 0; i < threads; i++) {
+            payments.add(executor.submit(() -> {
+                start.await();
+                try {
+                    loanService.markLoanAsPaid(received.getId());
+                    paid.incrementAndGet();
+                } catch (InvalidOperationException e) {
+                    rejected.incrementAndGet(); // El préstamo ya está CLOSED
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> payment : payments) {
+                payment.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // ASSERT: un solo pago cierra el préstamo y los contadores no quedan negativos
+        assertEquals(1, paid.get());
+        assertEquals(threads - 1, rejected.get());
+        LoanEntity after = loanRepository.findById(received.getId()).orElseThrow();
+        assertEquals(LoanStatus.CLOSED, after.getStatus());
+        assertEquals(5000.0, after.getPaidAmount(), 0.01);
+        ClientLoanCounterEntity counters = counterRepository.findById(client.getId()).orElseThrow();
+        assertEquals(0L, counters.getUnpaidCount());
+        assertEquals(0.0, counters.getOutstandingPenalty(), 0.01);
+    }
+}
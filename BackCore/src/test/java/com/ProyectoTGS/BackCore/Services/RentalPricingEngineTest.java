@@ -0,0 +1,115 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.RentalCharge;
+import app.dtos.TariffSnapshot;
+import app.services.RentalPricingEngine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RentalPricingEngineTest {
+
+    private final TariffSnapshot tariff = new TariffSnapshot(1000, 2000, 1500);
+
+    // =======================================================================
+    // CASOS DE NEGOCIO
+    // =======================================================================
+
+    @Test
+    void price_OnTimeReturn_ChargesOnlyRental() {
+        LocalDate start = LocalDate.of(2025, 1, 1);
+
+        RentalCharge charge = price(start, start.plusDays(5), start.plusDays(4), false, false, 45000);
+
+        assertTrue(charge.onTime());
+        assertEquals(5, charge.rentalDays());
+        assertEquals(5000, charge.total());
+    }
+
+    @Test
+    void price_SameDayLoan_ChargesMinimumOneDay() {
+        LocalDate start = LocalDate.of(2025, 1, 1);
+
+        RentalCharge charge = price(start, start, start, false, false, 45000);
+
+        assertEquals(1, charge.rentalDays());
+        assertEquals(1000, charge.total());
+    }
+
+    @Test
+    void price_LateAndDamaged_AddsLateFeeAndRepairFee() {
+        LocalDate start = LocalDate.of(2025, 1, 1);
+
+        RentalCharge charge = price(start, start.plusDays(2), start.plusDays(5), true, false, 45000);
+
+        assertFalse(charge.onTime());
+        assertEquals(3, charge.lateDays());
+        assertEquals(2000 + 6000 + 1500, charge.total());
+    }
+
+    @Test
+    void price_Irreparable_ChargesReplacementValue() {
+        LocalDate start = LocalDate.of(2025, 1, 1);
+
+        RentalCharge charge = price(start, start.plusDays(3), start.plusDays(3), true, true, 45000);
+
+        assertEquals(45000, charge.damagePenalty());
+        assertEquals(3000 + 45000, charge.total());
+    }
+
+    // =======================================================================
+    // PROPIEDAD: mismo resultado que el cálculo anterior en double (LoanService.returnLoan)
+    // =======================================================================
+
+    @Test
+    void price_MatchesPreviousDoubleCalculation_ForRandomInputs() {
+        Random random = new Random(20250101L); // Semilla fija: fallas reproducibles
+        LocalDate base = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < 10_000; i++) {
+            LocalDate start = base.plusDays(random.nextInt(2000));
+            LocalDate due = start.plusDays(random.nextInt(60) - 5);       // incluye vencimiento antes del inicio
+            LocalDate returned = due.plusDays(random.nextInt(90) - 30);   // devolución anticipada o atrasada
+            boolean damaged = random.nextBoolean();
+            boolean irreparable = random.nextBoolean();
+            int replacementValue = 1000 + random.nextInt(500_000);
+            TariffSnapshot fees = new TariffSnapshot(random.nextInt(20_000), random.nextInt(20_000), random.nextInt(50_000));
+
+            long actual = RentalPricingEngine.price(start.toEpochDay(), due.toEpochDay(), returned.toEpochDay(),
+                    damaged, irreparable, replacementValue, fees).total();
+            double expected = previousCalculation(start, due, returned, damaged, irreparable, replacementValue, fees);
+
+            assertEquals(expected, (double) actual, 0.0,
+                    "start=" + start + " due=" + due + " return=" + returned + " damaged=" + damaged + " irreparable=" + irreparable);
+        }
+    }
+
+    private RentalCharge price(LocalDate start, LocalDate due, LocalDate returned, boolean damaged, boolean irreparable, int replacementValue) {
+        return RentalPricingEngine.price(start.toEpochDay(), due.toEpochDay(), returned.toEpochDay(),
+                damaged, irreparable, replacementValue, tariff);
+    }
+
+    // Cálculo original de LoanService (double + ChronoUnit), como referencia
+    private static double previousCalculation(LocalDate start, LocalDate due, LocalDate returned,
+                                              boolean damaged, boolean irreparable, int replacementValue, TariffSnapshot fees) {
+        long rentalDays = ChronoUnit.DAYS.between(start, due);
+        if (rentalDays < 1) {
+            rentalDays = 1;
+        }
+        double rentalCost = rentalDays * (double) fees.dailyRentFee();
+        long delayDays = ChronoUnit.DAYS.between(due, returned);
+        double lateFee = 0.0;
+        if (delayDays > 0) {
+            lateFee = delayDays * (double) fees.dailyLateFee();
+        }
+        double damagePenalty = 0.0;
+        if (damaged) {
+            damagePenalty = irreparable ? replacementValue : fees.repairFee();
+        }
+        return rentalCost + lateFee + damagePenalty;
+    }
+}
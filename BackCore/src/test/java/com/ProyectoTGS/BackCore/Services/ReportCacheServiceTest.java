@@ -0,0 +1,134 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.events.LoanChangedEvent;
+import app.events.LoanChangedEvent.Change;
+import app.services.ReportCacheService;
+import app.services.ReportCacheService.Report;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReportCacheServiceTest {
+
+    private static final ToIntFunction<Object> ONE_ROW = value -> 1;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReportCacheService reportCache;
+    private final LocalDate from = LocalDate.of(2025, 1, 1);
+    private final LocalDate to = LocalDate.of(2025, 1, 31);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        reportCache = new ReportCacheService(meterRegistry, 4, Duration.ofMinutes(10));
+        reportCache.registerSizeGauge(); // Lo hace Spring con @PostConstruct
+    }
+
+    @Test
+    void get_SecondCallWithSameParams_IsServedFromCache() {
+        // ARRANGE
+        AtomicInteger loads = new AtomicInteger();
+
+        // ACT
+        List<String> first = reportCache.get(Report.TOP_TOOLS, () -> List.of("loads-" + loads.incrementAndGet()), List::size, from, to);
+        List<String> second = reportCache.get(Report.TOP_TOOLS, () -> List.of("loads-" + loads.incrementAndGet()), List::size, from, to);
+        reportCache.get(Report.TOP_TOOLS, () -> List.of("loads-" + loads.incrementAndGet()), List::size, from, to.plusDays(1));
+
+        // ASSERT: mismo rango -> hit; otro rango -> nueva consulta
+        assertEquals(first, second);
+        assertEquals(2, loads.get());
+        assertEquals(1.0, requests(Report.TOP_TOOLS, "hit"));
+        assertEquals(2.0, requests(Report.TOP_TOOLS, "miss"));
+    }
+
+    @Test
+    void get_OverMaxRows_EvictsLeastRecentlyUsed() {
+        // ARRANGE: límite de 4 filas, ocupadas por dos resultados de 2 filas
+        reportCache.get(Report.LOANS_BY_STATUS, () -> List.of("a1", "a2"), List::size, "ACTIVE", from, to);
+        reportCache.get(Report.LOANS_BY_STATUS, () -> List.of("l1", "l2"), List::size, "LATE", from, to);
+        reportCache.get(Report.LOANS_BY_STATUS, () -> List.of(), List::size, "ACTIVE", from, to); // ACTIVE pasa a ser la más reciente
+
+        // ACT: un resultado de 1 fila supera el límite
+        reportCache.get(Report.LOANS_BY_STATUS, () -> List.of("r1"), List::size, "RECEIVED", from, to);
+
+        // ASSERT: se descarta LATE, ACTIVE sigue en caché
+        assertEquals(2, reportCache.size());
+        assertEquals(3, reportCache.rows());
+        assertEquals(2.0, meterRegistry.get("reports.cache.size").gauge().value());
+        assertEquals(3.0, meterRegistry.get("reports.cache.rows").gauge().value());
+        assertEquals(1.0, meterRegistry.get("reports.cache.evictions").counter().count());
+        assertEquals(List.of("a1", "a2"), reportCache.get(Report.LOANS_BY_STATUS, List::of, List::size, "ACTIVE", from, to));
+        assertEquals(List.of(), reportCache.get(Report.LOANS_BY_STATUS, List::of, List::size, "LATE", from, to));
+    }
+
+    @Test
+    void get_ResultLargerThanMaxRows_IsReturnedButNotCached() {
+        // ARRANGE
+        reportCache.get(Report.TOP_TOOLS, () -> List.of("t1"), List::size, from, to);
+
+        // ACT
+        List<String> huge = reportCache.get(Report.LOANS_BY_STATUS, () -> List.of("1", "2", "3", "4", "5"), List::size, "ACTIVE", from, to);
+
+        // ASSERT: no desplaza lo que ya estaba en caché
+        assertEquals(5, huge.size());
+        assertEquals(1, reportCache.size());
+        assertEquals(1, reportCache.rows());
+        assertEquals(0.0, meterRegistry.get("reports.cache.evictions").counter().count());
+    }
+
+    @Test
+    void invalidate_ReleasesTheRowsOfRemovedEntries() {
+        // ARRANGE
+        reportCache.get(Report.LOANS_BY_STATUS, () -> List.of("a1", "a2", "a3"), List::size, "ACTIVE", from, to);
+        reportCache.get(Report.TOP_TOOLS, () -> List.of("t1"), List::size, from, to);
+
+        // ACT
+        reportCache.invalidate(EnumSet.of(Report.LOANS_BY_STATUS));
+
+        // ASSERT
+        assertEquals(1, reportCache.rows());
+    }
+
+    @Test
+    void onLoanChanged_InvalidatesOnlyAffectedReports() {
+        // ARRANGE
+        reportCache.get(Report.CLIENTS_WITH_LATE_LOANS, () -> "late-clients", ONE_ROW, from, to);
+        reportCache.get(Report.TOP_TOOLS, () -> "ranking", ONE_ROW, from, to);
+
+        // ACT: un préstamo nuevo cambia el ranking pero no los clientes con atrasos
+        reportCache.onLoanChanged(new LoanChangedEvent(Change.CREATED, 1));
+
+        // ASSERT
+        assertEquals("late-clients", reportCache.get(Report.CLIENTS_WITH_LATE_LOANS, () -> "reloaded", ONE_ROW, from, to));
+        assertEquals("reloaded", reportCache.get(Report.TOP_TOOLS, () -> "reloaded", ONE_ROW, from, to));
+        assertEquals(1.0, meterRegistry.get("reports.cache.invalidations").counter().count());
+    }
+
+    @Test
+    void get_InvalidatedWhileLoading_DoesNotStoreStaleResult() {
+        // ACT: el préstamo se devuelve mientras la consulta está en curso
+        String stale = reportCache.get(Report.LOANS_BY_STATUS, () -> {
+            reportCache.invalidate(EnumSet.of(Report.LOANS_BY_STATUS));
+            return "stale";
+        }, ONE_ROW, "ACTIVE", from, to);
+
+        // ASSERT: se devuelve a quien lo pidió, pero no queda en caché
+        assertEquals("stale", stale);
+        assertEquals(0, reportCache.size());
+        assertEquals("fresh", reportCache.get(Report.LOANS_BY_STATUS, () -> "fresh", ONE_ROW, "ACTIVE", from, to));
+    }
+
+    private double requests(Report report, String result) {
+        return meterRegistry.get("reports.cache.requests").tag("report", report.name()).tag("result", result).counter().count();
+    }
+}
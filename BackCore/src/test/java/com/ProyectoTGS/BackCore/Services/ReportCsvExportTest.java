@@ -0,0 +1,111 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.controllers.ReportController;
+import app.entities.ClientEntity;
+import app.entities.LoanEntity;
+import app.entities.ToolEntity;
+import app.entities.enums.ClientStatus;
+import app.entities.enums.LoanStatus;
+import app.services.ReportCacheService;
+import app.services.ReportService;
+import app.services.ToolLoanCountService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria) de la exportación CSV en streaming de RF6.1 y RF6.2
+@BackCoreIntegrationTest
+class ReportCsvExportTest extends IntegrationTestSupport {
+
+    private static final String BOM = "\uFEFF";
+
+    @Autowired private ToolLoanCountService toolLoanCountService;
+
+    private ReportController controller;
+    private ReportService reportService;
+    private ClientEntity clientA;
+    private ClientEntity clientB;
+    private LoanEntity lateLoan;
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void setUp() {
+        // Sin proxy de Spring: en H2 el cursor no necesita la transacción de solo lectura que PostgreSQL sí exige
+        reportService = new ReportService(loanRepository, clientRepository, toolLoanCountService,
+                new ReportCacheService(new SimpleMeterRegistry(), 100, Duration.ofMinutes(10)));
+        controller = new ReportController(reportService, null, null);
+
+        ToolEntity tool = givenTool("Taladro, percutor", 10);
+        // Nombres con fórmula y con comillas: el CSV debe neutralizar la fórmula y escapar las comillas
+        clientA = givenClient("1-1", "=HYPERLINK(\"http://x\")", ClientStatus.RESTRICTED);
+        clientB = givenClient("2-2", "Ana \"La Jefa\" Pérez", ClientStatus.RESTRICTED);
+        lateLoan = givenLoan(clientA, tool, today.minusDays(9), LoanStatus.LATE);
+        givenLoan(clientA, tool, today.minusDays(4), LoanStatus.LATE);
+        givenLoan(clientB, tool, today.minusDays(6), LoanStatus.LATE);
+        givenLoan(clientB, tool, today.plusDays(3), LoanStatus.ACTIVE);
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void exportLoansByStatus_WritesEveryMatchingLoanAsCsv() throws IOException {
+        // ACT
+        ResponseEntity<StreamingResponseBody> response = controller.exportLoansByStatus("late", null, null, null);
+        String[] lines = new String(body(response), StandardCharsets.UTF_8).split("\r\n");
+
+        // ASSERT: sin gzip pedido, texto plano; encabezado + 3 préstamos LATE en orden de ID
+        assertEquals("text/csv; charset=UTF-8", response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(BOM + "id,client_id,client_rut,client_name,tool_id,tool_name,start_date,due_date,return_date,status,total_penalty", lines[0]);
+        assertEquals(4, lines.length);
+        assertEquals(lateLoan.getId() + "," + clientA.getId() + ",1-1,\"'=HYPERLINK(\"\"http://x\"\")\"," + lateLoan.getTool().getId()
+                + ",\"Taladro, percutor\"," + today.minusDays(12) + "," + today.minusDays(9) + ",,LATE,0.0", lines[1]);
+    }
+
+    @Test
+    void exportLateClients_CompressesWhenClientAcceptsGzip() throws IOException {
+        // ACT
+        ResponseEntity<StreamingResponseBody> response = controller.exportLateClients(null, null, "gzip, deflate, br");
+        String csv;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body(response)))) {
+            csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = csv.split("\r\n");
+
+        // ASSERT: un cliente por fila, con cantidad de atrasos y vencimiento más antiguo
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(BOM + "id,rut,name,email,status,late_loans,oldest_due_date", lines[0]);
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].startsWith(clientA.getId() + ",1-1,"));
+        assertTrue(lines[1].endsWith(",2," + today.minusDays(9)));
+        assertEquals(clientB.getId() + ",2-2,\"Ana \"\"La Jefa\"\" Pérez\",2-2@mail.com,RESTRICTED,1," + today.minusDays(6), lines[2]);
+    }
+
+    @Test
+    void exportLateClients_InvalidRangeFailsBeforeStreaming() {
+        // ACT & ASSERT: la validación ocurre al armar la respuesta, cuando aún se puede responder 4xx/5xx
+        assertThrows(IllegalArgumentException.class,
+                () -> controller.exportLateClients(today, today.minusDays(1), null));
+        assertThrows(IllegalArgumentException.class,
+                () -> controller.exportLoansByStatus("BOGUS", null, null, null));
+    }
+}
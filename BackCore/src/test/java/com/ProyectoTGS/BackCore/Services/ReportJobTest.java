@@ -0,0 +1,161 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.ReportJobInfo;
+import app.dtos.ReportJobRequest;
+import app.entities.ClientEntity;
+import app.entities.ReportJobEntity;
+import app.entities.ToolEntity;
+import app.entities.enums.ClientStatus;
+import app.entities.enums.LoanStatus;
+import app.entities.enums.ReportJobStatus;
+import app.entities.enums.ReportJobType;
+import app.exceptions.InvalidOperationException;
+import app.exceptions.ResourceNotFoundException;
+import app.services.ReportCacheService;
+import app.services.ReportJobService;
+import app.services.ReportService;
+import app.services.ToolLoanCountService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria + directorio temporal) de los trabajos asíncronos de reportes
+@BackCoreIntegrationTest
+class ReportJobTest extends IntegrationTestSupport {
+
+    @Autowired private ToolLoanCountService toolLoanCountService;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @TempDir Path jobsDir;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private ReportJobService jobService;
+    private ClientEntity clientA;
+
+    @BeforeEach
+    void setUp() {
+        ReportService reportService = new ReportService(loanRepository, clientRepository, toolLoanCountService,
+                new ReportCacheService(new SimpleMeterRegistry(), 100, Duration.ofMinutes(10)));
+        jobService = new ReportJobService(jobRepository, reportService, objectMapper, transactionManager,
+                jobsDir.toString(), 1, 5, Duration.ofDays(7));
+
+        // Cliente A con dos préstamos atrasados, B con uno; un préstamo activo que no entra en los reportes de atrasos
+        ToolEntity tool = givenTool("Taladro", 10);
+        clientA = givenClient("1-1", ClientStatus.RESTRICTED);
+        ClientEntity clientB = givenClient("2-2", ClientStatus.RESTRICTED);
+        LocalDate today = LocalDate.now();
+        givenLoan(clientA, tool, today.minusDays(9), LoanStatus.LATE);
+        givenLoan(clientA, tool, today.minusDays(4), LoanStatus.LATE);
+        givenLoan(clientB, tool, today.minusDays(6), LoanStatus.LATE);
+        givenLoan(clientB, tool, today.plusDays(3), LoanStatus.ACTIVE);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jobService.shutdown();
+    }
+
+    private ReportJobInfo awaitFinished(String id) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        ReportJobInfo info = jobService.getJob(id);
+        while ((info.status() == ReportJobStatus.QUEUED || info.status() == ReportJobStatus.RUNNING) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            info = jobService.getJob(id);
+        }
+        return info;
+    }
+
+    @Test
+    void submit_RunsJobsInBackgroundAndWritesDownloadableResults() throws Exception {
+        // ACT
+        ReportJobInfo loansJob = jobService.submit(new ReportJobRequest(ReportJobType.LOANS_BY_STATUS, "late", null, null, null, false), "diego");
+        ReportJobInfo clientsJob = jobService.submit(new ReportJobRequest(ReportJobType.CLIENTS_WITH_LATE_LOANS, null, null, null, null, true), "diego");
+
+        // ASSERT: estado y avance del trabajo
+        ReportJobInfo loans = awaitFinished(loansJob.id());
+        assertEquals(ReportJobStatus.COMPLETED, loans.status());
+        assertEquals(100, loans.progress());
+        assertEquals(3L, loans.rowsWritten());
+        assertEquals(3L, loans.totalRows());
+
+        // El resultado es un arreglo JSON con las mismas filas que el endpoint síncrono
+        JsonNode loanRows = objectMapper.readTree(jobService.getResultFile(loansJob.id()).toFile());
+        assertEquals(3, loanRows.size());
+        loanRows.forEach(row -> assertEquals("LATE", row.get("status").asText()));
+
+        assertEquals(ReportJobStatus.COMPLETED, awaitFinished(clientsJob.id()).status());
+        JsonNode clientRows = objectMapper.readTree(jobService.getResultFile(clientsJob.id()).toFile());
+        assertEquals(2, clientRows.size());
+        assertEquals(clientA.getId(), clientRows.get(0).get("id").asLong());
+        assertEquals(2, clientRows.get(0).get("lateLoans").asInt());
+        assertFalse(Files.exists(jobsDir.resolve(loansJob.id() + ".json.tmp")));
+    }
+
+    @Test
+    void submit_RejectsInvalidRequestsBeforeQueueing() {
+        // ACT & ASSERT: ranking sin fechas y estado inexistente se informan al crear el trabajo
+        assertThrows(InvalidOperationException.class, () -> jobService.submit(
+                new ReportJobRequest(ReportJobType.TOP_TOOLS, null, null, null, 10, false), "diego"));
+        assertThrows(InvalidOperationException.class, () -> jobService.submit(
+                new ReportJobRequest(ReportJobType.LOANS_BY_STATUS, "BOGUS", null, null, null, false), "diego"));
+        assertEquals(0, jobRepository.count());
+        assertThrows(ResourceNotFoundException.class, () -> jobService.getJob("missing"));
+    }
+
+    @Test
+    void failUnfinishedJobs_MarksInterruptedJobsFailedAndRemovesPartialResults() throws IOException {
+        // ARRANGE: trabajo que estaba escribiendo su resultado cuando se detuvo la aplicación
+        ReportJobEntity running = jobRepository.save(ReportJobEntity.builder().id("job-running")
+                .type(ReportJobType.RESTRICTED_CLIENTS).status(ReportJobStatus.RUNNING)
+                .createdAt(LocalDateTime.now()).startedAt(LocalDateTime.now()).build());
+        Path partial = Files.writeString(jobsDir.resolve("job-running.json.tmp"), "[{\"id\":1}");
+
+        // ACT
+        jobService.failUnfinishedJobs();
+
+        // ASSERT
+        ReportJobInfo info = jobService.getJob(running.getId());
+        assertEquals(ReportJobStatus.FAILED, info.status());
+        assertNotNull(info.finishedAt());
+        assertFalse(Files.exists(partial));
+        assertThrows(InvalidOperationException.class, () -> jobService.getResultFile(running.getId()));
+    }
+
+    @Test
+    void purgeExpired_DeletesResultsOlderThanRetention() throws IOException {
+        // ARRANGE: un resultado de hace 10 días (retención de 7) y otro de hoy
+        LocalDateTime now = LocalDateTime.now();
+        jobRepository.save(ReportJobEntity.builder().id("job-old").type(ReportJobType.RESTRICTED_CLIENTS)
+                .status(ReportJobStatus.COMPLETED).createdAt(now.minusDays(10)).finishedAt(now.minusDays(10)).build());
+        jobRepository.save(ReportJobEntity.builder().id("job-new").type(ReportJobType.RESTRICTED_CLIENTS)
+                .status(ReportJobStatus.COMPLETED).createdAt(now).finishedAt(now).build());
+        Path oldResult = Files.writeString(jobsDir.resolve("job-old.json"), "[]");
+        Path newResult = Files.writeString(jobsDir.resolve("job-new.json"), "[]");
+
+        // ACT
+        jobService.purgeExpired();
+
+        // ASSERT
+        assertFalse(jobRepository.existsById("job-old"));
+        assertFalse(Files.exists(oldResult));
+        assertTrue(jobRepository.existsById("job-new"));
+        assertEquals(newResult, jobService.getResultFile("job-new"));
+    }
+}
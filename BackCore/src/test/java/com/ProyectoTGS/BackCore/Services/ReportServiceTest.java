@@ -3,25 +3,36 @@ package com.ProyectoTGS.BackCore.Services;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
+import app.dtos.LateClientDto;
+import app.dtos.LateClientPage;
+import app.dtos.LoanReportRow;
+import app.dtos.TopToolDto;
 import app.entities.ClientEntity;
-import app.entities.LoanEntity;
 import app.entities.ToolEntity;
 import app.entities.enums.ClientStatus;
 import app.entities.enums.LoanStatus;
 import app.repositories.ClientRepository;
 import app.repositories.LoanRepository;
 import app.repositories.ToolRepository;
+import app.services.ReportCacheService;
 import app.services.ReportService;
+import app.services.ToolLoanCountService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -33,8 +44,9 @@ public class ReportServiceTest {
     private ClientRepository clientRepository;
     @Mock 
     private ToolRepository toolRepository; 
+    @Mock
+    private ToolLoanCountService toolLoanCountService;
 
-    @InjectMocks
     private ReportService reportService;
 
     private ClientEntity client1;
@@ -45,6 +57,8 @@ public class ReportServiceTest {
 
     @BeforeEach
     void setUp() {
+        reportService = new ReportService(loanRepository, clientRepository, toolLoanCountService,
+                new ReportCacheService(new SimpleMeterRegistry(), 100, Duration.ofMinutes(10)));
 
         // Inicializar entidades de prueba
         client1 = ClientEntity.builder().id(1L).name("Cliente Juan").build();
@@ -61,15 +75,22 @@ public class ReportServiceTest {
     @Test
     void getLoansByStatus_Active_Success() {
         // ARRANGE
-        LoanEntity activeLoan = LoanEntity.builder().status(LoanStatus.ACTIVE).build();
-        when(loanRepository.findByStatus(LoanStatus.ACTIVE)).thenReturn(List.of(activeLoan));
+        LoanReportRow activeLoan = reportRow(1L, LoanStatus.ACTIVE, LocalDate.of(2025, 1, 6));
+        when(loanRepository.findReportRowsByStatus(LoanStatus.ACTIVE)).thenReturn(new ArrayList<>(List.of(activeLoan)));
 
         // ACT
-        List<LoanEntity> result = reportService.getLoansByStatus("ACTIVE", null, null);
+        List<LoanReportRow> result = reportService.getLoansByStatus("ACTIVE", null, null);
 
-        // ASSERT
+        // ASSERT: filas planas, en una lista inmutable (la caché la comparte entre peticiones)
         assertEquals(1, result.size());
-        assertEquals(LoanStatus.ACTIVE, result.get(0).getStatus());
+        assertEquals(LoanStatus.ACTIVE, result.get(0).status());
+        assertEquals("Cliente Juan", result.get(0).clientName());
+        assertThrows(UnsupportedOperationException.class, () -> result.add(activeLoan));
+    }
+
+    private LoanReportRow reportRow(Long id, LoanStatus status, LocalDate startDate) {
+        return new LoanReportRow(id, client1.getId(), "1-1", client1.getName(), toolA.getId(), toolA.getName(),
+                startDate, startDate.plusDays(3), null, status, 0.0);
     }
     
     @Test
@@ -85,21 +106,43 @@ public class ReportServiceTest {
     // =======================================================================
 
     @Test
-    void getClientsWithLateLoans_ReturnsUniqueClients() {
-        // ARRANGE: Cliente 1 tiene dos préstamos LATE, Cliente 2 tiene uno
-        LoanEntity lateLoanForC1 = LoanEntity.builder().client(client1).status(LoanStatus.LATE).build();
-        LoanEntity anotherLateLoanForC1 = LoanEntity.builder().client(client1).status(LoanStatus.LATE).build();
-        LoanEntity lateLoanForC2 = LoanEntity.builder().client(client2).status(LoanStatus.LATE).build();
+    void getClientsWithLateLoans_ReturnsPageWithNextCursor() {
+        // ARRANGE: la consulta devuelve una fila extra -> hay página siguiente
+        when(clientRepository.findLateClientsAfter(eq(0L), isNull(), isNull(), any(Limit.class))).thenReturn(List.of(
+                new LateClientDto(1L, "1-1", "Cliente Juan", null, ClientStatus.RESTRICTED),
+                new LateClientDto(2L, "2-2", "Cliente Maria", null, ClientStatus.RESTRICTED)));
+
+        // ACT
+        LateClientPage result = reportService.getClientsWithLateLoans(null, null, false, null, 1);
+
+        // ASSERT: solo se entrega 'size' filas y el cursor apunta a la última entregada
+        assertEquals(1, result.items().size());
+        assertEquals(1L, result.items().get(0).id());
+        assertEquals(1L, result.nextAfterId());
+        verify(clientRepository).findLateClientsAfter(0L, null, null, Limit.of(2));
+        verifyNoInteractions(loanRepository);
+    }
 
-        when(loanRepository.findByStatus(LoanStatus.LATE)).thenReturn(List.of(lateLoanForC1, anotherLateLoanForC1, lateLoanForC2));
+    @Test
+    void getClientsWithLateLoans_WithStats_UsesGroupedQuery() {
+        // ARRANGE
+        LateClientDto withStats = new LateClientDto(1L, "1-1", "Cliente Juan", null, ClientStatus.RESTRICTED, 2L, LocalDate.of(2025, 1, 10));
+        when(clientRepository.findLateClientStatsAfter(eq(5L), isNull(), isNull(), any(Limit.class))).thenReturn(List.of(withStats));
 
         // ACT
-        List<ClientEntity> result = reportService.getClientsWithLateLoans(null, null);
+        LateClientPage result = reportService.getClientsWithLateLoans(null, null, true, 5L, 100);
 
-        // ASSERT: Debe devolver 2 clientes únicos (se usa .distinct())
-        assertEquals(2, result.size());
-        assertTrue(result.stream().anyMatch(c -> c.getId().equals(1L)), "Debe contener al Cliente 1");
-        assertTrue(result.stream().anyMatch(c -> c.getId().equals(2L)), "Debe contener al Cliente 2");
+        // ASSERT: última página
+        assertEquals(List.of(withStats), result.items());
+        assertNull(result.nextAfterId());
+        verify(clientRepository, never()).findLateClientsAfter(any(), any(), any(), any());
+    }
+
+    @Test
+    void getClientsWithLateLoans_FailsIfPageSizeOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> reportService.getClientsWithLateLoans(null, null, false, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> reportService.getClientsWithLateLoans(null, null, false, null, 501));
+        verifyNoInteractions(clientRepository);
     }
     
     // =======================================================================
@@ -107,27 +150,38 @@ public class ReportServiceTest {
     // =======================================================================
 
     @Test
-    void getTopTools_ReturnsRankingFromRepository() {
-        // ARRANGE: Simular el resultado de la consulta SQL (Object[]: ToolEntity, Count)
+    void getTopTools_ReturnsRankingFromDailyCounts() {
+        // ARRANGE: Simular el ranking sumado desde tool_loan_daily_counts
         LocalDate start = LocalDate.of(2025, 1, 1);
         LocalDate end = LocalDate.of(2025, 1, 31);
         
-        List<Object[]> mockRanking = List.of(
-            new Object[]{toolA, 5L}, // 5 veces prestada
-            new Object[]{toolB, 3L}  // 3 veces prestada
+        List<TopToolDto> mockRanking = List.of(
+            new TopToolDto(toolA.getId(), toolA.getName(), "Manuales", 5L), // 5 veces prestada
+            new TopToolDto(toolB.getId(), toolB.getName(), "Eléctricas", 3L)  // 3 veces prestada
         );
 
-        when(loanRepository.findTopToolsByDateRange(start, end)).thenReturn(mockRanking);
+        when(toolLoanCountService.getTopTools(start, end, 10)).thenReturn(mockRanking);
 
         // ACT
-        List<Object[]> result = reportService.getTopTools(start, end);
+        List<TopToolDto> result = reportService.getTopTools(start, end, 10);
 
         // ASSERT
         assertEquals(2, result.size());
         // Verificar el orden y los datos
-        assertEquals(toolA, result.get(0)[0]);
-        assertEquals(5L, result.get(0)[1]);
-        verify(loanRepository, times(1)).findTopToolsByDateRange(start, end);
+        assertEquals("Martillo", result.get(0).name());
+        assertEquals(5L, result.get(0).loans());
+        verify(toolLoanCountService, times(1)).getTopTools(start, end, 10);
+        verifyNoInteractions(loanRepository);
+    }
+
+    @Test
+    void getTopTools_FailsIfLimitOutOfRange() {
+        LocalDate today = LocalDate.now();
+
+        // ACT & ASSERT
+        assertThrows(IllegalArgumentException.class, () -> reportService.getTopTools(today, today, 0));
+        assertThrows(IllegalArgumentException.class, () -> reportService.getTopTools(today, today, 101));
+        verify(toolLoanCountService, never()).getTopTools(any(), any(), anyInt());
     }
     
     // =======================================================================
@@ -157,16 +211,16 @@ public class ReportServiceTest {
         // ARRANGE
         LocalDate from = LocalDate.of(2025, 1, 1);
         LocalDate to = LocalDate.of(2025, 1, 31);
-        LoanEntity loan = LoanEntity.builder().status(LoanStatus.ACTIVE).startDate(from.plusDays(5)).build();
-        when(loanRepository.findByStatusAndStartDateBetween(LoanStatus.ACTIVE, from, to)).thenReturn(List.of(loan));
+        LoanReportRow loan = reportRow(1L, LoanStatus.ACTIVE, from.plusDays(5));
+        when(loanRepository.findReportRowsByStatusAndStartDateBetween(LoanStatus.ACTIVE, from, to)).thenReturn(List.of(loan));
 
         // ACT
-        List<LoanEntity> result = reportService.getLoansByStatus("ACTIVE", from, to);
+        List<LoanReportRow> result = reportService.getLoansByStatus("ACTIVE", from, to);
 
         // ASSERT
         assertEquals(1, result.size());
-        verify(loanRepository, times(1)).findByStatusAndStartDateBetween(LoanStatus.ACTIVE, from, to);
-        verify(loanRepository, never()).findByStatus(any()); // Verifica que NO se llamó al método sin filtro
+        verify(loanRepository, times(1)).findReportRowsByStatusAndStartDateBetween(LoanStatus.ACTIVE, from, to);
+        verify(loanRepository, never()).findReportRowsByStatus(any()); // Verifica que NO se llamó al método sin filtro
     }
 
     @Test
@@ -179,7 +233,7 @@ public class ReportServiceTest {
         assertThrows(IllegalArgumentException.class, () -> {
             reportService.getLoansByStatus("ACTIVE", from, to);
         });
-        verify(loanRepository, never()).findByStatusAndStartDateBetween(any(), any(), any());
+        verify(loanRepository, never()).findReportRowsByStatusAndStartDateBetween(any(), any(), any());
     }
 
     // =======================================================================
@@ -191,17 +245,17 @@ public class ReportServiceTest {
         // ARRANGE
         LocalDate from = LocalDate.of(2025, 2, 1);
         LocalDate to = LocalDate.of(2025, 2, 28);
-        when(loanRepository.findDistinctClientsByStatusAndStartDateBetween(LoanStatus.LATE, from, to))
-                .thenReturn(List.of(client1)); // Simular que solo client1 cumple
+        when(clientRepository.findLateClientsAfter(eq(0L), eq(from), eq(to), any(Limit.class)))
+                .thenReturn(List.of(new LateClientDto(1L, "1-1", "Cliente Juan", null, ClientStatus.RESTRICTED))); // Simular que solo client1 cumple
 
         // ACT
-        List<ClientEntity> result = reportService.getClientsWithLateLoans(from, to);
+        LateClientPage result = reportService.getClientsWithLateLoans(from, to, false, null, 100);
 
         // ASSERT
-        assertEquals(1, result.size());
-        assertEquals(client1.getId(), result.get(0).getId());
-        verify(loanRepository, times(1)).findDistinctClientsByStatusAndStartDateBetween(LoanStatus.LATE, from, to);
-        verify(loanRepository, never()).findByStatus(LoanStatus.LATE); // Verifica que no se usó el método sin filtro
+        assertEquals(1, result.items().size());
+        assertEquals(client1.getId(), result.items().get(0).id());
+        verify(clientRepository, times(1)).findLateClientsAfter(0L, from, to, Limit.of(101));
+        verify(loanRepository, never()).findByStatus(LoanStatus.LATE); // Ya no se cargan préstamos en memoria
     }
 
      @Test
@@ -212,9 +266,9 @@ public class ReportServiceTest {
 
         // ACT & ASSERT
         assertThrows(IllegalArgumentException.class, () -> {
-            reportService.getClientsWithLateLoans(from, to);
+            reportService.getClientsWithLateLoans(from, to, false, null, 100);
         });
-        verify(loanRepository, never()).findDistinctClientsByStatusAndStartDateBetween(any(), any(), any());
+        verifyNoInteractions(clientRepository);
     }
 
     // =======================================================================
@@ -227,9 +281,9 @@ public class ReportServiceTest {
 
          // ACT & ASSERT
         assertThrows(IllegalArgumentException.class, () -> {
-            reportService.getTopTools(null, today);
+            reportService.getTopTools(null, today, 10);
         });
-        verify(loanRepository, never()).findTopToolsByDateRange(any(), any());
+        verify(toolLoanCountService, never()).getTopTools(any(), any(), anyInt());
     }
 
     @Test
@@ -238,9 +292,9 @@ public class ReportServiceTest {
 
         // ACT & ASSERT
         assertThrows(IllegalArgumentException.class, () -> {
-            reportService.getTopTools(today, null);
+            reportService.getTopTools(today, null, 10);
         });
-        verify(loanRepository, never()).findTopToolsByDateRange(any(), any());
+        verify(toolLoanCountService, never()).getTopTools(any(), any(), anyInt());
     }
 
     @Test
@@ -251,8 +305,8 @@ public class ReportServiceTest {
 
         // ACT & ASSERT
         assertThrows(IllegalArgumentException.class, () -> {
-            reportService.getTopTools(from, to);
+            reportService.getTopTools(from, to, 10);
         });
-        verify(loanRepository, never()).findTopToolsByDateRange(any(), any());
+        verify(toolLoanCountService, never()).getTopTools(any(), any(), anyInt());
     }
 }
\ No newline at end of file
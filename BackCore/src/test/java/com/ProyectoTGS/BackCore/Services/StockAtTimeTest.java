@@ -0,0 +1,176 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.StockAtTimeReport;
+import app.dtos.ToolStockAtTime;
+import app.entities.ToolEntity;
+import app.entities.UserEntity;
+import app.entities.enums.MovementType;
+import app.entities.enums.ToolStatus;
+import app.repositories.KardexArchiveStore;
+import app.services.StockSnapshotService;
+import app.services.ToolService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria) del stock en el tiempo: punto de control + movimientos posteriores
+@BackCoreIntegrationTest
+class StockAtTimeTest extends IntegrationTestSupport {
+
+    private static final LocalDateTime DAY1 = LocalDateTime.of(2025, 3, 1, 9, 0);
+
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private ToolService toolService;
+    @Autowired private KardexArchiveStore archiveStore;
+
+    private StockSnapshotService snapshotService;
+    private UserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        snapshotService = new StockSnapshotService(snapshotRepository, archiveStore, toolRepository);
+        user = givenUser("diego");
+    }
+
+    private void movement(ToolEntity tool, MovementType type, int quantity, LocalDateTime at) {
+        givenMovement(tool, user, type, quantity, at);
+    }
+
+    private void snapshotAt(LocalDateTime at) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> snapshotService.takeSnapshot(at));
+    }
+
+    private Map<Long, ToolStockAtTime> stockAt(LocalDateTime at) {
+        return snapshotService.getStockAt(at).tools().stream()
+                .collect(Collectors.toMap(ToolStockAtTime::toolId, Function.identity()));
+    }
+
+    @Test
+    void getStockAt_StartsFromNearestSnapshotAndAppliesLaterMovements() {
+        // ARRANGE: taladro creado con 5; 2 préstamos y 1 devolución el día 1; punto de control esa noche con stock 4
+        ToolEntity drill = givenTool("Taladro", 4);
+        movement(drill, MovementType.INCOME, 5, DAY1);
+        movement(drill, MovementType.LOAN, 1, DAY1.plusHours(1));
+        movement(drill, MovementType.LOAN, 1, DAY1.plusHours(2));
+        movement(drill, MovementType.RETURN, 1, DAY1.plusHours(3));
+        snapshotAt(DAY1.withHour(23));
+        // Día 2: préstamo, entra a reparación y ajuste de -1
+        movement(drill, MovementType.LOAN, 1, DAY1.plusDays(1));
+        movement(drill, MovementType.REPAIR, 1, DAY1.plusDays(1).plusHours(1));
+        movement(drill, MovementType.MANUAL_DECREASE, 1, DAY1.plusDays(1).plusHours(2));
+
+        // ACT & ASSERT: antes del punto de control (Kardex completo), entre movimientos y después
+        StockAtTimeReport beforeSnapshot = snapshotService.getStockAt(DAY1.plusHours(1).plusMinutes(30));
+        assertNull(beforeSnapshot.snapshotDate());
+        assertEquals(4, beforeSnapshot.tools().get(0).stock());
+
+        StockAtTimeReport day2 = snapshotService.getStockAt(DAY1.plusDays(1).plusMinutes(90));
+        assertEquals(LocalDate.of(2025, 3, 1), day2.snapshotDate());
+        assertEquals(3, day2.tools().get(0).stock());
+        assertEquals(1, day2.tools().get(0).inRepair());
+
+        assertEquals(2, stockAt(DAY1.plusDays(2)).get(drill.getId()).stock());
+    }
+
+    @Test
+    void getStockAt_AnswersForAllToolsAndSkipsToolsThatDidNotExistYet() {
+        ToolEntity saw = givenTool("Sierra", 3);
+        snapshotAt(DAY1);
+        ToolEntity hammer = givenTool("Martillo", 2);
+        movement(hammer, MovementType.INCOME, 2, DAY1.plusDays(1));
+
+        Map<Long, ToolStockAtTime> afterSnapshot = stockAt(DAY1.plusHours(1));
+        Map<Long, ToolStockAtTime> later = stockAt(DAY1.plusDays(2));
+
+        assertEquals(1, afterSnapshot.size());
+        assertEquals(3, afterSnapshot.get(saw.getId()).stock());
+        assertEquals(2, later.size());
+        assertEquals(2, later.get(hammer.getId()).stock());
+    }
+
+    @Test
+    void getStockAt_WholeToolDecommissionLeavesZeroButIrreparableReturnDoesNot() {
+        // Sierra: 3 unidades, 1 prestada vuelve irreparable (stock sigue en 2); luego baja completa (stock 0)
+        ToolEntity saw = givenTool("Sierra", 0, 0, ToolStatus.DECOMMISSIONED);
+        movement(saw, MovementType.INCOME, 3, DAY1);
+        movement(saw, MovementType.LOAN, 1, DAY1.plusHours(1));
+        movement(saw, MovementType.DECOMMISSION, 1, DAY1.plusHours(2));
+        movement(saw, MovementType.DECOMMISSION, 2, DAY1.plusHours(3));
+
+        assertEquals(2, stockAt(DAY1.plusHours(2).plusMinutes(30)).get(saw.getId()).stock());
+        assertEquals(0, stockAt(DAY1.plusHours(4)).get(saw.getId()).stock());
+    }
+
+    @Test
+    void takeSnapshot_ReplacesTheSnapshotOfTheSameDay() {
+        ToolEntity drill = givenTool("Taladro", 4);
+        snapshotAt(DAY1);
+        drill.setStock(7);
+        toolRepository.save(drill);
+        snapshotAt(DAY1.plusHours(5));
+
+        assertEquals(1, snapshotRepository.count());
+        assertEquals(7, stockAt(DAY1.plusHours(6)).get(drill.getId()).stock());
+    }
+
+    @Test
+    void getStockAt_AppliesAllMovementsOfAToolMissingFromTheSnapshot() {
+        // Herramienta cuyo INCOME se fechó antes del punto de control pero que se confirmó después
+        snapshotAt(DAY1);
+        ToolEntity grinder = givenTool("Esmeril", 2);
+        movement(grinder, MovementType.INCOME, 2, DAY1.minusMinutes(1));
+
+        assertEquals(2, stockAt(DAY1.plusHours(1)).get(grinder.getId()).stock());
+    }
+
+    @Test
+    void takeSnapshot_WaitsForStockChangesInFlight() throws Exception {
+        // ARRANGE: un préstamo descontó stock y fechó su movimiento, pero aún no confirma cuando arranca el punto de control
+        ToolEntity drill = givenTool("Taladro", 3);
+        movement(drill, MovementType.INCOME, 3, LocalDateTime.now().minusDays(1));
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        CountDownLatch stamped = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // ACT
+            Future<?> loan = executor.submit(() -> transaction.executeWithoutResult(status -> {
+                toolService.decrementStockForLoan(toolRepository.findById(drill.getId()).orElseThrow(), user);
+                stamped.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(stamped.await(10, TimeUnit.SECONDS));
+            Future<Integer> snapshot = executor.submit(() -> transaction.execute(status -> snapshotService.takeSnapshot()));
+            Thread.sleep(300);
+            release.countDown();
+            loan.get(20, TimeUnit.SECONDS);
+            snapshot.get(20, TimeUnit.SECONDS);
+
+            // ASSERT: el préstamo cuenta una sola vez (en la copia, no de nuevo en la reconstrucción)
+            assertEquals(2, stockAt(LocalDateTime.now()).get(drill.getId()).stock());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
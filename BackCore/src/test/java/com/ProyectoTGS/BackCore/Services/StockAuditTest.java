@@ -0,0 +1,123 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.dtos.StockAuditReport;
+import app.dtos.StockDrift;
+import app.entities.ToolEntity;
+import app.entities.UserEntity;
+import app.entities.enums.MovementType;
+import app.entities.enums.ToolStatus;
+import app.repositories.KardexArchiveStore;
+import app.services.StockAuditService;
+import app.services.ToolService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria) de la auditoría de stock de herramientas contra el Kardex
+@BackCoreIntegrationTest
+class StockAuditTest extends IntegrationTestSupport {
+
+    private static final LocalDateTime DAY1 = LocalDateTime.of(2025, 3, 1, 9, 0);
+
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private ToolService toolService;
+    @Autowired private KardexArchiveStore archiveStore;
+
+    private StockAuditService auditService;
+    private UserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        auditService = new StockAuditService(toolRepository, archiveStore, transactionManager, 3);
+        user = givenUser("diego");
+    }
+
+    private void movement(ToolEntity tool, MovementType type, int quantity, LocalDateTime at) {
+        givenMovement(tool, user, type, quantity, at);
+    }
+
+    // Cuatro casos: cuadrada, desalineada (inRepair nunca guardado), dada de baja completa y sin movimientos
+    private ToolEntity[] givenMixedInventory() {
+        ToolEntity drill = givenTool("Taladro", 4, 0, ToolStatus.AVAILABLE);
+        movement(drill, MovementType.INCOME, 5, DAY1);
+        movement(drill, MovementType.LOAN, 1, DAY1.plusHours(1));
+
+        ToolEntity saw = givenTool("Sierra", 2, 0, ToolStatus.AVAILABLE);
+        movement(saw, MovementType.INCOME, 3, DAY1);
+        movement(saw, MovementType.LOAN, 1, DAY1.plusHours(1));
+        movement(saw, MovementType.REPAIR, 1, DAY1.plusHours(2));
+
+        ToolEntity sander = givenTool("Lijadora", 0, 0, ToolStatus.DECOMMISSIONED);
+        movement(sander, MovementType.INCOME, 2, DAY1);
+        movement(sander, MovementType.DECOMMISSION, 2, DAY1.plusHours(3));
+
+        ToolEntity hammer = givenTool("Martillo", 7, 0, ToolStatus.AVAILABLE);
+        return new ToolEntity[] {drill, saw, sander, hammer};
+    }
+
+    @Test
+    void audit_ReportsDriftAndUntrackedToolsAcrossChunks_WithoutTouchingTools() {
+        // ARRANGE
+        ToolEntity saw = givenMixedInventory()[1];
+
+        // ACT: bloques de 1 herramienta para que cada una vaya a un hilo/transacción distinto
+        StockAuditReport report = auditService.audit(1, false);
+
+        // ASSERT
+        assertEquals(4, report.toolsScanned());
+        assertEquals(4, report.chunks());
+        assertEquals(1, report.untrackedTools());
+        assertEquals(1, report.drifted());
+        assertEquals(0, report.repaired());
+        StockDrift drift = report.drifts().get(0);
+        assertEquals(saw.getId(), drift.toolId());
+        assertEquals(2, drift.stock());
+        assertEquals(2, drift.expectedStock());
+        assertEquals(0, drift.inRepair());
+        assertEquals(1, drift.expectedInRepair());
+        assertEquals(0, toolRepository.findById(saw.getId()).orElseThrow().getInRepair());
+    }
+
+    @Test
+    void audit_WithRepair_AlignsToolsWithKardexAndLeavesUntrackedAlone() {
+        // ARRANGE
+        ToolEntity[] tools = givenMixedInventory();
+        ToolEntity drill = tools[0];
+        drill.setStock(9); // Ajuste directo en tools sin movimiento en el Kardex
+        toolRepository.save(drill);
+
+        // ACT
+        StockAuditReport repaired = auditService.audit(2, true);
+        StockAuditReport afterRepair = auditService.audit(2, false);
+
+        // ASSERT
+        assertEquals(2, repaired.drifted());
+        assertEquals(2, repaired.repaired());
+        assertEquals(4, toolRepository.findById(drill.getId()).orElseThrow().getStock());
+        assertEquals(1, toolRepository.findById(tools[1].getId()).orElseThrow().getInRepair());
+        assertEquals(7, toolRepository.findById(tools[3].getId()).orElseThrow().getStock());
+        assertEquals(0, afterRepair.drifted());
+        assertEquals(1, afterRepair.untrackedTools());
+    }
+
+    @Test
+    void markAsRepairing_PersistsInRepair_WhenToolIsDetached() {
+        // ARRANGE: la herramienta llega desde fuera de una transacción (entidad no gestionada)
+        ToolEntity grinder = givenTool("Esmeril", 3, 0, ToolStatus.AVAILABLE);
+        movement(grinder, MovementType.INCOME, 3, DAY1);
+
+        // ACT
+        toolService.markAsRepairing(grinder, user);
+
+        // ASSERT: inRepair quedó en BD y coincide con el REPAIR del Kardex
+        assertEquals(1, toolRepository.findById(grinder.getId()).orElseThrow().getInRepair());
+        assertEquals(1, grinder.getInRepair());
+        assertEquals(0, auditService.audit(100, false).drifted());
+    }
+}
@@ -6,7 +6,10 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import app.dtos.TariffSnapshot;
 import app.entities.TariffEntity;
 import app.repositories.TariffRepository;
 import app.services.TariffService;
@@ -132,4 +135,71 @@ public class TariffServiceTest {
         // ASSERT
         assertEquals(1500, fee); // Valor del setUp
     }
-}
\ No newline at end of file
+
+    // =======================================================================
+    // TARIFAS EN MEMORIA (getFees / refresh / invalidación en updateTariff)
+    // =======================================================================
+
+    @Test
+    void getFees_ReadsDatabaseOnlyOnce() {
+        // ARRANGE
+        when(tariffRepository.findAll()).thenReturn(List.of(currentTariff));
+
+        // ACT: varias devoluciones consultan las tarifas
+        TariffSnapshot first = tariffService.getFees();
+        tariffService.getDailyRentFee();
+        tariffService.getDailyLateFee();
+        tariffService.getRepairFee();
+
+        // ASSERT: las tres tarifas juntas y una sola consulta a la BD
+        assertEquals(new TariffSnapshot(5000, 2000, 1500), first);
+        verify(tariffRepository, times(1)).findAll();
+    }
+
+    @Test
+    void loadSnapshot_WithoutTariffsLoadsOnFirstRead() {
+        // ARRANGE: al iniciar no hay tarifas, luego se cargan (data.sql / administrador)
+        when(tariffRepository.findAll()).thenReturn(Collections.emptyList(), List.of(currentTariff));
+
+        // ACT
+        tariffService.loadSnapshot();
+
+        // ASSERT
+        assertEquals(5000, tariffService.getDailyRentFee());
+    }
+
+    @Test
+    void updateTariff_ReplacesSnapshot() {
+        // ARRANGE
+        when(tariffRepository.findAll()).thenReturn(List.of(currentTariff));
+        when(tariffRepository.save(any(TariffEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        tariffService.getFees();
+
+        // ACT
+        tariffService.updateTariff(TariffEntity.builder().dailyRentFee(6000).dailyLateFee(3000).repairFee(2500).build());
+
+        // ASSERT: la lectura siguiente ve las nuevas tarifas sin volver a la BD
+        assertEquals(new TariffSnapshot(6000, 3000, 2500), tariffService.getFees());
+        verify(tariffRepository, times(2)).findAll(); // carga inicial + la de updateTariff
+    }
+
+    @Test
+    void updateTariff_WithinTransaction_ReplacesSnapshotOnlyAfterCommit() {
+        // ARRANGE
+        when(tariffRepository.findAll()).thenReturn(List.of(currentTariff));
+        when(tariffRepository.save(any(TariffEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        TariffSnapshot before = tariffService.getFees();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // ACT
+            tariffService.updateTariff(TariffEntity.builder().dailyRentFee(6000).dailyLateFee(3000).repairFee(2500).build());
+
+            // ASSERT: antes del commit se siguen viendo las tarifas anteriores
+            assertEquals(before, tariffService.getFees());
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertEquals(6000, tariffService.getDailyRentFee());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
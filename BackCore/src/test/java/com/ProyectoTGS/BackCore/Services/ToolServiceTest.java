@@ -8,6 +8,7 @@ import app.entities.enums.ToolStatus;
 import app.exceptions.InvalidOperationException; 
 import app.exceptions.ResourceNotFoundException;
 import app.repositories.ToolRepository;
+import jakarta.persistence.EntityManager;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -21,6 +22,7 @@ import app.services.ToolService;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -40,6 +42,9 @@ public class ToolServiceTest {
         @Mock
         private KardexService kardexService;
 
+        @Mock
+        private EntityManager entityManager;
+
         @InjectMocks
         private ToolService toolService;
 
@@ -507,12 +512,12 @@ public class ToolServiceTest {
 
         /**
          * Prueba que al devolver una herramienta (incrementar stock):
-         * 1. El stock aumenta en 1.
-         * 2. El estado cambia de LOANED a AVAILABLE.
+         * 1. El incremento se hace con un UPDATE atómico (no con save de la entidad leída).
+         * 2. La entidad gestionada se recarga desde la BD (stock/estado actualizados por el UPDATE).
          * 3. Se registra el Kardex como RETURN.
          */
         @Test
-        void incrementStockForReturn_Success_WhenStatusWasLoaned() {
+        void incrementStockForReturn_Success_UsesAtomicUpdate() {
                 // ARRANGE (Preparar)
                 Long toolId = 8L;
 
@@ -525,27 +530,21 @@ public class ToolServiceTest {
                         .replacementValue(10000)
                         .inRepair(0)
                         .build();
-                
-                // (No necesitamos mockear findById porque la herramienta se pasa como parámetro)
-                
-                // 2. Mockear el repositorio:
-                // "Cuando se guarde, devolver la entidad que se le pasó"
-                when(toolRepository.save(any(ToolEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
-                // "Mockear el método void de Kardex"
+
+                // 2. Mockear el repositorio: el UPDATE afecta 1 fila
+                when(toolRepository.incrementStock(toolId)).thenReturn(1);
+                when(entityManager.contains(loanedTool)).thenReturn(true);
                 doNothing().when(kardexService).registerMovement(any(ToolEntity.class), any(MovementType.class), anyInt(), any(UserEntity.class));
 
                 // ACT (Actuar)
-                // Llamamos al método directamente
                 toolService.incrementStockForReturn(loanedTool, testUser);
 
                 // ASSERT (Verificar)
-                // 1. Verificar los campos de la entidad (que se modificó directamente)
-                assertEquals(1, loanedTool.getStock()); // Stock debe ser 1
-                assertEquals(ToolStatus.AVAILABLE, loanedTool.getStatus()); // Estado debe ser AVAILABLE
-
-                // 2. Verificar que se llamó a save
-                verify(toolRepository, times(1)).save(loanedTool); // Se guarda la entidad modificada
-
+                // 1. El cambio lo hace la BD, no se guarda la entidad leída antes
+                verify(toolRepository, times(1)).incrementStock(toolId);
+                verify(toolRepository, never()).save(any(ToolEntity.class));
+                // 2. Se recarga la entidad para que el dirty checking no sobrescriba el UPDATE
+                verify(entityManager, times(1)).refresh(loanedTool);
                 // 3. Verificar que se llamó al Kardex
                 verify(kardexService, times(1)).registerMovement(
                         eq(loanedTool),                // La entidad
@@ -556,36 +555,19 @@ public class ToolServiceTest {
         }
 
         /**
-         * Prueba que al devolver una herramienta (incrementar stock):
-         * 1. El stock aumenta en 1.
-         * 2. El estado NO cambia si ya era AVAILABLE (porque había más unidades).
-         * 3. Se registra el Kardex como RETURN.
+         * Prueba que si la herramienta ya no existe el UPDATE no afecta filas:
+         * 1. Se lanza ResourceNotFoundException.
+         * 2. No se registra Kardex.
          */
         @Test
-        void incrementStockForReturn_Success_WhenStatusWasAvailable() {
+        void incrementStockForReturn_Fails_WhenToolDoesNotExist() {
                 // ARRANGE
-                ToolEntity availableTool = ToolEntity.builder()
-                        .id(9L)
-                        .name("Herramienta Común")
-                        .status(ToolStatus.AVAILABLE) // Ya estaba AVAILABLE
-                        .stock(5)                     // Tenía stock
-                        .replacementValue(10000)
-                        .inRepair(0)
-                        .build();
-
-                when(toolRepository.save(any(ToolEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
-                doNothing().when(kardexService).registerMovement(any(ToolEntity.class), any(MovementType.class), anyInt(), any(UserEntity.class));
-
-                // ACT
-                toolService.incrementStockForReturn(availableTool, testUser);
+                ToolEntity missingTool = ToolEntity.builder().id(9L).status(ToolStatus.LOANED).stock(0).build();
+                when(toolRepository.incrementStock(9L)).thenReturn(0);
 
-                // ASSERT
-                assertEquals(6, availableTool.getStock()); // Stock aumentó
-                assertEquals(ToolStatus.AVAILABLE, availableTool.getStatus()); // Estado NO cambió
-                verify(toolRepository, times(1)).save(availableTool);
-                verify(kardexService, times(1)).registerMovement(
-                        eq(availableTool), eq(MovementType.RETURN), eq(1), eq(testUser)
-                );
+                // ACT & ASSERT
+                assertThrows(ResourceNotFoundException.class, () -> toolService.incrementStockForReturn(missingTool, testUser));
+                verify(kardexService, never()).registerMovement(any(), any(), anyInt(), any());
         }
 
         // =======================================================================
@@ -595,12 +577,12 @@ public class ToolServiceTest {
 
         /**
          * Prueba que al prestar una herramienta (decrementar stock):
-         * 1. El stock disminuye en 1.
-         * 2. El estado NO cambia si el stock sigue siendo positivo.
+         * 1. El decremento y el chequeo de disponibilidad se hacen en un UPDATE condicional.
+         * 2. La entidad gestionada se recarga desde la BD.
          * 3. Se registra el Kardex como LOAN.
          */
         @Test
-        void decrementStockForLoan_Success_WhenStockRemainsPositive() {
+        void decrementStockForLoan_Success_WhenUpdateAffectsRow() {
                 // ARRANGE
                 ToolEntity toolWithStock = ToolEntity.builder()
                         .id(10L)
@@ -611,52 +593,156 @@ public class ToolServiceTest {
                         .inRepair(0)
                         .build();
 
-                when(toolRepository.save(any(ToolEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+                when(toolRepository.decrementStockIfAvailable(10L)).thenReturn(1);
+                when(entityManager.contains(toolWithStock)).thenReturn(true);
                 doNothing().when(kardexService).registerMovement(any(ToolEntity.class), any(MovementType.class), anyInt(), any(UserEntity.class));
 
                 // ACT
                 toolService.decrementStockForLoan(toolWithStock, testUser);
 
                 // ASSERT
-                assertEquals(4, toolWithStock.getStock()); // Stock disminuyó
-                assertEquals(ToolStatus.AVAILABLE, toolWithStock.getStatus()); // Estado NO cambió
-                verify(toolRepository, times(1)).save(toolWithStock);
+                verify(toolRepository, times(1)).decrementStockIfAvailable(10L);
+                verify(toolRepository, never()).save(any(ToolEntity.class));
+                verify(entityManager, times(1)).refresh(toolWithStock);
                 verify(kardexService, times(1)).registerMovement(
                         eq(toolWithStock), eq(MovementType.LOAN), eq(1), eq(testUser)
                 );
         }
 
         /**
-         * Prueba que al prestar la ÚLTIMA unidad de una herramienta:
-         * 1. El stock disminuye a 0.
-         * 2. El estado cambia de AVAILABLE a LOANED.
-         * 3. Se registra el Kardex como LOAN.
+         * Prueba que si otro préstamo se llevó la última unidad (el UPDATE no afecta filas):
+         * 1. Se lanza InvalidOperationException.
+         * 2. No se registra Kardex ni se recarga la entidad.
          */
         @Test
-        void decrementStockForLoan_Success_WhenStockReachesZero() {
-                // ARRANGE
-                ToolEntity lastUnitTool = ToolEntity.builder()
+        void decrementStockForLoan_Fails_WhenNoStockLeftInDatabase() {
+                // ARRANGE: la entidad en memoria aún dice stock 1, pero en BD ya es 0
+                ToolEntity staleTool = ToolEntity.builder()
                         .id(11L)
                         .name("Última Unidad")
                         .status(ToolStatus.AVAILABLE)
-                        .stock(1) // <-- Última unidad
+                        .stock(1)
                         .replacementValue(10000)
                         .inRepair(0)
                         .build();
 
-                when(toolRepository.save(any(ToolEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
-                doNothing().when(kardexService).registerMovement(any(ToolEntity.class), any(MovementType.class), anyInt(), any(UserEntity.class));
+                when(toolRepository.decrementStockIfAvailable(11L)).thenReturn(0);
+
+                // ACT & ASSERT
+                assertThrows(InvalidOperationException.class, () -> toolService.decrementStockForLoan(staleTool, testUser));
+                verify(entityManager, never()).refresh(any());
+                verify(kardexService, never()).registerMovement(any(), any(), anyInt(), any());
+        }
+
+        /**
+         * Prueba que en un préstamo múltiple:
+         * 1. Se usa un solo UPDATE condicional para todas las herramientas.
+         * 2. Los movimientos LOAN se registran en un solo batch.
+         */
+        @Test
+        void decrementStockForLoans_Success_WhenAllRowsAreUpdated() {
+                // ARRANGE
+                ToolEntity first = ToolEntity.builder().id(20L).status(ToolStatus.AVAILABLE).stock(2).build();
+                ToolEntity second = ToolEntity.builder().id(21L).status(ToolStatus.AVAILABLE).stock(1).build();
+                List<ToolEntity> tools = List.of(first, second);
+                when(toolRepository.decrementStockIfAvailableForIds(List.of(20L, 21L))).thenReturn(2);
 
                 // ACT
-                toolService.decrementStockForLoan(lastUnitTool, testUser);
+                toolService.decrementStockForLoans(tools, testUser);
 
                 // ASSERT
-                assertEquals(0, lastUnitTool.getStock()); // Stock es CERO
-                assertEquals(ToolStatus.LOANED, lastUnitTool.getStatus()); // Estado cambió a LOANED
-                verify(toolRepository, times(1)).save(lastUnitTool);
-                verify(kardexService, times(1)).registerMovement(
-                        eq(lastUnitTool), eq(MovementType.LOAN), eq(1), eq(testUser)
-                );
+                verify(toolRepository, times(1)).decrementStockIfAvailableForIds(List.of(20L, 21L));
+                verify(kardexService, times(1)).registerMovements(tools, MovementType.LOAN, 1, testUser);
+                verify(kardexService, never()).registerMovement(any(), any(), anyInt(), any());
+        }
+
+        /**
+         * Prueba que si alguna herramienta del lote no tenía stock (menos filas afectadas que IDs):
+         * 1. Se lanza InvalidOperationException (la transacción completa se revierte).
+         * 2. No se registra Kardex.
+         */
+        @Test
+        void decrementStockForLoans_Fails_WhenSomeToolIsOutOfStock() {
+                // ARRANGE
+                List<ToolEntity> tools = List.of(
+                        ToolEntity.builder().id(20L).status(ToolStatus.AVAILABLE).stock(2).build(),
+                        ToolEntity.builder().id(21L).status(ToolStatus.AVAILABLE).stock(1).build());
+                when(toolRepository.decrementStockIfAvailableForIds(List.of(20L, 21L))).thenReturn(1);
+
+                // ACT & ASSERT
+                assertThrows(InvalidOperationException.class, () -> toolService.decrementStockForLoans(tools, testUser));
+                verify(kardexService, never()).registerMovements(any(), any(), anyInt(), any());
+        }
+
+        // =======================================================================
+        // MÉTODOS: incrementStockForReturns / markAllAsRepairing
+        // Devoluciones múltiples (buzón)
+        // =======================================================================
+
+        /**
+         * Prueba que en una devolución múltiple en buen estado:
+         * 1. Las unidades se agrupan por herramienta (una herramienta repetida suma 2) y se hace flush antes del UPDATE.
+         * 2. Cada herramienta distinta se refresca una sola vez.
+         * 3. Los movimientos RETURN se registran en un solo batch (uno por préstamo).
+         */
+        @Test
+        void incrementStockForReturns_GroupsUnitsByTool() {
+                // ARRANGE
+                ToolEntity first = ToolEntity.builder().id(20L).status(ToolStatus.LOANED).stock(0).build();
+                ToolEntity second = ToolEntity.builder().id(21L).status(ToolStatus.AVAILABLE).stock(3).build();
+                List<ToolEntity> tools = List.of(first, second, first);
+                when(entityManager.contains(any())).thenReturn(true);
+
+                // ACT
+                toolService.incrementStockForReturns(tools, testUser);
+
+                // ASSERT
+                var order = inOrder(entityManager, toolRepository);
+                order.verify(entityManager).flush();
+                order.verify(toolRepository).incrementStockBatched(Map.of(20L, 2, 21L, 1));
+                verify(entityManager, times(1)).refresh(first);
+                verify(entityManager, times(1)).refresh(second);
+                verify(kardexService, times(1)).registerMovements(tools, MovementType.RETURN, 1, testUser);
+        }
+
+        @Test
+        void incrementStockForReturns_DoesNothingWithEmptyList() {
+                toolService.incrementStockForReturns(List.of(), testUser);
+
+                verifyNoInteractions(toolRepository, kardexService, entityManager);
+        }
+
+        /**
+         * Prueba que markAllAsRepairing suma una unidad en reparación por préstamo y registra REPAIR en batch,
+         * y que rechaza el lote completo si alguna herramienta está dada de baja.
+         */
+        @Test
+        void markAllAsRepairing_IncrementsInRepairPerLoan() {
+                // ARRANGE
+                ToolEntity tool = ToolEntity.builder().id(20L).status(ToolStatus.AVAILABLE).stock(2).inRepair(1).build();
+                List<ToolEntity> tools = List.of(tool, tool);
+
+                // ACT
+                toolService.markAllAsRepairing(tools, testUser);
+
+                // ASSERT
+                assertEquals(3, tool.getInRepair());
+                assertEquals(2, tool.getStock());
+                verify(toolRepository, times(1)).incrementInRepairBatched(Map.of(20L, 2));
+                verify(kardexService, times(1)).registerMovements(tools, MovementType.REPAIR, 1, testUser);
+        }
+
+        @Test
+        void markAllAsRepairing_Fails_WhenSomeToolIsDecommissioned() {
+                // ARRANGE
+                ToolEntity ok = ToolEntity.builder().id(20L).status(ToolStatus.AVAILABLE).inRepair(0).build();
+                ToolEntity decommissioned = ToolEntity.builder().id(21L).status(ToolStatus.DECOMMISSIONED).inRepair(0).build();
+
+                // ACT & ASSERT
+                assertThrows(InvalidOperationException.class,
+                        () -> toolService.markAllAsRepairing(List.of(ok, decommissioned), testUser));
+                assertEquals(0, ok.getInRepair());
+                verify(kardexService, never()).registerMovements(any(), any(), anyInt(), any());
         }
 
         // =======================================================================
@@ -694,8 +780,9 @@ public class ToolServiceTest {
                 // El estado tampoco cambia en esta lógica (se maneja en LoanService si es necesario)
                 assertEquals(ToolStatus.AVAILABLE, toolToRepair.getStatus()); 
 
-                // Verificar que NO se llamó a save (según el código actual)
+                // No se usa save(): inRepair se incrementa con un UPDATE atómico
                 verify(toolRepository, never()).save(any(ToolEntity.class));
+                verify(toolRepository, times(1)).incrementInRepair(12L);
                 
                 // Verificar que se llamó al Kardex
                 verify(kardexService, times(1)).registerMovement(
@@ -0,0 +1,84 @@
+package com.ProyectoTGS.BackCore.Services;
+
+import app.entities.ToolEntity;
+import app.entities.UserEntity;
+import app.entities.enums.ClientStatus;
+import app.entities.enums.LoanStatus;
+import app.entities.enums.MovementType;
+import app.entities.enums.ToolStatus;
+import app.exceptions.InvalidOperationException;
+import app.services.LoanService;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de integración (H2 en memoria): muchos préstamos simultáneos sobre la misma herramienta.
+@BackCoreIntegrationTest
+class ToolStockConcurrencyTest extends IntegrationTestSupport {
+
+    private static final int THREADS = 64;
+    private static final int STOCK = 7;
+
+    @Autowired private LoanService loanService;
+
+    @Test
+    void createLoan_ConcurrentRequests_LendExactlyTheAvailableStock() throws Exception {
+        // ARRANGE: una herramienta con stock N y 64 clientes distintos (sin límite de 5 ni herramienta repetida)
+        UserEntity user = givenUser("counter_user");
+        ToolEntity tool = givenTool("Taladro", STOCK);
+        List<Long> clientIds = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            clientIds.add(givenClient("rut-" + i, ClientStatus.ACTIVE).getId());
+        }
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // ACT: todos los hilos arrancan a la vez
+        for (Long clientId : clientIds) {
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    loanService.createLoan(clientId, tool.getId(), LocalDate.now(), LocalDate.now().plusDays(7), user);
+                    succeeded.incrementAndGet();
+                } catch (InvalidOperationException e) {
+                    rejected.incrementAndGet(); // "Tool is not available or out of stock."
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS), "Los préstamos concurrentes no terminaron a tiempo.");
+
+        // ASSERT: exactamente N préstamos, el resto rechazados, sin stock negativo
+        assertTrue(unexpected.isEmpty(), () -> "Errores inesperados: " + unexpected);
+        assertEquals(STOCK, succeeded.get());
+        assertEquals(THREADS - STOCK, rejected.get());
+
+        ToolEntity after = toolRepository.findById(tool.getId()).orElseThrow();
+        assertEquals(0, after.getStock());
+        assertEquals(ToolStatus.LOANED, after.getStatus());
+        assertEquals(STOCK, loanRepository.findByStatus(LoanStatus.ACTIVE).size());
+        assertEquals(STOCK, kardexRepository.findByTool_IdAndType(tool.getId(), MovementType.LOAN).size());
+        // Totales diarios confirmados junto con cada préstamo (sin claves duplicadas entre hilos)
+        assertEquals(STOCK, rollupRepository.findRollup(LocalDate.now(), LocalDate.now(), tool.getId(), MovementType.LOAN)
+                .get(0).getMovementCount());
+    }
+}
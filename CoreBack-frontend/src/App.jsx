@@ -17,6 +17,7 @@ import EditTool from "./components/EditTool";
 import AddClient from "./components/AddClient"; 
 import EditClient from "./components/EditClient";
 import KardexViewer from "./components/KardexViewer";
+import DashboardSummary from "./components/DashboardSummary";
 
 // Material UI
 import { Container, CssBaseline, Box, Typography, Paper, CircularProgress, Button } from '@mui/material';
@@ -107,6 +108,7 @@ export default function App() {
                     Utiliza la barra de navegación superior para gestionar el inventario, clientes y préstamos.
                   </Typography>
                 </Paper>
+                <DashboardSummary />
               </Box>
             } />
 
@@ -1,4 +1,4 @@
-import React, { useState, useEffect } from "react";
+import React, { useState, useEffect, useRef } from "react";
 import LoanService from "../services/loan.service";
 import ClientService from "../services/client.service";
 import ToolService from "../services/tool.service";
@@ -15,13 +15,15 @@ import CalendarMonthIcon from '@mui/icons-material/CalendarMonth';
 import EventBusyIcon from '@mui/icons-material/EventBusy';
 
 function AddLoan() {
-  const [loan, setLoan] = useState({ clientId: "", toolId: "", startDate: "", dueDate: "" });
+  const [loan, setLoan] = useState({ clientId: "", toolIds: [], startDate: "", dueDate: "" });
   const [clients, setClients] = useState([]);
   const [tools, setTools] = useState([]);
   const [loading, setLoading] = useState(false);
   const [dataLoaded, setDataLoaded] = useState(false);
   const [notificacion, setNotificacion] = useState({ open: false, text: '', severity: 'info' });
   const navigate = useNavigate();
+  // Misma clave para los reintentos de este préstamo; se renueva solo cuando se confirma
+  const idempotencyKey = useRef(crypto.randomUUID());
 
   useEffect(() => {
     Promise.all([ClientService.getAll(), ToolService.getAll()])
@@ -37,7 +39,7 @@ function AddLoan() {
 
   // CORRECCIÓN SONAR: Uso de Number.parseInt en lugar de parseInt global
   const clientExists = (id) => !id || clients.some(c => c.id === Number.parseInt(id));
-  const toolExists = (id) => !id || tools.some(t => t.id === Number.parseInt(id));
+  const toolsExist = (ids) => ids.every(id => tools.some(t => t.id === Number.parseInt(id)));
 
   // Lógica de ayuda para textos y estados (Evita ternarios anidados en el JSX)
   const getClientHelperText = () => {
@@ -46,26 +48,34 @@ function AddLoan() {
   };
 
   const getToolHelperText = () => {
-    if (!toolExists(loan.toolId)) return "Herramienta no existe en DB";
-    return loan.toolId === "" ? "Ingrese valor" : "Herramienta disponible";
+    if (!toolsExist(loan.toolIds)) return "Herramienta no existe en DB";
+    return loan.toolIds.length === 0 ? "Ingrese valor" : `${loan.toolIds.length} herramienta(s) seleccionada(s)`;
   };
 
   const getStatusColor = (exists, value) => {
-    return exists && value !== "" ? "success" : "error";
+    return exists && value !== "" && value.length !== 0 ? "success" : "error";
   };
 
-  const isFormInvalid = !loan.clientId || !loan.toolId || !loan.startDate || !loan.dueDate || 
-                        !clientExists(loan.clientId) || !toolExists(loan.toolId);
+  const isFormInvalid = !loan.clientId || loan.toolIds.length === 0 || !loan.startDate || !loan.dueDate || 
+                        !clientExists(loan.clientId) || !toolsExist(loan.toolIds);
 
   const handleSubmit = (e) => {
     e.preventDefault();
     setLoading(true);
-    LoanService.create(loan)
+    // Un solo request para todas las herramientas (todo o nada en el backend)
+    const batch = {
+      clientId: loan.clientId,
+      startDate: loan.startDate,
+      lines: loan.toolIds.map(toolId => ({ toolId, dueDate: loan.dueDate }))
+    };
+    LoanService.createBatch(batch, idempotencyKey.current)
       .then(() => {
+        idempotencyKey.current = crypto.randomUUID();
         showMsg("¡Préstamo registrado exitosamente!", "success");
         setTimeout(() => navigate("/loans"), 2000);
       })
       .catch((error) => {
+        if (LoanService.canRenewKey(error)) idempotencyKey.current = crypto.randomUUID();
         showMsg(error.response?.data?.message || "Error al crear préstamo", "error");
         setLoading(false);
       });
@@ -116,27 +126,28 @@ function AddLoan() {
               />
             </Grid>
 
-            {/* HERRAMIENTA */}
+            {/* HERRAMIENTAS (una o varias) */}
             <Grid item xs={12}>
               <Autocomplete
+                multiple
                 options={tools.filter(t => t.status === 'AVAILABLE')}
                 getOptionLabel={(option) => `ID: ${option.id} - ${option.name} (${option.category})`}
-                onChange={(_event, newValue) => setLoan({ ...loan, toolId: newValue ? newValue.id : "" })}
+                onChange={(_event, newValue) => setLoan({ ...loan, toolIds: newValue.map(t => t.id) })}
                 renderInput={(params) => (
                   <TextField
                     {...params}
                     fullWidth
-                    label="Seleccionar Herramienta"
+                    label="Seleccionar Herramientas"
                     required
-                    error={!toolExists(loan.toolId) || loan.toolId === ""}
+                    error={!toolsExist(loan.toolIds) || loan.toolIds.length === 0}
                     helperText={getToolHelperText()}
-                    color={getStatusColor(toolExists(loan.toolId), loan.toolId)}
+                    color={getStatusColor(toolsExist(loan.toolIds), loan.toolIds)}
                     InputProps={{
                       ...params.InputProps,
                       startAdornment: (
                         <>
                           <InputAdornment position="start">
-                            <ConstructionIcon color={getStatusColor(toolExists(loan.toolId), loan.toolId)} />
+                            <ConstructionIcon color={getStatusColor(toolsExist(loan.toolIds), loan.toolIds)} />
                           </InputAdornment>
                           {params.InputProps.startAdornment}
                         </>
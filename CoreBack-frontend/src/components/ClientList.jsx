@@ -1,4 +1,4 @@
-import React, { useEffect, useState } from "react";
+import React, { useEffect, useRef, useState } from "react";
 import PropTypes from 'prop-types'; 
 import ClientService from "../services/client.service";
 import LoanService from "../services/loan.service";
@@ -24,6 +24,8 @@ function DebtDetails({ clientId, messageSetter }) {
   const [loading, setLoading] = useState(true);
   const [errorMessage, setErrorMessage] = useState("");
   const [confirmPay, setConfirmPay] = useState({ open: false, loanId: null });
+  // Una clave por préstamo a pagar, reutilizada en los reintentos hasta que el pago se confirme
+  const payKeys = useRef({});
 
   const loadDebts = () => {
     setLoading(true);
@@ -40,13 +42,19 @@ function DebtDetails({ clientId, messageSetter }) {
 
   const handlePay = () => {
     messageSetter(`Procesando pago...`);
-    LoanService.markAsPaid(confirmPay.loanId)
+    const loanId = confirmPay.loanId;
+    payKeys.current[loanId] ??= crypto.randomUUID();
+    LoanService.markAsPaid(loanId, payKeys.current[loanId])
       .then(() => {
+        delete payKeys.current[loanId];
         messageSetter(`Pago registrado con éxito.`);
         setConfirmPay({ open: false, loanId: null });
         loadDebts();
       })
-      .catch(e => messageSetter(`Error al pagar: ${e.response?.data?.message || e.message}`));
+      .catch(e => {
+        if (LoanService.canRenewKey(e)) delete payKeys.current[loanId];
+        messageSetter(`Error al pagar: ${e.response?.data?.message || e.message}`);
+      });
   };
 
   if (loading) return <Box sx={{ p: 2, textAlign: 'center' }}><CircularProgress size={24} /></Box>;
@@ -0,0 +1,59 @@
+import React, { useEffect, useState } from "react";
+import DashboardService from "../services/dashboard.service";
+import { useKeycloak } from "@react-keycloak/web";
+import { Grid, Paper, Typography, Alert } from '@mui/material';
+
+const TOOL_STATUS_LABELS = {
+  AVAILABLE: "Disponibles",
+  LOANED: "Prestadas",
+  REPAIRING: "En reparación",
+  DECOMMISSIONED: "Dadas de baja",
+};
+
+// Indicadores del inicio (GET /dashboard/summary); solo para ADMIN/USER
+function DashboardSummary() {
+  const [summary, setSummary] = useState(null);
+  const [error, setError] = useState("");
+
+  const { keycloak } = useKeycloak();
+  const isAdminOrUser = keycloak?.authenticated && (keycloak.hasRealmRole("ADMIN") || keycloak.hasRealmRole("USER"));
+
+  useEffect(() => {
+    if (!isAdminOrUser) return;
+    DashboardService.getSummary()
+      .then(response => setSummary(response.data))
+      .catch(e => setError(`Error al cargar indicadores: ${e.message || 'Error desconocido'}`));
+  }, [isAdminOrUser]);
+
+  if (!isAdminOrUser) return null;
+  if (error) return <Alert severity="warning">{error}</Alert>;
+  if (!summary) return null;
+
+  const cards = [
+    { label: "Préstamos Activos", value: summary.activeLoans },
+    { label: "Préstamos Atrasados", value: summary.lateLoans },
+    { label: "Recibidos sin Pagar", value: summary.receivedUnpaidLoans },
+    { label: "Préstamos Cerrados", value: summary.closedLoans },
+    { label: "Clientes Restringidos", value: summary.restrictedClients },
+    ...Object.entries(summary.toolsByStatus).map(([status, count]) => (
+      { label: `Herramientas ${TOOL_STATUS_LABELS[status] || status}`, value: count }
+    )),
+    { label: "Unidades en Reparación", value: summary.unitsInRepair },
+    { label: "Ingresos de Hoy", value: `$${summary.incomeToday.toLocaleString("es-CL")}` },
+  ];
+
+  return (
+    <Grid container spacing={2} sx={{ mt: 2 }}>
+      {cards.map(card => (
+        <Grid item xs={6} md={3} key={card.label}>
+          <Paper elevation={2} sx={{ p: 2, textAlign: 'center', borderRadius: 2 }}>
+            <Typography variant="h4" sx={{ fontWeight: 'bold', color: '#1976d2' }}>{card.value}</Typography>
+            <Typography variant="body2" color="textSecondary">{card.label}</Typography>
+          </Paper>
+        </Grid>
+      ))}
+    </Grid>
+  );
+}
+
+export default DashboardSummary;
@@ -76,7 +76,7 @@ function KardexViewer() {
 
   // 3. ORDENAMIENTO DE LA TABLA DE RESULTADOS (Opcional pero recomendado)
   const sortedKardex = useMemo(() => {
-    return [...kardexData].sort((a, b) => (a.tool?.id || 0) - (b.tool?.id || 0));
+    return [...kardexData].sort((a, b) => (a.toolId || 0) - (b.toolId || 0));
   }, [kardexData]);
 
   const getMovementChip = (type) => {
@@ -193,12 +193,12 @@ function KardexViewer() {
                 <TableRow key={mov.id} hover>
                   <TableCell>{formatDateTime(mov.movementDate)}</TableCell>
                   <TableCell>
-                    <Typography variant="body2" sx={{ fontWeight: 'bold' }}>{mov.tool?.name}</Typography>
-                    <Typography variant="caption" color="textSecondary">ID Herramienta: {mov.tool?.id}</Typography>
+                    <Typography variant="body2" sx={{ fontWeight: 'bold' }}>{mov.toolName}</Typography>
+                    <Typography variant="caption" color="textSecondary">ID Herramienta: {mov.toolId}</Typography>
                   </TableCell>
                   <TableCell align="center">{getMovementChip(mov.type)}</TableCell>
                   <TableCell align="center" sx={{ fontWeight: 'bold' }}>{mov.quantity}</TableCell>
-                  <TableCell align="center">{mov.user?.username || 'Sistema Automático'}</TableCell>
+                  <TableCell align="center">{mov.username || 'Sistema Automático'}</TableCell>
                 </TableRow>
               ))}
             </TableBody>
@@ -9,6 +9,7 @@ import {
 import AssessmentIcon from '@mui/icons-material/Assessment';
 import TodayIcon from '@mui/icons-material/Today';
 import SearchIcon from '@mui/icons-material/Search'; // Nuevo icono para el filtro
+import DownloadIcon from '@mui/icons-material/Download';
 
 function ReportViewer() {
   const [reportType, setReportType] = useState("LATE_CLIENTS");
@@ -29,9 +30,9 @@ function ReportViewer() {
     // Si el reporte es de PRÉSTAMOS
     if (reportType.includes("LOANS")) {
       return (
-        item.client?.name?.toLowerCase().includes(term) ||
-        item.client?.rut?.toLowerCase().includes(term) ||
-        item.tool?.name?.toLowerCase().includes(term)
+        item.clientName?.toLowerCase().includes(term) ||
+        item.clientRut?.toLowerCase().includes(term) ||
+        item.toolName?.toLowerCase().includes(term)
       );
     }
     // Si el reporte es de CLIENTES
@@ -43,7 +44,7 @@ function ReportViewer() {
     }
     // Si es RANKING
     if (reportType === "TOP_TOOLS") {
-      return item[0]?.name?.toLowerCase().includes(term);
+      return item.name?.toLowerCase().includes(term);
     }
     return true;
   });
@@ -89,8 +90,10 @@ function ReportViewer() {
 
     promise
       .then(response => {
-        setReportData(response.data);
-        if (response.data.length === 0) setMessage("No se encontraron resultados para los criterios seleccionados.");
+        // Clientes atrasados llega paginado ({ items, nextAfterId }); se muestra la primera página
+        const data = type === "LATE_CLIENTS" ? response.data.items : response.data;
+        setReportData(data);
+        if (data.length === 0) setMessage("No se encontraron resultados para los criterios seleccionados.");
       })
       .catch(e => {
         const errorMsg = e.response?.data?.message || e.message || 'Error desconocido';
@@ -108,6 +111,28 @@ function ReportViewer() {
     loadReport(type, useDateFilter);
   };
 
+  // Descarga el reporte completo como CSV (no solo la página/filtro en pantalla); no aplica al ranking
+  const handleExportCsv = () => {
+    const fromDate = useDateFilter && dateRange.from ? dateRange.from : null;
+    const toDate = useDateFilter && dateRange.to ? dateRange.to : null;
+    const isLoans = reportType.includes("LOANS");
+    const status = reportType.replace('_LOANS', '');
+    const promise = isLoans
+      ? ReportService.exportLoansCsv(status, fromDate, toDate)
+      : ReportService.exportLateClientsCsv(fromDate, toDate);
+
+    promise
+      .then(response => {
+        const url = URL.createObjectURL(response.data);
+        const link = document.createElement("a");
+        link.href = url;
+        link.download = isLoans ? `prestamos-${status.toLowerCase()}.csv` : "clientes-atrasados.csv";
+        link.click();
+        URL.revokeObjectURL(url);
+      })
+      .catch(e => setMessage(`Error al exportar CSV: ${e.message || 'Error desconocido'}`));
+  };
+
   const renderTableHeader = () => {
     if (reportType.includes("LOANS")) {
       return (
@@ -122,6 +147,7 @@ function ReportViewer() {
         <>
           <TableCell>ID</TableCell><TableCell>RUT</TableCell><TableCell>Nombre</TableCell>
           <TableCell>Email</TableCell><TableCell>Estado</TableCell>
+          <TableCell>Préstamos Atrasados</TableCell><TableCell>Vencimiento más Antiguo</TableCell>
         </>
       );
     }
@@ -137,8 +163,8 @@ function ReportViewer() {
       return (
         <>
           <TableCell>{item.id}</TableCell>
-          <TableCell>{item.client?.name} ({item.client?.rut})</TableCell>
-          <TableCell>{item.tool?.name}</TableCell>
+          <TableCell>{item.clientName} ({item.clientRut})</TableCell>
+          <TableCell>{item.toolName}</TableCell>
           <TableCell>{item.startDate}</TableCell><TableCell>{item.dueDate}</TableCell>
           <TableCell>{item.status}</TableCell>
         </>
@@ -150,13 +176,14 @@ function ReportViewer() {
           <TableCell>{item.id}</TableCell><TableCell>{item.rut}</TableCell>
           <TableCell>{item.name}</TableCell><TableCell>{item.email}</TableCell>
           <TableCell>{item.status}</TableCell>
+          <TableCell>{item.lateLoans}</TableCell><TableCell>{item.oldestDueDate}</TableCell>
         </>
       );
     }
     return (
       <>
         <TableCell sx={{ fontWeight: 'bold' }}>#{index + 1}</TableCell>
-        <TableCell>{item[0]?.name}</TableCell><TableCell>{item[1]}</TableCell>
+        <TableCell>{item.name}</TableCell><TableCell>{item.loans}</TableCell>
       </>
     );
   };
@@ -261,6 +288,11 @@ function ReportViewer() {
       <Typography variant="h5" sx={{ mb: 2, fontWeight: 'medium' }}>
         Resultados: {reportType.replace(/_/g, ' ')}
         {useDateFilter && dateRange.from && ` [${dateRange.from} a ${dateRange.to}]`}
+        {reportType !== "TOP_TOOLS" && (
+          <Button size="small" sx={{ ml: 2 }} startIcon={<DownloadIcon />} onClick={handleExportCsv} disabled={loading}>
+            Exportar CSV
+          </Button>
+        )}
       </Typography>
 
       {renderTable()}
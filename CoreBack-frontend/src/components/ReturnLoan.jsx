@@ -1,4 +1,4 @@
-import React, { useEffect, useState } from "react";
+import React, { useEffect, useRef, useState } from "react";
 import { useParams, useNavigate } from "react-router-dom";
 import LoanService from "../services/loan.service";
 import { 
@@ -23,6 +23,8 @@ function ReturnLoan() {
   const [loading, setLoading] = useState(true);
   const [submitting, setSubmitting] = useState(false);
   const [notificacion, setNotificacion] = useState({ open: false, text: '', severity: 'info' });
+  // Misma clave para los reintentos de esta devolución; se renueva solo cuando se confirma
+  const idempotencyKey = useRef(crypto.randomUUID());
 
   useEffect(() => {
     LoanService.get(id)
@@ -80,12 +82,14 @@ function ReturnLoan() {
         returnDate: returnForm.returnDate,
     };
     
-    LoanService.returnLoan(id, payload)
+    LoanService.returnLoan(id, payload, idempotencyKey.current)
       .then(() => {
+        idempotencyKey.current = crypto.randomUUID();
         showMsg("¡Devolución registrada exitosamente!", "success");
         setTimeout(() => navigate("/loans"), 2000);
       })
       .catch((e) => {
+        if (LoanService.canRenewKey(e)) idempotencyKey.current = crypto.randomUUID();
         const errorMsg = e.response?.data?.message || 'Error en el servidor.';
         showMsg(`Error: ${errorMsg}`, "error");
         setSubmitting(false);
@@ -0,0 +1,10 @@
+import http from "../http-common";
+
+class DashboardService {
+  // Todos los indicadores del inicio en una llamada (el backend los comparte unos segundos entre usuarios)
+  getSummary() {
+    return http.get("/dashboard/summary");
+  }
+}
+
+export default new DashboardService();
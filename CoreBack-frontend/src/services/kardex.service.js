@@ -22,6 +22,23 @@ class KardexService {
     const endDateTime = `${endDate}T23:59:59`;
     return http.get(`/kardex/date?start=${startDateTime}&end=${endDateTime}`);
   }
+
+  // Historial paginado (keyset): primera página sin cursor, las siguientes con el nextCursor de la respuesta
+  getPageByToolId(toolId, cursor = null, size = 100) {
+    if (Number.isNaN(Number.parseInt(toolId, 10))) {
+        return Promise.reject(new Error("Invalid Tool ID. Please enter a number."));
+    }
+    return http.get(`/kardex/tool/${toolId}/page`, { params: { cursor, size } });
+  }
+
+  getPageByDateRange(startDate, endDate, cursor = null, size = 100) {
+    if (!startDate || !endDate) {
+        return Promise.reject(new Error("Both start date and end date are required."));
+    }
+    return http.get(`/kardex/date/page`, {
+        params: { start: `${startDate}T00:00:00`, end: `${endDate}T23:59:59`, cursor, size }
+    });
+  }
 }
 
 export default new KardexService();
\ No newline at end of file
@@ -1,5 +1,12 @@
 import http from "../http-common";
 
+// Idempotency-Key: la clave la crea el componente una vez por envío del formulario (useRef) y la reutiliza en cada
+// reintento hasta que la operación se confirme; así el backend devuelve la respuesta guardada en vez de repetir el
+// préstamo/devolución/pago. Sin clave no se envía el header.
+const idempotent = (idempotencyKey) => (
+  idempotencyKey ? { headers: { "Idempotency-Key": idempotencyKey } } : {}
+);
+
 class LoanService {
   getAll() {
     // Ajustado para coincidir con el backend (devuelve activos + atrasados)
@@ -10,16 +17,32 @@ class LoanService {
     return http.get(`/loans/${id}`);
   }
 
-  create(data) {
-    return http.post("/loans", data);
+  create(data, idempotencyKey) {
+    return http.post("/loans", data, idempotent(idempotencyKey));
+  }
+
+  // data: { clientId, startDate, lines: [{ toolId, dueDate }] }
+  createBatch(data, idempotencyKey) {
+    return http.post("/loans/batch", data, idempotent(idempotencyKey));
+  }
+
+  returnLoan(id, data, idempotencyKey) {
+    return http.put(`/loans/${id}/return`, data, idempotent(idempotencyKey));
+  }
+
+  // data: { lines: [{ loanId, toolId, damaged, irreparable, returnDate }] } -> resultado por línea
+  returnBatch(data, idempotencyKey) {
+    return http.put("/loans/returns/batch", data, idempotent(idempotencyKey));
   }
 
-  returnLoan(id, data) {
-    return http.put(`/loans/${id}/return`, data);
+  markAsPaid(loanId, idempotencyKey) {
+    return http.patch(`/loans/${loanId}/pay`, null, idempotent(idempotencyKey));
   }
 
-  markAsPaid(loanId) {
-    return http.patch(`/loans/${loanId}/pay`);
+  // El backend respondió un error distinto de 409: la clave quedó liberada y un envío nuevo (p. ej. con el
+  // formulario corregido) puede usar otra. Sin respuesta (red caída, timeout) se debe reintentar con la misma.
+  canRenewKey(error) {
+    return !!error.response && error.response.status !== 409;
   }
 
   getUnpaidLoansByClient(clientId) {
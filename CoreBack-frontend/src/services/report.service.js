@@ -11,23 +11,43 @@ class ReportService {
     return http.get(url);
   }
 
-  // RF6.2: Modificado para enviar fechas si existen
-  getClientsWithLateLoans(from, to) {
-    let url = "/reports/clients/late";
+  // RF6.2: Paginado por ID (afterId = nextAfterId de la página anterior), con cantidad de atrasos por cliente
+  getClientsWithLateLoans(from, to, afterId = null, size = 100) {
+    let url = `/reports/clients/late?includeStats=true&size=${size}`;
+    if (afterId) {
+      url += `&afterId=${afterId}`;
+    }
     // Añadir parámetros de fecha solo si ambos están presentes
     if (from && to) {
-      url += `?from=${from}&to=${to}`; // O usar '&' si ya hubiera otros params
+      url += `&from=${from}&to=${to}`;
     }
     return http.get(url);
   }
 
-  // RF6.3: Sin cambios, ya enviaba fechas
-  getTopTools(from, to) {
+  // Exportación CSV del reporte completo (el navegador descomprime gzip solo); se recibe como Blob para descargarlo
+  exportLoansCsv(status, from, to) {
+    let url = `/reports/loans/csv?status=${status}`;
+    if (from && to) {
+      url += `&from=${from}&to=${to}`;
+    }
+    return http.get(url, { responseType: "blob" });
+  }
+
+  exportLateClientsCsv(from, to) {
+    let url = `/reports/clients/late/csv`;
+    if (from && to) {
+      url += `?from=${from}&to=${to}`;
+    }
+    return http.get(url, { responseType: "blob" });
+  }
+
+  // RF6.3: Ranking con límite de herramientas (por defecto 10)
+  getTopTools(from, to, limit = 10) {
     // Validar fechas aquí o asumir que el componente lo hace
     if (!from || !to) {
         return Promise.reject(new Error("Both 'from' and 'to' dates are required for Top Tools report."));
     }
-    return http.get(`/reports/tools/top?from=${from}&to=${to}`);
+    return http.get(`/reports/tools/top?from=${from}&to=${to}&limit=${limit}`);
   }
 }
 